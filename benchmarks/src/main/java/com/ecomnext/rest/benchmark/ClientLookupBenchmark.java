@@ -0,0 +1,67 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.benchmark;
+
+import com.ecomnext.rest.RestClient;
+import com.ecomnext.rest.ning.NingRestAPI;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention on the default client lookup done by every static Rest.url(...) call. The
+ * {@code synchronizedLookup} benchmark reproduces the former implementation, which took the
+ * NingRestAPI monitor on every call, as a reference.
+ *
+ * Run it with increasing thread counts to see how both scale across cores:
+ * <pre>
+ * java -jar target/benchmarks.jar ClientLookupBenchmark -t 1
+ * java -jar target/benchmarks.jar ClientLookupBenchmark -t 4
+ * java -jar target/benchmarks.jar ClientLookupBenchmark -t max
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientLookupBenchmark {
+    private NingRestAPI api;
+
+    @Setup
+    public void setup() {
+        api = new NingRestAPI();
+        api.client();
+    }
+
+    @TearDown
+    public void tearDown() {
+        api.resetClient();
+    }
+
+    @Benchmark
+    public RestClient lookup() {
+        return api.client();
+    }
+
+    @Benchmark
+    public RestClient synchronizedLookup() {
+        synchronized (api) {
+            return api.client();
+        }
+    }
+}
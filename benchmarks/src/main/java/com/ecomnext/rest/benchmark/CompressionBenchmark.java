@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.benchmark;
+
+import com.ecomnext.rest.compress.CompressionPolicy;
+import com.ecomnext.rest.compress.StreamingDecoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cost of compressing request bodies and decompressing responses at several payload sizes.
+ * {@code compressPooled} gzips a JSON body with the deflaters of the {@link com.ecomnext.rest.compress.CodecPool},
+ * {@code compressNewDeflater} with a new {@link GZIPOutputStream} every time, whose deflater holds native memory
+ * until it is closed. {@code decodeStreaming} inflates the gzipped body in parts of 8KiB as they would arrive from the
+ * network, {@code decodeBuffered} inflates the whole buffered body with a {@link GZIPInputStream}.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar CompressionBenchmark -prof gc
+ * java -jar target/benchmarks.jar CompressionBenchmark -p size=1048576
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+    private static final int PART_SIZE = 8192;
+
+    @Param({"1024", "16384", "262144", "1048576"})
+    public int size;
+
+    private final CompressionPolicy policy = CompressionPolicy.builder().threshold(0).build();
+    private byte[] body;
+    private byte[] gzipped;
+
+    @Setup
+    public void setup() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; json.length() < size; i++) {
+            json.append("{\"id\":").append(i).append(",\"sku\":\"SKU-").append(i * 7919 % 100000)
+                    .append("\",\"name\":\"Item ").append(i).append("\",\"price\":").append(i % 500).append(".99},");
+        }
+        body = json.substring(0, size).getBytes(StandardCharsets.UTF_8);
+        gzipped = policy.compress(body);
+    }
+
+    @Benchmark
+    public byte[] compressPooled() {
+        return policy.compress(body);
+    }
+
+    @Benchmark
+    public byte[] compressNewDeflater() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public void decodeStreaming(Blackhole blackhole) throws Exception {
+        try (StreamingDecoder decoder = policy.decoder("gzip")) {
+            for (int offset = 0; offset < gzipped.length; offset += PART_SIZE) {
+                ByteBuffer part = ByteBuffer.wrap(gzipped, offset, Math.min(PART_SIZE, gzipped.length - offset));
+                decoder.decode(part, blackhole::consume);
+            }
+            decoder.finish();
+        }
+    }
+
+    @Benchmark
+    public byte[] decodeBuffered() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            byte[] buffer = new byte[PART_SIZE];
+            int n;
+            while ((n = gzip.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.benchmark;
+
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.metrics.HostMetrics;
+import com.ecomnext.rest.metrics.LatencyHistogram;
+import com.ecomnext.rest.metrics.RestMetrics;
+import com.ecomnext.rest.ning.NingRestClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of recording per-host metrics. {@code getWithMetrics} and {@code getWithoutMetrics} run the
+ * same GET through a {@link StubAsyncHttpProvider}, so the difference is the whole cost of the metrics
+ * on the client path; {@code record} isolates the cost of recording a request. Run with {@code -prof gc}
+ * to check that recording does not allocate, and with {@code -t} to see it under contention.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar MetricsOverheadBenchmark -prof gc
+ * java -jar target/benchmarks.jar MetricsOverheadBenchmark.record -t 4
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsOverheadBenchmark {
+    private static final String URL = "http://api.example.com/users/42/items";
+
+    private NingRestClient plainClient;
+    private NingRestClient meteredClient;
+    private HostMetrics hostMetrics;
+
+    @Setup
+    public void setup() {
+        plainClient = StubAsyncHttpProvider.newClient();
+        meteredClient = StubAsyncHttpProvider.newClient().setMetrics(new RestMetrics());
+        hostMetrics = new RestMetrics().host("api.example.com");
+    }
+
+    @TearDown
+    public void tearDown() {
+        plainClient.getUnderlying().close();
+        meteredClient.getUnderlying().close();
+    }
+
+    @Benchmark
+    public CompletableFuture<RestResponse> getWithoutMetrics() {
+        return plainClient.url(URL).get();
+    }
+
+    @Benchmark
+    public CompletableFuture<RestResponse> getWithMetrics() {
+        return meteredClient.url(URL).get();
+    }
+
+    @Benchmark
+    public void record() {
+        long start = hostMetrics.start();
+        hostMetrics.headersWritten(start);
+        hostMetrics.completed(start, 200);
+    }
+
+    @Benchmark
+    public void recordHistogram(Histogram state) {
+        state.histogram.record(++state.value & 0xFFFFF);
+    }
+
+    @State(Scope.Thread)
+    public static class Histogram {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long value;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.benchmark;
+
+import com.ecomnext.rest.RestEndpoint;
+import com.ecomnext.rest.RestRequestHolder;
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.ning.NingRestClient;
+import com.ecomnext.rest.ning.NingRestRequest;
+import com.ecomnext.rest.ning.NingRestRequestHolder;
+import com.ecomnext.rest.utils.Json;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ning.http.client.FluentCaseInsensitiveStringsMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side cost of the Rest.url(...).setHeader(...).get() path: holder construction, query and
+ * header handling, body encoding and NingRestRequest/RequestBuilder construction. The transport is
+ * a {@link StubAsyncHttpProvider}, so no I/O is involved.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar RequestBuildingBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestBuildingBenchmark {
+    private static final String PLAIN_URL = "http://api.example.com/users/42/items?limit=10&offset=20";
+    private static final String TEMPLATE_URL = "http://api.example.com/users/{userId}/items{?limit,offset}";
+    private static final String QUERY_STRING = "limit=10&offset=20&sort=name&order=asc";
+
+    private NingRestClient client;
+    private RestEndpoint endpoint;
+    private Map<String, Collection<String>> headers;
+    private Map<String, Collection<String>> queryParameters;
+
+    @Setup
+    public void setup() {
+        client = StubAsyncHttpProvider.newClient();
+        endpoint = client.endpoint(TEMPLATE_URL);
+
+        headers = new HashMap<>();
+        headers.put("Accept", new ArrayList<>(Collections.singletonList("application/json")));
+        headers.put("X-Request-Id", new ArrayList<>(Collections.singletonList("6f1c2a54-0d6e-4a43-8f7c-3b0a4c1d9e21")));
+        headers.put("Authorization", new ArrayList<>(Collections.singletonList("Bearer 0123456789abcdef")));
+
+        queryParameters = new HashMap<>();
+        queryParameters.put("limit", new ArrayList<>(Collections.singletonList("10")));
+        queryParameters.put("offset", new ArrayList<>(Collections.singletonList("20")));
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.getUnderlying().close();
+    }
+
+    @Benchmark
+    public RestRequestHolder holderFromUrl() {
+        return new NingRestRequestHolder(client, PLAIN_URL);
+    }
+
+    @Benchmark
+    public RestRequestHolder holderFromTemplate() {
+        return new NingRestRequestHolder(client, TEMPLATE_URL, "42", "10", "20");
+    }
+
+    @Benchmark
+    public RestRequestHolder holderFromEndpoint() {
+        return endpoint.url("42", "10", "20");
+    }
+
+    @Benchmark
+    public RestRequestHolder setQueryString() {
+        return new NingRestRequestHolder(client, "http://api.example.com/users").setQueryString(QUERY_STRING);
+    }
+
+    @Benchmark
+    public FluentCaseInsensitiveStringsMap copyHeaders() {
+        return new FluentCaseInsensitiveStringsMap(headers);
+    }
+
+    @Benchmark
+    public NingRestRequest newNingRestRequest() {
+        return new NingRestRequest(client, "GET", PLAIN_URL, queryParameters, headers);
+    }
+
+    @Benchmark
+    public CompletableFuture<RestResponse> getWithHeaders() {
+        return client.url(PLAIN_URL)
+                .setHeader("Accept", "application/json")
+                .setHeader("X-Request-Id", "6f1c2a54-0d6e-4a43-8f7c-3b0a4c1d9e21")
+                .get();
+    }
+
+    @Benchmark
+    public CompletableFuture<RestResponse> postString(Bodies bodies) {
+        return client.url(PLAIN_URL).setContentType("application/json").post(bodies.string);
+    }
+
+    @Benchmark
+    public CompletableFuture<RestResponse> postJson(Bodies bodies) {
+        return client.url(PLAIN_URL).post(bodies.json);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Bodies {
+        /** Number of entries in the JSON array sent as body. */
+        @Param({"1", "100"})
+        public int items;
+
+        JsonNode json;
+        String string;
+
+        @Setup
+        public void setup() {
+            json = sampleArray(items);
+            string = Json.stringify(json);
+        }
+    }
+
+    /**
+     * @return a JSON array of {@code items} objects, a bit less than 150 bytes each.
+     */
+    static ArrayNode sampleArray(int items) {
+        ArrayNode array = Json.newObject().putArray("items");
+        for (int i = 0; i < items; i++) {
+            ObjectNode item = array.addObject();
+            item.put("id", i);
+            item.put("name", "item-" + i);
+            item.put("description", "Description of the item number " + i + " with some ñ accented chars");
+            item.put("price", i * 1.5);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.benchmark;
+
+import com.ecomnext.rest.ning.NingRestClient;
+import com.ning.http.client.*;
+import com.ning.http.client.listenable.AbstractListenableFuture;
+import com.ning.http.client.providers.jdk.JDKResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AsyncHttpProvider which never touches the network: every request is answered synchronously,
+ * on the calling thread, with an empty {@code 200 OK}. Benchmarks built on it only measure the
+ * client-side overhead of building and dispatching requests.
+ */
+public class StubAsyncHttpProvider implements AsyncHttpProvider {
+    private static final URI STUB_URI = URI.create("http://localhost/");
+
+    private final HttpResponseStatus status = new StubResponseStatus(STUB_URI, this);
+    private final HttpResponseHeaders headers = new StubResponseHeaders(STUB_URI, this);
+
+    /**
+     * @return a client whose transport is a new stub provider.
+     */
+    public static NingRestClient newClient() {
+        return new NingRestClient(new AsyncHttpClient(new StubAsyncHttpProvider()));
+    }
+
+    @Override
+    public <T> ListenableFuture<T> execute(Request request, AsyncHandler<T> handler) throws IOException {
+        try {
+            // the Netty provider always resolves the request URI, which Request caches
+            request.getURI();
+            if (handler instanceof ProgressAsyncHandler) {
+                ((ProgressAsyncHandler<T>) handler).onHeaderWriteCompleted();
+                ((ProgressAsyncHandler<T>) handler).onContentWriteCompleted();
+            }
+            handler.onStatusReceived(status);
+            handler.onHeadersReceived(headers);
+            return new CompletedListenableFuture<>(handler.onCompleted());
+        } catch (Exception e) {
+            handler.onThrowable(e);
+            return new CompletedListenableFuture<>(null);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Response prepareResponse(HttpResponseStatus status, HttpResponseHeaders headers,
+                                    List<HttpResponseBodyPart> bodyParts) {
+        return new JDKResponse(status, headers, bodyParts);
+    }
+
+    private static class StubResponseStatus extends HttpResponseStatus {
+        StubResponseStatus(URI uri, AsyncHttpProvider provider) {
+            super(uri, provider);
+        }
+
+        @Override
+        public int getStatusCode() {
+            return 200;
+        }
+
+        @Override
+        public String getStatusText() {
+            return "OK";
+        }
+
+        @Override
+        public String getProtocolName() {
+            return "HTTP";
+        }
+
+        @Override
+        public int getProtocolMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getProtocolMinorVersion() {
+            return 1;
+        }
+
+        @Override
+        public String getProtocolText() {
+            return "HTTP/1.1";
+        }
+    }
+
+    private static class StubResponseHeaders extends HttpResponseHeaders {
+        private final FluentCaseInsensitiveStringsMap headers = new FluentCaseInsensitiveStringsMap()
+                .add("Content-Type", "application/json; charset=utf-8")
+                .add("Content-Length", "0");
+
+        StubResponseHeaders(URI uri, AsyncHttpProvider provider) {
+            super(uri, provider);
+        }
+
+        @Override
+        public FluentCaseInsensitiveStringsMap getHeaders() {
+            return headers;
+        }
+    }
+
+    private static class CompletedListenableFuture<V> extends AbstractListenableFuture<V> {
+        private final V value;
+
+        CompletedListenableFuture(V value) {
+            this.value = value;
+        }
+
+        @Override
+        public void done() {
+        }
+
+        @Override
+        public void abort(Throwable t) {
+        }
+
+        @Override
+        public void content(V v) {
+        }
+
+        @Override
+        public void touch() {
+        }
+
+        @Override
+        public boolean getAndSetWriteHeaders(boolean writeHeaders) {
+            return false;
+        }
+
+        @Override
+        public boolean getAndSetWriteBody(boolean writeBody) {
+            return false;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return true;
+        }
+
+        @Override
+        public V get() {
+            return value;
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) {
+            return value;
+        }
+    }
+}
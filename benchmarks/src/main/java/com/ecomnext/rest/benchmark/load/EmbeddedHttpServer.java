@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.benchmark.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal HTTP/1.1 server bound to the loopback interface, based on the JDK built-in server so the
+ * load benchmark has no external dependencies.
+ *
+ * <ul>
+ *     <li>{@code GET /get}: small JSON document</li>
+ *     <li>{@code POST /echo}: reads the body and answers with a small JSON document</li>
+ *     <li>{@code GET /download?size=n}: n bytes of body</li>
+ *     <li>{@code POST|PUT /upload}: reads the body and answers with its length</li>
+ * </ul>
+ */
+public class EmbeddedHttpServer implements AutoCloseable {
+    private static final byte[] SMALL_JSON =
+            "{\"id\":42,\"name\":\"benchmark\",\"tags\":[\"a\",\"b\",\"c\"]}".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile byte[] download = new byte[0];
+
+    public EmbeddedHttpServer(int threads) throws IOException {
+        // the server writes the headers and the body separately, with Nagle's algorithm the body waits for the
+        // delayed acknowledgement of the headers by clients reusing a busy connection
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/get", exchange -> respond(exchange, 200, SMALL_JSON, SMALL_JSON.length));
+        server.createContext("/echo", exchange -> {
+            drain(exchange.getRequestBody());
+            respond(exchange, 200, SMALL_JSON, SMALL_JSON.length);
+        });
+        server.createContext("/download", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            int size = query != null && query.startsWith("size=") ? Integer.parseInt(query.substring(5)) : 0;
+            byte[] body = download;
+            if (body.length < size) {
+                body = new byte[size];
+                Arrays.fill(body, (byte) 'x');
+                download = body;
+            }
+            respond(exchange, 200, body, size);
+        });
+        server.createContext("/upload", exchange -> {
+            long length = drain(exchange.getRequestBody());
+            byte[] body = ("{\"length\":" + length + "}").getBytes(StandardCharsets.UTF_8);
+            respond(exchange, 200, body, body.length);
+        });
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static long drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+        }
+        in.close();
+        return total;
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body, int length) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body, 0, length);
+        }
+    }
+}
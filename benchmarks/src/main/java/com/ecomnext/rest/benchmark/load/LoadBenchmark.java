@@ -0,0 +1,260 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.benchmark.load;
+
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.netty.NettyHttpTransport;
+import com.ecomnext.rest.ning.NingRestClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import io.netty.util.ReferenceCountUtil;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load benchmark: drives a real {@link NingRestClient} against an {@link EmbeddedHttpServer}
+ * on the loopback interface and reports throughput and latency percentiles for every combination of
+ * transport, scenario, connection pool size and concurrency.
+ *
+ * <p>Requests are issued open-loop at a fixed rate and every latency is measured from the time the
+ * request <em>should</em> have been sent, so stalls of the client (a full pool, a saturated I/O thread,
+ * GC pauses) show up in the percentiles instead of silently lowering the offered load. This is the
+ * usual correction for coordinated omission. The uncorrected service time, measured from the actual
+ * send, is reported next to it for comparison.
+ *
+ * <p>Run it with {@code mvn -P load verify}. Settings are read from system properties:
+ * <ul>
+ *     <li>{@code load.transports}: comma separated transports, {@code ning} for the AsyncHttpClient and
+ *     {@code netty} for the {@link NettyHttpTransport}, default {@code ning}</li>
+ *     <li>{@code load.scenarios}: comma separated {@link Scenario} names, all by default</li>
+ *     <li>{@code load.connections}: maximum connections per host to try, default {@code 16,128}</li>
+ *     <li>{@code load.concurrency}: maximum requests in flight to try, default {@code 16,128}</li>
+ *     <li>{@code load.rate}: offered load in requests per second, default {@code 500}</li>
+ *     <li>{@code load.warmup} and {@code load.duration}: seconds per run, default {@code 5} and {@code 15}</li>
+ *     <li>{@code load.jsonItems}, {@code load.downloadSize}, {@code load.uploadSize}: payload sizes,
+ *     default {@code 100} items, {@code 1048576} and {@code 1048576} bytes</li>
+ *     <li>{@code load.serverThreads}: embedded server worker threads, default twice the cores</li>
+ *     <li>{@code load.output}: optional file the result table is appended to</li>
+ * </ul>
+ */
+public class LoadBenchmark {
+    private static final long HIGHEST_TRACKABLE_LATENCY = TimeUnit.MINUTES.toNanos(1);
+
+    public static void main(String[] args) throws Exception {
+        String[] transports = property("load.transports", "ning").split(",");
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String name : property("load.scenarios", "GET,JSON_POST,DOWNLOAD,UPLOAD").split(",")) {
+            scenarios.add(Scenario.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+        }
+        int[] connections = intList(property("load.connections", "16,128"));
+        int[] concurrencies = intList(property("load.concurrency", "16,128"));
+        int rate = Integer.parseInt(property("load.rate", "500"));
+        long warmup = TimeUnit.SECONDS.toNanos(Long.parseLong(property("load.warmup", "5")));
+        long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(property("load.duration", "15")));
+        int serverThreads = Integer.parseInt(
+                property("load.serverThreads", String.valueOf(2 * Runtime.getRuntime().availableProcessors())));
+        String output = System.getProperty("load.output");
+
+        List<String> rows = new ArrayList<>();
+        rows.add(Result.HEADER);
+        try (EmbeddedHttpServer server = new EmbeddedHttpServer(serverThreads);
+             Scenario.Fixtures fixtures = new Scenario.Fixtures(
+                     Integer.parseInt(property("load.jsonItems", "100")),
+                     Integer.parseInt(property("load.downloadSize", "1048576")),
+                     Integer.parseInt(property("load.uploadSize", "1048576")))) {
+            System.out.println(Result.HEADER);
+            for (String transport : transports) {
+                for (Scenario scenario : scenarios) {
+                    for (int maxConnections : connections) {
+                        for (int concurrency : concurrencies) {
+                            NingRestClient client = client(transport.trim(), maxConnections);
+                            try {
+                                new Run(client, scenario, server.baseUrl(), fixtures, rate, concurrency)
+                                        .execute(warmup);
+                                Result result = new Run(client, scenario, server.baseUrl(), fixtures, rate,
+                                        concurrency).execute(duration);
+                                String row = result.format(transport.trim(), scenario, maxConnections, concurrency,
+                                        rate);
+                                System.out.println(row);
+                                rows.add(row);
+                            } finally {
+                                if (client.getTransport() != null) {
+                                    client.getTransport().close();
+                                }
+                                client.getUnderlying().close();
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        if (output != null) {
+            try (PrintWriter writer = new PrintWriter(new FileWriter(output, true))) {
+                rows.forEach(writer::println);
+            }
+        }
+    }
+
+    private static NingRestClient client(String transport, int maxConnections) {
+        NingRestClient client = new NingRestClient(new AsyncHttpClientConfig.Builder()
+                .setAllowPoolingConnection(true)
+                .setMaximumConnectionsPerHost(maxConnections)
+                .setMaximumConnectionsTotal(maxConnections)
+                .build());
+        switch (transport) {
+            case "ning":
+                return client;
+            case "netty":
+                return client.setTransport(NettyHttpTransport.builder()
+                        .maxConnectionsPerHost(maxConnections)
+                        .build());
+            default:
+                throw new IllegalArgumentException("Unknown transport " + transport);
+        }
+    }
+
+    /**
+     * One open-loop run of a scenario against a client.
+     */
+    private static class Run {
+        private final NingRestClient client;
+        private final Scenario scenario;
+        private final String baseUrl;
+        private final Scenario.Fixtures fixtures;
+        private final long interval;
+        private final int concurrency;
+        private final Semaphore inFlight;
+
+        private final Histogram latency = new ConcurrentHistogram(HIGHEST_TRACKABLE_LATENCY, 3);
+        private final Histogram serviceTime = new ConcurrentHistogram(HIGHEST_TRACKABLE_LATENCY, 3);
+        private final LongAdder errors = new LongAdder();
+
+        Run(NingRestClient client, Scenario scenario, String baseUrl, Scenario.Fixtures fixtures,
+            int rate, int concurrency) {
+            this.client = client;
+            this.scenario = scenario;
+            this.baseUrl = baseUrl;
+            this.fixtures = fixtures;
+            this.interval = TimeUnit.SECONDS.toNanos(1) / rate;
+            this.concurrency = concurrency;
+            this.inFlight = new Semaphore(concurrency);
+        }
+
+        Result execute(long duration) throws InterruptedException {
+            long start = System.nanoTime();
+            long end = start + duration;
+            for (long i = 0; ; i++) {
+                final long intended = start + i * interval;
+                if (intended >= end) {
+                    break;
+                }
+                long delay;
+                while ((delay = intended - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+                inFlight.acquire();
+
+                final long sent = System.nanoTime();
+                CompletableFuture<RestResponse> response;
+                try {
+                    response = scenario.call(client, baseUrl, fixtures);
+                } catch (RuntimeException e) {
+                    record(intended, sent, false);
+                    continue;
+                }
+                response.whenComplete((r, t) -> {
+                    record(intended, sent, t == null && r.getStatus() < 400);
+                    // gives the pooled body of the netty transport back without waiting for a collection
+                    ReferenceCountUtil.release(r);
+                });
+            }
+            if (!inFlight.tryAcquire(concurrency, 1, TimeUnit.MINUTES)) {
+                throw new IllegalStateException("Requests still in flight one minute after the end of the run");
+            }
+            return new Result(latency, serviceTime, errors.sum(), System.nanoTime() - start);
+        }
+
+        private void record(long intended, long sent, boolean success) {
+            long now = System.nanoTime();
+            latency.recordValue(Math.min(now - intended, HIGHEST_TRACKABLE_LATENCY));
+            serviceTime.recordValue(Math.min(now - sent, HIGHEST_TRACKABLE_LATENCY));
+            if (!success) {
+                errors.increment();
+            }
+            inFlight.release();
+        }
+    }
+
+    private static class Result {
+        static final String HEADER = String.format(Locale.ROOT,
+                "%-9s %-10s %6s %6s %7s %9s %7s %9s %9s %9s %9s %12s",
+                "transport", "scenario", "conns", "conc", "rate", "thrpt/s", "errors",
+                "p50 ms", "p99 ms", "p99.9 ms", "max ms", "svc p99 ms");
+
+        final Histogram latency;
+        final Histogram serviceTime;
+        final long errors;
+        final long elapsed;
+
+        Result(Histogram latency, Histogram serviceTime, long errors, long elapsed) {
+            this.latency = latency;
+            this.serviceTime = serviceTime;
+            this.errors = errors;
+            this.elapsed = elapsed;
+        }
+
+        String format(String transport, Scenario scenario, int connections, int concurrency, int rate) {
+            double throughput = (latency.getTotalCount() - errors) / (elapsed / 1e9);
+            return String.format(Locale.ROOT,
+                    "%-9s %-10s %6d %6d %7d %9.1f %7d %9.3f %9.3f %9.3f %9.3f %12.3f",
+                    transport, scenario, connections, concurrency, rate, throughput, errors,
+                    millis(latency.getValueAtPercentile(50)),
+                    millis(latency.getValueAtPercentile(99)),
+                    millis(latency.getValueAtPercentile(99.9)),
+                    millis(latency.getMaxValue()),
+                    millis(serviceTime.getValueAtPercentile(99)));
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+
+    private static String property(String name, String defaultValue) {
+        return System.getProperty(name, defaultValue);
+    }
+
+    private static int[] intList(String value) {
+        String[] parts = value.split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Integer.parseInt(parts[i].trim());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.benchmark.load;
+
+import com.ecomnext.rest.RestClient;
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.utils.Json;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Request shapes driven by {@link LoadBenchmark}.
+ */
+public enum Scenario {
+    GET {
+        @Override
+        CompletableFuture<RestResponse> call(RestClient client, String baseUrl, Fixtures fixtures) {
+            return client.url(baseUrl + "/get").get();
+        }
+    },
+    JSON_POST {
+        @Override
+        CompletableFuture<RestResponse> call(RestClient client, String baseUrl, Fixtures fixtures) {
+            return client.url(baseUrl + "/echo").post(fixtures.json);
+        }
+    },
+    DOWNLOAD {
+        @Override
+        CompletableFuture<RestResponse> call(RestClient client, String baseUrl, Fixtures fixtures) {
+            return client.url(baseUrl + "/download").setQueryParameter("size", fixtures.downloadSize).get();
+        }
+    },
+    UPLOAD {
+        @Override
+        CompletableFuture<RestResponse> call(RestClient client, String baseUrl, Fixtures fixtures) {
+            return client.url(baseUrl + "/upload").post(fixtures.uploadFile);
+        }
+    };
+
+    abstract CompletableFuture<RestResponse> call(RestClient client, String baseUrl, Fixtures fixtures);
+
+    /**
+     * Request bodies shared by every scenario run.
+     */
+    static class Fixtures implements AutoCloseable {
+        final JsonNode json;
+        final String downloadSize;
+        final File uploadFile;
+
+        Fixtures(int jsonItems, int downloadSize, int uploadSize) throws IOException {
+            ArrayNode array = Json.newObject().putArray("items");
+            for (int i = 0; i < jsonItems; i++) {
+                array.addObject().put("id", i).put("name", "item-" + i).put("price", i * 1.5);
+            }
+            this.json = array;
+            this.downloadSize = String.valueOf(downloadSize);
+            this.uploadFile = File.createTempFile("load-benchmark", ".bin");
+            byte[] content = new byte[uploadSize];
+            Arrays.fill(content, (byte) 'u');
+            try (FileOutputStream out = new FileOutputStream(uploadFile)) {
+                out.write(content);
+            }
+        }
+
+        @Override
+        public void close() {
+            uploadFile.delete();
+        }
+    }
+}
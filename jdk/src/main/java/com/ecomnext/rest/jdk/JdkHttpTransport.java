@@ -0,0 +1,199 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.jdk;
+
+import com.ecomnext.rest.RestBodyConsumer;
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.RestStreamedResponse;
+import com.ecomnext.rest.spi.HttpTransport;
+import com.ecomnext.rest.spi.TransportRequest;
+import com.ecomnext.rest.utils.Futures;
+
+import java.io.FileNotFoundException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Transport on the HttpClient of the JDK, which speaks HTTP/2: over TLS when the server supports it and in clear text
+ * by upgrading the first connection to a host. An HTTP/2 connection multiplexes every concurrent request to its host,
+ * so a client needs one connection per host instead of one per request in flight.
+ * <p>
+ * Cancelling a request aborts its stream from Java 16, earlier versions complete the exchange in the background.
+ */
+public class JdkHttpTransport implements HttpTransport {
+    // the timeouts of the AsyncHttpClient by default
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(60);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    // headers set by the HttpClient itself, it rejects them
+    private static final Set<String> MANAGED_HEADERS =
+            new HashSet<>(Arrays.asList("connection", "content-length", "expect", "keep-alive", "upgrade"));
+
+    private final HttpClient client;
+    // follows the redirects of the requests asking for it, created on first use
+    private final AtomicReference<HttpClient> redirectingClient = new AtomicReference<>();
+    private final boolean ownsClient;
+
+    /**
+     * Create a transport on a new HttpClient preferring HTTP/2, not following redirects but for the requests asking
+     * for it.
+     */
+    public JdkHttpTransport() {
+        this.client = newClient(HttpClient.Redirect.NEVER);
+        this.ownsClient = true;
+    }
+
+    /**
+     * Create a transport on the given client, whose settings apply to every request: it follows redirects according
+     * to its own policy. It is not closed with the transport.
+     */
+    public JdkHttpTransport(HttpClient client) {
+        this.client = client;
+        this.ownsClient = false;
+        redirectingClient.set(client);
+    }
+
+    private static HttpClient newClient(HttpClient.Redirect redirect) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(redirect)
+                .build();
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
+
+    @Override
+    public CompletableFuture<RestResponse> execute(TransportRequest request) {
+        CompletableFuture<HttpResponse<byte[]>> sent =
+                client(request).sendAsync(httpRequest(request), HttpResponse.BodyHandlers.ofByteArray());
+        return Futures.propagateCancel(sent.thenApply(JdkRestResponse::new), sent);
+    }
+
+    @Override
+    public CompletableFuture<RestStreamedResponse> stream(TransportRequest request, RestBodyConsumer consumer) {
+        URI uri = URI.create(request.getUrl());
+        AtomicReference<JdkStreamedResponse> response = new AtomicReference<>();
+        CompletableFuture<RestStreamedResponse> promise = new CompletableFuture<>();
+        CompletableFuture<HttpResponse<Void>> sent = client(request).sendAsync(httpRequest(request), info -> {
+            JdkStreamedResponse r = new JdkStreamedResponse(info, uri, consumer);
+            response.set(r);
+            promise.complete(r);
+            return HttpResponse.BodySubscribers.fromSubscriber(r);
+        });
+        sent.whenComplete((ignored, failure) -> {
+            JdkStreamedResponse r = response.get();
+            if (failure == null) {
+                return;
+            }
+            if (r == null) {
+                promise.completeExceptionally(failure);
+            } else {
+                r.fail(failure);
+            }
+        });
+        // cancelling before the headers arrive aborts the request, afterwards use RestStreamedResponse.abort()
+        return Futures.propagateCancel(promise, sent);
+    }
+
+    private HttpClient client(TransportRequest request) {
+        if (!Boolean.TRUE.equals(request.getFollowRedirects())) {
+            return client;
+        }
+        HttpClient redirecting = redirectingClient.get();
+        if (redirecting == null) {
+            redirecting = newClient(HttpClient.Redirect.NORMAL);
+            if (!redirectingClient.compareAndSet(null, redirecting)) {
+                redirecting = redirectingClient.get();
+            }
+        }
+        return redirecting;
+    }
+
+    private static HttpRequest httpRequest(TransportRequest request) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(request.getUrl()))
+                .method(request.getMethod(), bodyPublisher(request))
+                .timeout(request.getTimeout() > 0 ? Duration.ofMillis(request.getTimeout()) : REQUEST_TIMEOUT);
+        for (Map.Entry<String, List<String>> header : request.getHeaders().entrySet()) {
+            // the HttpClient always sends the host of the URI, it rejects the header
+            if ("host".equalsIgnoreCase(header.getKey())) {
+                throw new UnsupportedOperationException("Virtual hosts are not supported by the jdk transport");
+            }
+            if (MANAGED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                builder.header(header.getKey(), value);
+            }
+        }
+        return builder.build();
+    }
+
+    private static HttpRequest.BodyPublisher bodyPublisher(TransportRequest request) {
+        if (request.getBody() != null) {
+            return HttpRequest.BodyPublishers.ofByteArray(request.getBody());
+        }
+        if (request.getBodyFile() != null) {
+            try {
+                return HttpRequest.BodyPublishers.ofFile(request.getBodyFile().toPath());
+            } catch (FileNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (request.getBodyStream() != null) {
+            return HttpRequest.BodyPublishers.ofInputStream(request::getBodyStream);
+        }
+        return HttpRequest.BodyPublishers.noBody();
+    }
+
+    /**
+     * Close the clients created by the transport, from Java 21. On earlier versions their connections are closed
+     * once they are garbage collected.
+     */
+    @Override
+    public void close() {
+        if (!ownsClient) {
+            return;
+        }
+        close(client);
+        HttpClient redirecting = redirectingClient.get();
+        if (redirecting != null) {
+            close(redirecting);
+        }
+    }
+
+    private static void close(HttpClient client) {
+        if (client instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) client).close();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
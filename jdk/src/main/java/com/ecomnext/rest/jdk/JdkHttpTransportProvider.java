@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.jdk;
+
+import com.ecomnext.rest.spi.HttpTransport;
+import com.ecomnext.rest.spi.HttpTransportProvider;
+
+/**
+ * Provider of the {@link JdkHttpTransport}, named "jdk".
+ */
+public class JdkHttpTransportProvider implements HttpTransportProvider {
+    @Override
+    public String getName() {
+        return "jdk";
+    }
+
+    @Override
+    public HttpTransport create() {
+        return new JdkHttpTransport();
+    }
+}
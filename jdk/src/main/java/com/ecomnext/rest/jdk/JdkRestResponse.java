@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.jdk;
+
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.utils.Json;
+import com.ecomnext.rest.utils.XML;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.ning.http.client.cookie.Cookie;
+import com.ning.http.client.cookie.CookieDecoder;
+import com.ning.http.util.AsyncHttpProviderUtils;
+import org.w3c.dom.Document;
+
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A response received by the {@link JdkHttpTransport}, with its whole body.
+ */
+public class JdkRestResponse implements RestResponse {
+    private final HttpResponse<byte[]> response;
+
+    public JdkRestResponse(HttpResponse<byte[]> response) {
+        this.response = response;
+    }
+
+    /**
+     * @return the {@link HttpResponse} of the JDK HttpClient.
+     */
+    @Override
+    public Object getUnderlying() {
+        return response;
+    }
+
+    @Override
+    public int getStatus() {
+        return response.statusCode();
+    }
+
+    /**
+     * @return an empty string: the JDK HttpClient does not expose the reason phrase, which HTTP/2 does not have.
+     */
+    @Override
+    public String getStatusText() {
+        return "";
+    }
+
+    /**
+     * Get all the HTTP headers of the response as a case-insensitive map
+     */
+    @Override
+    public Map<String, List<String>> getAllHeaders() {
+        return response.headers().map();
+    }
+
+    @Override
+    public String getHeader(String key) {
+        return response.headers().firstValue(key).orElse(null);
+    }
+
+    @Override
+    public List<Cookie> getCookies() {
+        List<String> values = response.headers().allValues("Set-Cookie");
+        List<Cookie> cookies = new ArrayList<>(values.size());
+        for (String value : values) {
+            Cookie cookie = CookieDecoder.decode(value);
+            if (cookie != null) {
+                cookies.add(cookie);
+            }
+        }
+        return cookies;
+    }
+
+    @Override
+    public Cookie getCookie(String name) {
+        for (Cookie cookie : getCookies()) {
+            if (cookie.getName().equals(name)) {
+                return cookie;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @see com.ecomnext.rest.ning.NingRestResponse#getBody()
+     */
+    @Override
+    public String getBody() {
+        String contentType = getHeader("Content-Type");
+        if (contentType == null) {
+            contentType = "application/octet-stream";
+        }
+        String charset = AsyncHttpProviderUtils.parseCharset(contentType);
+        if (charset == null) {
+            charset = contentType.startsWith("text/") ? AsyncHttpProviderUtils.DEFAULT_CHARSET : "utf-8";
+        }
+        return new String(response.body(), Charset.forName(charset));
+    }
+
+    @Override
+    public Document asXml() {
+        return XML.fromInputStream(getBodyAsStream(), "utf-8");
+    }
+
+    @Override
+    public XMLStreamReader asXmlStream() {
+        return XML.streamFromInputStream(getBodyAsStream(), "utf-8");
+    }
+
+    @Override
+    public JsonNode asJson() {
+        return Json.parse(getBodyAsStream());
+    }
+
+    @Override
+    public <T> T as(Class<T> clazz) {
+        return Json.fromInputStream(getBodyAsStream(), clazz);
+    }
+
+    @Override
+    public <T> T as(TypeReference<T> valueTypeRef) {
+        return Json.fromInputStream(getBodyAsStream(), valueTypeRef);
+    }
+
+    @Override
+    public InputStream getBodyAsStream() {
+        return new ByteArrayInputStream(response.body());
+    }
+
+    @Override
+    public byte[] asByteArray() {
+        return response.body();
+    }
+
+    @Override
+    public URI getUri() {
+        return response.uri();
+    }
+}
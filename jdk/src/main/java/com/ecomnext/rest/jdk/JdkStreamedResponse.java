@@ -0,0 +1,190 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.jdk;
+
+import com.ecomnext.rest.RestBodyConsumer;
+import com.ecomnext.rest.RestStreamedResponse;
+
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A response of the {@link JdkHttpTransport} whose body is handed to a consumer as it arrives. It subscribes to the
+ * body requesting one batch of buffers at a time, so pausing it simply stops requesting more: with HTTP/2 the flow
+ * control window of the stream then stops the server, without blocking the other streams of the connection.
+ */
+class JdkStreamedResponse implements RestStreamedResponse, Flow.Subscriber<List<ByteBuffer>> {
+    private final HttpResponse.ResponseInfo info;
+    private final URI uri;
+    private final RestBodyConsumer consumer;
+    private final CompletableFuture<Void> bodyCompletion = new CompletableFuture<Void>() {
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                abort();
+            }
+            return cancelled;
+        }
+    };
+    // a batch was delivered while paused, the next one is requested on resume
+    private final AtomicBoolean waiting = new AtomicBoolean();
+
+    private volatile Flow.Subscription subscription;
+    private volatile boolean paused = false;
+    private volatile boolean aborted = false;
+
+    JdkStreamedResponse(HttpResponse.ResponseInfo info, URI uri, RestBodyConsumer consumer) {
+        this.info = info;
+        this.uri = uri;
+        this.consumer = consumer;
+    }
+
+    @Override
+    public int getStatus() {
+        return info.statusCode();
+    }
+
+    /**
+     * @return an empty string, see {@link JdkRestResponse#getStatusText()}.
+     */
+    @Override
+    public String getStatusText() {
+        return "";
+    }
+
+    @Override
+    public Map<String, List<String>> getAllHeaders() {
+        return info.headers().map();
+    }
+
+    @Override
+    public String getHeader(String key) {
+        return info.headers().firstValue(key).orElse(null);
+    }
+
+    /**
+     * @return the URI of the request, redirects are not reflected.
+     */
+    @Override
+    public URI getUri() {
+        return uri;
+    }
+
+    @Override
+    public void pause() {
+        paused = true;
+    }
+
+    @Override
+    public void resume() {
+        paused = false;
+        if (waiting.compareAndSet(true, false)) {
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public boolean isPaused() {
+        return paused;
+    }
+
+    @Override
+    public void abort() {
+        aborted = true;
+        Flow.Subscription s = subscription;
+        if (s != null) {
+            s.cancel();
+        }
+        fail(new CancellationException("Response aborted"));
+    }
+
+    @Override
+    public CompletableFuture<Void> getBodyCompletion() {
+        return bodyCompletion;
+    }
+
+    void fail(Throwable t) {
+        if (bodyCompletion.completeExceptionally(t)) {
+            consumer.onError(t);
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (aborted) {
+            subscription.cancel();
+        } else {
+            requestNext();
+        }
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        if (aborted) {
+            return;
+        }
+        try {
+            for (ByteBuffer buffer : buffers) {
+                consumer.onBodyPart(buffer);
+            }
+        } catch (Exception e) {
+            aborted = true;
+            subscription.cancel();
+            fail(e);
+            return;
+        }
+        requestNext();
+    }
+
+    private void requestNext() {
+        if (!paused) {
+            subscription.request(1);
+            return;
+        }
+        waiting.set(true);
+        // resumed meanwhile, it may not have seen the flag
+        if (!paused && waiting.compareAndSet(true, false)) {
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        fail(t);
+    }
+
+    @Override
+    public void onComplete() {
+        if (aborted || bodyCompletion.isDone()) {
+            return;
+        }
+        try {
+            consumer.onComplete();
+            bodyCompletion.complete(null);
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.jdk.benchmark;
+
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.ning.NingRestClient;
+import com.ecomnext.rest.spi.HttpTransports;
+import com.ning.http.client.AsyncHttpClientConfig;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.io.ConnectionStatistics;
+import org.eclipse.jetty.io.SelectorManager;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends the same requests with the AsyncHttpClient, over HTTP/1.1, and with the transports found by
+ * {@link HttpTransports}, against a Jetty server embedded in the same JVM which speaks HTTP/1.1 and HTTP/2 in clear
+ * text (h2c) on the same port and answers after a fixed latency. It reports the connections the server accepted, the
+ * most open at the same time, throughput and latency percentiles.
+ *
+ * <p>Run it with {@code mvn -P bench verify}. Settings are read from system properties:
+ * <ul>
+ *     <li>{@code bench.transports}: comma separated transport names, {@code ning} for the AsyncHttpClient, default
+ *     {@code ning,jdk}</li>
+ *     <li>{@code bench.concurrency}: requests in flight, default {@code 256}</li>
+ *     <li>{@code bench.requests}: requests measured, after as many to warm up, default {@code 20000}</li>
+ *     <li>{@code bench.latency}: latency of the server in milliseconds, default {@code 10}</li>
+ * </ul>
+ * The server accepts as many concurrent streams per HTTP/2 connection as there are requests in flight. A single
+ * request is sent before the others, otherwise every request of the first burst would upgrade a connection of its own
+ * to HTTP/2.
+ */
+public class TransportBenchmark {
+    private static final byte[] BODY = "{\"id\":42,\"name\":\"benchmark\"}".getBytes(StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws Exception {
+        String[] transports = property("bench.transports", "ning,jdk").split(",");
+        int concurrency = Integer.parseInt(property("bench.concurrency", "256"));
+        int requests = Integer.parseInt(property("bench.requests", "20000"));
+        long latency = Long.parseLong(property("bench.latency", "10"));
+
+        Server server = new Server(new QueuedThreadPool(Math.max(2 * concurrency, 200)));
+        HttpConfiguration config = new HttpConfiguration();
+        HTTP2CServerConnectionFactory h2c = new HTTP2CServerConnectionFactory(config);
+        h2c.setMaxConcurrentStreams(concurrency);
+        ServerConnector connector = new ServerConnector(server, new HttpConnectionFactory(config), h2c);
+        connector.setHost("127.0.0.1");
+        connector.setAcceptQueueSize(concurrency);
+        // counts an upgraded connection twice, once per protocol, but only once while it is open
+        ConnectionStatistics connections = new ConnectionStatistics();
+        connector.addBean(connections);
+        AtomicInteger accepted = new AtomicInteger();
+        connector.addBean(new SelectorManager.AcceptListener() {
+            @Override
+            public void onAccepted(SelectableChannel channel) {
+                accepted.incrementAndGet();
+            }
+        });
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+                try {
+                    Thread.sleep(latency);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                response.setContentType("application/json");
+                response.setContentLength(BODY.length);
+                response.getOutputStream().write(BODY);
+                baseRequest.setHandled(true);
+            }
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + connector.getLocalPort() + "/items/42";
+
+        try {
+            System.out.println(Result.HEADER);
+            for (String transport : transports) {
+                transport = transport.trim();
+                NingRestClient client = new NingRestClient(new AsyncHttpClientConfig.Builder()
+                        .setAllowPoolingConnection(true)
+                        .build());
+                if (!transport.equals(HttpTransports.DEFAULT)) {
+                    client.setTransport(HttpTransports.create(transport));
+                }
+                connections.reset();
+                accepted.set(0);
+                try {
+                    new Run(client, url, 1, 1).execute();
+                    // warm up the client and the JIT, and open the connections
+                    new Run(client, url, concurrency, requests).execute();
+                    Result result = new Run(client, url, concurrency, requests).execute();
+                    System.out.println(result.format(transport, concurrency, accepted.get(),
+                            connections.getConnectionsMax()));
+                } finally {
+                    client.getUnderlying().close();
+                    if (client.getTransport() != null) {
+                        client.getTransport().close();
+                    }
+                }
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Sends the requests keeping the given number in flight.
+     */
+    private static class Run {
+        private final NingRestClient client;
+        private final String url;
+        private final int concurrency;
+        private final int requests;
+        private final Semaphore inFlight;
+        private final long[] latencies;
+        private final AtomicInteger recorded = new AtomicInteger();
+        private final LongAdder errors = new LongAdder();
+
+        Run(NingRestClient client, String url, int concurrency, int requests) {
+            this.client = client;
+            this.url = url;
+            this.concurrency = concurrency;
+            this.requests = requests;
+            this.inFlight = new Semaphore(concurrency);
+            this.latencies = new long[requests];
+        }
+
+        Result execute() throws InterruptedException {
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                inFlight.acquire();
+                long sent = System.nanoTime();
+                CompletableFuture<RestResponse> response;
+                try {
+                    response = client.url(url).get();
+                } catch (RuntimeException e) {
+                    record(sent, false);
+                    continue;
+                }
+                response.whenComplete((r, t) -> record(sent, t == null && r.getStatus() == 200));
+            }
+            if (!inFlight.tryAcquire(concurrency, 1, TimeUnit.MINUTES)) {
+                throw new IllegalStateException("Requests still in flight one minute after the end of the run");
+            }
+            long elapsed = System.nanoTime() - start;
+            long[] sorted = Arrays.copyOf(latencies, recorded.get());
+            Arrays.sort(sorted);
+            return new Result(sorted, errors.sum(), elapsed);
+        }
+
+        private void record(long sent, boolean success) {
+            latencies[recorded.getAndIncrement()] = System.nanoTime() - sent;
+            if (!success) {
+                errors.increment();
+            }
+            inFlight.release();
+        }
+    }
+
+    private static class Result {
+        static final String HEADER = String.format(Locale.ROOT, "%-9s %6s %9s %10s %7s %9s %9s %9s %7s %9s",
+                "transport", "conc", "requests", "thrpt/s", "errors", "p50 ms", "p99 ms", "max ms",
+                "conns", "max open");
+
+        final long[] latencies;
+        final long errors;
+        final long elapsed;
+
+        Result(long[] latencies, long errors, long elapsed) {
+            this.latencies = latencies;
+            this.errors = errors;
+            this.elapsed = elapsed;
+        }
+
+        String format(String transport, int concurrency, long connections, long maxOpen) {
+            return String.format(Locale.ROOT, "%-9s %6d %9d %10.1f %7d %9.3f %9.3f %9.3f %7d %9d",
+                    transport, concurrency, latencies.length, (latencies.length - errors) / (elapsed / 1e9), errors,
+                    millis(percentile(50)), millis(percentile(99)), millis(latencies[latencies.length - 1]),
+                    connections, maxOpen);
+        }
+
+        private long percentile(double percentile) {
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(index, 0)];
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+
+    private static String property(String name, String defaultValue) {
+        return System.getProperty(name, defaultValue);
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.netty;
+
+import com.ecomnext.rest.spi.TransportRequest;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedFile;
+import io.netty.handler.stream.ChunkedStream;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One request sent by the {@link NettyHttpTransport}, with the redirects it follows. It borrows a connection of the
+ * pool of the host, sends the request, receives the response and gives the connection back, keeping it open if both
+ * sides allow it.
+ * <p>
+ * A request failing on a connection reused from the pool before any response is received is sent once more on
+ * another connection, as the server may have closed the idle connection while the request was being written. As
+ * RFC 7230 section 6.3.1 requires, only idempotent requests are sent again: the server may have processed the others.
+ * Requests with a stream body are not sent again either.
+ */
+abstract class Exchange {
+    static final AttributeKey<Exchange> EXCHANGE = AttributeKey.valueOf(Exchange.class, "exchange");
+    // set on connections which already carried a request
+    private static final AttributeKey<Boolean> USED = AttributeKey.valueOf(Exchange.class, "used");
+    // the limit of the AsyncHttpClient by default
+    private static final int MAX_REDIRECTS = 5;
+    private static final Set<String> IDEMPOTENT_METHODS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("GET", "HEAD", "OPTIONS", "PUT", "DELETE", "TRACE")));
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    final NettyHttpTransport transport;
+    private final TransportRequest request;
+    private final AtomicBoolean done = new AtomicBoolean();
+    private final AtomicReference<Channel> channel = new AtomicReference<>();
+    private final ScheduledFuture<?> timeout;
+
+    URI uri;
+    private String method;
+    private boolean withBody = true;
+    private int redirects = 0;
+    private boolean retried = false;
+
+    // state of the current attempt, written before its connection is published and then by its event loop
+    private ChannelPool pool;
+    private volatile boolean reused;
+    private volatile boolean requestWritten;
+    private volatile boolean responseReceived;
+    private boolean keepAlive;
+    private URI redirect;
+
+    Exchange(NettyHttpTransport transport, TransportRequest request) {
+        this.transport = transport;
+        this.request = request;
+        this.uri = URI.create(request.getUrl());
+        this.method = request.getMethod();
+        long timeoutMillis = request.getTimeout() > 0 ? request.getTimeout() : transport.getRequestTimeout();
+        this.timeout = transport.getGroup().schedule(() -> {
+            fail(new TimeoutException("Request timed out after " + timeoutMillis + " ms"));
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The status and headers of the response have been received.
+     */
+    abstract void onResponse(Channel channel, HttpResponse response);
+
+    /**
+     * A part of the body has been received, it is released by the caller.
+     */
+    abstract void onContent(HttpContent content);
+
+    /**
+     * The whole body has been received.
+     */
+    abstract void onLastContent();
+
+    /**
+     * The exchange failed, or it was cancelled or timed out.
+     */
+    abstract void onFailure(Throwable t);
+
+    boolean isDone() {
+        return done.get();
+    }
+
+    void send() {
+        ChannelPool pool = transport.pool(uri);
+        pool.acquire().addListener((Future<Channel> acquired) -> {
+            if (!acquired.isSuccess()) {
+                fail(acquired.cause());
+                return;
+            }
+            Channel ch = acquired.getNow();
+            this.pool = pool;
+            this.reused = ch.attr(USED).getAndSet(Boolean.TRUE) != null;
+            this.requestWritten = false;
+            this.responseReceived = false;
+            this.redirect = null;
+            ch.attr(EXCHANGE).set(this);
+            channel.set(ch);
+            // failed meanwhile, it did not see the connection
+            if (done.get()) {
+                releaseChannel(false);
+                return;
+            }
+            try {
+                write(ch);
+            } catch (IOException | RuntimeException e) {
+                connectionLost(e);
+            }
+        });
+    }
+
+    private void write(Channel ch) throws IOException {
+        HttpMethod httpMethod = HttpMethod.valueOf(method);
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        byte[] body = withBody ? request.getBody() : null;
+        File bodyFile = withBody ? request.getBodyFile() : null;
+        InputStream bodyStream = withBody ? request.getBodyStream() : null;
+
+        HttpRequest head;
+        if (bodyFile == null && bodyStream == null) {
+            ByteBuf content = body == null ? Unpooled.EMPTY_BUFFER : Unpooled.wrappedBuffer(body);
+            head = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, httpMethod, path, content);
+        } else {
+            head = new DefaultHttpRequest(HttpVersion.HTTP_1_1, httpMethod, path);
+        }
+        for (Map.Entry<String, List<String>> header : request.getHeaders().entrySet()) {
+            head.headers().add(header.getKey(), header.getValue());
+        }
+        if (!head.headers().contains(HttpHeaderNames.HOST)) {
+            int port = NettyHttpTransport.port(uri);
+            boolean defaultPort = port == (NettyHttpTransport.isSecure(uri) ? 443 : 80);
+            head.headers().set(HttpHeaderNames.HOST, defaultPort ? uri.getHost() : uri.getHost() + ":" + port);
+        }
+        head.headers().remove(HttpHeaderNames.TRANSFER_ENCODING);
+        keepAlive = HttpUtil.isKeepAlive(head);
+
+        ChannelFuture written;
+        if (bodyFile != null) {
+            HttpUtil.setContentLength(head, bodyFile.length());
+            ch.write(head);
+            if (ch.pipeline().get(SslHandler.class) == null) {
+                // sent by the kernel straight from the file
+                ch.write(new DefaultFileRegion(bodyFile, 0, bodyFile.length()));
+                written = ch.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+            } else {
+                written = ch.writeAndFlush(new HttpChunkedInput(new ChunkedFile(bodyFile)));
+            }
+        } else if (bodyStream != null) {
+            head.headers().remove(HttpHeaderNames.CONTENT_LENGTH);
+            HttpUtil.setTransferEncodingChunked(head, true);
+            ch.write(head);
+            written = ch.writeAndFlush(new HttpChunkedInput(new ChunkedStream(bodyStream)));
+        } else {
+            if (body != null || HttpMethod.POST.equals(httpMethod) || HttpMethod.PUT.equals(httpMethod)
+                    || HttpMethod.PATCH.equals(httpMethod)) {
+                HttpUtil.setContentLength(head, body == null ? 0 : body.length);
+            } else {
+                head.headers().remove(HttpHeaderNames.CONTENT_LENGTH);
+            }
+            written = ch.writeAndFlush(head);
+        }
+        written.addListener(future -> {
+            if (future.isSuccess()) {
+                requestWritten = true;
+            } else {
+                connectionLost(future.cause());
+            }
+        });
+    }
+
+    /**
+     * Called by the handler of the connection with every message of the response.
+     */
+    void read(Channel ch, Object msg) {
+        if (msg instanceof HttpResponse) {
+            HttpResponse response = (HttpResponse) msg;
+            if (response.decoderResult().isFailure()) {
+                fail(response.decoderResult().cause());
+                return;
+            }
+            int status = response.status().code();
+            if (status >= 100 && status < 200 && status != 101) {
+                // an interim response, the final one follows
+                return;
+            }
+            responseReceived = true;
+            keepAlive = keepAlive && HttpUtil.isKeepAlive(response);
+            String location = response.headers().get(HttpHeaderNames.LOCATION);
+            if (Boolean.TRUE.equals(request.getFollowRedirects()) && isRedirect(status) && location != null
+                    && redirects < MAX_REDIRECTS) {
+                redirect = uri.resolve(location);
+                if (status == 303 || (status != 307 && status != 308 && !"HEAD".equals(method))) {
+                    method = "GET";
+                    withBody = false;
+                }
+                return;
+            }
+            if (!done.get()) {
+                onResponse(ch, response);
+            }
+        }
+        if (!responseReceived) {
+            return;
+        }
+        if (msg instanceof HttpContent && redirect == null && !done.get()) {
+            onContent((HttpContent) msg);
+        }
+        if (msg instanceof LastHttpContent) {
+            URI redirect = this.redirect;
+            boolean reuse = keepAlive && requestWritten;
+            if (redirect != null) {
+                releaseChannel(reuse);
+                redirects++;
+                uri = redirect;
+                if (!done.get()) {
+                    send();
+                }
+            } else if (done.compareAndSet(false, true)) {
+                timeout.cancel(false);
+                releaseChannel(reuse);
+                onLastContent();
+            }
+        }
+    }
+
+    private static boolean isRedirect(int status) {
+        return status == 301 || status == 302 || status == 303 || status == 307 || status == 308;
+    }
+
+    /**
+     * The connection failed or was closed. The request is sent again on another connection if nothing was
+     * received on a pooled connection.
+     */
+    void connectionLost(Throwable cause) {
+        boolean replayable = (request.getBodyStream() == null || !withBody) && isIdempotent();
+        if (reused && !responseReceived && !retried && replayable && cause instanceof IOException && !done.get()) {
+            retried = true;
+            releaseChannel(false);
+            send();
+            return;
+        }
+        fail(cause);
+    }
+
+    /**
+     * @return true if the request can be sent twice: its method is idempotent or it has an idempotency key.
+     */
+    private boolean isIdempotent() {
+        if (IDEMPOTENT_METHODS.contains(method)) {
+            return true;
+        }
+        for (String name : request.getHeaders().keySet()) {
+            if (name.equalsIgnoreCase(IDEMPOTENCY_KEY)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fail the exchange and close its connection, if it is not complete yet. The failure is handled by the event loop
+     * of the connection, as the response it may be reading.
+     */
+    void fail(Throwable t) {
+        if (done.compareAndSet(false, true)) {
+            timeout.cancel(false);
+            Channel ch = channel.get();
+            if (ch != null && !ch.eventLoop().inEventLoop()) {
+                ch.eventLoop().execute(() -> {
+                    releaseChannel(false);
+                    onFailure(t);
+                });
+            } else {
+                releaseChannel(false);
+                onFailure(t);
+            }
+        }
+    }
+
+    private void releaseChannel(boolean reuse) {
+        Channel ch = channel.getAndSet(null);
+        if (ch == null) {
+            return;
+        }
+        ch.attr(EXCHANGE).set(null);
+        if (reuse) {
+            ch.config().setAutoRead(true);
+        } else {
+            ch.close();
+        }
+        pool.release(ch);
+    }
+}
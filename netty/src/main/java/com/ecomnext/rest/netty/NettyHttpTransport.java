@@ -0,0 +1,470 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.netty;
+
+import com.ecomnext.rest.RestBodyConsumer;
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.RestStreamedResponse;
+import com.ecomnext.rest.spi.HttpTransport;
+import com.ecomnext.rest.spi.TransportRequest;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.AbstractChannelPoolMap;
+import io.netty.channel.pool.ChannelHealthChecker;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.channel.pool.ChannelPoolHandler;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.channel.pool.SimpleChannelPool;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport on Netty 4, sending HTTP/1.1 requests over a pool of keep-alive connections per host. It uses the native
+ * epoll transport on Linux when its library loads and NIO otherwise, and reads into the buffers of a
+ * {@link PooledByteBufAllocator}: response bodies are kept in those buffers instead of being copied into a byte array,
+ * see {@link NettyRestResponse}.
+ * <p>
+ * Redirects are only followed for the requests asking for it, and the request timeout covers the whole exchange, from
+ * the wait for a connection to the last byte of the body.
+ */
+public class NettyHttpTransport implements HttpTransport {
+    // shared by the transports, the bodies of a closed transport are still released once collected
+    private static final ResponseBodies BODIES = new ResponseBodies();
+
+    private final EventLoopGroup group;
+    private final boolean ownsGroup;
+    private final Bootstrap bootstrap;
+    private final int maxConnectionsPerHost;
+    private final int requestTimeout;
+    private final AbstractChannelPoolMap<URI, ChannelPool> pools = new AbstractChannelPoolMap<URI, ChannelPool>() {
+        @Override
+        protected ChannelPool newPool(URI key) {
+            return NettyHttpTransport.this.newPool(key);
+        }
+    };
+    private volatile SslContext sslContext;
+
+    private NettyHttpTransport(Builder builder) {
+        boolean epoll = builder.nativeTransport && Epoll.isAvailable();
+        if (builder.group != null) {
+            this.group = builder.group;
+            this.ownsGroup = false;
+        } else {
+            DefaultThreadFactory threadFactory = new DefaultThreadFactory("rest-client-netty", true);
+            this.group = epoll
+                    ? new EpollEventLoopGroup(builder.ioThreads, threadFactory)
+                    : new NioEventLoopGroup(builder.ioThreads, threadFactory);
+            this.ownsGroup = true;
+        }
+        this.bootstrap = new Bootstrap()
+                .group(group)
+                .channel(group instanceof EpollEventLoopGroup ? EpollSocketChannel.class : NioSocketChannel.class)
+                .option(ChannelOption.ALLOCATOR, builder.allocator)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, builder.connectTimeout)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.SO_KEEPALIVE, true);
+        this.maxConnectionsPerHost = builder.maxConnectionsPerHost;
+        this.requestTimeout = builder.requestTimeout;
+        this.sslContext = builder.sslContext;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return whether the connections use the native epoll transport.
+     */
+    public boolean isNative() {
+        return group instanceof EpollEventLoopGroup;
+    }
+
+    public EventLoopGroup getGroup() {
+        return group;
+    }
+
+    int getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * @return the number of response bodies of all the transports which have been neither released nor garbage
+     * collected.
+     */
+    public static int getUnreleasedBodies() {
+        BODIES.releaseCollected();
+        return BODIES.size();
+    }
+
+    @Override
+    public CompletableFuture<RestResponse> execute(TransportRequest request) {
+        BufferedExchange exchange = new BufferedExchange(this, request);
+        exchange.send();
+        return exchange.promise;
+    }
+
+    @Override
+    public CompletableFuture<RestStreamedResponse> stream(TransportRequest request, RestBodyConsumer consumer) {
+        StreamedExchange exchange = new StreamedExchange(this, request, consumer);
+        exchange.send();
+        return exchange.promise;
+    }
+
+    ChannelPool pool(URI uri) {
+        try {
+            return pools.get(new URI(uri.getScheme(), null, uri.getHost(), port(uri), null, null, null));
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private ChannelPool newPool(URI key) {
+        Bootstrap poolBootstrap = bootstrap.clone()
+                .remoteAddress(InetSocketAddress.createUnresolved(key.getHost(), key.getPort()));
+        boolean secure = isSecure(key);
+        ChannelPoolHandler handler = new AbstractChannelPoolHandler() {
+            @Override
+            public void channelCreated(Channel ch) throws SSLException {
+                if (secure) {
+                    ch.pipeline().addLast(sslContext().newHandler(ch.alloc(), key.getHost(), key.getPort()));
+                }
+                ch.pipeline().addLast(new HttpClientCodec(), new ChunkedWriteHandler(), ResponseHandler.INSTANCE);
+            }
+        };
+        if (maxConnectionsPerHost > 0) {
+            return new FixedChannelPool(poolBootstrap, handler, ChannelHealthChecker.ACTIVE, null, -1,
+                    maxConnectionsPerHost, Integer.MAX_VALUE);
+        }
+        return new SimpleChannelPool(poolBootstrap, handler);
+    }
+
+    private SslContext sslContext() throws SSLException {
+        SslContext context = sslContext;
+        if (context == null) {
+            synchronized (this) {
+                context = sslContext;
+                if (context == null) {
+                    context = SslContextBuilder.forClient().build();
+                    sslContext = context;
+                }
+            }
+        }
+        return context;
+    }
+
+    static boolean isSecure(URI uri) {
+        return "https".equalsIgnoreCase(uri.getScheme());
+    }
+
+    static int port(URI uri) {
+        if (uri.getPort() != -1) {
+            return uri.getPort();
+        }
+        return isSecure(uri) ? 443 : 80;
+    }
+
+    /**
+     * Close the connections and, unless it was given to the builder, shut the event loop group down.
+     */
+    @Override
+    public void close() {
+        pools.close();
+        BODIES.releaseCollected();
+        if (ownsGroup) {
+            group.shutdownGracefully(0, 2, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Hands the messages read from a connection to the exchange it carries.
+     */
+    @ChannelHandler.Sharable
+    private static class ResponseHandler extends ChannelInboundHandlerAdapter {
+        static final ResponseHandler INSTANCE = new ResponseHandler();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            try {
+                Exchange exchange = ctx.channel().attr(Exchange.EXCHANGE).get();
+                if (exchange != null) {
+                    try {
+                        exchange.read(ctx.channel(), msg);
+                    } catch (RuntimeException e) {
+                        exchange.fail(e);
+                    }
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            Exchange exchange = ctx.channel().attr(Exchange.EXCHANGE).get();
+            if (exchange != null) {
+                exchange.connectionLost(new IOException("Remotely closed"));
+            }
+            ctx.fireChannelInactive();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            Exchange exchange = ctx.channel().attr(Exchange.EXCHANGE).get();
+            if (exchange != null) {
+                exchange.connectionLost(cause);
+            }
+            ctx.close();
+        }
+    }
+
+    /**
+     * Gathers the body in a composite of the buffers it was read into, without copying them.
+     */
+    private static class BufferedExchange extends Exchange {
+        final CompletableFuture<RestResponse> promise = new CompletableFuture<RestResponse>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (cancelled) {
+                    fail(new CancellationException("Request cancelled"));
+                }
+                return cancelled;
+            }
+        };
+        private HttpResponse response;
+        private ResponseBodies.Content content;
+
+        BufferedExchange(NettyHttpTransport transport, TransportRequest request) {
+            super(transport, request);
+        }
+
+        @Override
+        void onResponse(Channel channel, HttpResponse response) {
+            this.response = response;
+            releaseContent();
+            this.content = BODIES.newContent(channel.alloc());
+        }
+
+        @Override
+        void onContent(HttpContent part) {
+            ByteBuf buffer = part.content();
+            if (buffer.isReadable()) {
+                content.add(buffer.retain());
+            }
+        }
+
+        @Override
+        void onLastContent() {
+            ResponseBodies.Content composite = content;
+            content = null;
+            ByteBuf body = composite;
+            if (composite.numComponents() == 0) {
+                composite.release();
+                body = Unpooled.EMPTY_BUFFER;
+            }
+            NettyRestResponse restResponse = new NettyRestResponse(response, body, uri);
+            if (!promise.complete(restResponse)) {
+                restResponse.release();
+            }
+        }
+
+        @Override
+        void onFailure(Throwable t) {
+            releaseContent();
+            promise.completeExceptionally(t);
+        }
+
+        private void releaseContent() {
+            ResponseBodies.Content body = content;
+            if (body != null) {
+                content = null;
+                body.release();
+            }
+        }
+    }
+
+    /**
+     * Completes the promise with the headers and hands every part of the body to the consumer.
+     */
+    private static class StreamedExchange extends Exchange {
+        // cancelling before the headers arrive aborts the request, afterwards use RestStreamedResponse.abort()
+        final CompletableFuture<RestStreamedResponse> promise = new CompletableFuture<RestStreamedResponse>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (cancelled) {
+                    fail(new CancellationException("Request cancelled"));
+                }
+                return cancelled;
+            }
+        };
+        private final RestBodyConsumer consumer;
+        private NettyStreamedResponse response;
+
+        StreamedExchange(NettyHttpTransport transport, TransportRequest request, RestBodyConsumer consumer) {
+            super(transport, request);
+            this.consumer = consumer;
+        }
+
+        @Override
+        void onResponse(Channel channel, HttpResponse headers) {
+            response = new NettyStreamedResponse(headers, uri, this, channel, consumer);
+            promise.complete(response);
+        }
+
+        @Override
+        void onContent(HttpContent part) {
+            ByteBuf buffer = part.content();
+            if (!buffer.isReadable() || response.isAborted()) {
+                return;
+            }
+            try {
+                consumer.onBodyPart(buffer.nioBuffer());
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        @Override
+        void onLastContent() {
+            response.complete();
+        }
+
+        @Override
+        void onFailure(Throwable t) {
+            NettyStreamedResponse r = response;
+            if (r == null) {
+                promise.completeExceptionally(t);
+            } else {
+                r.fail(t);
+            }
+        }
+    }
+
+    public static class Builder {
+        private int ioThreads = 0;
+        private EventLoopGroup group;
+        private boolean nativeTransport = true;
+        private ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+        private int maxConnectionsPerHost = 0;
+        // the timeouts of the AsyncHttpClient by default
+        private int connectTimeout = 60000;
+        private int requestTimeout = 60000;
+        private SslContext sslContext;
+
+        private Builder() {
+        }
+
+        /**
+         * Number of I/O threads of the event loop group created by the transport, by default twice the number of
+         * cores.
+         */
+        public Builder ioThreads(int ioThreads) {
+            this.ioThreads = ioThreads;
+            return this;
+        }
+
+        /**
+         * Use an existing event loop group, it is not shut down with the transport. Its type decides between epoll
+         * and NIO.
+         */
+        public Builder group(EventLoopGroup group) {
+            this.group = group;
+            return this;
+        }
+
+        /**
+         * Whether to use the native epoll transport when it is available, true by default.
+         */
+        public Builder nativeTransport(boolean nativeTransport) {
+            this.nativeTransport = nativeTransport;
+            return this;
+        }
+
+        /**
+         * Allocator of the buffers connections read into and response bodies are kept in, the pooled one by
+         * default.
+         */
+        public Builder allocator(ByteBufAllocator allocator) {
+            this.allocator = allocator;
+            return this;
+        }
+
+        /**
+         * Maximum number of connections open to a host, further requests wait for one to be free. 0, the default,
+         * for no limit.
+         */
+        public Builder maxConnectionsPerHost(int maxConnectionsPerHost) {
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            return this;
+        }
+
+        public Builder connectTimeout(int connectTimeout, TimeUnit unit) {
+            this.connectTimeout = (int) unit.toMillis(connectTimeout);
+            return this;
+        }
+
+        /**
+         * Timeout of the requests not setting their own.
+         */
+        public Builder requestTimeout(int requestTimeout, TimeUnit unit) {
+            this.requestTimeout = (int) unit.toMillis(requestTimeout);
+            return this;
+        }
+
+        /**
+         * Context of the TLS connections, by default one trusting the certificates trusted by the JDK.
+         */
+        public Builder sslContext(SslContext sslContext) {
+            this.sslContext = sslContext;
+            return this;
+        }
+
+        public NettyHttpTransport build() {
+            return new NettyHttpTransport(this);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.netty;
+
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.utils.Json;
+import com.ecomnext.rest.utils.XML;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.ning.http.client.cookie.Cookie;
+import com.ning.http.client.cookie.CookieDecoder;
+import com.ning.http.util.AsyncHttpProviderUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.util.ReferenceCounted;
+import org.w3c.dom.Document;
+
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A response received by the {@link NettyHttpTransport}, whose body stays in the buffers of the pooled allocator it
+ * was read into: the body is decoded, parsed or streamed from them and only {@link #asByteArray()} copies it.
+ * <p>
+ * The buffers go back to the pool once the response is released, or once its body is garbage collected if it is
+ * never released: the body stays reachable as long as the response, {@link #content()}, a buffer derived from it or a
+ * stream of {@link #getBodyAsStream()} is. Callers reading many or large responses should release them when they are
+ * done, afterwards the body cannot be read anymore. A {@link com.ecomnext.rest.coalesce.RequestCoalescer} retains a
+ * shared response once per caller, so every caller releases it; the responses discarded by retries and hedges are
+ * released by them.
+ */
+public class NettyRestResponse implements RestResponse, ReferenceCounted {
+    private final HttpResponse response;
+    private final ByteBuf content;
+    private final URI uri;
+    private volatile Map<String, List<String>> allHeaders;
+
+    NettyRestResponse(HttpResponse response, ByteBuf content, URI uri) {
+        this.response = response;
+        this.content = content;
+        this.uri = uri;
+    }
+
+    /**
+     * @return the {@link HttpResponse} of Netty, with the status and the headers. The body is {@link #content()}.
+     */
+    @Override
+    public Object getUnderlying() {
+        return response;
+    }
+
+    /**
+     * @return the body, without copying it. It is valid until the response is released, and keeps the buffers from
+     * going back to the pool until then.
+     */
+    public ByteBuf content() {
+        return content;
+    }
+
+    @Override
+    public int getStatus() {
+        return response.status().code();
+    }
+
+    @Override
+    public String getStatusText() {
+        return response.status().reasonPhrase();
+    }
+
+    /**
+     * Get all the HTTP headers of the response as a case-insensitive map
+     */
+    @Override
+    public Map<String, List<String>> getAllHeaders() {
+        Map<String, List<String>> headers = allHeaders;
+        if (headers == null) {
+            headers = toMap(response.headers());
+            allHeaders = headers;
+        }
+        return headers;
+    }
+
+    static Map<String, List<String>> toMap(HttpHeaders headers) {
+        Map<String, List<String>> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (String name : headers.names()) {
+            map.put(name, headers.getAll(name));
+        }
+        return map;
+    }
+
+    @Override
+    public String getHeader(String key) {
+        return response.headers().get(key);
+    }
+
+    @Override
+    public List<Cookie> getCookies() {
+        List<String> values = response.headers().getAll("Set-Cookie");
+        List<Cookie> cookies = new ArrayList<>(values.size());
+        for (String value : values) {
+            Cookie cookie = CookieDecoder.decode(value);
+            if (cookie != null) {
+                cookies.add(cookie);
+            }
+        }
+        return cookies;
+    }
+
+    @Override
+    public Cookie getCookie(String name) {
+        for (Cookie cookie : getCookies()) {
+            if (cookie.getName().equals(name)) {
+                return cookie;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @see com.ecomnext.rest.ning.NingRestResponse#getBody()
+     */
+    @Override
+    public String getBody() {
+        String contentType = getHeader("Content-Type");
+        if (contentType == null) {
+            contentType = "application/octet-stream";
+        }
+        String charset = AsyncHttpProviderUtils.parseCharset(contentType);
+        if (charset == null) {
+            charset = contentType.startsWith("text/") ? AsyncHttpProviderUtils.DEFAULT_CHARSET : "utf-8";
+        }
+        return content.toString(Charset.forName(charset));
+    }
+
+    @Override
+    public Document asXml() {
+        try {
+            return XML.fromInputStream(getBodyAsStream(), "utf-8");
+        } finally {
+            reachabilityFence();
+        }
+    }
+
+    @Override
+    public XMLStreamReader asXmlStream() {
+        return XML.streamFromInputStream(getBodyAsStream(), "utf-8");
+    }
+
+    @Override
+    public JsonNode asJson() {
+        try {
+            return Json.parse(getBodyAsStream());
+        } finally {
+            reachabilityFence();
+        }
+    }
+
+    @Override
+    public <T> T as(Class<T> clazz) {
+        try {
+            return Json.fromInputStream(getBodyAsStream(), clazz);
+        } finally {
+            reachabilityFence();
+        }
+    }
+
+    @Override
+    public <T> T as(TypeReference<T> valueTypeRef) {
+        try {
+            return Json.fromInputStream(getBodyAsStream(), valueTypeRef);
+        } finally {
+            reachabilityFence();
+        }
+    }
+
+    /**
+     * Keep the body reachable until this point, as Reference.reachabilityFence of Java 9 does, so it is not
+     * collected and given back to the pool while a parser still reads it from the buffers.
+     */
+    private void reachabilityFence() {
+        synchronized (content) {
+        }
+    }
+
+    /**
+     * @return a stream reading the body from the pooled buffers, each call starts from the beginning. The stream
+     * keeps the body from going back to the pool until the response is released.
+     */
+    @Override
+    public InputStream getBodyAsStream() {
+        return new ByteBufInputStream(content.duplicate());
+    }
+
+    /**
+     * @return a copy of the body.
+     */
+    @Override
+    public byte[] asByteArray() {
+        return ByteBufUtil.getBytes(content);
+    }
+
+    @Override
+    public URI getUri() {
+        return uri;
+    }
+
+    @Override
+    public int refCnt() {
+        return content.refCnt();
+    }
+
+    @Override
+    public NettyRestResponse retain() {
+        content.retain();
+        return this;
+    }
+
+    @Override
+    public NettyRestResponse retain(int increment) {
+        content.retain(increment);
+        return this;
+    }
+
+    @Override
+    public NettyRestResponse touch() {
+        content.touch();
+        return this;
+    }
+
+    @Override
+    public NettyRestResponse touch(Object hint) {
+        content.touch(hint);
+        return this;
+    }
+
+    /**
+     * Decrease the reference count of the body, returning its buffers to the pool when it reaches 0.
+     */
+    @Override
+    public boolean release() {
+        return content.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return content.release(decrement);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.netty;
+
+import com.ecomnext.rest.RestBodyConsumer;
+import com.ecomnext.rest.RestStreamedResponse;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.HttpResponse;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A response of the {@link NettyHttpTransport} whose body is handed to the consumer as it is read. Pausing it turns
+ * off the auto read of its connection.
+ */
+class NettyStreamedResponse implements RestStreamedResponse {
+    private final HttpResponse response;
+    private final URI uri;
+    private final Exchange exchange;
+    private final Channel channel;
+    private final RestBodyConsumer consumer;
+    private final CompletableFuture<Void> bodyCompletion = new CompletableFuture<Void>() {
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                abort();
+            }
+            return cancelled;
+        }
+    };
+
+    private volatile boolean paused = false;
+    private volatile boolean aborted = false;
+    private volatile Map<String, List<String>> allHeaders;
+
+    NettyStreamedResponse(HttpResponse response, URI uri, Exchange exchange, Channel channel,
+                          RestBodyConsumer consumer) {
+        this.exchange = exchange;
+        this.response = response;
+        this.uri = uri;
+        this.channel = channel;
+        this.consumer = consumer;
+    }
+
+    @Override
+    public int getStatus() {
+        return response.status().code();
+    }
+
+    @Override
+    public String getStatusText() {
+        return response.status().reasonPhrase();
+    }
+
+    @Override
+    public Map<String, List<String>> getAllHeaders() {
+        Map<String, List<String>> headers = allHeaders;
+        if (headers == null) {
+            headers = NettyRestResponse.toMap(response.headers());
+            allHeaders = headers;
+        }
+        return headers;
+    }
+
+    @Override
+    public String getHeader(String key) {
+        return response.headers().get(key);
+    }
+
+    @Override
+    public URI getUri() {
+        return uri;
+    }
+
+    @Override
+    public void pause() {
+        paused = true;
+        channel.config().setAutoRead(false);
+    }
+
+    @Override
+    public void resume() {
+        paused = false;
+        channel.config().setAutoRead(true);
+    }
+
+    @Override
+    public boolean isPaused() {
+        return paused;
+    }
+
+    @Override
+    public void abort() {
+        aborted = true;
+        CancellationException cancelled = new CancellationException("Response aborted");
+        // closes the connection unless the whole body was received
+        exchange.fail(cancelled);
+        fail(cancelled);
+    }
+
+    @Override
+    public CompletableFuture<Void> getBodyCompletion() {
+        return bodyCompletion;
+    }
+
+    boolean isAborted() {
+        return aborted;
+    }
+
+    void fail(Throwable t) {
+        if (bodyCompletion.completeExceptionally(t)) {
+            consumer.onError(t);
+        }
+    }
+
+    void complete() {
+        if (aborted || bodyCompletion.isDone()) {
+            return;
+        }
+        try {
+            consumer.onComplete();
+            bodyCompletion.complete(null);
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Releases the pooled bodies of the responses which were garbage collected without being released, so that callers
+ * only knowing the {@link com.ecomnext.rest.RestResponse} contract do not leak the memory of the allocator. A body
+ * is tracked through its {@link Content}, which is referenced by its response, by the streams reading it and by every
+ * buffer derived from it; once it is collected, the buffers it was made of are released. The queue is polled every
+ * time a body is created and when a transport closes, there is no thread of its own.
+ */
+class ResponseBodies {
+    private final ReferenceQueue<Content> queue = new ReferenceQueue<>();
+    // keeps the references reachable until their content is collected or released
+    private final Set<Body> bodies = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @return an empty body, tracked until it is released or collected.
+     */
+    Content newContent(ByteBufAllocator alloc) {
+        releaseCollected();
+        Content content = new Content(alloc, this);
+        bodies.add(content.body);
+        return content;
+    }
+
+    void releaseCollected() {
+        Reference<? extends Content> reference;
+        while ((reference = queue.poll()) != null) {
+            Body body = (Body) reference;
+            if (bodies.remove(body)) {
+                body.release();
+            }
+        }
+    }
+
+    /**
+     * @return the number of bodies not released yet.
+     */
+    int size() {
+        return bodies.size();
+    }
+
+    /**
+     * The body of a response, made of the buffers it was read into.
+     */
+    static final class Content extends CompositeByteBuf {
+        private final ResponseBodies bodies;
+        private final Body body;
+
+        private Content(ByteBufAllocator alloc, ResponseBodies bodies) {
+            super(alloc, alloc.isDirectBufferPooled(), Integer.MAX_VALUE);
+            this.bodies = bodies;
+            this.body = new Body(this, bodies.queue);
+        }
+
+        /**
+         * Append a buffer, which the body now owns.
+         */
+        void add(ByteBuf buffer) {
+            addComponent(true, buffer);
+            body.add(buffer);
+        }
+
+        /**
+         * Released by its owner, the body is not tracked anymore. It is called however it is released: through the
+         * response, {@link com.ecomnext.rest.netty.NettyRestResponse#content()} or a derived buffer.
+         */
+        @Override
+        protected void deallocate() {
+            if (bodies.bodies.remove(body)) {
+                body.clear();
+            }
+            super.deallocate();
+        }
+    }
+
+    /**
+     * Holds the buffers of a content, but not the content itself so it can be collected.
+     */
+    private static final class Body extends PhantomReference<Content> {
+        // guarded by this, as they are added by an event loop and released by any thread
+        private final List<ByteBuf> buffers = new ArrayList<>();
+
+        private Body(Content content, ReferenceQueue<Content> queue) {
+            super(content, queue);
+        }
+
+        synchronized void add(ByteBuf buffer) {
+            buffers.add(buffer);
+        }
+
+        synchronized void release() {
+            for (ByteBuf buffer : buffers) {
+                buffer.release();
+            }
+            buffers.clear();
+        }
+    }
+}
@@ -58,4 +58,13 @@ public class Rest {
         return client().url(url, params);
     }
 
+    /**
+     * Prepare an endpoint of the default client, parsing its URL template only once.
+     *
+     * @param template the URL template of the endpoint
+     */
+    public static RestEndpoint endpoint(String template) {
+        return client().endpoint(template);
+    }
+
 }
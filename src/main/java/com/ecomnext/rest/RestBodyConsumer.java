@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the body of a streamed response as it arrives from the network.
+ *
+ * Callbacks are invoked sequentially, usually from an I/O thread of the underlying client, so they
+ * should not block. Use {@link RestStreamedResponse#pause()} to stop reading from the connection when
+ * the consumer cannot keep up.
+ *
+ * @see RestRequestHolder#stream(RestBodyConsumer)
+ */
+@FunctionalInterface
+public interface RestBodyConsumer {
+    /**
+     * Called for every part of the body, in order.
+     *
+     * @param part the bytes received. The buffer is only valid during the call, copy it if you need
+     *             to keep its content.
+     */
+    void onBodyPart(ByteBuffer part) throws Exception;
+
+    /**
+     * Called once after the last part of the body has been received.
+     */
+    default void onComplete() throws Exception {
+    }
+
+    /**
+     * Called if the response fails or is aborted after the headers have been received.
+     */
+    default void onError(Throwable t) {
+    }
+}
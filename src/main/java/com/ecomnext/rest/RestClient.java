@@ -17,12 +17,148 @@
  */
 package com.ecomnext.rest;
 
+import com.ecomnext.rest.batch.Batch;
+import com.ecomnext.rest.breaker.CircuitBreaker;
+import com.ecomnext.rest.cache.HttpCache;
+import com.ecomnext.rest.coalesce.RequestCoalescer;
+import com.ecomnext.rest.compress.CompressionPolicy;
+import com.ecomnext.rest.executor.IoThreadDiagnostics;
+import com.ecomnext.rest.hedge.HedgePolicy;
+import com.ecomnext.rest.limit.ConcurrencyLimiter;
+import com.ecomnext.rest.metrics.RestMetrics;
+import com.ecomnext.rest.retry.RetryBudget;
+import com.ecomnext.rest.retry.RetryPolicy;
+import com.ecomnext.rest.spi.HttpTransport;
 import com.ning.http.client.AsyncHttpClient;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 public interface RestClient {
+    /**
+     * @return the AsyncHttpClient sending the requests of this client, unless it has a transport.
+     */
     public AsyncHttpClient getUnderlying();
 
     RestRequestHolder url(String url);
 
     RestRequestHolder url(String url, String... params);
+
+    /**
+     * Parse a URL template once, to prepare many requests to it.
+     */
+    RestEndpoint endpoint(String template);
+
+    /**
+     * Execute the requests keeping at most the given number in flight, failing fast. Use {@link Batch} to collect
+     * every failure or to receive the responses as they complete.
+     *
+     * @return the responses in the order of the requests, or the failure of the first request failing, the
+     * requests in flight are then cancelled.
+     */
+    CompletableFuture<List<RestResponse>> executeAll(Collection<? extends RestRequestHolder> requests, int parallelism);
+
+    /**
+     * Record the metrics of every request executed by this client into the given registry, or stop recording them
+     * if it is null. Metrics are disabled by default.
+     */
+    RestClient setMetrics(RestMetrics metrics);
+
+    /**
+     * @return the registry where the metrics of this client are recorded, or null if they are disabled.
+     */
+    RestMetrics getMetrics();
+
+    /**
+     * Retry the failed requests of this client according to the given policy, or never retry them if it is null,
+     * which is the default. Requests can override it with {@link RestRequestHolder#setRetryPolicy(RetryPolicy)}.
+     */
+    RestClient setRetryPolicy(RetryPolicy retryPolicy);
+
+    RetryPolicy getRetryPolicy();
+
+    /**
+     * Limit the retries of every request of this client with the given budget, or do not limit them if it is null.
+     * By default retries are limited to 20% of the requests, plus bursts of 10.
+     */
+    RestClient setRetryBudget(RetryBudget retryBudget);
+
+    RetryBudget getRetryBudget();
+
+    /**
+     * Hedge the GET requests of this client according to the given policy, or never hedge them if it is null,
+     * which is the default. Requests can override it with {@link RestRequestHolder#setHedgePolicy(HedgePolicy)}.
+     */
+    RestClient setHedgePolicy(HedgePolicy hedgePolicy);
+
+    HedgePolicy getHedgePolicy();
+
+    /**
+     * Coalesce the identical concurrent GET and HEAD requests of this client with the given coalescer, or never
+     * coalesce them if it is null, which is the default.
+     */
+    RestClient setRequestCoalescer(RequestCoalescer requestCoalescer);
+
+    RequestCoalescer getRequestCoalescer();
+
+    /**
+     * Cache the responses of this client with the given HTTP cache, or do not cache them if it is null, which is
+     * the default.
+     */
+    RestClient setHttpCache(HttpCache httpCache);
+
+    HttpCache getHttpCache();
+
+    /**
+     * Limit the requests in flight to each host with the given limiter, or do not limit them if it is null, which
+     * is the default. Every attempt of a retried or hedged request is limited.
+     */
+    RestClient setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter);
+
+    ConcurrencyLimiter getConcurrencyLimiter();
+
+    /**
+     * Stop sending requests to hosts which are down with the given circuit breaker, or never stop if it is null,
+     * which is the default. Circuits are kept by host, requests can use the circuit of a group instead with
+     * {@link RestRequestHolder#setCircuit(String)}.
+     */
+    RestClient setCircuitBreaker(CircuitBreaker circuitBreaker);
+
+    CircuitBreaker getCircuitBreaker();
+
+    /**
+     * Complete the futures of the requests of this client with the given executor, so the callbacks chained to them
+     * do not run on the I/O threads, or complete them on the I/O threads if it is null, which is the default. See
+     * {@link com.ecomnext.rest.executor.CompletionExecutors}. Requests can override it with
+     * {@link RestRequestHolder#setCompletionExecutor(Executor)}.
+     */
+    RestClient setCompletionExecutor(Executor executor);
+
+    Executor getCompletionExecutor();
+
+    /**
+     * @return the diagnostics of the work blocking the I/O threads of this client.
+     */
+    IoThreadDiagnostics getIoThreadDiagnostics();
+
+    /**
+     * Send the requests of this client with the given transport, e.g. one created with
+     * {@link com.ecomnext.rest.spi.HttpTransports#create(String)}, or with the AsyncHttpClient if it is null, which
+     * is the default. The client closes its transport when it is closed. Requests sent with a transport only support
+     * BASIC authentication.
+     */
+    RestClient setTransport(HttpTransport transport);
+
+    HttpTransport getTransport();
+
+    /**
+     * Compress the request bodies and decompress the responses of this client according to the given policy, or
+     * leave them as they are if it is null, which is the default. Requests can override it with
+     * {@link RestRequestHolder#setCompressionPolicy(CompressionPolicy)}.
+     */
+    RestClient setCompressionPolicy(CompressionPolicy compressionPolicy);
+
+    CompressionPolicy getCompressionPolicy();
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest;
+
+/**
+ * A URL template parsed once, to prepare requests to the same endpoint without parsing it again.
+ * Endpoints are immutable and thread-safe, keep them in constants or fields.
+ */
+public interface RestEndpoint {
+    /**
+     * @return the URL template of the endpoint.
+     */
+    String getTemplate();
+
+    /**
+     * Prepare a new request expanding the template with the given values.
+     *
+     * @param params the values of the template variables, in order of appearance
+     */
+    RestRequestHolder url(String... params);
+}
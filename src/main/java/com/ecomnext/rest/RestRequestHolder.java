@@ -17,6 +17,9 @@
  */
 package com.ecomnext.rest;
 
+import com.ecomnext.rest.compress.CompressionPolicy;
+import com.ecomnext.rest.hedge.HedgePolicy;
+import com.ecomnext.rest.retry.RetryPolicy;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import java.io.File;
@@ -24,6 +27,8 @@ import java.io.InputStream;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 public interface RestRequestHolder {
     String getUsername();
@@ -52,6 +57,12 @@ public interface RestRequestHolder {
 
     CompletableFuture<RestResponse> put(JsonNode body);
 
+    CompletableFuture<RestResponse> patch(Object body);
+
+    CompletableFuture<RestResponse> post(Object body);
+
+    CompletableFuture<RestResponse> put(Object body);
+
     CompletableFuture<RestResponse> patch(InputStream body);
 
     CompletableFuture<RestResponse> post(InputStream body);
@@ -75,6 +86,13 @@ public interface RestRequestHolder {
      */
     CompletableFuture<RestResponse> execute();
 
+    /**
+     * Execute the request without buffering the response body. The returned future is completed as
+     * soon as the status and headers are received, then the body is handed to the consumer part by
+     * part as it arrives.
+     */
+    CompletableFuture<RestStreamedResponse> stream(RestBodyConsumer consumer);
+
     /**
      * Set the method this request should use.
      */
@@ -120,8 +138,45 @@ public interface RestRequestHolder {
 
     RestRequestHolder setTimeout(int timeout);
 
+    /**
+     * Fail the request with a {@link java.util.concurrent.TimeoutException} if it has no response after the given
+     * time, including its retries, hedges and waits for the concurrency limit; unlike the timeout, which applies to
+     * every attempt. The request is cancelled then, releasing its connection.
+     */
+    RestRequestHolder setDeadline(long deadline, TimeUnit unit);
+
     RestRequestHolder setContentType(String contentType);
 
+    /**
+     * Retry this request according to the given policy instead of the policy of the client. Use
+     * {@link RetryPolicy#NONE} to disable retries. Streamed requests are never retried.
+     */
+    RestRequestHolder setRetryPolicy(RetryPolicy retryPolicy);
+
+    /**
+     * Hedge this request according to the given policy instead of the policy of the client. Use
+     * {@link HedgePolicy#NONE} to disable hedging. Only GET requests are hedged.
+     */
+    RestRequestHolder setHedgePolicy(HedgePolicy hedgePolicy);
+
+    /**
+     * Use the circuit of the given group of endpoints instead of the circuit of the host, when the client has a
+     * circuit breaker.
+     */
+    RestRequestHolder setCircuit(String circuit);
+
+    /**
+     * Complete the future of this request with the given executor, overriding the executor of the client, e.g.
+     * {@link com.ecomnext.rest.executor.CompletionExecutors#direct()} for a request whose callbacks are trivial.
+     */
+    RestRequestHolder setCompletionExecutor(Executor executor);
+
+    /**
+     * Compress the body and decompress the response of this request according to the given policy instead of the
+     * policy of the client. Use {@link CompressionPolicy#NONE} to disable compression.
+     */
+    RestRequestHolder setCompressionPolicy(CompressionPolicy compressionPolicy);
+
     String getUrl();
 
     Map<String, Collection<String>> getHeaders();
@@ -17,10 +17,12 @@
  */
 package com.ecomnext.rest;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.ning.http.client.cookie.Cookie;
 import org.w3c.dom.Document;
 
+import javax.xml.stream.XMLStreamReader;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.List;
@@ -45,11 +47,35 @@ public interface RestResponse {
 
     Document asXml();
 
+    XMLStreamReader asXmlStream();
+
     JsonNode asJson();
 
+    <T> T as(Class<T> clazz);
+
+    <T> T as(TypeReference<T> valueTypeRef);
+
     InputStream getBodyAsStream();
 
     byte[] asByteArray();
 
     URI getUri();
+
+    /**
+     * Add an owner to a response holding pooled resources, such as the buffers of a Netty transport, which must
+     * release it too. Other responses ignore it.
+     */
+    default RestResponse retain() {
+        return this;
+    }
+
+    /**
+     * Remove an owner of a response holding pooled resources, giving the resources back once it has none. Other
+     * responses ignore it.
+     *
+     * @return true if the resources were given back.
+     */
+    default boolean release() {
+        return false;
+    }
 }
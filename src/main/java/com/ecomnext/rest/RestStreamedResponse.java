@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Status and headers of a response whose body is being delivered to a {@link RestBodyConsumer}.
+ */
+public interface RestStreamedResponse {
+    int getStatus();
+
+    String getStatusText();
+
+    Map<String, List<String>> getAllHeaders();
+
+    String getHeader(String key);
+
+    URI getUri();
+
+    /**
+     * Stop reading from the connection until {@link #resume()} is called. Parts already read from the
+     * network may still be delivered to the consumer after this call.
+     *
+     * Note that the request timeout keeps running while the response is paused.
+     */
+    void pause();
+
+    /**
+     * Resume reading from the connection after a {@link #pause()}.
+     */
+    void resume();
+
+    boolean isPaused();
+
+    /**
+     * Stop receiving the body and close the underlying connection.
+     */
+    void abort();
+
+    /**
+     * @return a future completed once the whole body has been delivered to the consumer, or completed
+     * exceptionally if the response fails or is aborted. Cancelling it aborts the response.
+     */
+    CompletableFuture<Void> getBodyCompletion();
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.batch;
+
+import com.ecomnext.rest.RestRequestHolder;
+import com.ecomnext.rest.RestResponse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes many requests keeping at most a number of them in flight: the next request is sent as soon as one
+ * completes, so the pools are never flooded and the batch is not serialized either. The results are returned in
+ * submission order, and can also be received as they complete with a {@link BatchListener}.
+ * <p>
+ * By default the batch fails fast: the first failure stops it, cancels the requests in flight and fails the batch
+ * with a {@link BatchException}. With {@link #collectAll()} every request is executed and the result holds the
+ * response or the failure of each one. Cancelling the future of the batch cancels the requests in flight and
+ * stops it.
+ *
+ * <pre>
+ * Batch.of(requests).parallelism(16).collectAll().execute()
+ * </pre>
+ */
+public class Batch {
+    private final List<RestRequestHolder> requests;
+    private int parallelism = 8;
+    private boolean failFast = true;
+    private BatchListener listener;
+
+    private Batch(Collection<? extends RestRequestHolder> requests) {
+        this.requests = new ArrayList<>(requests);
+    }
+
+    public static Batch of(Collection<? extends RestRequestHolder> requests) {
+        return new Batch(requests);
+    }
+
+    /**
+     * Requests in flight at the same time, 8 by default.
+     */
+    public Batch parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Stop the batch on the first failure, the default.
+     */
+    public Batch failFast() {
+        this.failFast = true;
+        return this;
+    }
+
+    /**
+     * Execute every request whatever the failures, and collect the failures in the result.
+     */
+    public Batch collectAll() {
+        this.failFast = false;
+        return this;
+    }
+
+    /**
+     * Receive the result of every request as it completes.
+     */
+    public Batch onResult(BatchListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Start the batch.
+     */
+    public CompletableFuture<BatchResult> execute() {
+        return new Execution().start();
+    }
+
+    private class Execution {
+        private final int size = requests.size();
+        private final RestResponse[] responses = new RestResponse[size];
+        private final Throwable[] failures = new Throwable[size];
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger completed = new AtomicInteger();
+        // requests to send, only the thread raising it from zero sends them so synchronous completions do not recurse
+        private final AtomicInteger launches = new AtomicInteger();
+        private final ConcurrentMap<Integer, CompletableFuture<RestResponse>> inFlight = new ConcurrentHashMap<>();
+        private volatile boolean stopped = false;
+        private final CompletableFuture<BatchResult> promise = new CompletableFuture<BatchResult>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (cancelled) {
+                    stop();
+                }
+                return cancelled;
+            }
+        };
+
+        CompletableFuture<BatchResult> start() {
+            if (size == 0) {
+                promise.complete(new BatchResult(responses, failures));
+                return promise;
+            }
+            launch(Math.min(parallelism, size));
+            return promise;
+        }
+
+        private void launch(int count) {
+            if (launches.getAndAdd(count) != 0) {
+                return;
+            }
+            do {
+                send();
+            } while (launches.decrementAndGet() > 0);
+        }
+
+        private void send() {
+            int index = next.getAndIncrement();
+            if (index >= size || stopped) {
+                return;
+            }
+            CompletableFuture<RestResponse> future;
+            try {
+                future = requests.get(index).execute();
+            } catch (RuntimeException e) {
+                onComplete(index, null, e);
+                return;
+            }
+            inFlight.put(index, future);
+            if (stopped) {
+                future.cancel(true);
+            }
+            future.whenComplete((response, failure) -> onComplete(index, response, failure));
+        }
+
+        private void onComplete(int index, RestResponse response, Throwable failure) {
+            inFlight.remove(index);
+            if (failure instanceof CompletionException && failure.getCause() != null) {
+                failure = failure.getCause();
+            }
+            if (stopped) {
+                // the batch failed or was cancelled, the response is never read
+                if (response != null) {
+                    response.release();
+                }
+                return;
+            }
+            if (failure != null) {
+                failures[index] = failure;
+            } else {
+                responses[index] = response;
+            }
+            if (listener != null) {
+                listener.onResult(index, response, failure);
+            }
+            if (failure != null && failFast) {
+                if (promise.completeExceptionally(new BatchException(index, failure, new BatchResult(responses, failures)))) {
+                    stop();
+                }
+                return;
+            }
+            if (completed.incrementAndGet() == size) {
+                promise.complete(new BatchResult(responses, failures));
+            } else {
+                launch(1);
+            }
+        }
+
+        private void stop() {
+            stopped = true;
+            for (CompletableFuture<RestResponse> future : inFlight.values()) {
+                future.cancel(true);
+            }
+        }
+    }
+}
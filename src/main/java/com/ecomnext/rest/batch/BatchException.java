@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.batch;
+
+/**
+ * A request of a fail-fast {@link Batch} failed, so the batch was stopped. The cause is the failure of the request.
+ */
+public class BatchException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int index;
+    private final BatchResult result;
+
+    BatchException(int index, Throwable cause, BatchResult result) {
+        super("Request " + index + " of the batch failed", cause);
+        this.index = index;
+        this.result = result;
+    }
+
+    /**
+     * @return the position of the failed request in the batch.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the responses received before the batch was stopped.
+     */
+    public BatchResult getResult() {
+        return result;
+    }
+}
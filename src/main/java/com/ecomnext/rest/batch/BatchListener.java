@@ -0,0 +1,32 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.batch;
+
+import com.ecomnext.rest.RestResponse;
+
+/**
+ * Receives the outcome of every request of a {@link Batch} as it completes, in completion order. It is called on
+ * the thread completing the request, so it must not block.
+ */
+@FunctionalInterface
+public interface BatchListener {
+    /**
+     * @param index    the position of the request in the batch
+     * @param response the response, null if the request failed
+     * @param failure  the failure, null if the request succeeded
+     */
+    void onResult(int index, RestResponse response, Throwable failure);
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.batch;
+
+import com.ecomnext.rest.RestResponse;
+
+import java.util.*;
+
+/**
+ * The outcome of the requests of a {@link Batch}, in submission order.
+ */
+public class BatchResult {
+    private final RestResponse[] responses;
+    private final Throwable[] failures;
+
+    BatchResult(RestResponse[] responses, Throwable[] failures) {
+        this.responses = responses;
+        this.failures = failures;
+    }
+
+    /**
+     * @return the number of requests of the batch.
+     */
+    public int size() {
+        return responses.length;
+    }
+
+    /**
+     * @return the response of the request at the given position, null if it failed or was not executed.
+     */
+    public RestResponse getResponse(int index) {
+        return responses[index];
+    }
+
+    /**
+     * @return the failure of the request at the given position, null if it succeeded or was not executed.
+     */
+    public Throwable getFailure(int index) {
+        return failures[index];
+    }
+
+    /**
+     * @return the responses in submission order, with nulls for the requests failed or not executed.
+     */
+    public List<RestResponse> getResponses() {
+        return Collections.unmodifiableList(Arrays.asList(responses));
+    }
+
+    /**
+     * @return the failures by position of their request, in submission order.
+     */
+    public Map<Integer, Throwable> getFailures() {
+        Map<Integer, Throwable> map = new TreeMap<>();
+        for (int i = 0; i < failures.length; i++) {
+            if (failures[i] != null) {
+                map.put(i, failures[i]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @return true if every request got a response.
+     */
+    public boolean isSuccessful() {
+        for (RestResponse response : responses) {
+            if (response == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
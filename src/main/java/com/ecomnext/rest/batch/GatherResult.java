@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.batch;
+
+import com.ecomnext.rest.RestResponse;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of a {@link ScatterGather}: the accepted responses in completion order, and what happened to the
+ * other requests until it completed. Requests still pending then were cancelled.
+ */
+public class GatherResult {
+    private final List<RestResponse> responses;
+    private final List<Integer> indexes;
+    private final Map<Integer, RestResponse> rejected;
+    private final Map<Integer, Throwable> failures;
+    private final int requests;
+    private final boolean quorum;
+    private final boolean timedOut;
+
+    GatherResult(List<RestResponse> responses, List<Integer> indexes, Map<Integer, RestResponse> rejected,
+                 Map<Integer, Throwable> failures, int requests, boolean quorum, boolean timedOut) {
+        this.responses = Collections.unmodifiableList(responses);
+        this.indexes = Collections.unmodifiableList(indexes);
+        this.rejected = Collections.unmodifiableMap(rejected);
+        this.failures = Collections.unmodifiableMap(failures);
+        this.requests = requests;
+        this.quorum = quorum;
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * @return the accepted responses, in completion order.
+     */
+    public List<RestResponse> getResponses() {
+        return responses;
+    }
+
+    /**
+     * @return the positions of the requests of the accepted responses, in the same order.
+     */
+    public List<Integer> getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * @return the responses which were not accepted, by position of their request.
+     */
+    public Map<Integer, RestResponse> getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return the failures, by position of their request.
+     */
+    public Map<Integer, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the requests cancelled because the gathering completed before they did.
+     */
+    public int getCancelled() {
+        return requests - responses.size() - rejected.size() - failures.size();
+    }
+
+    /**
+     * @return true if the quorum of accepted responses was reached.
+     */
+    public boolean isQuorum() {
+        return quorum;
+    }
+
+    /**
+     * @return true if the deadline expired before the quorum was reached.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.batch;
+
+/**
+ * A {@link ScatterGather} did not get its quorum of accepted responses, because too many requests failed or the
+ * deadline expired. The partial result holds the responses received.
+ */
+public class QuorumException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final GatherResult result;
+
+    QuorumException(String message, GatherResult result) {
+        super(message);
+        this.result = result;
+        for (Throwable failure : result.getFailures().values()) {
+            addSuppressed(failure);
+        }
+    }
+
+    public GatherResult getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.batch;
+
+import com.ecomnext.rest.RestRequestHolder;
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.utils.Futures;
+import com.ecomnext.rest.utils.SharedScheduler;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Sends the same logical request to several endpoints, e.g. the replicas of a service, and completes as soon as a
+ * quorum of them answered: the first response, the first N, or a majority. The requests still pending then are
+ * cancelled, releasing their connections. Responses count towards the quorum when they are accepted, by default
+ * when their status is below 500.
+ * <p>
+ * If too many requests fail to reach the quorum, or the deadline expires first, the gathering fails with a
+ * {@link QuorumException} holding the partial result, or completes with it if partial results are allowed.
+ *
+ * <pre>
+ * ScatterGather.of(replicaRequests)
+ *         .quorum(2)
+ *         .deadline(200, TimeUnit.MILLISECONDS)
+ *         .execute(responses -&gt; newest(responses))
+ * </pre>
+ */
+public class ScatterGather {
+    private final List<RestRequestHolder> requests;
+    private int quorum = 1;
+    private Predicate<RestResponse> accept = response -> response.getStatus() < 500;
+    private long deadline = 0;
+    private boolean allowPartial = false;
+
+    private ScatterGather(Collection<? extends RestRequestHolder> requests) {
+        this.requests = new ArrayList<>(requests);
+    }
+
+    /**
+     * Gather the given requests. Without any request the gathering completes right away, without its quorum.
+     */
+    public static ScatterGather of(Collection<? extends RestRequestHolder> requests) {
+        return new ScatterGather(requests);
+    }
+
+    /**
+     * Complete with the first accepted response, the default.
+     */
+    public ScatterGather first() {
+        return quorum(1);
+    }
+
+    /**
+     * Complete when a majority of the requests got an accepted response.
+     */
+    public ScatterGather majority() {
+        return quorum(requests.size() / 2 + 1);
+    }
+
+    /**
+     * Complete when the given number of requests got an accepted response.
+     */
+    public ScatterGather quorum(int quorum) {
+        if (quorum < 1 || quorum > requests.size()) {
+            throw new IllegalArgumentException("The quorum must be between 1 and " + requests.size() + ": " + quorum);
+        }
+        this.quorum = quorum;
+        return this;
+    }
+
+    /**
+     * Count the responses matching the predicate towards the quorum, instead of the ones with a status below 500.
+     */
+    public ScatterGather accept(Predicate<RestResponse> accept) {
+        this.accept = accept;
+        return this;
+    }
+
+    /**
+     * Stop waiting for the quorum after the given time, none by default.
+     */
+    public ScatterGather deadline(long deadline, TimeUnit unit) {
+        this.deadline = unit.toMillis(deadline);
+        return this;
+    }
+
+    /**
+     * Complete with the partial result when the quorum cannot be reached, instead of failing.
+     */
+    public ScatterGather allowPartial() {
+        this.allowPartial = true;
+        return this;
+    }
+
+    /**
+     * Send the requests.
+     */
+    public CompletableFuture<GatherResult> execute() {
+        return new Execution().start();
+    }
+
+    /**
+     * Send the requests and merge the accepted responses, in completion order.
+     */
+    public <T> CompletableFuture<T> execute(Function<List<RestResponse>, T> merge) {
+        CompletableFuture<GatherResult> gathering = execute();
+        return Futures.propagateCancel(gathering.thenApply(result -> merge.apply(result.getResponses())), gathering);
+    }
+
+    private class Execution {
+        private final int size = requests.size();
+        private final CompletableFuture<GatherResult> promise = new CompletableFuture<GatherResult>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (cancelled) {
+                    cancelPending();
+                }
+                return cancelled;
+            }
+        };
+        // guarded by this
+        private final List<CompletableFuture<RestResponse>> futures = new ArrayList<>();
+        private final List<RestResponse> responses = new ArrayList<>();
+        private final List<Integer> indexes = new ArrayList<>();
+        private final Map<Integer, RestResponse> rejected = new TreeMap<>();
+        private final Map<Integer, Throwable> failures = new TreeMap<>();
+        private ScheduledFuture<?> timer;
+        private boolean done = false;
+
+        CompletableFuture<GatherResult> start() {
+            if (size == 0) {
+                // no response will ever complete it
+                finish(false);
+                return promise;
+            }
+            if (deadline > 0) {
+                ScheduledFuture<?> timer = SharedScheduler.schedule(() -> finish(true), deadline, TimeUnit.MILLISECONDS);
+                synchronized (this) {
+                    this.timer = timer;
+                }
+            }
+            for (int i = 0; i < size && !promise.isDone(); i++) {
+                int index = i;
+                CompletableFuture<RestResponse> future;
+                try {
+                    future = requests.get(i).execute();
+                } catch (RuntimeException e) {
+                    future = new CompletableFuture<>();
+                    future.completeExceptionally(e);
+                }
+                boolean finished;
+                synchronized (this) {
+                    futures.add(future);
+                    // finish() may have taken its snapshot of the pending futures without this one
+                    finished = done;
+                }
+                if (finished) {
+                    future.cancel(true);
+                }
+                future.whenComplete((response, failure) -> onComplete(index, response, failure));
+            }
+            return promise;
+        }
+
+        private void onComplete(int index, RestResponse response, Throwable failure) {
+            if (failure instanceof CompletionException && failure.getCause() != null) {
+                failure = failure.getCause();
+            }
+            boolean finished;
+            synchronized (this) {
+                if (done) {
+                    // a loser answering before its cancellation, the response is never read
+                    if (response != null) {
+                        response.release();
+                    }
+                    return;
+                }
+                if (failure != null) {
+                    failures.put(index, failure);
+                } else if (accept.test(response)) {
+                    responses.add(response);
+                    indexes.add(index);
+                } else {
+                    rejected.put(index, response);
+                }
+                finished = responses.size() >= quorum || failures.size() + rejected.size() > size - quorum;
+            }
+            if (finished) {
+                finish(false);
+            }
+        }
+
+        private void finish(boolean timedOut) {
+            GatherResult result;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+                result = new GatherResult(new ArrayList<>(responses), new ArrayList<>(indexes), new TreeMap<>(rejected),
+                        new TreeMap<>(failures), size, responses.size() >= quorum, timedOut);
+            }
+            cancelPending();
+            if (result.isQuorum() || allowPartial) {
+                promise.complete(result);
+            } else {
+                promise.completeExceptionally(new QuorumException(timedOut
+                        ? "Deadline of " + deadline + "ms expired with " + result.getResponses().size() + " of " + quorum + " responses"
+                        : "Only " + result.getResponses().size() + " of " + quorum + " responses, "
+                        + result.getFailures().size() + " failures and " + result.getRejected().size() + " rejected responses",
+                        result));
+            }
+        }
+
+        private void cancelPending() {
+            List<CompletableFuture<RestResponse>> pending;
+            synchronized (this) {
+                done = true;
+                pending = new ArrayList<>(futures);
+            }
+            for (CompletableFuture<RestResponse> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+}
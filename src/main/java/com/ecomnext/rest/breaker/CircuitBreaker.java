@@ -0,0 +1,376 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.breaker;
+
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.limit.LimitExceededException;
+import com.ecomnext.rest.metrics.PrometheusExporter;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Stops sending requests to a host which is down, so they fail at once instead of waiting for their timeouts. Every
+ * host, or named group of endpoints, has its own circuit. A circuit opens when the failure rate or the slow call
+ * rate of its requests in a sliding window, 10 seconds by default, reaches a threshold; while it is open requests
+ * fail with a {@link CircuitOpenException}. After a while it is half open and lets a few probe requests through: if
+ * they all succeed the circuit closes, otherwise it opens again. Create breakers with {@link #builder()} and share
+ * one per client.
+ * <p>
+ * Requests fail when they throw an exception or the host answers 500, 502, 503 or 504. Requests cancelled or
+ * rejected by the concurrency limiter are not recorded.
+ */
+public class CircuitBreaker {
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallDuration;
+    private final int minCalls;
+    private final long openDuration;
+    private final int probes;
+    private final int windowBuckets;
+    private final long window;
+    private final Set<Integer> failureStatus;
+    private final List<CircuitListener> listeners;
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    private CircuitBreaker(Builder builder) {
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallDuration = builder.slowCallDuration;
+        this.minCalls = builder.minCalls;
+        this.openDuration = builder.openDuration;
+        this.probes = builder.probes;
+        this.windowBuckets = builder.windowBuckets;
+        this.window = builder.window;
+        this.failureStatus = new HashSet<>(builder.failureStatus);
+        this.listeners = new CopyOnWriteArrayList<>(builder.listeners);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Execute a request if its circuit lets it through.
+     *
+     * @param circuit the host or group of the request
+     * @param request sends the request
+     */
+    public CompletableFuture<RestResponse> execute(String circuit, Supplier<CompletableFuture<RestResponse>> request) {
+        return circuit(circuit).execute(request);
+    }
+
+    /**
+     * Add a listener of the state transitions of every circuit.
+     */
+    public void addListener(CircuitListener listener) {
+        listeners.add(listener);
+    }
+
+    public CircuitState getState(String circuit) {
+        return circuit(circuit).state();
+    }
+
+    /**
+     * Force a circuit to the closed state, clearing its window.
+     */
+    public void reset(String circuit) {
+        Circuit c = circuit(circuit);
+        c.transition(c.phase.get(), CircuitState.CLOSED);
+    }
+
+    /**
+     * @return the state of every circuit, sorted by name.
+     */
+    public Map<String, CircuitSnapshot> snapshot() {
+        Map<String, CircuitSnapshot> snapshots = new TreeMap<>();
+        for (Circuit circuit : circuits.values()) {
+            snapshots.put(circuit.name, circuit.snapshot());
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * @return the state, rates, rejections and transitions of every circuit in the Prometheus text exposition
+     * format.
+     */
+    public String toPrometheus() {
+        return PrometheusExporter.exportCircuits(snapshot().values());
+    }
+
+    private Circuit circuit(String name) {
+        if (name == null) {
+            name = "unknown";
+        }
+        Circuit circuit = circuits.get(name);
+        if (circuit == null) {
+            circuit = circuits.computeIfAbsent(name, Circuit::new);
+        }
+        return circuit;
+    }
+
+    private static CompletableFuture<RestResponse> failed(Throwable failure) {
+        CompletableFuture<RestResponse> failed = new CompletableFuture<>();
+        failed.completeExceptionally(failure);
+        return failed;
+    }
+
+    /**
+     * A state of a circuit. Every transition replaces it, so the time a circuit opened and the probes of a half
+     * open state belong to that state only: probes completing after their state was left are ignored.
+     */
+    private static class Phase {
+        private final CircuitState state;
+        private final long openedAt;
+        // probes let through and succeeded while half open
+        private final AtomicInteger probesStarted = new AtomicInteger();
+        private final AtomicInteger probesSucceeded = new AtomicInteger();
+
+        Phase(CircuitState state, long openedAt) {
+            this.state = state;
+            this.openedAt = openedAt;
+        }
+    }
+
+    private class Circuit {
+        private final String name;
+        private final AtomicReference<Phase> phase = new AtomicReference<>(new Phase(CircuitState.CLOSED, 0));
+        private final SlidingWindow calls = new SlidingWindow(windowBuckets, window);
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder transitions = new LongAdder();
+
+        Circuit(String name) {
+            this.name = name;
+        }
+
+        CircuitState state() {
+            return phase().state;
+        }
+
+        private Phase phase() {
+            Phase current = phase.get();
+            if (current.state == CircuitState.OPEN && System.nanoTime() - current.openedAt >= openDuration) {
+                transition(current, CircuitState.HALF_OPEN);
+                return phase.get();
+            }
+            return current;
+        }
+
+        CompletableFuture<RestResponse> execute(Supplier<CompletableFuture<RestResponse>> request) {
+            Phase current = phase();
+            if (current.state == CircuitState.OPEN) {
+                return reject(TimeUnit.NANOSECONDS.toMillis(openDuration - (System.nanoTime() - current.openedAt)));
+            } else if (current.state == CircuitState.HALF_OPEN) {
+                if (current.probesStarted.incrementAndGet() > probes) {
+                    current.probesStarted.decrementAndGet();
+                    return reject(0);
+                }
+            }
+
+            // the half open state the request is a probe of, null if it is not a probe
+            Phase probed = current.state == CircuitState.HALF_OPEN ? current : null;
+            long start = System.nanoTime();
+            CompletableFuture<RestResponse> future;
+            try {
+                future = request.get();
+            } catch (RuntimeException e) {
+                onComplete(probed, start, null, e);
+                return failed(e);
+            }
+            future.whenComplete((response, failure) -> onComplete(probed, start, response, failure));
+            return future;
+        }
+
+        private CompletableFuture<RestResponse> reject(long retryAfter) {
+            rejected.increment();
+            return failed(new CircuitOpenException(name, Math.max(0, retryAfter)));
+        }
+
+        private void onComplete(Phase probed, long start, RestResponse response, Throwable failure) {
+            if (failure instanceof CompletionException && failure.getCause() != null) {
+                failure = failure.getCause();
+            }
+            long now = System.nanoTime();
+            if (failure instanceof CancellationException || failure instanceof LimitExceededException) {
+                if (probed != null) {
+                    probed.probesStarted.decrementAndGet();
+                }
+                return;
+            }
+            boolean failed = failure != null || failureStatus.contains(response.getStatus());
+            boolean slow = now - start >= slowCallDuration;
+
+            if (probed != null) {
+                if (phase.get() != probed) {
+                    // a probe of an earlier half open state
+                    return;
+                }
+                if (failed || slow) {
+                    transition(probed, CircuitState.OPEN);
+                } else if (probed.probesSucceeded.incrementAndGet() >= probes) {
+                    transition(probed, CircuitState.CLOSED);
+                }
+                return;
+            }
+            Phase current = phase.get();
+            if (current.state != CircuitState.CLOSED) {
+                // sent before the circuit opened
+                return;
+            }
+            calls.record(now, failed, slow);
+            if (failed || slow) {
+                long[] sum = calls.sum(now);
+                if (sum[0] >= minCalls && (sum[1] >= failureRateThreshold * sum[0] || sum[2] >= slowCallRateThreshold * sum[0])) {
+                    transition(current, CircuitState.OPEN);
+                }
+            }
+        }
+
+        /**
+         * Move from the given phase to a new one in the given state, unless another transition left it first.
+         */
+        void transition(Phase from, CircuitState to) {
+            if (from.state == to) {
+                if (to == CircuitState.CLOSED) {
+                    calls.clear();
+                }
+                return;
+            }
+            Phase next = new Phase(to, to == CircuitState.OPEN ? System.nanoTime() : 0);
+            if (!phase.compareAndSet(from, next)) {
+                return;
+            }
+            if (to == CircuitState.CLOSED) {
+                calls.clear();
+            }
+            transitions.increment();
+            for (CircuitListener listener : listeners) {
+                listener.onStateChange(name, from.state, to);
+            }
+        }
+
+        CircuitSnapshot snapshot() {
+            long[] sum = calls.sum(System.nanoTime());
+            return new CircuitSnapshot(name, state(), sum[0], sum[1], sum[2], rejected.sum(), transitions.sum());
+        }
+    }
+
+    public static class Builder {
+        private double failureRateThreshold = 0.5;
+        private double slowCallRateThreshold = 1.0;
+        private long slowCallDuration = TimeUnit.SECONDS.toNanos(10);
+        private int minCalls = 20;
+        private long openDuration = TimeUnit.SECONDS.toNanos(30);
+        private int probes = 5;
+        private int windowBuckets = 10;
+        private long window = TimeUnit.SECONDS.toNanos(10);
+        private Collection<Integer> failureStatus = Arrays.asList(500, 502, 503, 504);
+        private final List<CircuitListener> listeners = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Open the circuit when this ratio of the requests in the window fail, 0.5 by default.
+         */
+        public Builder failureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = ratio(failureRateThreshold);
+            return this;
+        }
+
+        /**
+         * Open the circuit when this ratio of the requests in the window are slow, 1 by default: only when every
+         * request is slow.
+         */
+        public Builder slowCallRateThreshold(double slowCallRateThreshold) {
+            this.slowCallRateThreshold = ratio(slowCallRateThreshold);
+            return this;
+        }
+
+        /**
+         * Requests taking longer are slow, 10s by default.
+         */
+        public Builder slowCallDuration(long slowCallDuration, TimeUnit unit) {
+            this.slowCallDuration = unit.toNanos(slowCallDuration);
+            return this;
+        }
+
+        /**
+         * Requests needed in the window before the rates are considered, 20 by default.
+         */
+        public Builder minCalls(int minCalls) {
+            this.minCalls = Math.max(1, minCalls);
+            return this;
+        }
+
+        /**
+         * The sliding window of the rates and the number of buckets it is split into, 10 seconds in 10 buckets by
+         * default.
+         */
+        public Builder window(long window, TimeUnit unit, int buckets) {
+            if (buckets < 1) {
+                throw new IllegalArgumentException("The window needs at least one bucket: " + buckets);
+            }
+            this.window = unit.toNanos(window);
+            this.windowBuckets = buckets;
+            return this;
+        }
+
+        /**
+         * How long a circuit stays open before letting probes through, 30s by default.
+         */
+        public Builder openDuration(long openDuration, TimeUnit unit) {
+            this.openDuration = unit.toNanos(openDuration);
+            return this;
+        }
+
+        /**
+         * Probe requests let through while half open, which must all succeed to close the circuit, 5 by default.
+         */
+        public Builder probes(int probes) {
+            this.probes = Math.max(1, probes);
+            return this;
+        }
+
+        /**
+         * Status codes counted as failures, 500, 502, 503 and 504 by default.
+         */
+        public Builder failureStatus(Integer... status) {
+            this.failureStatus = Arrays.asList(status);
+            return this;
+        }
+
+        public Builder listener(CircuitListener listener) {
+            this.listeners.add(listener);
+            return this;
+        }
+
+        private static double ratio(double ratio) {
+            if (ratio <= 0 || ratio > 1) {
+                throw new IllegalArgumentException("The threshold must be between 0 and 1: " + ratio);
+            }
+            return ratio;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+}
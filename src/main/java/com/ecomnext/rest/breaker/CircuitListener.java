@@ -0,0 +1,25 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.breaker;
+
+/**
+ * Listens to the state transitions of the circuits of a {@link CircuitBreaker}. It is called on the thread completing
+ * the request causing the transition, so it must be quick and must not block.
+ */
+@FunctionalInterface
+public interface CircuitListener {
+    void onStateChange(String circuit, CircuitState from, CircuitState to);
+}
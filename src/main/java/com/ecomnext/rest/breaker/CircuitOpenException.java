@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.breaker;
+
+/**
+ * A request was rejected because the circuit of its host, or of its group, was open or had no probe left while
+ * half open. It was never sent.
+ */
+public class CircuitOpenException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String circuit;
+    private final long retryAfter;
+
+    public CircuitOpenException(String circuit, long retryAfter) {
+        super("Circuit " + circuit + " is open");
+        this.circuit = circuit;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return the host or group of the circuit.
+     */
+    public String getCircuit() {
+        return circuit;
+    }
+
+    /**
+     * @return the milliseconds until the circuit lets probe requests through, 0 if it is half open.
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.breaker;
+
+/**
+ * The state of a circuit at a point in time. Rates are computed over the sliding window of the breaker.
+ */
+public class CircuitSnapshot {
+    private final String circuit;
+    private final CircuitState state;
+    private final long calls;
+    private final long failures;
+    private final long slowCalls;
+    private final long rejected;
+    private final long transitions;
+
+    CircuitSnapshot(String circuit, CircuitState state, long calls, long failures, long slowCalls, long rejected,
+                    long transitions) {
+        this.circuit = circuit;
+        this.state = state;
+        this.calls = calls;
+        this.failures = failures;
+        this.slowCalls = slowCalls;
+        this.rejected = rejected;
+        this.transitions = transitions;
+    }
+
+    public String getCircuit() {
+        return circuit;
+    }
+
+    public CircuitState getState() {
+        return state;
+    }
+
+    /**
+     * @return the requests recorded in the window.
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return the failed requests recorded in the window.
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the slow requests recorded in the window.
+     */
+    public long getSlowCalls() {
+        return slowCalls;
+    }
+
+    /**
+     * @return the failure rate in the window, between 0 and 1.
+     */
+    public double getFailureRate() {
+        return calls == 0 ? 0 : (double) failures / calls;
+    }
+
+    /**
+     * @return the slow call rate in the window, between 0 and 1.
+     */
+    public double getSlowCallRate() {
+        return calls == 0 ? 0 : (double) slowCalls / calls;
+    }
+
+    /**
+     * @return the requests rejected since the breaker was created.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return the state transitions since the breaker was created.
+     */
+    public long getTransitions() {
+        return transitions;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.breaker;
+
+/**
+ * The states of a circuit.
+ */
+public enum CircuitState {
+    /**
+     * Requests are sent and their outcome recorded.
+     */
+    CLOSED(0),
+    /**
+     * Requests fail at once with a {@link CircuitOpenException}.
+     */
+    OPEN(1),
+    /**
+     * A limited number of probe requests are sent to decide whether to close or open the circuit again.
+     */
+    HALF_OPEN(2);
+
+    private final int value;
+
+    CircuitState(int value) {
+        this.value = value;
+    }
+
+    /**
+     * @return the numeric value of the state, for metrics.
+     */
+    public int getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.breaker;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free counts of calls, failures and slow calls in a sliding window of time, split in buckets. A bucket is
+ * reset by the first call recorded after it expired; calls recorded concurrently with the reset may be lost, which
+ * only makes the rates approximate.
+ */
+class SlidingWindow {
+    private static final int EPOCH = 0;
+    private static final int CALLS = 1;
+    private static final int FAILURES = 2;
+    private static final int SLOW = 3;
+    private static final int FIELDS = 4;
+
+    private final int buckets;
+    private final long bucketNanos;
+    private final AtomicLongArray counts;
+
+    SlidingWindow(int buckets, long windowNanos) {
+        this.buckets = buckets;
+        this.bucketNanos = Math.max(1, windowNanos / buckets);
+        this.counts = new AtomicLongArray(buckets * FIELDS);
+        for (int i = 0; i < buckets; i++) {
+            counts.set(i * FIELDS + EPOCH, Long.MIN_VALUE);
+        }
+    }
+
+    void record(long now, boolean failure, boolean slow) {
+        long epoch = now / bucketNanos;
+        int base = (int) Math.floorMod(epoch, (long) buckets) * FIELDS;
+        long current = counts.get(base + EPOCH);
+        if (current < epoch && counts.compareAndSet(base + EPOCH, current, epoch)) {
+            counts.set(base + CALLS, 0);
+            counts.set(base + FAILURES, 0);
+            counts.set(base + SLOW, 0);
+        }
+        counts.incrementAndGet(base + CALLS);
+        if (failure) {
+            counts.incrementAndGet(base + FAILURES);
+        }
+        if (slow) {
+            counts.incrementAndGet(base + SLOW);
+        }
+    }
+
+    /**
+     * @return the calls, failures and slow calls in the window ending at the given time.
+     */
+    long[] sum(long now) {
+        long epoch = now / bucketNanos;
+        long[] sum = new long[3];
+        for (int i = 0; i < buckets; i++) {
+            int base = i * FIELDS;
+            long bucketEpoch = counts.get(base + EPOCH);
+            if (bucketEpoch <= epoch && bucketEpoch > epoch - buckets) {
+                sum[0] += counts.get(base + CALLS);
+                sum[1] += counts.get(base + FAILURES);
+                sum[2] += counts.get(base + SLOW);
+            }
+        }
+        return sum;
+    }
+
+    void clear() {
+        for (int i = 0; i < buckets; i++) {
+            counts.set(i * FIELDS + EPOCH, Long.MIN_VALUE);
+        }
+    }
+}
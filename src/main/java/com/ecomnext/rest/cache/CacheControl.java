@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.cache;
+
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * The directives of Cache-Control headers used by the cache, from a request or a response. Durations are in
+ * seconds, -1 when the directive is absent.
+ */
+public class CacheControl {
+    static final CacheControl EMPTY = new CacheControl();
+
+    private boolean noStore;
+    private boolean noCache;
+    private boolean mustRevalidate;
+    private boolean isPublic;
+    private boolean isPrivate;
+    private long maxAge = -1;
+    private long sMaxAge = -1;
+    private long staleWhileRevalidate = -1;
+
+    private CacheControl() {
+    }
+
+    /**
+     * @param values the values of every Cache-Control header, null if there is none
+     */
+    public static CacheControl parse(Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return EMPTY;
+        }
+        CacheControl cacheControl = new CacheControl();
+        for (String value : values) {
+            for (String directive : value.split(",")) {
+                cacheControl.add(directive.trim());
+            }
+        }
+        return cacheControl;
+    }
+
+    private void add(String directive) {
+        String name = directive;
+        String argument = null;
+        int equals = directive.indexOf('=');
+        if (equals >= 0) {
+            name = directive.substring(0, equals).trim();
+            argument = directive.substring(equals + 1).trim();
+            if (argument.length() >= 2 && argument.startsWith("\"") && argument.endsWith("\"")) {
+                argument = argument.substring(1, argument.length() - 1);
+            }
+        }
+        switch (name.toLowerCase(Locale.ENGLISH)) {
+            case "no-store":
+                noStore = true;
+                break;
+            case "no-cache":
+                // no-cache="header" only forbids reusing those headers, revalidating is stricter but correct
+                noCache = true;
+                break;
+            case "must-revalidate":
+            case "proxy-revalidate":
+                mustRevalidate = true;
+                break;
+            case "public":
+                isPublic = true;
+                break;
+            case "private":
+                isPrivate = true;
+                break;
+            case "max-age":
+                maxAge = seconds(argument);
+                break;
+            case "s-maxage":
+                sMaxAge = seconds(argument);
+                break;
+            case "stale-while-revalidate":
+                staleWhileRevalidate = seconds(argument);
+                break;
+            default:
+        }
+    }
+
+    /**
+     * @return the delta-seconds argument, 0 if it is invalid as RFC 7234 requires for max-age.
+     */
+    private static long seconds(String argument) {
+        if (argument == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(argument));
+        } catch (NumberFormatException e) {
+            return argument.chars().allMatch(Character::isDigit) && !argument.isEmpty() ? Integer.MAX_VALUE : 0;
+        }
+    }
+
+    public boolean isNoStore() {
+        return noStore;
+    }
+
+    public boolean isNoCache() {
+        return noCache;
+    }
+
+    public boolean isMustRevalidate() {
+        return mustRevalidate;
+    }
+
+    public boolean isPublic() {
+        return isPublic;
+    }
+
+    public boolean isPrivate() {
+        return isPrivate;
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    public long getSMaxAge() {
+        return sMaxAge;
+    }
+
+    public long getStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.cache;
+
+import java.nio.ByteBuffer;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A response stored in a {@link CacheStore}. Entries are immutable; the body is a read-only buffer which may be
+ * backed by memory or by a file. Times are milliseconds since the epoch.
+ */
+public class CacheEntry {
+    private static final long MAX_HEURISTIC_LIFETIME = TimeUnit.DAYS.toMillis(1);
+    // RFC 7231 6.1, status codes cacheable without explicit freshness
+    private static final Set<Integer> HEURISTICALLY_CACHEABLE = new HashSet<>(
+            Arrays.asList(200, 203, 204, 300, 301, 404, 405, 410, 414, 501));
+
+    private final String uri;
+    private final int status;
+    private final String statusText;
+    private final Map<String, List<String>> headers;
+    private final ByteBuffer body;
+    private final long requestTime;
+    private final long responseTime;
+    private final Map<String, String> varyValues;
+
+    private final CacheControl cacheControl;
+    private final long correctedInitialAge;
+    private final long date;
+    private final long weight;
+
+    /**
+     * @param headers      the response headers
+     * @param requestTime  when the request was sent
+     * @param responseTime when the response was received
+     * @param varyValues   the values of the request headers named by the Vary header of the response, by lower
+     *                     case name
+     */
+    public CacheEntry(String uri, int status, String statusText, Map<String, List<String>> headers, ByteBuffer body,
+                      long requestTime, long responseTime, Map<String, String> varyValues) {
+        this.uri = uri;
+        this.status = status;
+        this.statusText = statusText;
+        TreeMap<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            copy.put(header.getKey(), Collections.unmodifiableList(new ArrayList<>(header.getValue())));
+        }
+        this.headers = Collections.unmodifiableMap(copy);
+        this.body = body.asReadOnlyBuffer();
+        this.requestTime = requestTime;
+        this.responseTime = responseTime;
+        this.varyValues = Collections.unmodifiableMap(new TreeMap<>(varyValues));
+
+        this.cacheControl = CacheControl.parse(this.headers.get("Cache-Control"));
+        long date = parseDate(getHeader("Date"));
+        this.date = date < 0 ? responseTime : date;
+        // RFC 7234 4.2.3
+        long apparentAge = Math.max(0, responseTime - this.date);
+        long responseDelay = responseTime - requestTime;
+        long correctedAgeValue = parseSeconds(getHeader("Age")) * 1000 + responseDelay;
+        this.correctedInitialAge = Math.max(apparentAge, correctedAgeValue);
+        this.weight = weigh();
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getStatusText() {
+        return statusText;
+    }
+
+    /**
+     * @return the response headers, by case insensitive name.
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * @return a new read-only view of the body, positioned at its start.
+     */
+    public ByteBuffer getBody() {
+        return body.duplicate();
+    }
+
+    public long getRequestTime() {
+        return requestTime;
+    }
+
+    public long getResponseTime() {
+        return responseTime;
+    }
+
+    public Map<String, String> getVaryValues() {
+        return varyValues;
+    }
+
+    public CacheControl getCacheControl() {
+        return cacheControl;
+    }
+
+    /**
+     * @return the approximate memory used by the entry, in bytes.
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    private long weigh() {
+        long weight = 128 + body.remaining() + 2L * uri.length();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            for (String value : header.getValue()) {
+                weight += 2L * (header.getKey().length() + value.length()) + 32;
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * @return the age of the response at the given time, in milliseconds.
+     */
+    public long getAge(long now) {
+        return correctedInitialAge + Math.max(0, now - responseTime);
+    }
+
+    /**
+     * @param shared true to use the rules of shared caches, honoring s-maxage
+     * @return how long the response is fresh since it was generated, in milliseconds.
+     */
+    public long getFreshnessLifetime(boolean shared) {
+        if (shared && cacheControl.getSMaxAge() >= 0) {
+            return TimeUnit.SECONDS.toMillis(cacheControl.getSMaxAge());
+        }
+        if (cacheControl.getMaxAge() >= 0) {
+            return TimeUnit.SECONDS.toMillis(cacheControl.getMaxAge());
+        }
+        String expires = getHeader("Expires");
+        if (expires != null) {
+            // invalid dates, like "0", mean already expired
+            return Math.max(0, parseDate(expires) - date);
+        }
+        long lastModified = parseDate(getHeader("Last-Modified"));
+        if (lastModified >= 0 && HEURISTICALLY_CACHEABLE.contains(status)) {
+            return Math.min(MAX_HEURISTIC_LIFETIME, Math.max(0, (date - lastModified) / 10));
+        }
+        return 0;
+    }
+
+    /**
+     * @return true if the response has explicit freshness information.
+     */
+    boolean hasExplicitFreshness(boolean shared) {
+        return cacheControl.getMaxAge() >= 0 || (shared && cacheControl.getSMaxAge() >= 0) || getHeader("Expires") != null;
+    }
+
+    /**
+     * @return true if the response is worth storing: it has explicit freshness or a status cacheable by default,
+     * and it can be served fresh, stale while revalidated or revalidated.
+     */
+    boolean isStorable(boolean shared) {
+        if (!hasExplicitFreshness(shared) && !HEURISTICALLY_CACHEABLE.contains(status)) {
+            return false;
+        }
+        return getFreshnessLifetime(shared) > 0 || cacheControl.getStaleWhileRevalidate() > 0 || isRevalidatable();
+    }
+
+    /**
+     * @return true if the response can be served without revalidation at the given time.
+     */
+    public boolean isFresh(long now, boolean shared) {
+        return !cacheControl.isNoCache() && getFreshnessLifetime(shared) > getAge(now);
+    }
+
+    /**
+     * @return true if the response can be served while it is revalidated in the background at the given time.
+     */
+    public boolean isStaleWhileRevalidate(long now, boolean shared) {
+        long window = cacheControl.getStaleWhileRevalidate();
+        if (window < 0 || cacheControl.isNoCache() || cacheControl.isMustRevalidate()) {
+            return false;
+        }
+        return getFreshnessLifetime(shared) + TimeUnit.SECONDS.toMillis(window) > getAge(now);
+    }
+
+    /**
+     * @return true if the request, identified by the values of its headers named by Vary, can get this response.
+     */
+    public boolean matches(Map<String, String> requestVaryValues) {
+        return varyValues.equals(requestVaryValues);
+    }
+
+    /**
+     * @return true if the entry can be revalidated with a conditional request.
+     */
+    public boolean isRevalidatable() {
+        return getHeader("ETag") != null || getHeader("Last-Modified") != null;
+    }
+
+    /**
+     * @return a new entry updated with the headers of a 304 Not Modified response, as RFC 7234 4.3.4 requires.
+     */
+    public CacheEntry revalidated(Map<String, List<String>> notModifiedHeaders, long requestTime, long responseTime) {
+        TreeMap<String, List<String>> merged = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        merged.putAll(headers);
+        for (Map.Entry<String, List<String>> header : notModifiedHeaders.entrySet()) {
+            if (!header.getKey().equalsIgnoreCase("Content-Length")) {
+                merged.put(header.getKey(), header.getValue());
+            }
+        }
+        return new CacheEntry(uri, status, statusText, merged, body, requestTime, responseTime, varyValues);
+    }
+
+    /**
+     * @return a new entry with the same response but the given body.
+     */
+    public CacheEntry withBody(ByteBuffer body) {
+        return new CacheEntry(uri, status, statusText, headers, body, requestTime, responseTime, varyValues);
+    }
+
+    /**
+     * @return the time of an HTTP-date in milliseconds, -1 if it is missing or invalid.
+     */
+    static long parseDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static long parseSeconds(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.cache;
+
+/**
+ * Storage of the responses of an {@link HttpCache}, by cache key. Stores hold one response per key, a new
+ * response for a key replaces the previous one. Implementations must be thread-safe and never block on I/O for
+ * longer than a local disk access.
+ */
+public interface CacheStore {
+    /**
+     * @return the entry stored for the key, or null.
+     */
+    CacheEntry get(String key);
+
+    /**
+     * Store an entry, replacing the entry of the same key. Stores may evict other entries to make room, or
+     * ignore entries that do not fit.
+     */
+    void put(String key, CacheEntry entry);
+
+    void remove(String key);
+
+    /**
+     * Record a read of the entry of the key made through another store, such as a tier in front of this one, so
+     * the entry is kept as if it had been read from this store.
+     */
+    default void touch(String key) {
+    }
+
+    /**
+     * @return the number of entries stored.
+     */
+    int size();
+
+    /**
+     * @return the sum of the weights of the entries stored, in bytes.
+     */
+    long getWeight();
+
+    /**
+     * @return the number of entries evicted to make room for others.
+     */
+    long getEvictions();
+
+    /**
+     * Release the resources of the store.
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.cache;
+
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.utils.ByteBufferInputStream;
+import com.ecomnext.rest.utils.Json;
+import com.ecomnext.rest.utils.XML;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.ning.http.client.cookie.Cookie;
+import com.ning.http.client.cookie.CookieDecoder;
+import com.ning.http.util.AsyncHttpProviderUtils;
+import org.w3c.dom.Document;
+
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A response served from the cache, equivalent to the response originally received but for its Age header.
+ * It can be read any number of times.
+ */
+public class CachedResponse implements RestResponse {
+    private final CacheEntry entry;
+    private final String age;
+
+    /**
+     * @param now the time the response is served at, to compute its age
+     */
+    public CachedResponse(CacheEntry entry, long now) {
+        this.entry = entry;
+        this.age = Long.toString(TimeUnit.MILLISECONDS.toSeconds(entry.getAge(now)));
+    }
+
+    /**
+     * @return the {@link CacheEntry} of the response.
+     */
+    @Override
+    public Object getUnderlying() {
+        return entry;
+    }
+
+    @Override
+    public int getStatus() {
+        return entry.getStatus();
+    }
+
+    @Override
+    public String getStatusText() {
+        return entry.getStatusText();
+    }
+
+    @Override
+    public Map<String, List<String>> getAllHeaders() {
+        TreeMap<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(entry.getHeaders());
+        headers.put("Age", Collections.singletonList(age));
+        return headers;
+    }
+
+    @Override
+    public String getHeader(String key) {
+        return "Age".equalsIgnoreCase(key) ? age : entry.getHeader(key);
+    }
+
+    @Override
+    public List<Cookie> getCookies() {
+        List<String> values = entry.getHeaders().get("Set-Cookie");
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        List<Cookie> cookies = new ArrayList<>(values.size());
+        for (String value : values) {
+            Cookie cookie = CookieDecoder.decode(value);
+            if (cookie != null) {
+                cookies.add(cookie);
+            }
+        }
+        return cookies;
+    }
+
+    @Override
+    public Cookie getCookie(String name) {
+        for (Cookie cookie : getCookies()) {
+            if (cookie.getName().equals(name)) {
+                return cookie;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @see com.ecomnext.rest.ning.NingRestResponse#getBody()
+     */
+    @Override
+    public String getBody() {
+        String contentType = entry.getHeader("Content-Type");
+        if (contentType == null) {
+            contentType = "application/octet-stream";
+        }
+        String charset = AsyncHttpProviderUtils.parseCharset(contentType);
+        if (charset == null) {
+            charset = contentType.startsWith("text/") ? AsyncHttpProviderUtils.DEFAULT_CHARSET : "utf-8";
+        }
+        return Charset.forName(charset).decode(entry.getBody()).toString();
+    }
+
+    @Override
+    public Document asXml() {
+        return XML.fromInputStream(getBodyAsStream(), "utf-8");
+    }
+
+    @Override
+    public XMLStreamReader asXmlStream() {
+        return XML.streamFromInputStream(getBodyAsStream(), "utf-8");
+    }
+
+    @Override
+    public JsonNode asJson() {
+        return Json.parse(getBodyAsStream());
+    }
+
+    @Override
+    public <T> T as(Class<T> clazz) {
+        return Json.fromInputStream(getBodyAsStream(), clazz);
+    }
+
+    @Override
+    public <T> T as(TypeReference<T> valueTypeRef) {
+        return Json.fromInputStream(getBodyAsStream(), valueTypeRef);
+    }
+
+    /**
+     * @return a stream reading the cached body without copying it.
+     */
+    @Override
+    public InputStream getBodyAsStream() {
+        return new ByteBufferInputStream(entry.getBody());
+    }
+
+    @Override
+    public byte[] asByteArray() {
+        ByteBuffer body = entry.getBody();
+        byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public URI getUri() {
+        return URI.create(entry.getUri());
+    }
+}
@@ -0,0 +1,721 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Store keeping the entries in append-only segment files mapped in memory, so they survive restarts. Only the keys
+ * and the location of their records are kept in the heap; the bodies of the entries returned are read-only views
+ * of the mapped files and are never copied.
+ * <p>
+ * Every put or remove appends a record, made of its length, a CRC32 of its content and the content, to the active
+ * segment. When it is full the next segment, created in advance by a background thread, takes its place, so the
+ * threads storing entries never allocate or flush files. A put that arrives before the next segment is ready is
+ * not stored. On startup the segments are replayed in order to rebuild the index, stopping at the first record
+ * that is incomplete or does not match its CRC, such as one being written when the process crashed.
+ * <p>
+ * When there are more segments than the maximum size allows, the background thread compacts the oldest one: the
+ * entries read since they were written are copied to the active segment, the others are evicted, and the segment
+ * file is deleted. A directory can only be used by one store at a time.
+ */
+public class DiskCacheStore implements CacheStore {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int MAGIC = 0x52434331;
+    // magic, length and CRC of the content
+    private static final int HEADER_SIZE = 12;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final FileChannel lockChannel;
+    private final FileLock fileLock;
+    // creates segments, flushes the sealed ones and compacts the oldest ones
+    private final ExecutorService background;
+
+    private final ConcurrentHashMap<String, Location> index = new ConcurrentHashMap<>();
+    // a lock rather than synchronized, which would pin the virtual threads waiting for it
+    private final ReentrantLock lock = new ReentrantLock();
+    // guarded by lock, by id
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private Segment active;
+    // the segment that takes the place of the active one when it is full, null until it is created
+    private Segment next;
+    private boolean creatingNext = false;
+    private int nextId = 1;
+    private long weight = 0;
+    private boolean compacting = false;
+    private boolean closed = false;
+
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+
+    /**
+     * @param maxBytes maximum size of the segment files, in bytes
+     */
+    public DiskCacheStore(Path directory, long maxBytes) {
+        this(directory, maxBytes, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param maxBytes    maximum size of the segment files, in bytes, at least two segments are kept
+     * @param segmentSize size of each segment file, entries bigger than a segment are not stored
+     */
+    public DiskCacheStore(Path directory, long maxBytes, int segmentSize) {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.max(2, Math.min(Integer.MAX_VALUE, maxBytes / segmentSize));
+        this.background = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rest-client-cache-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Files.createDirectories(directory);
+            lockChannel = FileChannel.open(directory.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            fileLock = tryLock(lockChannel);
+            if (fileLock == null) {
+                lockChannel.close();
+                throw new IllegalStateException("Cache directory already in use: " + directory);
+            }
+            recover();
+        } catch (IOException e) {
+            background.shutdown();
+            throw new RuntimeException(e);
+        }
+        lock.lock();
+        try {
+            createNext();
+            scheduleCompaction();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // locked by another store of this process
+            return null;
+        }
+    }
+
+    /**
+     * Rebuild the index from the segment files.
+     */
+    private void recover() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    ids.add(Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        Collections.sort(ids);
+        for (int id : ids) {
+            Segment segment = map(id, false);
+            segments.put(id, segment);
+            replay(segment);
+            active = segment;
+            nextId = id + 1;
+        }
+        if (active == null || active.position + HEADER_SIZE >= active.buffer.capacity()) {
+            roll();
+        }
+    }
+
+    private void replay(Segment segment) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int position = 0;
+        while (position + HEADER_SIZE <= buffer.capacity()) {
+            int magic = buffer.getInt(position);
+            int length = buffer.getInt(position + 4);
+            if (magic != MAGIC || length <= 0 || length > buffer.capacity() - position - HEADER_SIZE) {
+                break;
+            }
+            ByteBuffer content = slice(buffer, position + HEADER_SIZE, length);
+            if (crc(content.duplicate()) != buffer.getInt(position + 8)) {
+                break;
+            }
+            byte type = content.get();
+            String key = getString(content);
+            Location location = new Location(segment, position, HEADER_SIZE + length);
+            if (type == PUT) {
+                index(key, location);
+            } else {
+                unindex(key);
+            }
+            position += HEADER_SIZE + length;
+        }
+        segment.position = position;
+        // clear what is left of a torn record, so the records appended over it are not followed by garbage
+        for (int i = position; i < buffer.capacity() && i < position + HEADER_SIZE; i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    @Override
+    public CacheEntry get(String key) {
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        location.accessed = true;
+        ByteBuffer content = slice(location.segment.buffer, location.offset + HEADER_SIZE, location.length - HEADER_SIZE);
+        content.get(); // type
+        if (!key.equals(getString(content))) {
+            return null;
+        }
+        String uri = getString(content);
+        int status = content.getInt();
+        String statusText = getString(content);
+        long requestTime = content.getLong();
+        long responseTime = content.getLong();
+        int headerCount = content.getInt();
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < headerCount; i++) {
+            String name = getString(content);
+            int valueCount = content.getInt();
+            List<String> values = new ArrayList<>(valueCount);
+            for (int j = 0; j < valueCount; j++) {
+                values.add(getString(content));
+            }
+            headers.put(name, values);
+        }
+        int varyCount = content.getInt();
+        Map<String, String> varyValues = new TreeMap<>();
+        for (int i = 0; i < varyCount; i++) {
+            varyValues.put(getString(content), getString(content));
+        }
+        int bodyLength = content.getInt();
+        ByteBuffer body = slice(content, content.position(), bodyLength);
+        return new CacheEntry(uri, status, statusText, headers, body, requestTime, responseTime, varyValues);
+    }
+
+    /**
+     * Mark the entry as read, so the compaction keeps it.
+     */
+    @Override
+    public void touch(String key) {
+        Location location = index.get(key);
+        if (location != null) {
+            location.accessed = true;
+        }
+    }
+
+    @Override
+    public void put(String key, CacheEntry entry) {
+        byte[] metadata = metadata(key, entry);
+        ByteBuffer body = entry.getBody();
+        int length = 1 + metadata.length + 4 + body.remaining();
+        if ((long) HEADER_SIZE + length > segmentSize) {
+            remove(key);
+            return;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(PUT);
+        crc.update(metadata);
+        crc.update(intBytes(body.remaining()));
+        crc.update(body.duplicate());
+
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            Location location = append(length, (int) crc.getValue(), false, out -> {
+                out.put(PUT).put(metadata).putInt(body.remaining()).put(body.duplicate());
+            });
+            if (location != null) {
+                index(key, location);
+            } else {
+                // the entry stored is older than the one that could not be
+                unindex(key);
+                createNext();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove an entry. The tombstone written is never dropped: if the active segment is full and the next one is not
+     * ready yet, it is created on the caller's thread.
+     */
+    @Override
+    public void remove(String key) {
+        if (!index.containsKey(key)) {
+            return;
+        }
+        byte[] metadata = stringBytes(key);
+        CRC32 crc = new CRC32();
+        crc.update(REMOVE);
+        crc.update(metadata);
+        lock.lock();
+        try {
+            if (closed || unindex(key) == null) {
+                return;
+            }
+            // the tombstone keeps the entry removed after a restart
+            append(1 + metadata.length, (int) crc.getValue(), true, out -> out.put(REMOVE).put(metadata));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Append a record to the active segment, moving on to the next one if it does not fit. The magic number is
+     * written last, so a record is only valid once it is complete.
+     *
+     * @param create whether to create the next segment on this thread if it is needed but not ready
+     * @return the location of the record, or null if it did not fit.
+     */
+    private Location append(int length, int crc, boolean create, Consumer<ByteBuffer> writer) {
+        if (active.position + HEADER_SIZE + length > active.buffer.capacity()) {
+            if (next == null && !create) {
+                return null;
+            }
+            roll();
+        }
+        int offset = active.position;
+        ByteBuffer out = active.buffer.duplicate();
+        out.position(offset + 4);
+        out.putInt(length).putInt(crc);
+        writer.accept(out);
+        if (out.position() + HEADER_SIZE <= out.capacity()) {
+            // end marker for the replay
+            out.putInt(out.position(), 0);
+        }
+        out.putInt(offset, MAGIC);
+        active.position = offset + HEADER_SIZE + length;
+        return new Location(active, offset, HEADER_SIZE + length);
+    }
+
+    /**
+     * Seal the active segment and start the next one, which is created right away if it is not ready. The sealed
+     * segment is written to the disk in the background.
+     */
+    private void roll() {
+        Segment sealed = active;
+        if (next != null) {
+            active = next;
+            next = null;
+        } else {
+            try {
+                active = map(nextId++, true);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        segments.put(active.id, active);
+        if (sealed != null) {
+            background.execute(sealed.buffer::force);
+        }
+        createNext();
+        scheduleCompaction();
+    }
+
+    /**
+     * Create the next segment in the background, unless it exists or is being created.
+     */
+    private void createNext() {
+        if (next == null && !creatingNext && !closed) {
+            creatingNext = true;
+            background.execute(this::createNextSegment);
+        }
+    }
+
+    private void createNextSegment() {
+        int id;
+        lock.lock();
+        try {
+            if (closed) {
+                creatingNext = false;
+                return;
+            }
+            id = nextId++;
+        } finally {
+            lock.unlock();
+        }
+        Segment segment;
+        try {
+            segment = map(id, true);
+        } catch (IOException e) {
+            // tried again by the next put that does not fit
+            lock.lock();
+            try {
+                creatingNext = false;
+            } finally {
+                lock.unlock();
+            }
+            return;
+        }
+        lock.lock();
+        try {
+            creatingNext = false;
+            if (closed || segment.id < active.id) {
+                // a remove or the compaction created a segment meanwhile, the records must stay in order
+                delete(segment.file);
+                createNext();
+            } else {
+                next = segment;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Segment map(int id, boolean create) throws IOException {
+        Path file = directory.resolve(String.format("%08d%s", id, SEGMENT_SUFFIX));
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            if (create) {
+                raf.setLength(segmentSize);
+            }
+            // the mapping stays valid once the file is closed
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            return new Segment(id, file, buffer);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            // readers may still hold views of the mapped file, it is unmapped when they are collected
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    private void scheduleCompaction() {
+        if (!compacting && !closed && segments.size() > maxSegments) {
+            compacting = true;
+            background.execute(this::compact);
+        }
+    }
+
+    /**
+     * Compact the oldest segment, and schedule the compaction of the next one if there are still too many. One
+     * segment is compacted at a time, so the creation of the next segment does not wait for the others.
+     */
+    private void compact() {
+        Segment oldest;
+        lock.lock();
+        try {
+            if (closed || segments.size() <= maxSegments) {
+                compacting = false;
+                return;
+            }
+            oldest = segments.firstEntry().getValue();
+        } finally {
+            lock.unlock();
+        }
+        if (!compact(oldest)) {
+            return;
+        }
+        lock.lock();
+        try {
+            segments.remove(oldest.id);
+            compactions.increment();
+        } finally {
+            lock.unlock();
+        }
+        delete(oldest.file);
+        lock.lock();
+        try {
+            compacting = false;
+            scheduleCompaction();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return false if the store was closed before the segment was compacted.
+     */
+    private boolean compact(Segment segment) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int position = 0;
+        while (position < segment.position) {
+            int length = buffer.getInt(position + 4);
+            ByteBuffer content = slice(buffer, position + HEADER_SIZE, length);
+            int crc = buffer.getInt(position + 8);
+            content.get();
+            String key = getString(content);
+            lock.lock();
+            try {
+                if (closed) {
+                    return false;
+                }
+                Location location = index.get(key);
+                if (location != null && location.segment == segment && location.offset == position) {
+                    if (location.accessed) {
+                        // second chance, copied as is with its CRC
+                        ByteBuffer record = slice(buffer, position + HEADER_SIZE, length);
+                        Location copy = append(length, crc, true, out -> out.put(record));
+                        index(key, copy);
+                    } else {
+                        unindex(key);
+                        evictions.increment();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            position += HEADER_SIZE + length;
+        }
+        return true;
+    }
+
+    private void index(String key, Location location) {
+        Location previous = index.put(key, location);
+        if (previous != null) {
+            weight -= previous.length;
+        }
+        weight += location.length;
+    }
+
+    private Location unindex(String key) {
+        Location previous = index.remove(key);
+        if (previous != null) {
+            weight -= previous.length;
+        }
+        return previous;
+    }
+
+    /**
+     * Write the active segment to the disk, so the entries stored survive a crash of the operating system. A
+     * crash of the process does not lose them, they are written to the mapped file.
+     */
+    public void sync() {
+        Segment segment;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            segment = active;
+        } finally {
+            lock.unlock();
+        }
+        segment.buffer.force();
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the size of the records of the entries stored, in bytes.
+     */
+    @Override
+    public long getWeight() {
+        lock.lock();
+        try {
+            return weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of segments compacted.
+     */
+    public long getCompactions() {
+        return compactions.sum();
+    }
+
+    public int getSegmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Wait for the tasks given to the background thread so far, such as the creation of the next segment.
+     */
+    void awaitBackgroundTasks() throws Exception {
+        background.submit(() -> {
+        }).get();
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        background.shutdown();
+        try {
+            background.awaitTermination(10, TimeUnit.SECONDS);
+            lock.lock();
+            try {
+                active.buffer.force();
+                if (next != null) {
+                    delete(next.file);
+                    next = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+            fileLock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] metadata(String key, CacheEntry entry) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(stringBytes(key));
+            out.write(stringBytes(entry.getUri()));
+            out.writeInt(entry.getStatus());
+            out.write(stringBytes(entry.getStatusText()));
+            out.writeLong(entry.getRequestTime());
+            out.writeLong(entry.getResponseTime());
+            out.writeInt(entry.getHeaders().size());
+            for (Map.Entry<String, List<String>> header : entry.getHeaders().entrySet()) {
+                out.write(stringBytes(header.getKey()));
+                out.writeInt(header.getValue().size());
+                for (String value : header.getValue()) {
+                    out.write(stringBytes(value));
+                }
+            }
+            out.writeInt(entry.getVaryValues().size());
+            for (Map.Entry<String, String> vary : entry.getVaryValues().entrySet()) {
+                out.write(stringBytes(vary.getKey()));
+                out.write(stringBytes(vary.getValue()));
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the length and UTF-8 bytes of the string, an empty string if it is null.
+     */
+    private static byte[] stringBytes(String value) {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(4 + bytes.length).putInt(bytes.length).put(bytes).array();
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] intBytes(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+
+    private static int crc(ByteBuffer content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return (int) crc.getValue();
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        return slice.slice();
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path file;
+        final MappedByteBuffer buffer;
+        // guarded by the store, where the next record is appended
+        int position;
+
+        Segment(int id, Path file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Location {
+        final Segment segment;
+        final int offset;
+        final int length;
+        // read since it was written, kept by the compaction
+        volatile boolean accessed;
+
+        Location(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
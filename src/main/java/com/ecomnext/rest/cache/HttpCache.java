@@ -0,0 +1,335 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.cache;
+
+import com.ecomnext.rest.RestAuthScheme;
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.utils.Futures;
+import com.ecomnext.rest.utils.RequestKeys;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * HTTP cache following RFC 7234 for the GET requests of a client. Fresh responses are served from the
+ * {@link CacheStore} without I/O; stale responses with an ETag or Last-Modified header are revalidated with a
+ * conditional request and served from the store if the server answers 304 Not Modified. Responses allowing it
+ * with stale-while-revalidate are served stale while they are revalidated in the background.
+ * <p>
+ * The cache honors the max-age, no-store, no-cache, must-revalidate, private and s-maxage directives, Expires and
+ * Vary. By default it is a private cache, which ignores s-maxage; a shared cache uses s-maxage and does not store
+ * private responses. Responses to requests with credentials are only returned to requests with the same
+ * credentials. Successful POST, PUT, PATCH and DELETE requests invalidate the response stored for their URL.
+ */
+public class HttpCache {
+    private static final Set<String> UNSAFE_METHODS = new HashSet<>(Arrays.asList("POST", "PUT", "PATCH", "DELETE"));
+    private static final String[] CONDITIONAL_HEADERS = {
+            "If-Match", "If-None-Match", "If-Modified-Since", "If-Unmodified-Since", "If-Range", "Range"};
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final CacheStore store;
+    private final boolean shared;
+    private final ConcurrentMap<String, Boolean> revalidating = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * A private cache keeping up to the given bytes in memory.
+     */
+    public HttpCache(long maxBytes) {
+        this(new MemoryCacheStore(maxBytes), false);
+    }
+
+    /**
+     * A private cache keeping the responses in the given store.
+     */
+    public HttpCache(CacheStore store) {
+        this(store, false);
+    }
+
+    /**
+     * @param store  where the responses are stored
+     * @param shared true for the rules of a shared cache, false for a private cache
+     */
+    public HttpCache(CacheStore store, boolean shared) {
+        this.store = store;
+        this.shared = shared;
+    }
+
+    /**
+     * Execute a request through the cache.
+     *
+     * @param username the user of the request, null if it has no credentials
+     * @param password the password of the user, null if it has no credentials
+     * @param scheme   the authentication scheme of the user, null if it has no credentials
+     * @param send     sends the request with the given additional headers, used for conditional requests
+     */
+    public CompletableFuture<RestResponse> execute(String method, String url,
+                                                   Map<String, Collection<String>> queryParameters,
+                                                   Map<String, Collection<String>> headers, String username,
+                                                   String password, RestAuthScheme scheme,
+                                                   Function<Map<String, String>, CompletableFuture<RestResponse>> send) {
+        if (UNSAFE_METHODS.contains(method)) {
+            String key = key(url, queryParameters, headers, username, password, scheme);
+            CompletableFuture<RestResponse> sent = send.apply(Collections.emptyMap());
+            return Futures.propagateCancel(sent.thenApply(response -> {
+                if (response.getStatus() < 400) {
+                    store.remove(key);
+                    invalidations.increment();
+                }
+                return response;
+            }), sent);
+        }
+        CacheControl requestCacheControl = requestCacheControl(headers);
+        if (!"GET".equals(method) || requestCacheControl.isNoStore() || isConditional(headers)) {
+            return send.apply(Collections.emptyMap());
+        }
+
+        String key = key(url, queryParameters, headers, username, password, scheme);
+        long now = System.currentTimeMillis();
+        CacheEntry entry = store.get(key);
+        if (entry != null && !entry.matches(varyValues(entry.getVaryValues().keySet(), headers))) {
+            entry = null;
+        }
+
+        if (entry != null && !requestCacheControl.isNoCache()) {
+            boolean tooOld = requestCacheControl.getMaxAge() >= 0 && entry.getAge(now) > requestCacheControl.getMaxAge() * 1000;
+            if (!tooOld && entry.isFresh(now, shared)) {
+                hits.increment();
+                return CompletableFuture.completedFuture(new CachedResponse(entry, now));
+            }
+            if (!tooOld && entry.isStaleWhileRevalidate(now, shared)) {
+                staleHits.increment();
+                if (revalidating.putIfAbsent(key, Boolean.TRUE) == null) {
+                    fetch(key, entry, headers, send).whenComplete((response, failure) -> {
+                        revalidating.remove(key);
+                        if (response != null) {
+                            response.release();
+                        }
+                    });
+                }
+                return CompletableFuture.completedFuture(new CachedResponse(entry, now));
+            }
+        }
+        return fetch(key, entry, headers, send);
+    }
+
+    /**
+     * Send the request, conditional if there is a stored entry to revalidate, and store the response.
+     */
+    private CompletableFuture<RestResponse> fetch(String key, CacheEntry entry, Map<String, Collection<String>> headers,
+                                                  Function<Map<String, String>, CompletableFuture<RestResponse>> send) {
+        Map<String, String> conditions = Collections.emptyMap();
+        if (entry != null && entry.isRevalidatable()) {
+            conditions = new HashMap<>(4);
+            if (entry.getHeader("ETag") != null) {
+                conditions.put("If-None-Match", entry.getHeader("ETag"));
+            }
+            if (entry.getHeader("Last-Modified") != null) {
+                conditions.put("If-Modified-Since", entry.getHeader("Last-Modified"));
+            }
+            revalidations.increment();
+        } else {
+            misses.increment();
+        }
+        boolean conditional = !conditions.isEmpty();
+        long requestTime = System.currentTimeMillis();
+        CompletableFuture<RestResponse> sent = send.apply(conditions);
+        return Futures.propagateCancel(sent.thenApply(response -> {
+            long responseTime = System.currentTimeMillis();
+            if (conditional && response.getStatus() == 304) {
+                notModified.increment();
+                CacheEntry revalidated = entry.revalidated(response.getAllHeaders(), requestTime, responseTime);
+                store.put(key, revalidated);
+                response.release();
+                return new CachedResponse(revalidated, responseTime);
+            }
+            CacheEntry stored = toEntry(response, headers, requestTime, responseTime);
+            if (stored != null) {
+                store.put(key, stored);
+                stores.increment();
+            } else if (entry != null && response.getStatus() < 500) {
+                store.remove(key);
+            }
+            return response;
+        }), sent);
+    }
+
+    /**
+     * @return the entry to store for the response, or null if it must not be stored.
+     */
+    private CacheEntry toEntry(RestResponse response, Map<String, Collection<String>> headers, long requestTime,
+                               long responseTime) {
+        int status = response.getStatus();
+        if (status == 206 || status == 304 || status < 200) {
+            return null;
+        }
+        List<String> cacheControlValues = response.getAllHeaders().get("Cache-Control");
+        CacheControl cacheControl = CacheControl.parse(cacheControlValues);
+        if (cacheControl.isNoStore() || (shared && cacheControl.isPrivate())) {
+            return null;
+        }
+        if (shared && RequestKeys.header(headers, "Authorization") != null
+                && !cacheControl.isPublic() && !cacheControl.isMustRevalidate() && cacheControl.getSMaxAge() < 0) {
+            return null;
+        }
+        Set<String> varyNames = new TreeSet<>();
+        List<String> vary = response.getAllHeaders().get("Vary");
+        if (vary != null) {
+            for (String value : vary) {
+                for (String name : value.split(",")) {
+                    name = name.trim().toLowerCase(Locale.ENGLISH);
+                    if (name.equals("*")) {
+                        return null;
+                    }
+                    if (!name.isEmpty()) {
+                        varyNames.add(name);
+                    }
+                }
+            }
+        }
+
+        // decide from the headers alone, the body is only copied for the responses stored
+        CacheEntry entry = new CacheEntry(response.getUri().toString(), status, response.getStatusText(),
+                response.getAllHeaders(), EMPTY, requestTime, responseTime, varyValues(varyNames, headers));
+        return entry.isStorable(shared) ? entry.withBody(ByteBuffer.wrap(response.asByteArray())) : null;
+    }
+
+    /**
+     * @return the values of the given request headers, by lower case name, for the Vary matching.
+     */
+    private static Map<String, String> varyValues(Collection<String> names, Map<String, Collection<String>> headers) {
+        if (names.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> values = new TreeMap<>();
+        for (String name : names) {
+            String value = RequestKeys.header(headers, name);
+            values.put(name, value == null ? "" : value.trim());
+        }
+        return values;
+    }
+
+    private static CacheControl requestCacheControl(Map<String, Collection<String>> headers) {
+        List<String> values = new ArrayList<>(2);
+        String cacheControl = RequestKeys.header(headers, "Cache-Control");
+        if (cacheControl != null) {
+            values.add(cacheControl);
+        }
+        String pragma = RequestKeys.header(headers, "Pragma");
+        if (cacheControl == null && pragma != null && pragma.toLowerCase(Locale.ENGLISH).contains("no-cache")) {
+            values.add("no-cache");
+        }
+        return CacheControl.parse(values);
+    }
+
+    private static boolean isConditional(Map<String, Collection<String>> headers) {
+        for (String name : CONDITIONAL_HEADERS) {
+            if (RequestKeys.header(headers, name) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the key of the request: its URL with sorted query parameters and a digest of its credentials.
+     */
+    static String key(String url, Map<String, Collection<String>> queryParameters, Map<String, Collection<String>> headers,
+                      String username, String password, RestAuthScheme scheme) {
+        StringBuilder key = RequestKeys.appendUri(new StringBuilder(url.length() + 16), url, queryParameters);
+        String credentials = RequestKeys.credentials(username, password, scheme, headers);
+        if (credentials != null) {
+            key.append(" #").append(credentials);
+        }
+        return key.toString();
+    }
+
+    public CacheStore getStore() {
+        return store;
+    }
+
+    /**
+     * Close the store, releasing its files if it has them.
+     */
+    public void close() {
+        store.close();
+    }
+
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * @return the number of requests served with a fresh stored response, without I/O.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of requests served with a stale response while it was revalidated in the background.
+     */
+    public long getStaleHits() {
+        return staleHits.sum();
+    }
+
+    /**
+     * @return the number of requests sent because there was no stored response to revalidate.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of conditional requests sent to revalidate a stored response.
+     */
+    public long getRevalidations() {
+        return revalidations.sum();
+    }
+
+    /**
+     * @return the number of revalidations answered with 304 Not Modified and served from the store.
+     */
+    public long getNotModified() {
+        return notModified.sum();
+    }
+
+    /**
+     * @return the number of responses stored.
+     */
+    public long getStores() {
+        return stores.sum();
+    }
+
+    /**
+     * @return the number of stored responses invalidated by unsafe requests.
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+}
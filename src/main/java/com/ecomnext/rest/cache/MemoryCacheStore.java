@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Store keeping the entries in memory, evicting the least recently used ones when their total weight exceeds
+ * the maximum.
+ */
+public class MemoryCacheStore implements CacheStore {
+    private final long maxWeight;
+    // a lock rather than synchronized, which would pin the virtual threads waiting for it
+    private final ReentrantLock lock = new ReentrantLock();
+    // guarded by lock, in access order
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maxWeight maximum total weight of the entries, in bytes
+     */
+    public MemoryCacheStore(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    @Override
+    public CacheEntry get(String key) {
+        lock.lock();
+        try {
+            return entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void touch(String key) {
+        get(key);
+    }
+
+    @Override
+    public void put(String key, CacheEntry entry) {
+        lock.lock();
+        try {
+            long entryWeight = entry.getWeight();
+            if (entryWeight > maxWeight) {
+                remove(key);
+                return;
+            }
+            CacheEntry previous = entries.put(key, entry);
+            if (previous != null) {
+                weight -= previous.getWeight();
+            }
+            weight += entryWeight;
+
+            Iterator<Map.Entry<String, CacheEntry>> eldest = entries.entrySet().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                CacheEntry evicted = eldest.next().getValue();
+                if (evicted != entry) {
+                    eldest.remove();
+                    weight -= evicted.getWeight();
+                    evictions++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        lock.lock();
+        try {
+            CacheEntry removed = entries.remove(key);
+            if (removed != null) {
+                weight -= removed.getWeight();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getWeight() {
+        lock.lock();
+        try {
+            return weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getEvictions() {
+        lock.lock();
+        try {
+            return evictions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+}
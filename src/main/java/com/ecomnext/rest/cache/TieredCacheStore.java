@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.cache;
+
+/**
+ * Store with two tiers, usually a small {@link MemoryCacheStore} in front of a big {@link DiskCacheStore}. Entries
+ * are stored in both tiers and the entries found in the second tier are promoted to the first one. Entries found
+ * in the first tier are touched in the second one, so it keeps the entries in use. The size, weight and evictions
+ * are the ones of the second tier, which holds every entry.
+ */
+public class TieredCacheStore implements CacheStore {
+    private final CacheStore first;
+    private final CacheStore second;
+
+    public TieredCacheStore(CacheStore first, CacheStore second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public CacheEntry get(String key) {
+        CacheEntry entry = first.get(key);
+        if (entry == null) {
+            entry = second.get(key);
+            if (entry != null) {
+                first.put(key, entry);
+            }
+        } else {
+            second.touch(key);
+        }
+        return entry;
+    }
+
+    @Override
+    public void put(String key, CacheEntry entry) {
+        first.put(key, entry);
+        second.put(key, entry);
+    }
+
+    @Override
+    public void remove(String key) {
+        first.remove(key);
+        second.remove(key);
+    }
+
+    @Override
+    public void touch(String key) {
+        first.touch(key);
+        second.touch(key);
+    }
+
+    @Override
+    public int size() {
+        return second.size();
+    }
+
+    @Override
+    public long getWeight() {
+        return second.getWeight();
+    }
+
+    @Override
+    public long getEvictions() {
+        return second.getEvictions();
+    }
+
+    public CacheStore getFirst() {
+        return first;
+    }
+
+    public CacheStore getSecond() {
+        return second;
+    }
+
+    @Override
+    public void close() {
+        first.close();
+        second.close();
+    }
+}
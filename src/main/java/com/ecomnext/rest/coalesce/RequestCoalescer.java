@@ -0,0 +1,255 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.coalesce;
+
+import com.ecomnext.rest.RestAuthScheme;
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.utils.RequestKeys;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent GET and HEAD requests: while a request is in flight, identical requests wait for
+ * its response instead of being sent, so a burst of cache misses sends a single request. Requests are identical
+ * when they have the same method, URL, query parameters, credentials and values of the vary headers; the vary headers
+ * are by default the ones which usually change the response: Accept, Accept-Encoding, Accept-Language,
+ * Authorization and Cookie.
+ * <p>
+ * Every caller gets its own future. Cancelling it only stops waiting, the request is cancelled when every caller
+ * has cancelled. All the callers get the same {@link RestResponse}, which can be read any number of times. A
+ * reference counted response is retained once per caller, so every caller releases it as if it were its own.
+ */
+public class RequestCoalescer {
+    public static final List<String> DEFAULT_VARY_HEADERS = Collections.unmodifiableList(
+            Arrays.asList("Accept", "Accept-Encoding", "Accept-Language", "Authorization", "Cookie"));
+
+    // conditional and range requests get different responses, they are only coalesced with identical ones
+    private static final String[] CONDITIONAL_HEADERS = {
+            "if-match", "if-none-match", "if-modified-since", "if-unmodified-since", "if-range", "range"};
+
+    private final String[] varyHeaders;
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public RequestCoalescer() {
+        this(DEFAULT_VARY_HEADERS);
+    }
+
+    /**
+     * @param varyHeaders the headers whose values must match for requests to be coalesced, other headers are ignored
+     */
+    public RequestCoalescer(Collection<String> varyHeaders) {
+        TreeSet<String> names = new TreeSet<>();
+        for (String name : varyHeaders) {
+            names.add(name.toLowerCase(Locale.ENGLISH));
+        }
+        this.varyHeaders = names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * @return true if requests with the given method can be coalesced.
+     */
+    public boolean accepts(String method) {
+        return "GET".equals(method) || "HEAD".equals(method);
+    }
+
+    /**
+     * @return the key identifying the request: the method, the URL without query nor fragment, the query
+     * parameters sorted by name, a digest of the credentials and the values of the vary and conditional headers.
+     */
+    public String key(String method, String url, Map<String, Collection<String>> queryParameters,
+                      Map<String, Collection<String>> headers, String username, String password,
+                      RestAuthScheme scheme) {
+        StringBuilder key = new StringBuilder(url.length() + 64).append(method).append(' ');
+        RequestKeys.appendUri(key, url, queryParameters);
+        String credentials = RequestKeys.credentials(username, password, scheme, headers);
+        if (credentials != null) {
+            key.append("\ncredentials:").append(credentials);
+        }
+        for (String name : varyHeaders) {
+            appendHeader(key, headers, name);
+        }
+        for (String name : CONDITIONAL_HEADERS) {
+            appendHeader(key, headers, name);
+        }
+        return key.toString();
+    }
+
+    private static void appendHeader(StringBuilder key, Map<String, Collection<String>> headers, String name) {
+        String value = RequestKeys.header(headers, name);
+        if (value != null) {
+            key.append('\n').append(name).append(':').append(value);
+        }
+    }
+
+    /**
+     * Execute the request unless an identical one is in flight.
+     *
+     * @param key     the key of the request, see {@link #key}
+     * @param request sends the request
+     * @return a future for this caller only
+     */
+    public CompletableFuture<RestResponse> execute(String key, Supplier<CompletableFuture<RestResponse>> request) {
+        requests.increment();
+        while (true) {
+            Flight flight = flights.get(key);
+            if (flight == null) {
+                Flight leader = new Flight(key);
+                if (flights.putIfAbsent(key, leader) == null) {
+                    CompletableFuture<RestResponse> waiter = leader.join();
+                    leader.start(request);
+                    return waiter;
+                }
+            } else {
+                CompletableFuture<RestResponse> waiter = flight.join();
+                if (waiter != null) {
+                    coalesced.increment();
+                    return waiter;
+                }
+                // every caller cancelled it or it has completed, it is being removed
+                flights.remove(key, flight);
+            }
+        }
+    }
+
+    /**
+     * @return the number of requests executed through this coalescer.
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return the number of requests which waited for an identical request instead of being sent.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return the number of distinct requests in flight.
+     */
+    public int getInFlight() {
+        return flights.size();
+    }
+
+    private class Flight {
+        private final String key;
+        private final CompletableFuture<RestResponse> result = new CompletableFuture<>();
+        // guarded by this, the futures of the callers waiting; null once they have all cancelled or the request has
+        // completed, no caller can join afterwards
+        private List<CompletableFuture<RestResponse>> waiters = new ArrayList<>(2);
+        private volatile CompletableFuture<RestResponse> request;
+
+        Flight(String key) {
+            this.key = key;
+            result.whenComplete((response, failure) -> flights.remove(key, this));
+        }
+
+        void start(Supplier<CompletableFuture<RestResponse>> send) {
+            CompletableFuture<RestResponse> request;
+            try {
+                request = send.get();
+            } catch (RuntimeException e) {
+                complete(null, e);
+                return;
+            }
+            this.request = request;
+            if (result.isCancelled()) {
+                request.cancel(true);
+            }
+            request.whenComplete(this::complete);
+        }
+
+        /**
+         * @return a future for a new caller, or null if every caller has cancelled or the request has completed.
+         */
+        synchronized CompletableFuture<RestResponse> join() {
+            if (waiters == null) {
+                return null;
+            }
+            CompletableFuture<RestResponse> waiter = new CompletableFuture<RestResponse>() {
+                @Override
+                public boolean cancel(boolean mayInterruptIfRunning) {
+                    boolean cancelled = super.cancel(mayInterruptIfRunning);
+                    if (cancelled) {
+                        leave(this);
+                    }
+                    return cancelled;
+                }
+            };
+            waiters.add(waiter);
+            return waiter;
+        }
+
+        /**
+         * Hand the response to every caller waiting, retained once per caller.
+         */
+        private void complete(RestResponse response, Throwable failure) {
+            List<CompletableFuture<RestResponse>> waiting;
+            synchronized (this) {
+                waiting = waiters;
+                waiters = null;
+            }
+            if (failure != null) {
+                result.completeExceptionally(failure);
+                if (waiting != null) {
+                    for (CompletableFuture<RestResponse> waiter : waiting) {
+                        waiter.completeExceptionally(failure);
+                    }
+                }
+                return;
+            }
+            if (waiting != null) {
+                for (CompletableFuture<RestResponse> waiter : waiting) {
+                    if (response != null) {
+                        response.retain();
+                    }
+                    if (!waiter.complete(response) && response != null) {
+                        // cancelled meanwhile
+                        response.release();
+                    }
+                }
+            }
+            // the reference of the request
+            if (response != null) {
+                response.release();
+            }
+            result.complete(response);
+        }
+
+        private void leave(CompletableFuture<RestResponse> waiter) {
+            synchronized (this) {
+                if (waiters == null || !waiters.remove(waiter) || !waiters.isEmpty()) {
+                    return;
+                }
+                waiters = null;
+            }
+            flights.remove(key, this);
+            result.cancel(true);
+            CompletableFuture<RestResponse> request = this.request;
+            if (request != null) {
+                request.cancel(true);
+            }
+        }
+    }
+}
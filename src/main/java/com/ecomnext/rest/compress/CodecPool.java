@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.compress;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps idle {@link Deflater}s and {@link Inflater}s to reuse them. Each of them holds a zlib stream in native memory,
+ * of about 256KiB for a deflater, which is only freed by {@code end()} or once it is garbage collected: creating one
+ * per request churns native memory the garbage collector does not see.
+ * <p>
+ * At most {@code maxIdle} of every kind are kept, the others are ended when they are given back.
+ */
+public class CodecPool {
+    private static final CodecPool SHARED = new CodecPool(4 * Runtime.getRuntime().availableProcessors());
+
+    // nowrap deflaters and inflaters handle raw deflate streams, for gzip, the others zlib streams
+    private final BlockingQueue<Deflater> rawDeflaters;
+    private final BlockingQueue<Deflater> zlibDeflaters;
+    private final BlockingQueue<Inflater> rawInflaters;
+    private final BlockingQueue<Inflater> zlibInflaters;
+    private final LongAdder created = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+
+    /**
+     * @param maxIdle the number of idle deflaters and inflaters of every kind kept
+     */
+    public CodecPool(int maxIdle) {
+        if (maxIdle < 1) {
+            throw new IllegalArgumentException("At least one idle codec must be kept: " + maxIdle);
+        }
+        this.rawDeflaters = new ArrayBlockingQueue<>(maxIdle);
+        this.zlibDeflaters = new ArrayBlockingQueue<>(maxIdle);
+        this.rawInflaters = new ArrayBlockingQueue<>(maxIdle);
+        this.zlibInflaters = new ArrayBlockingQueue<>(maxIdle);
+    }
+
+    /**
+     * @return the pool used by default, keeping 4 idle codecs of every kind per core.
+     */
+    public static CodecPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param nowrap true for a raw deflate stream, false for the zlib format
+     * @return a deflater, which must be given back with {@link #release(Deflater, boolean)}.
+     */
+    public Deflater deflater(int level, boolean nowrap) {
+        Deflater deflater = (nowrap ? rawDeflaters : zlibDeflaters).poll();
+        if (deflater == null) {
+            created.increment();
+            return new Deflater(level, nowrap);
+        }
+        reused.increment();
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    public void release(Deflater deflater, boolean nowrap) {
+        deflater.reset();
+        if (!(nowrap ? rawDeflaters : zlibDeflaters).offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param nowrap true for a raw deflate stream, false for the zlib format
+     * @return an inflater, which must be given back with {@link #release(Inflater, boolean)}.
+     */
+    public Inflater inflater(boolean nowrap) {
+        Inflater inflater = (nowrap ? rawInflaters : zlibInflaters).poll();
+        if (inflater == null) {
+            created.increment();
+            return new Inflater(nowrap);
+        }
+        reused.increment();
+        return inflater;
+    }
+
+    public void release(Inflater inflater, boolean nowrap) {
+        inflater.reset();
+        if (!(nowrap ? rawInflaters : zlibInflaters).offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return the number of deflaters and inflaters created by this pool.
+     */
+    public long getCreated() {
+        return created.sum();
+    }
+
+    /**
+     * @return the number of times an idle deflater or inflater was reused.
+     */
+    public long getReused() {
+        return reused.sum();
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.compress;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the bodies of requests and decompresses the bodies of responses. Create policies with
+ * {@link #builder()} and set them on the client, or on a single request.
+ * <p>
+ * String and JSON bodies of at least the threshold size are compressed, unless the request already has a
+ * Content-Encoding header, and sent with the compressed size if it is smaller. They are compressed by the calling
+ * thread, or by the executor of the policy if it has one. Stream and file bodies are sent as they are.
+ * <p>
+ * Responses are asked for in gzip or deflate and decompressed part by part as they arrive, streamed ones included.
+ * The Content-Encoding and Content-Length headers of a decompressed response are removed.
+ */
+public class CompressionPolicy {
+    /**
+     * A policy which neither compresses requests nor decompresses responses, to disable the compression of the
+     * client on a single request.
+     */
+    public static final CompressionPolicy NONE = builder().compressRequests(false).decompressResponses(false).build();
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    private final ContentEncoding encoding;
+    private final int threshold;
+    private final int level;
+    private final boolean compressRequests;
+    private final boolean decompressResponses;
+    private final Executor executor;
+    private final CodecPool pool;
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    private CompressionPolicy(Builder builder) {
+        this.encoding = builder.encoding;
+        this.threshold = builder.threshold;
+        this.level = builder.level;
+        this.compressRequests = builder.compressRequests;
+        this.decompressResponses = builder.decompressResponses;
+        this.executor = builder.executor;
+        this.pool = builder.pool;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return whether a request body of the given length is compressed.
+     */
+    public boolean accepts(int length) {
+        return compressRequests && length >= threshold;
+    }
+
+    /**
+     * Compress a request body with the encoding of this policy.
+     *
+     * @return the compressed body, or null if it is not smaller than the body.
+     */
+    public byte[] compress(byte[] body) {
+        boolean gzip = encoding == ContentEncoding.GZIP;
+        Deflater deflater = pool.deflater(level, gzip);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            // text usually shrinks to well under half of its size, the array grows if it does not
+            byte[] out = new byte[Math.max(64, body.length / 2)];
+            int length = 0;
+            if (gzip) {
+                System.arraycopy(GZIP_HEADER, 0, out, 0, GZIP_HEADER.length);
+                length = GZIP_HEADER.length;
+            }
+            while (!deflater.finished()) {
+                if (length == out.length) {
+                    if (length >= body.length) {
+                        return null;
+                    }
+                    out = Arrays.copyOf(out, Math.min(2 * out.length, body.length));
+                }
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            if (gzip) {
+                if (length + GZIP_TRAILER_LENGTH > out.length) {
+                    out = Arrays.copyOf(out, length + GZIP_TRAILER_LENGTH);
+                }
+                CRC32 crc = new CRC32();
+                crc.update(body, 0, body.length);
+                writeIntLE(out, length, (int) crc.getValue());
+                writeIntLE(out, length + 4, body.length);
+                length += GZIP_TRAILER_LENGTH;
+            }
+            if (length >= body.length) {
+                return null;
+            }
+            compressed.increment();
+            bytesIn.add(body.length);
+            bytesOut.add(length);
+            return length == out.length ? out : Arrays.copyOf(out, length);
+        } finally {
+            pool.release(deflater, gzip);
+        }
+    }
+
+    private static void writeIntLE(byte[] out, int offset, int value) {
+        out[offset] = (byte) value;
+        out[offset + 1] = (byte) (value >>> 8);
+        out[offset + 2] = (byte) (value >>> 16);
+        out[offset + 3] = (byte) (value >>> 24);
+    }
+
+    /**
+     * @return a decoder of a response body with the given Content-Encoding, or null if responses are not
+     * decompressed or the encoding is not supported.
+     */
+    public StreamingDecoder decoder(String contentEncoding) {
+        ContentEncoding responseEncoding = ContentEncoding.of(contentEncoding);
+        if (!decompressResponses || responseEncoding == null) {
+            return null;
+        }
+        return new StreamingDecoder(responseEncoding, pool);
+    }
+
+    public ContentEncoding getEncoding() {
+        return encoding;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public boolean isCompressRequests() {
+        return compressRequests;
+    }
+
+    public boolean isDecompressResponses() {
+        return decompressResponses;
+    }
+
+    /**
+     * @return the executor compressing the request bodies, null to compress them on the calling thread.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return the number of request bodies compressed.
+     */
+    public long getCompressed() {
+        return compressed.sum();
+    }
+
+    /**
+     * @return the ratio of the compressed size to the original size of the request bodies compressed, or 1 if
+     * there was none.
+     */
+    public double getCompressionRatio() {
+        long in = bytesIn.sum();
+        return in == 0 ? 1 : (double) bytesOut.sum() / in;
+    }
+
+    public static class Builder {
+        private ContentEncoding encoding = ContentEncoding.GZIP;
+        private int threshold = 1024;
+        private int level = Deflater.DEFAULT_COMPRESSION;
+        private boolean compressRequests = true;
+        private boolean decompressResponses = true;
+        private Executor executor;
+        private CodecPool pool = CodecPool.shared();
+
+        private Builder() {
+        }
+
+        /**
+         * Encoding of the request bodies, gzip by default.
+         */
+        public Builder encoding(ContentEncoding encoding) {
+            this.encoding = encoding;
+            return this;
+        }
+
+        /**
+         * Size in bytes from which request bodies are compressed, 1024 by default. Smaller bodies gain little and
+         * may even grow.
+         */
+        public Builder threshold(int threshold) {
+            if (threshold < 0) {
+                throw new IllegalArgumentException("The threshold cannot be negative: " + threshold);
+            }
+            this.threshold = threshold;
+            return this;
+        }
+
+        /**
+         * Compression level from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}, the default
+         * level of zlib by default.
+         */
+        public Builder level(int level) {
+            if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+                throw new IllegalArgumentException("Invalid compression level: " + level);
+            }
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * Whether to compress request bodies, true by default.
+         */
+        public Builder compressRequests(boolean compressRequests) {
+            this.compressRequests = compressRequests;
+            return this;
+        }
+
+        /**
+         * Whether to ask for compressed responses and decompress them, true by default.
+         */
+        public Builder decompressResponses(boolean decompressResponses) {
+            this.decompressResponses = decompressResponses;
+            return this;
+        }
+
+        /**
+         * Compress request bodies with this executor instead of the calling thread, to keep large bodies from
+         * holding up callers such as event loops.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Pool of the deflaters and inflaters, {@link CodecPool#shared()} by default.
+         */
+        public Builder pool(CodecPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        public CompressionPolicy build() {
+            return new CompressionPolicy(this);
+        }
+    }
+}
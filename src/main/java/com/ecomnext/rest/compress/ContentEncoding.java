@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.compress;
+
+import java.util.Locale;
+
+/**
+ * The content codings the client compresses request bodies with and decompresses responses of.
+ */
+public enum ContentEncoding {
+    /**
+     * A gzip member: a deflate stream with a header and a CRC-32 trailer.
+     */
+    GZIP("gzip"),
+    /**
+     * A deflate stream in the zlib format, with an Adler-32 trailer. Raw deflate streams, sent by some servers
+     * instead, are decompressed as well.
+     */
+    DEFLATE("deflate");
+
+    private final String token;
+
+    ContentEncoding(String token) {
+        this.token = token;
+    }
+
+    /**
+     * @return the value of the Content-Encoding header.
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return the encoding of the given Content-Encoding header, or null if it is absent, identity or not supported,
+     * e.g. several encodings applied in turn.
+     */
+    public static ContentEncoding of(String contentEncoding) {
+        if (contentEncoding == null) {
+            return null;
+        }
+        switch (contentEncoding.trim().toLowerCase(Locale.ROOT)) {
+            case "gzip":
+            case "x-gzip":
+                return GZIP;
+            case "deflate":
+                return DEFLATE;
+            default:
+                return null;
+        }
+    }
+}
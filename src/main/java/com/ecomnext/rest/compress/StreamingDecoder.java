@@ -0,0 +1,310 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.compress;
+
+import com.ecomnext.rest.RestBodyConsumer;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a response body part by part as it arrives, instead of once it has been buffered. Every part is
+ * inflated right away and handed on in chunks of at most 8KiB, each in a new array.
+ * <p>
+ * Gzip bodies may hold several members, bytes after the last one are ignored as by
+ * {@link java.util.zip.GZIPInputStream}. Deflate bodies are read in the zlib format, or as raw deflate streams if they
+ * do not start with a zlib header.
+ * <p>
+ * A decoder is used by one response and must be closed to give its inflater back to the pool. It may be closed from
+ * another thread, e.g. when the request times out, parts decoded afterwards are dropped.
+ */
+public class StreamingDecoder implements AutoCloseable {
+    private static final int CHUNK_SIZE = 8192;
+    private static final int GZIP_HEADER_LENGTH = 10;
+    private static final int GZIP_TRAILER_LENGTH = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private enum State {
+        HEADER, EXTRA_LENGTH, EXTRA, NAME, COMMENT, HEADER_CRC, BODY, TRAILER, DONE
+    }
+
+    private final ContentEncoding encoding;
+    private final CodecPool pool;
+    private final CRC32 crc = new CRC32();
+    // header and trailer bytes collected across parts
+    private final byte[] buffer = new byte[GZIP_HEADER_LENGTH];
+    private Inflater inflater;
+    private boolean nowrap;
+    private State state = State.HEADER;
+    private int collected;
+    private int flags;
+    private int skip;
+    private int members;
+    private long received;
+    private byte[] chunk;
+    private int chunkLength;
+    private byte[] copy;
+    private boolean closed;
+
+    StreamingDecoder(ContentEncoding encoding, CodecPool pool) {
+        this.encoding = encoding;
+        this.pool = pool;
+    }
+
+    public ContentEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Decompress a part of the body.
+     *
+     * @param part the compressed bytes, which are all consumed.
+     * @param out  receives the decompressed chunks.
+     * @throws ZipException if the body is not valid.
+     */
+    public synchronized void decode(ByteBuffer part, RestBodyConsumer out) throws Exception {
+        if (closed) {
+            return;
+        }
+        int length = part.remaining();
+        byte[] input;
+        int offset;
+        if (part.hasArray()) {
+            input = part.array();
+            offset = part.arrayOffset() + part.position();
+        } else {
+            if (copy == null || copy.length < length) {
+                copy = new byte[Math.max(length, CHUNK_SIZE)];
+            }
+            part.duplicate().get(copy, 0, length);
+            input = copy;
+            offset = 0;
+        }
+        received += length;
+        int end = offset + length;
+        while (offset < end) {
+            switch (state) {
+                case BODY:
+                    offset = end - inflate(input, offset, end - offset, out);
+                    if (inflater.finished()) {
+                        state = encoding == ContentEncoding.GZIP ? State.TRAILER : State.DONE;
+                    }
+                    break;
+                case TRAILER:
+                    offset = readTrailer(input, offset, end);
+                    break;
+                case DONE:
+                    if (encoding == ContentEncoding.GZIP && members > 0) {
+                        // another member follows
+                        state = State.HEADER;
+                        inflater.reset();
+                        crc.reset();
+                    } else {
+                        offset = end;
+                    }
+                    break;
+                default:
+                    offset = encoding == ContentEncoding.GZIP
+                            ? readGzipHeader(input, offset, end) : readZlibHeader(input, offset, end, out);
+            }
+        }
+    }
+
+    /**
+     * Check the body was complete, once its last part has been decoded.
+     *
+     * @throws ZipException if the body was truncated.
+     */
+    public synchronized void finish() throws ZipException {
+        boolean complete = received == 0 || state == State.DONE
+                || (members > 0 && state == State.HEADER);
+        if (!complete) {
+            throw new ZipException("Unexpected end of " + encoding.getToken() + " body");
+        }
+    }
+
+    /**
+     * Give the inflater back to the pool.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (inflater != null) {
+            pool.release(inflater, nowrap);
+            inflater = null;
+        }
+    }
+
+    private int readGzipHeader(byte[] input, int offset, int end) throws ZipException {
+        while (offset < end) {
+            switch (state) {
+                case HEADER:
+                    int n = Math.min(end - offset, GZIP_HEADER_LENGTH - collected);
+                    System.arraycopy(input, offset, buffer, collected, n);
+                    offset += n;
+                    collected += n;
+                    if (collected < GZIP_HEADER_LENGTH) {
+                        return offset;
+                    }
+                    collected = 0;
+                    if ((buffer[0] & 0xff) != 0x1f || (buffer[1] & 0xff) != 0x8b || buffer[2] != 8) {
+                        if (members > 0) {
+                            state = State.DONE;
+                            return end;
+                        }
+                        throw new ZipException("Not in GZIP format");
+                    }
+                    flags = buffer[3] & 0xff;
+                    state = State.EXTRA_LENGTH;
+                    break;
+                case EXTRA_LENGTH:
+                    if ((flags & FEXTRA) == 0) {
+                        state = State.NAME;
+                        break;
+                    }
+                    buffer[collected++] = input[offset++];
+                    if (collected == 2) {
+                        skip = (buffer[0] & 0xff) | (buffer[1] & 0xff) << 8;
+                        collected = 0;
+                        state = State.EXTRA;
+                    }
+                    break;
+                case EXTRA:
+                    n = Math.min(end - offset, skip);
+                    offset += n;
+                    skip -= n;
+                    if (skip == 0) {
+                        state = State.NAME;
+                    }
+                    break;
+                case NAME:
+                    if ((flags & FNAME) == 0 || input[offset++] == 0) {
+                        state = State.COMMENT;
+                    }
+                    break;
+                case COMMENT:
+                    if ((flags & FCOMMENT) == 0 || input[offset++] == 0) {
+                        state = State.HEADER_CRC;
+                        skip = (flags & FHCRC) == 0 ? 0 : 2;
+                    }
+                    break;
+                case HEADER_CRC:
+                    n = Math.min(end - offset, skip);
+                    offset += n;
+                    skip -= n;
+                    if (skip == 0) {
+                        if (inflater == null) {
+                            nowrap = true;
+                            inflater = pool.inflater(true);
+                        }
+                        state = State.BODY;
+                        return offset;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException(state.name());
+            }
+        }
+        return offset;
+    }
+
+    private int readZlibHeader(byte[] input, int offset, int end, RestBodyConsumer out) throws Exception {
+        buffer[collected++] = input[offset++];
+        if (collected < 2) {
+            return offset;
+        }
+        int header = (buffer[0] & 0xff) << 8 | (buffer[1] & 0xff);
+        // a zlib header names the deflate method and is a multiple of 31, raw streams rarely are both
+        nowrap = (buffer[0] & 0x0f) != 8 || header % 31 != 0;
+        inflater = pool.inflater(nowrap);
+        state = State.BODY;
+        inflate(buffer, 0, 2, out);
+        if (inflater.finished()) {
+            state = State.DONE;
+        }
+        return offset;
+    }
+
+    private int readTrailer(byte[] input, int offset, int end) throws ZipException {
+        int n = Math.min(end - offset, GZIP_TRAILER_LENGTH - collected);
+        System.arraycopy(input, offset, buffer, collected, n);
+        collected += n;
+        if (collected < GZIP_TRAILER_LENGTH) {
+            return end;
+        }
+        collected = 0;
+        if (readIntLE(0) != (int) crc.getValue() || readIntLE(4) != (int) inflater.getBytesWritten()) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+        members++;
+        state = State.DONE;
+        return offset + n;
+    }
+
+    private int readIntLE(int offset) {
+        return (buffer[offset] & 0xff) | (buffer[offset + 1] & 0xff) << 8
+                | (buffer[offset + 2] & 0xff) << 16 | (buffer[offset + 3] & 0xff) << 24;
+    }
+
+    /**
+     * Inflate the input, handing on the output in chunks.
+     *
+     * @return the number of input bytes after the end of the deflate stream.
+     */
+    private int inflate(byte[] input, int offset, int length, RestBodyConsumer out) throws Exception {
+        inflater.setInput(input, offset, length);
+        while (true) {
+            if (chunk == null) {
+                chunk = new byte[CHUNK_SIZE];
+            }
+            int n;
+            try {
+                n = inflater.inflate(chunk, chunkLength, chunk.length - chunkLength);
+            } catch (DataFormatException e) {
+                throw new ZipException("Invalid " + encoding.getToken() + " body: " + e.getMessage());
+            }
+            if (n > 0) {
+                if (nowrap && encoding == ContentEncoding.GZIP) {
+                    crc.update(chunk, chunkLength, n);
+                }
+                chunkLength += n;
+                if (chunkLength == chunk.length) {
+                    flush(out);
+                }
+            } else if (inflater.finished() || inflater.needsInput()) {
+                flush(out);
+                return inflater.finished() ? inflater.getRemaining() : 0;
+            } else if (inflater.needsDictionary()) {
+                throw new ZipException("Preset dictionaries are not supported");
+            }
+        }
+    }
+
+    private void flush(RestBodyConsumer out) throws Exception {
+        if (chunkLength > 0) {
+            ByteBuffer decoded = ByteBuffer.wrap(chunk, 0, chunkLength);
+            chunk = null;
+            chunkLength = 0;
+            out.onBodyPart(decoded);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.executor;
+
+/**
+ * Notified when a callback has been running on an I/O thread for longer than the threshold of the
+ * {@link IoThreadDiagnostics}. It is called on the shared scheduler thread while the callback is still running, so
+ * the stack trace shows the code blocking the I/O thread; it must be quick and must not block.
+ */
+@FunctionalInterface
+public interface BlockingListener {
+    void onBlocked(Thread thread, long blockedMillis, StackTraceElement[] stackTrace);
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.executor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors completing the futures of requests, i.e. running the callbacks chained to them with thenApply,
+ * thenAccept and the like. By default the callbacks run on the I/O thread that received the response, where blocking
+ * or slow work, e.g. parsing a large JSON document, delays every other connection of that thread.
+ *
+ * @see com.ecomnext.rest.RestClient#setCompletionExecutor(Executor)
+ */
+public class CompletionExecutors {
+    private static final int DEFAULT_MAX_BATCH = 64;
+
+    private CompletionExecutors() {
+    }
+
+    /**
+     * @return an executor running the callbacks on the I/O thread, without any overhead. Only for trivial callbacks
+     * which never block, e.g. a request overriding the executor of its client.
+     */
+    public static Executor direct() {
+        return Direct.INSTANCE;
+    }
+
+    /**
+     * @return an executor handing the completions over to the given pool in batches of up to 64, using at most as
+     * many threads of the pool as there are processors.
+     */
+    public static HandoffExecutor handoff(Executor pool) {
+        return new HandoffExecutor(pool, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_BATCH);
+    }
+
+    public static HandoffExecutor handoff(Executor pool, int parallelism, int maxBatch) {
+        return new HandoffExecutor(pool, parallelism, maxBatch);
+    }
+
+    /**
+     * Create a pool of daemon threads named "rest-client-completion-N" for the completions of requests. It is not
+     * shut down by the clients using it.
+     */
+    public static ExecutorService newPool(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "rest-client-completion-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return true if the executor runs the completions on the calling thread, so they need not be handed over.
+     */
+    public static boolean isDirect(Executor executor) {
+        return executor == null || executor == Direct.INSTANCE;
+    }
+
+    private enum Direct implements Executor {
+        INSTANCE;
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public String toString() {
+            return "CompletionExecutors.direct()";
+        }
+    }
+}
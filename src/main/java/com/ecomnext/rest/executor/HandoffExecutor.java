@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.executor;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands the completions of requests over from the I/O threads to a worker pool. Completions are queued and drained by
+ * at most {@code parallelism} tasks of the pool, each running up to a batch of completions in a row, so under load
+ * the I/O threads only append to a queue and the pool runs one task per batch instead of one per response.
+ */
+public class HandoffExecutor implements Executor {
+    private final Executor pool;
+    private final int parallelism;
+    private final int maxBatch;
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger drainers = new AtomicInteger();
+    private final LongAdder completions = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * @param parallelism the drain tasks submitted to the pool at most at the same time.
+     * @param maxBatch the completions run by a drain task before it yields its thread to the other tasks of the pool.
+     */
+    public HandoffExecutor(Executor pool, int parallelism, int maxBatch) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("maxBatch must be at least 1: " + maxBatch);
+        }
+        this.pool = pool;
+        this.parallelism = parallelism;
+        this.maxBatch = maxBatch;
+    }
+
+    @Override
+    public void execute(Runnable completion) {
+        queue.offer(completion);
+        if (acquire()) {
+            submit();
+        }
+    }
+
+    private boolean acquire() {
+        for (;;) {
+            int n = drainers.get();
+            if (n >= parallelism) {
+                return false;
+            }
+            if (drainers.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void submit() {
+        try {
+            pool.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // a completion must never be lost, e.g. while the pool shuts down: run it on the calling thread
+            drain();
+        }
+    }
+
+    private void drain() {
+        batches.increment();
+        int ran = 0;
+        for (;;) {
+            Runnable completion = queue.poll();
+            if (completion == null) {
+                drainers.decrementAndGet();
+                // a completion queued after the poll may have seen every drainer busy
+                if (queue.isEmpty() || !acquire()) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                completion.run();
+            } catch (Throwable t) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+            }
+            completions.increment();
+            if (++ran == maxBatch) {
+                // keep the slot and let the other tasks of the pool run
+                submit();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the completions run.
+     */
+    public long getCompletions() {
+        return completions.sum();
+    }
+
+    /**
+     * @return the drain tasks run by the pool, the completions divided by this number is the average batch size.
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+}
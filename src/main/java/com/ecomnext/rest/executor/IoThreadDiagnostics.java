@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.executor;
+
+import com.ecomnext.rest.utils.SharedScheduler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Detects work blocking the I/O threads of a client. The client measures how long the I/O thread spends completing
+ * every response, which includes the callbacks run directly on it, and counts the completions longer than a
+ * threshold, 10ms by default. Measuring costs two calls to System.nanoTime per response.
+ * <p>
+ * To find the blocking code, set a {@link BlockingListener}: the callbacks in progress are then checked periodically
+ * and the listener receives the stack trace of the I/O threads blocked longer than the threshold.
+ */
+public class IoThreadDiagnostics {
+    private final LongAdder completions = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+    // the callbacks in progress, only tracked while there is a listener
+    private final Map<Thread, Callback> running = new ConcurrentHashMap<>();
+    private volatile long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(10);
+    private volatile BlockingListener listener;
+    private ScheduledFuture<?> watchdog;
+
+    /**
+     * Count as blocked the completions running on an I/O thread for longer than the given time.
+     */
+    public synchronized IoThreadDiagnostics setThreshold(long threshold, TimeUnit unit) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold must be positive: " + threshold);
+        }
+        this.thresholdNanos = unit.toNanos(threshold);
+        if (watchdog != null) {
+            startWatchdog();
+        }
+        return this;
+    }
+
+    public long getThreshold(TimeUnit unit) {
+        return unit.convert(thresholdNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Report the I/O threads blocked longer than the threshold to the given listener, or stop reporting them if it
+     * is null, which is the default.
+     */
+    public synchronized IoThreadDiagnostics setListener(BlockingListener listener) {
+        this.listener = listener;
+        if (listener == null) {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+                watchdog = null;
+            }
+            running.clear();
+        } else if (watchdog == null) {
+            startWatchdog();
+        }
+        return this;
+    }
+
+    private void startWatchdog() {
+        if (watchdog != null) {
+            watchdog.cancel(false);
+        }
+        long period = Math.max(thresholdNanos / 2, TimeUnit.MILLISECONDS.toNanos(1));
+        watchdog = SharedScheduler.get().scheduleWithFixedDelay(this::check, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Called by the client on the I/O thread before completing a response.
+     *
+     * @return the start time to pass to {@link #completed(long)}.
+     */
+    public long completing() {
+        long start = System.nanoTime();
+        if (listener != null) {
+            running.put(Thread.currentThread(), new Callback(start));
+        }
+        return start;
+    }
+
+    /**
+     * Called by the client on the I/O thread once the response has been completed.
+     */
+    public void completed(long start) {
+        long elapsed = System.nanoTime() - start;
+        completions.increment();
+        if (elapsed > thresholdNanos) {
+            blocked.increment();
+        }
+        maxNanos.accumulate(elapsed);
+        if (!running.isEmpty()) {
+            running.remove(Thread.currentThread());
+        }
+    }
+
+    private void check() {
+        BlockingListener listener = this.listener;
+        if (listener == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (Map.Entry<Thread, Callback> entry : running.entrySet()) {
+            Callback callback = entry.getValue();
+            long elapsed = now - callback.start;
+            if (elapsed > thresholdNanos && !callback.reported) {
+                callback.reported = true;
+                Thread thread = entry.getKey();
+                StackTraceElement[] stackTrace = thread.getStackTrace();
+                // the callback may have finished while the stack trace was taken
+                if (running.get(thread) == callback) {
+                    listener.onBlocked(thread, TimeUnit.NANOSECONDS.toMillis(elapsed), stackTrace);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the responses completed on I/O threads.
+     */
+    public long getCompletions() {
+        return completions.sum();
+    }
+
+    /**
+     * @return the completions which kept their I/O thread busy for longer than the threshold.
+     */
+    public long getBlocked() {
+        return blocked.sum();
+    }
+
+    /**
+     * @return the longest time an I/O thread spent completing a response.
+     */
+    public long getMaxBlocked(TimeUnit unit) {
+        return unit.convert(maxNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    private static class Callback {
+        final long start;
+        // only accessed by the watchdog
+        boolean reported = false;
+
+        Callback(long start) {
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.hedge;
+
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.metrics.HistogramSnapshot;
+import com.ecomnext.rest.metrics.RestMetrics;
+import com.ecomnext.rest.metrics.StatusClass;
+import com.ecomnext.rest.retry.RetryBudget;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hedges GET requests to cut their tail latency: if there is no response after a delay a second, identical
+ * request is sent, the first response wins and the other request is cancelled. Create policies with
+ * {@link #builder()}; a policy keeps the hedging budget and counters of every request using it, so share one
+ * policy per backend rather than creating one per request.
+ * <p>
+ * The delay is either fixed or the latency observed at a percentile, e.g. p95, of the successful requests to the
+ * same host. The percentile needs the metrics of the client to be enabled and is refreshed every second; until a
+ * host has enough samples the fixed delay is used. Hedges are limited to a ratio of the requests so they cannot
+ * overload a slow backend.
+ */
+public class HedgePolicy {
+    /**
+     * A policy which never hedges, to disable the hedging of the client on a single request.
+     */
+    public static final HedgePolicy NONE = builder().maxRatio(0).build();
+
+    private static final long REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long delay;
+    private final double percentile;
+    private final long minSamples;
+    private final long minDelay;
+    private final double maxRatio;
+    // same accounting as retries: every request deposits maxRatio tokens and every hedge withdraws one
+    private final RetryBudget budget;
+    private final ConcurrentMap<String, HostDelay> hostDelays = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    private HedgePolicy(Builder builder) {
+        this.delay = builder.delay;
+        this.percentile = builder.percentile;
+        this.minSamples = builder.minSamples;
+        this.minDelay = builder.minDelay;
+        this.maxRatio = builder.maxRatio;
+        this.budget = builder.maxRatio > 0 ? new RetryBudget(builder.maxRatio, builder.maxBurst) : null;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Execute a request hedging it according to this policy.
+     *
+     * @param host    the host of the request, used to look up its latency
+     * @param metrics the metrics of the client, null if they are disabled
+     * @param attempt sends the request on every call
+     */
+    public CompletableFuture<RestResponse> execute(String host, RestMetrics metrics,
+                                                   Supplier<CompletableFuture<RestResponse>> attempt) {
+        if (budget == null) {
+            return attempt.get();
+        }
+        requests.increment();
+        budget.onRequest();
+        return new HedgedExecution(this, attempt).start(delay(host, metrics));
+    }
+
+    /**
+     * @return the delay in milliseconds before hedging a request to the given host.
+     */
+    long delay(String host, RestMetrics metrics) {
+        if (percentile <= 0 || metrics == null) {
+            return delay;
+        }
+        HostDelay hostDelay = hostDelays.get(host);
+        long now = System.nanoTime();
+        if (hostDelay == null || now - hostDelay.computedAt > REFRESH_NANOS) {
+            HistogramSnapshot latency = metrics.host(host).snapshot(StatusClass.SUCCESS);
+            long millis = latency.getCount() < minSamples
+                    ? delay : Math.max(minDelay, TimeUnit.MICROSECONDS.toMillis(latency.getValueAtPercentile(percentile)));
+            hostDelay = new HostDelay(millis, now);
+            hostDelays.put(host, hostDelay);
+        }
+        return hostDelay.delay;
+    }
+
+    boolean tryHedge() {
+        if (budget.tryRetry()) {
+            hedges.increment();
+            return true;
+        }
+        return false;
+    }
+
+    void hedgeWon() {
+        hedgeWins.increment();
+    }
+
+    public double getMaxRatio() {
+        return maxRatio;
+    }
+
+    /**
+     * @return the number of requests executed with this policy.
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return the number of hedges sent.
+     */
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return the number of hedges which got a response before the original request.
+     */
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * @return the number of hedges not sent because they would have exceeded the maximum ratio.
+     */
+    public long getHedgesDenied() {
+        return budget == null ? 0 : budget.getExhausted();
+    }
+
+    private static class HostDelay {
+        final long delay;
+        final long computedAt;
+
+        HostDelay(long delay, long computedAt) {
+            this.delay = delay;
+            this.computedAt = computedAt;
+        }
+    }
+
+    public static class Builder {
+        private long delay = 50;
+        private double percentile = 0;
+        private long minSamples = 100;
+        private long minDelay = 1;
+        private double maxRatio = 0.05;
+        private int maxBurst = 10;
+
+        private Builder() {
+        }
+
+        /**
+         * Fixed delay before hedging, 50ms by default. It is also used by percentile policies while a host
+         * has not enough samples.
+         */
+        public Builder delay(long delay, TimeUnit unit) {
+            this.delay = Math.max(0, unit.toMillis(delay));
+            return this;
+        }
+
+        /**
+         * Hedge after the latency observed at the given percentile of the successful requests to the same host,
+         * e.g. 95. The metrics of the client must be enabled.
+         */
+        public Builder percentile(double percentile) {
+            if (percentile <= 0 || percentile > 100) {
+                throw new IllegalArgumentException("The percentile must be between 0 and 100: " + percentile);
+            }
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * Successful requests to a host needed before using its percentile, 100 by default.
+         */
+        public Builder minSamples(long minSamples) {
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * Lower bound of the delay derived from a percentile, 1ms by default.
+         */
+        public Builder minDelay(long delay, TimeUnit unit) {
+            this.minDelay = Math.max(0, unit.toMillis(delay));
+            return this;
+        }
+
+        /**
+         * Maximum ratio of hedges to requests, 0.05 (5%) by default, plus bursts of {@code maxBurst} hedges.
+         */
+        public Builder maxRatio(double maxRatio) {
+            if (maxRatio < 0 || maxRatio > 1) {
+                throw new IllegalArgumentException("The hedge ratio must be between 0 and 1: " + maxRatio);
+            }
+            this.maxRatio = maxRatio;
+            return this;
+        }
+
+        /**
+         * Hedges that can be sent in a burst when requests have been fast for a while, 10 by default.
+         */
+        public Builder maxBurst(int maxBurst) {
+            this.maxBurst = maxBurst;
+            return this;
+        }
+
+        public HedgePolicy build() {
+            return new HedgePolicy(this);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.hedge;
+
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.utils.SharedScheduler;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The original request and the hedge of a request executed with a hedge policy. The first response completes the
+ * execution and cancels the other request; a failure only completes it when no other request is pending.
+ */
+class HedgedExecution {
+    private final HedgePolicy policy;
+    private final Supplier<CompletableFuture<RestResponse>> attempt;
+    private final CompletableFuture<RestResponse> promise = new CompletableFuture<RestResponse>() {
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                cancelAll();
+            }
+            return cancelled;
+        }
+    };
+
+    // guarded by this
+    private CompletableFuture<RestResponse> original;
+    private CompletableFuture<RestResponse> hedge;
+    private ScheduledFuture<?> timer;
+    private int pending = 0;
+    private Throwable failure;
+
+    HedgedExecution(HedgePolicy policy, Supplier<CompletableFuture<RestResponse>> attempt) {
+        this.policy = policy;
+        this.attempt = attempt;
+    }
+
+    CompletableFuture<RestResponse> start(long delay) {
+        synchronized (this) {
+            pending++;
+        }
+        CompletableFuture<RestResponse> future = send();
+        synchronized (this) {
+            original = future;
+            if (!promise.isDone()) {
+                // sent from a worker thread, sending may block
+                timer = SharedScheduler.scheduleHandoff(this::hedge, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+        future.whenComplete((response, failure) -> onComplete(response, failure, false));
+        return promise;
+    }
+
+    private void hedge() {
+        synchronized (this) {
+            if (promise.isDone() || !policy.tryHedge()) {
+                return;
+            }
+            pending++;
+        }
+        CompletableFuture<RestResponse> future = send();
+        synchronized (this) {
+            hedge = future;
+        }
+        future.whenComplete((response, failure) -> onComplete(response, failure, true));
+        if (promise.isDone()) {
+            future.cancel(true);
+        }
+    }
+
+    private CompletableFuture<RestResponse> send() {
+        try {
+            return attempt.get();
+        } catch (RuntimeException e) {
+            CompletableFuture<RestResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    private void onComplete(RestResponse response, Throwable failure, boolean isHedge) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        CompletableFuture<RestResponse> loser = null;
+        synchronized (this) {
+            pending--;
+            if (promise.isDone()) {
+                // the response of the loser is never read
+                if (response != null) {
+                    response.release();
+                }
+                return;
+            }
+            // a request which fails before the delay is not hedged, retrying it is up to the retry policy
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            if (failure != null) {
+                if (this.failure != null) {
+                    failure.addSuppressed(this.failure);
+                }
+                this.failure = failure;
+                if (pending > 0) {
+                    // the other request may still succeed
+                    return;
+                }
+            } else {
+                loser = isHedge ? original : hedge;
+            }
+        }
+        if (failure != null) {
+            promise.completeExceptionally(failure);
+            return;
+        }
+        if (isHedge) {
+            policy.hedgeWon();
+        }
+        if (!promise.complete(response) && response != null) {
+            response.release();
+        }
+        if (loser != null) {
+            loser.cancel(true);
+        }
+    }
+
+    private void cancelAll() {
+        CompletableFuture<RestResponse> original;
+        CompletableFuture<RestResponse> hedge;
+        synchronized (this) {
+            original = this.original;
+            hedge = this.hedge;
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+        if (original != null) {
+            original.cancel(true);
+        }
+        if (hedge != null) {
+            hedge.cancel(true);
+        }
+    }
+}
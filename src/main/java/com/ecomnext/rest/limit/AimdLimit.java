@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.limit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Additive increase, multiplicative decrease, as TCP congestion control: the limit grows by one for every limit
+ * requests completed while it was being used, and it is multiplied by a backoff ratio when requests are dropped or
+ * slower than a timeout. It only backs off once for the requests sent before the previous backoff, so a burst of
+ * failures of the same requests does not collapse the limit.
+ */
+public class AimdLimit implements Limit {
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long timeout;
+    private double limit;
+    private long lastBackoff;
+
+    /**
+     * A limit backing off by 0.9 and without timeout.
+     */
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, 0.9, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param backoffRatio the ratio applied to the limit on drops, between 0.5 and 1
+     * @param timeout      requests slower than it count as dropped
+     */
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long timeout, TimeUnit unit) {
+        if (backoffRatio < 0.5 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("The backoff ratio must be between 0.5 and 1: " + backoffRatio);
+        }
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.backoffRatio = backoffRatio;
+        this.timeout = unit.toNanos(timeout);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.lastBackoff = System.nanoTime();
+    }
+
+    @Override
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public void onSample(long startTime, long rtt, int inFlight, boolean dropped) {
+        if (dropped || rtt > timeout) {
+            if (startTime - lastBackoff > 0) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastBackoff = System.nanoTime();
+            }
+        } else if (inFlight * 2 >= limit) {
+            // only grow while the limit is used, or an idle host would get an unbounded limit
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.limit;
+
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.metrics.PrometheusExporter;
+import com.ecomnext.rest.utils.SharedScheduler;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Limits the requests in flight to each host, adapting the limit to the latency of the host like TCP congestion
+ * control does, so a slow host does not pile up thousands of requests waiting for their timeouts. Requests over
+ * the limit wait in a short queue or are rejected at once with a {@link LimitExceededException}. Create limiters
+ * with {@link #builder()}; the limits are kept by host, so share one limiter per client.
+ * <p>
+ * The limit is lowered when requests fail with an I/O error or a timeout, or the host answers 429 Too Many
+ * Requests or 503 Service Unavailable, and by the gradient algorithm when the latency grows. Cancelled requests
+ * release their slot without changing it.
+ */
+public class ConcurrencyLimiter {
+    private final Supplier<Limit> limits;
+    private final int maxQueue;
+    private final long maxQueueTime;
+    private final ConcurrentMap<String, HostLimiter> hosts = new ConcurrentHashMap<>();
+
+    private ConcurrencyLimiter(Builder builder) {
+        this.limits = builder.limits != null ? builder.limits : builder.algorithm();
+        this.maxQueue = builder.maxQueue;
+        this.maxQueueTime = builder.maxQueueTime;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Execute a request when its host is under its limit.
+     *
+     * @param host    the host of the request
+     * @param request sends the request
+     */
+    public CompletableFuture<RestResponse> execute(String host, Supplier<CompletableFuture<RestResponse>> request) {
+        return host(host).execute(request);
+    }
+
+    private HostLimiter host(String host) {
+        if (host == null) {
+            host = "unknown";
+        }
+        HostLimiter limiter = hosts.get(host);
+        if (limiter == null) {
+            limiter = hosts.computeIfAbsent(host, HostLimiter::new);
+        }
+        return limiter;
+    }
+
+    /**
+     * @return the current limit of the host.
+     */
+    public int getLimit(String host) {
+        return host(host).snapshot().getLimit();
+    }
+
+    /**
+     * @return the limits of every host, sorted by host name.
+     */
+    public Map<String, LimitSnapshot> snapshot() {
+        Map<String, LimitSnapshot> snapshots = new TreeMap<>();
+        for (HostLimiter limiter : hosts.values()) {
+            snapshots.put(limiter.host, limiter.snapshot());
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * @return the current limits, in flight requests, queue depths and rejections in the Prometheus text
+     * exposition format.
+     */
+    public String toPrometheus() {
+        return PrometheusExporter.export(snapshot().values());
+    }
+
+    /**
+     * @return true if the outcome means the host is overloaded.
+     */
+    private static boolean isDropped(RestResponse response, Throwable failure) {
+        if (failure != null) {
+            return failure instanceof IOException || failure instanceof TimeoutException;
+        }
+        return response.getStatus() == 429 || response.getStatus() == 503;
+    }
+
+    private static CompletableFuture<RestResponse> failed(Throwable failure) {
+        CompletableFuture<RestResponse> failed = new CompletableFuture<>();
+        failed.completeExceptionally(failure);
+        return failed;
+    }
+
+    private class HostLimiter {
+        private final String host;
+        private final Limit limit;
+        // a lock rather than synchronized, which would pin the virtual threads waiting for it
+        private final ReentrantLock lock = new ReentrantLock();
+        // guarded by lock
+        private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+        private int inFlight = 0;
+        private long rejected = 0;
+
+        HostLimiter(String host) {
+            this.host = host;
+            this.limit = limits.get();
+        }
+
+        CompletableFuture<RestResponse> execute(Supplier<CompletableFuture<RestResponse>> request) {
+            Waiter waiter;
+            int position;
+            lock.lock();
+            try {
+                if (inFlight < limit.getLimit()) {
+                    position = ++inFlight;
+                    waiter = null;
+                } else if (queue.size() < maxQueue) {
+                    position = 0;
+                    waiter = new Waiter(request);
+                    queue.add(waiter);
+                } else {
+                    rejected++;
+                    return failed(new LimitExceededException(host, limit.getLimit(),
+                            "Concurrency limit of " + limit.getLimit() + " requests reached for " + host));
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (waiter == null) {
+                return start(request, position);
+            }
+            if (maxQueueTime > 0) {
+                waiter.timer = SharedScheduler.schedule(() -> expire(waiter), maxQueueTime, TimeUnit.MILLISECONDS);
+            }
+            waiter.promise.whenComplete((response, failure) -> {
+                if (waiter.promise.isCancelled()) {
+                    lock.lock();
+                    try {
+                        queue.remove(waiter);
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            });
+            return waiter.promise;
+        }
+
+        private CompletableFuture<RestResponse> start(Supplier<CompletableFuture<RestResponse>> request, int position) {
+            long start = System.nanoTime();
+            CompletableFuture<RestResponse> future;
+            try {
+                future = request.get();
+            } catch (RuntimeException e) {
+                release(start, position, false, false);
+                return failed(e);
+            }
+            future.whenComplete((response, failure) -> {
+                if (failure instanceof CompletionException && failure.getCause() != null) {
+                    failure = failure.getCause();
+                }
+                boolean cancelled = failure instanceof CancellationException;
+                release(start, position, !cancelled, !cancelled && isDropped(response, failure));
+            });
+            return future;
+        }
+
+        private void release(long start, int position, boolean sample, boolean dropped) {
+            List<Waiter> ready = null;
+            lock.lock();
+            try {
+                inFlight--;
+                if (sample) {
+                    limit.onSample(start, System.nanoTime() - start, position, dropped);
+                }
+                while (inFlight < limit.getLimit() && !queue.isEmpty()) {
+                    Waiter waiter = queue.poll();
+                    if (!waiter.promise.isDone()) {
+                        waiter.position = ++inFlight;
+                        if (ready == null) {
+                            ready = new ArrayList<>(2);
+                        }
+                        ready.add(waiter);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (ready != null) {
+                for (Waiter waiter : ready) {
+                    waiter.start();
+                }
+            }
+        }
+
+        private void expire(Waiter waiter) {
+            int current;
+            lock.lock();
+            try {
+                if (!queue.remove(waiter)) {
+                    return;
+                }
+                rejected++;
+                current = limit.getLimit();
+            } finally {
+                lock.unlock();
+            }
+            waiter.promise.completeExceptionally(new LimitExceededException(host, current,
+                    "Waited " + maxQueueTime + "ms for the concurrency limit of " + current + " requests of " + host));
+        }
+
+        LimitSnapshot snapshot() {
+            lock.lock();
+            try {
+                return new LimitSnapshot(host, limit.getLimit(), inFlight, queue.size(), rejected);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * A request waiting in the queue.
+         */
+        private class Waiter {
+            final Supplier<CompletableFuture<RestResponse>> request;
+            final CompletableFuture<RestResponse> promise = new CompletableFuture<>();
+            volatile ScheduledFuture<?> timer;
+            // guarded by the lock of the host limiter
+            int position;
+
+            Waiter(Supplier<CompletableFuture<RestResponse>> request) {
+                this.request = request;
+            }
+
+            void start() {
+                ScheduledFuture<?> timer = this.timer;
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+                CompletableFuture<RestResponse> future = HostLimiter.this.start(request, position);
+                future.whenComplete((response, failure) -> {
+                    if (failure instanceof CompletionException && failure.getCause() != null) {
+                        failure = failure.getCause();
+                    }
+                    if (failure != null) {
+                        promise.completeExceptionally(failure);
+                    } else if (!promise.complete(response)) {
+                        // cancelled while in flight, the response is never read
+                        response.release();
+                    }
+                });
+                promise.whenComplete((response, failure) -> {
+                    if (promise.isCancelled()) {
+                        future.cancel(true);
+                    }
+                });
+            }
+        }
+    }
+
+    public static class Builder {
+        private boolean aimd = false;
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private int maxQueue = 0;
+        private long maxQueueTime = 1000;
+        private Supplier<Limit> limits;
+
+        private Builder() {
+        }
+
+        /**
+         * Adapt the limits with {@link GradientLimit}, the default.
+         */
+        public Builder gradient() {
+            this.aimd = false;
+            return this;
+        }
+
+        /**
+         * Adapt the limits with {@link AimdLimit}.
+         */
+        public Builder aimd() {
+            this.aimd = true;
+            return this;
+        }
+
+        /**
+         * Adapt the limits with another algorithm, the factory is called once per host.
+         */
+        public Builder limit(Supplier<Limit> limits) {
+            this.limits = limits;
+            return this;
+        }
+
+        /**
+         * Limit of a host before it has any sample, 20 by default.
+         */
+        public Builder initialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * The limit never goes below it, 1 by default.
+         */
+        public Builder minLimit(int minLimit) {
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        /**
+         * The limit never goes above it, 200 by default.
+         */
+        public Builder maxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Requests of a host waiting for its limit before new ones are rejected, 0 by default: requests over the
+         * limit are rejected at once.
+         */
+        public Builder maxQueue(int maxQueue) {
+            this.maxQueue = Math.max(0, maxQueue);
+            return this;
+        }
+
+        /**
+         * How long a request waits in the queue before it is rejected, 1s by default. Zero waits forever.
+         */
+        public Builder maxQueueTime(long maxQueueTime, TimeUnit unit) {
+            this.maxQueueTime = Math.max(0, unit.toMillis(maxQueueTime));
+            return this;
+        }
+
+        private Supplier<Limit> algorithm() {
+            int initial = initialLimit;
+            int min = minLimit;
+            int max = maxLimit;
+            return aimd
+                    ? () -> new AimdLimit(initial, min, max)
+                    : () -> new GradientLimit(initial, min, max);
+        }
+
+        public ConcurrencyLimiter build() {
+            return new ConcurrencyLimiter(this);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.limit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limit following the gradient between the round trip time of a host without load and its recent round trip
+ * time, in the style of TCP Vegas: while the recent requests are about as fast as the fastest ones the limit grows
+ * by a queue of its square root, and when they get slower the limit is reduced in the same proportion, down to half
+ * of it. Dropped requests halve the gradient. Changes are smoothed to absorb the noise of single requests.
+ * <p>
+ * The round trip time without load is the minimum observed in a sliding window, 10 seconds by default, so the limit
+ * follows a host whose latency changes for good, e.g. when it moves to another region.
+ */
+public class GradientLimit implements Limit {
+    private static final double SHORT_WINDOW = 2.0 / (10 + 1);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final long halfWindow;
+    private double limit;
+    private double shortRtt = 0;
+    // minimum of the current and the previous half of the window
+    private long currentMinRtt = Long.MAX_VALUE;
+    private long previousMinRtt = Long.MAX_VALUE;
+    private long currentStart;
+
+    /**
+     * A limit tolerating recent round trips 2 times slower than without load, smoothed by 0.2, with a window of
+     * 10 seconds.
+     */
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, 2, 0.2, 10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param tolerance how slower than without load the recent round trips can be before reducing the limit, at
+     *                  least 1
+     * @param smoothing weight of every new limit, between 0 and 1
+     * @param window    how long the minimum round trip time is remembered
+     */
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing,
+                         long window, TimeUnit unit) {
+        if (tolerance < 1) {
+            throw new IllegalArgumentException("The tolerance must be at least 1: " + tolerance);
+        }
+        if (smoothing <= 0 || smoothing > 1) {
+            throw new IllegalArgumentException("The smoothing must be between 0 and 1: " + smoothing);
+        }
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.halfWindow = Math.max(1, unit.toNanos(window) / 2);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.currentStart = System.nanoTime();
+    }
+
+    @Override
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public void onSample(long startTime, long rtt, int inFlight, boolean dropped) {
+        long now = startTime + rtt;
+        if (now - currentStart > halfWindow) {
+            previousMinRtt = now - currentStart > 2 * halfWindow ? Long.MAX_VALUE : currentMinRtt;
+            currentMinRtt = Long.MAX_VALUE;
+            currentStart = now;
+        }
+        currentMinRtt = Math.min(currentMinRtt, rtt);
+        shortRtt = shortRtt == 0 ? rtt : shortRtt + (rtt - shortRtt) * SHORT_WINDOW;
+
+        double gradient = dropped ? 0.5
+                : Math.max(0.5, Math.min(1.0, tolerance * getMinRtt() / Math.max(1, shortRtt)));
+        if (gradient == 1.0 && inFlight * 2 < limit) {
+            // the limit is not used, growing it would not be based on any evidence
+            return;
+        }
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.min(maxLimit, Math.max(minLimit, limit * (1 - smoothing) + newLimit * smoothing));
+    }
+
+    /**
+     * @return the minimum round trip time in the window, in nanoseconds.
+     */
+    public long getMinRtt() {
+        return Math.min(currentMinRtt, previousMinRtt);
+    }
+
+    /**
+     * @return the recent round trip time, in nanoseconds.
+     */
+    public double getShortRtt() {
+        return shortRtt;
+    }
+}
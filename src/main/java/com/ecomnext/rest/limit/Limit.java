@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.limit;
+
+/**
+ * Algorithm adapting the concurrency limit of a host from the requests sent to it. A {@link ConcurrencyLimiter}
+ * creates one limit per host and calls it with the lock of the host held, so implementations do not need to be
+ * thread-safe.
+ */
+public interface Limit {
+    /**
+     * @return the maximum number of requests in flight.
+     */
+    int getLimit();
+
+    /**
+     * Update the limit with a completed request.
+     *
+     * @param startTime when the request was sent, from {@link System#nanoTime()}
+     * @param rtt       how long the request took, in nanoseconds
+     * @param inFlight  the requests in flight when it was sent, including itself
+     * @param dropped   true if the request failed or the host answered it was overloaded
+     */
+    void onSample(long startTime, long rtt, int inFlight, boolean dropped);
+}
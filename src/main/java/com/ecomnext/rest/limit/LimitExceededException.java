@@ -0,0 +1,44 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.limit;
+
+/**
+ * A request was rejected by a {@link ConcurrencyLimiter} because its host had as many requests in flight as its
+ * limit and the queue was full, or the request waited in the queue for too long. It was never sent.
+ */
+public class LimitExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String host;
+    private final int limit;
+
+    public LimitExceededException(String host, int limit, String message) {
+        super(message);
+        this.host = host;
+        this.limit = limit;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return the concurrency limit of the host when the request was rejected.
+     */
+    public int getLimit() {
+        return limit;
+    }
+}
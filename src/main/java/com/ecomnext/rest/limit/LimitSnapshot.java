@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.limit;
+
+/**
+ * The state of the concurrency limit of a host at a point in time.
+ */
+public class LimitSnapshot {
+    private final String host;
+    private final int limit;
+    private final int inFlight;
+    private final int queued;
+    private final long rejected;
+
+    LimitSnapshot(String host, int limit, int inFlight, int queued, long rejected) {
+        this.host = host;
+        this.limit = limit;
+        this.inFlight = inFlight;
+        this.queued = queued;
+        this.rejected = rejected;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the requests waiting for the limit.
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    /**
+     * @return the requests rejected since the limiter was created.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+}
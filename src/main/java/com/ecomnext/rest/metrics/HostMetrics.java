@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the requests sent to a host. The methods are called by the client around every request, they are
+ * lock-free and do not allocate.
+ */
+public class HostMetrics {
+    private static final StatusClass[] STATUS_CLASSES = StatusClass.values();
+
+    private final String host;
+    private final LongAdder inFlight = new LongAdder();
+    private final LatencyHistogram queueTime = new LatencyHistogram();
+    private final LatencyHistogram[] latencies = new LatencyHistogram[STATUS_CLASSES.length];
+
+    public HostMetrics(String host) {
+        this.host = host;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Count a request as in flight.
+     *
+     * @return the start time to pass to the other methods.
+     */
+    public long start() {
+        inFlight.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the time until the request headers were written, which includes waiting for a connection.
+     */
+    public void headersWritten(long start) {
+        queueTime.recordNanos(System.nanoTime() - start);
+    }
+
+    /**
+     * Record a request that got a response with the given status.
+     */
+    public void completed(long start, int status) {
+        latencies[StatusClass.of(status).ordinal()].recordNanos(System.nanoTime() - start);
+        inFlight.decrement();
+    }
+
+    /**
+     * Record a request that failed without response.
+     */
+    public void failed(long start) {
+        latencies[StatusClass.ERROR.ordinal()].recordNanos(System.nanoTime() - start);
+        inFlight.decrement();
+    }
+
+    /**
+     * Record a request cancelled by the caller, e.g. the loser of a hedged request. It is not counted as failed.
+     */
+    public void cancelled() {
+        inFlight.decrement();
+    }
+
+    /**
+     * @return the latencies of the requests of the given class, cheaper than a snapshot of every metric.
+     */
+    public HistogramSnapshot snapshot(StatusClass statusClass) {
+        return latencies[statusClass.ordinal()].snapshot();
+    }
+
+    public HostMetricsSnapshot snapshot() {
+        Map<StatusClass, HistogramSnapshot> snapshots = new EnumMap<>(StatusClass.class);
+        for (StatusClass statusClass : STATUS_CLASSES) {
+            snapshots.put(statusClass, latencies[statusClass.ordinal()].snapshot());
+        }
+        return new HostMetricsSnapshot(host, inFlight.sum(), queueTime.snapshot(), snapshots);
+    }
+}
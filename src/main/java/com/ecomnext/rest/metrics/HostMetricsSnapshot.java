@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.metrics;
+
+import java.util.Map;
+
+/**
+ * Metrics of the requests sent to a host at a point in time. Latencies are in microseconds.
+ */
+public class HostMetricsSnapshot {
+    private final String host;
+    private final long inFlight;
+    private final HistogramSnapshot queueTime;
+    private final Map<StatusClass, HistogramSnapshot> latencies;
+
+    HostMetricsSnapshot(String host, long inFlight, HistogramSnapshot queueTime,
+                        Map<StatusClass, HistogramSnapshot> latencies) {
+        this.host = host;
+        this.inFlight = inFlight;
+        this.queueTime = queueTime;
+        this.latencies = latencies;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return the number of requests sent and not completed yet.
+     */
+    public long getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the time from the execution of the requests until their headers were written, which includes
+     * waiting for a pooled connection or connecting.
+     */
+    public HistogramSnapshot getQueueTime() {
+        return queueTime;
+    }
+
+    /**
+     * @return the time from the execution of the requests of the given class until they completed.
+     */
+    public HistogramSnapshot getLatency(StatusClass statusClass) {
+        return latencies.get(statusClass);
+    }
+
+    /**
+     * @return the number of completed requests of the given class.
+     */
+    public long getRequests(StatusClass statusClass) {
+        return latencies.get(statusClass).getCount();
+    }
+
+    /**
+     * @return the number of completed requests.
+     */
+    public long getRequests() {
+        long requests = 0;
+        for (HistogramSnapshot latency : latencies.values()) {
+            requests += latency.getCount();
+        }
+        return requests;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.metrics;
+
+import java.util.Map;
+
+/**
+ * Metrics of a client at a point in time.
+ */
+public class MetricsSnapshot {
+    private final Map<String, HostMetricsSnapshot> hosts;
+
+    MetricsSnapshot(Map<String, HostMetricsSnapshot> hosts) {
+        this.hosts = hosts;
+    }
+
+    /**
+     * @return the metrics by host, sorted by host name.
+     */
+    public Map<String, HostMetricsSnapshot> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * @return the metrics of the given host or null if no request has been sent to it.
+     */
+    public HostMetricsSnapshot getHost(String host) {
+        return hosts.get(host);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.metrics;
+
+import com.ecomnext.rest.breaker.CircuitSnapshot;
+import com.ecomnext.rest.limit.LimitSnapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+
+/**
+ * Writes metrics in the Prometheus text exposition format, version 0.0.4. Latencies are exported as summaries
+ * in seconds.
+ */
+public class PrometheusExporter {
+    private static final String IN_FLIGHT = "rest_client_requests_in_flight";
+    private static final String QUEUE = "rest_client_queue_duration_seconds";
+    private static final String LATENCY = "rest_client_request_duration_seconds";
+    private static final String LIMIT = "rest_client_concurrency_limit";
+    private static final String LIMIT_IN_FLIGHT = "rest_client_concurrency_limit_in_flight";
+    private static final String LIMIT_QUEUED = "rest_client_concurrency_limit_queued";
+    private static final String LIMIT_REJECTED = "rest_client_concurrency_limit_rejected_total";
+    private static final String CIRCUIT_STATE = "rest_client_circuit_state";
+    private static final String CIRCUIT_FAILURE_RATE = "rest_client_circuit_failure_rate";
+    private static final String CIRCUIT_SLOW_CALL_RATE = "rest_client_circuit_slow_call_rate";
+    private static final String CIRCUIT_REJECTED = "rest_client_circuit_rejected_total";
+    private static final String CIRCUIT_TRANSITIONS = "rest_client_circuit_transitions_total";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private PrometheusExporter() {
+    }
+
+    public static String export(MetricsSnapshot snapshot) {
+        StringBuilder out = new StringBuilder();
+        try {
+            write(snapshot, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    public static void write(MetricsSnapshot snapshot, Appendable out) throws IOException {
+        header(out, IN_FLIGHT, "gauge", "Requests sent and not completed yet.");
+        for (HostMetricsSnapshot host : snapshot.getHosts().values()) {
+            out.append(IN_FLIGHT).append("{host=\"").append(escape(host.getHost())).append("\"} ")
+                    .append(Long.toString(host.getInFlight())).append('\n');
+        }
+
+        header(out, QUEUE, "summary", "Time until the request headers were written, including waiting for a connection.");
+        for (HostMetricsSnapshot host : snapshot.getHosts().values()) {
+            summary(out, QUEUE, "host=\"" + escape(host.getHost()) + "\"", host.getQueueTime());
+        }
+
+        header(out, LATENCY, "summary", "Time until the request completed, by class of status code.");
+        for (HostMetricsSnapshot host : snapshot.getHosts().values()) {
+            for (StatusClass statusClass : StatusClass.values()) {
+                HistogramSnapshot latency = host.getLatency(statusClass);
+                if (latency.getCount() > 0) {
+                    summary(out, LATENCY, "host=\"" + escape(host.getHost()) + "\",status=\"" + statusClass.getLabel() + "\"", latency);
+                }
+            }
+        }
+    }
+
+    public static String export(Collection<LimitSnapshot> limits) {
+        StringBuilder out = new StringBuilder();
+        try {
+            write(limits, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    public static void write(Collection<LimitSnapshot> limits, Appendable out) throws IOException {
+        header(out, LIMIT, "gauge", "Current concurrency limit of the host.");
+        for (LimitSnapshot limit : limits) {
+            gauge(out, LIMIT, limit.getHost(), limit.getLimit());
+        }
+        header(out, LIMIT_IN_FLIGHT, "gauge", "Requests counted by the concurrency limit of the host.");
+        for (LimitSnapshot limit : limits) {
+            gauge(out, LIMIT_IN_FLIGHT, limit.getHost(), limit.getInFlight());
+        }
+        header(out, LIMIT_QUEUED, "gauge", "Requests waiting for the concurrency limit of the host.");
+        for (LimitSnapshot limit : limits) {
+            gauge(out, LIMIT_QUEUED, limit.getHost(), limit.getQueued());
+        }
+        header(out, LIMIT_REJECTED, "counter", "Requests rejected by the concurrency limit of the host.");
+        for (LimitSnapshot limit : limits) {
+            gauge(out, LIMIT_REJECTED, limit.getHost(), limit.getRejected());
+        }
+    }
+
+    public static String exportCircuits(Collection<CircuitSnapshot> circuits) {
+        StringBuilder out = new StringBuilder();
+        try {
+            writeCircuits(circuits, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    public static void writeCircuits(Collection<CircuitSnapshot> circuits, Appendable out) throws IOException {
+        header(out, CIRCUIT_STATE, "gauge", "State of the circuit: 0 closed, 1 open, 2 half open.");
+        for (CircuitSnapshot circuit : circuits) {
+            out.append(CIRCUIT_STATE).append("{circuit=\"").append(escape(circuit.getCircuit())).append("\"} ")
+                    .append(Integer.toString(circuit.getState().getValue())).append('\n');
+        }
+        header(out, CIRCUIT_FAILURE_RATE, "gauge", "Ratio of failed requests in the window of the circuit.");
+        for (CircuitSnapshot circuit : circuits) {
+            out.append(CIRCUIT_FAILURE_RATE).append("{circuit=\"").append(escape(circuit.getCircuit())).append("\"} ")
+                    .append(Double.toString(circuit.getFailureRate())).append('\n');
+        }
+        header(out, CIRCUIT_SLOW_CALL_RATE, "gauge", "Ratio of slow requests in the window of the circuit.");
+        for (CircuitSnapshot circuit : circuits) {
+            out.append(CIRCUIT_SLOW_CALL_RATE).append("{circuit=\"").append(escape(circuit.getCircuit())).append("\"} ")
+                    .append(Double.toString(circuit.getSlowCallRate())).append('\n');
+        }
+        header(out, CIRCUIT_REJECTED, "counter", "Requests rejected by the circuit.");
+        for (CircuitSnapshot circuit : circuits) {
+            out.append(CIRCUIT_REJECTED).append("{circuit=\"").append(escape(circuit.getCircuit())).append("\"} ")
+                    .append(Long.toString(circuit.getRejected())).append('\n');
+        }
+        header(out, CIRCUIT_TRANSITIONS, "counter", "State transitions of the circuit.");
+        for (CircuitSnapshot circuit : circuits) {
+            out.append(CIRCUIT_TRANSITIONS).append("{circuit=\"").append(escape(circuit.getCircuit())).append("\"} ")
+                    .append(Long.toString(circuit.getTransitions())).append('\n');
+        }
+    }
+
+    private static void gauge(Appendable out, String name, String host, long value) throws IOException {
+        out.append(name).append("{host=\"").append(escape(host)).append("\"} ").append(Long.toString(value)).append('\n');
+    }
+
+    private static void header(Appendable out, String name, String type, String help) throws IOException {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void summary(Appendable out, String name, String labels, HistogramSnapshot histogram) throws IOException {
+        for (double quantile : QUANTILES) {
+            out.append(name).append('{').append(labels).append(",quantile=\"").append(Double.toString(quantile)).append("\"} ")
+                    .append(seconds(histogram.getValueAtPercentile(quantile * 100))).append('\n');
+        }
+        out.append(name).append("_sum{").append(labels).append("} ").append(seconds(histogram.getSum())).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(Long.toString(histogram.getCount())).append('\n');
+    }
+
+    private static String seconds(long micros) {
+        return Double.toString(micros / 1e6);
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
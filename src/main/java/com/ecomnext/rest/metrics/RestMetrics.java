@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the metrics of a client, by host. Enable it with
+ * {@link com.ecomnext.rest.RestClient#setMetrics(RestMetrics)}.
+ */
+public class RestMetrics {
+    static final String UNKNOWN_HOST = "unknown";
+
+    private final ConcurrentMap<String, HostMetrics> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * @return the metrics of the given host, created on first use.
+     */
+    public HostMetrics host(String host) {
+        if (host == null) {
+            host = UNKNOWN_HOST;
+        }
+        HostMetrics metrics = hosts.get(host);
+        if (metrics == null) {
+            metrics = hosts.computeIfAbsent(host, HostMetrics::new);
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the metrics of every host, sorted by host name.
+     */
+    public MetricsSnapshot snapshot() {
+        Map<String, HostMetricsSnapshot> snapshots = new TreeMap<>();
+        for (HostMetrics metrics : hosts.values()) {
+            snapshots.put(metrics.getHost(), metrics.snapshot());
+        }
+        return new MetricsSnapshot(Collections.unmodifiableMap(snapshots));
+    }
+
+    /**
+     * @return the current metrics in the Prometheus text exposition format.
+     */
+    public String toPrometheus() {
+        return PrometheusExporter.export(snapshot());
+    }
+}
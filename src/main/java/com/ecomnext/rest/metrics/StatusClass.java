@@ -0,0 +1,49 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.metrics;
+
+/**
+ * Outcome of a request, by class of HTTP status code. Requests without response, e.g. because of a connection
+ * failure or a timeout, are counted as {@link #ERROR}.
+ */
+public enum StatusClass {
+    INFORMATIONAL("1xx"),
+    SUCCESS("2xx"),
+    REDIRECTION("3xx"),
+    CLIENT_ERROR("4xx"),
+    SERVER_ERROR("5xx"),
+    ERROR("error");
+
+    private static final StatusClass[] VALUES = values();
+
+    private final String label;
+
+    StatusClass(String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return the label used when exporting the metrics, e.g. "2xx".
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public static StatusClass of(int status) {
+        int hundreds = status / 100;
+        return hundreds >= 1 && hundreds <= 5 ? VALUES[hundreds - 1] : ERROR;
+    }
+}
@@ -20,6 +20,7 @@ package com.ecomnext.rest.ning;
 import com.ecomnext.rest.RestAPI;
 import com.ecomnext.rest.RestClient;
 import com.ecomnext.rest.RestRequestHolder;
+import com.ecomnext.rest.spi.HttpTransports;
 import com.ning.http.client.AsyncHttpClientConfig;
 
 import java.util.Optional;
@@ -30,12 +31,19 @@ public class NingRestAPI implements RestAPI {
             new AtomicReference<>(Optional.<NingRestClient>empty());
 
     private NingRestClient newClient() {
-        AsyncHttpClientConfig httpClientConfig = new AsyncHttpClientConfig.Builder().build();
-        return new NingRestClient(httpClientConfig);
+        return newClient(new AsyncHttpClientConfig.Builder().build());
+    }
+
+    /**
+     * @return a client with the given config, sending its requests with the transport named by the system property,
+     * if any.
+     */
+    private static NingRestClient newClient(AsyncHttpClientConfig httpClientConfig) {
+        return new NingRestClient(httpClientConfig).setTransport(HttpTransports.fromSystemProperty());
     }
 
     public void setClient(AsyncHttpClientConfig httpClientConfig) {
-        clientHolder.getAndSet(Optional.of(new NingRestClient(httpClientConfig)))
+        clientHolder.getAndSet(Optional.of(newClient(httpClientConfig)))
                 .ifPresent(NingRestClient::close);
     }
 
@@ -46,16 +54,33 @@ public class NingRestAPI implements RestAPI {
         clientHolder.getAndSet(Optional.empty()).ifPresent(NingRestClient::close);
     }
 
+    /**
+     * Get the current client, creating a default one the first time. Once the client exists the lookup
+     * is a single volatile read, without any lock.
+     */
     @Override
-    public synchronized RestClient client() {
+    public RestClient client() {
         Optional<NingRestClient> clientOption = clientHolder.get();
         if (clientOption.isPresent()) {
             return clientOption.get();
         } else {
-            NingRestClient client = newClient();
-            clientHolder.set(Optional.of(client));
+            return initClient();
+        }
+    }
+
+    // Only one default client is built even if many threads miss at the same time
+    private synchronized NingRestClient initClient() {
+        Optional<NingRestClient> clientOption = clientHolder.get();
+        if (clientOption.isPresent()) {
+            return clientOption.get();
+        }
+        NingRestClient client = newClient();
+        if (clientHolder.compareAndSet(clientOption, Optional.of(client))) {
             return client;
         }
+        // setClient won the race, keep its client
+        client.close();
+        return clientHolder.get().orElseGet(this::initClient);
     }
 
     @Override
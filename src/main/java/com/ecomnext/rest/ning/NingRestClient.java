@@ -18,21 +18,68 @@
 package com.ecomnext.rest.ning;
 
 import com.ecomnext.rest.RestClient;
+import com.ecomnext.rest.RestEndpoint;
 import com.ecomnext.rest.RestRequestHolder;
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.batch.Batch;
+import com.ecomnext.rest.batch.BatchResult;
+import com.ecomnext.rest.breaker.CircuitBreaker;
+import com.ecomnext.rest.cache.HttpCache;
+import com.ecomnext.rest.coalesce.RequestCoalescer;
+import com.ecomnext.rest.compress.CompressionPolicy;
+import com.ecomnext.rest.executor.IoThreadDiagnostics;
+import com.ecomnext.rest.hedge.HedgePolicy;
+import com.ecomnext.rest.limit.ConcurrencyLimiter;
+import com.ecomnext.rest.metrics.RestMetrics;
+import com.ecomnext.rest.retry.RetryBudget;
+import com.ecomnext.rest.retry.RetryPolicy;
+import com.ecomnext.rest.spi.HttpTransport;
+import com.ecomnext.rest.utils.CompiledUriTemplate;
+import com.ecomnext.rest.utils.Futures;
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.AsyncHttpClientConfig;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
 /**
  *
  */
 public class NingRestClient implements RestClient {
+    // Bound of the templates cached for url(String, String...), the unused ones are evicted beyond it
+    static final int MAX_CACHED_TEMPLATES = 1024;
 
     private AsyncHttpClient asyncHttpClient;
+    private final ConcurrentMap<String, CachedTemplate> templates = new ConcurrentHashMap<>();
+    private volatile RestMetrics metrics;
+    private volatile RetryPolicy retryPolicy;
+    private volatile RetryBudget retryBudget = new RetryBudget(0.2, 10);
+    private volatile HedgePolicy hedgePolicy;
+    private volatile RequestCoalescer requestCoalescer;
+    private volatile HttpCache httpCache;
+    private volatile ConcurrencyLimiter concurrencyLimiter;
+    private volatile CircuitBreaker circuitBreaker;
+    private volatile Executor completionExecutor;
+    private volatile HttpTransport transport;
+    private volatile CompressionPolicy compressionPolicy;
+    private final IoThreadDiagnostics ioThreadDiagnostics = new IoThreadDiagnostics();
 
     public NingRestClient(AsyncHttpClientConfig config) {
         this.asyncHttpClient = new AsyncHttpClient(config);
     }
 
+    /**
+     * Wrap an already configured AsyncHttpClient, e.g. one built on a custom or stubbed
+     * {@link com.ning.http.client.AsyncHttpProvider}.
+     */
+    public NingRestClient(AsyncHttpClient asyncHttpClient) {
+        this.asyncHttpClient = asyncHttpClient;
+    }
+
     @Override
     public AsyncHttpClient getUnderlying() {
         return asyncHttpClient;
@@ -48,7 +95,196 @@ public class NingRestClient implements RestClient {
         return new NingRestRequestHolder(this, url, params);
     }
 
+    @Override
+    public RestEndpoint endpoint(String template) {
+        return new NingRestEndpoint(this, CompiledUriTemplate.compile(template));
+    }
+
+    @Override
+    public CompletableFuture<List<RestResponse>> executeAll(Collection<? extends RestRequestHolder> requests, int parallelism) {
+        CompletableFuture<BatchResult> batch = Batch.of(requests).parallelism(parallelism).execute();
+        return Futures.propagateCancel(batch.thenApply(BatchResult::getResponses), batch);
+    }
+
+    @Override
+    public NingRestClient setMetrics(RestMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    @Override
+    public RestMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public NingRestClient setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    @Override
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    @Override
+    public NingRestClient setRetryBudget(RetryBudget retryBudget) {
+        this.retryBudget = retryBudget;
+        return this;
+    }
+
+    @Override
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    @Override
+    public NingRestClient setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+        return this;
+    }
+
+    @Override
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    @Override
+    public NingRestClient setRequestCoalescer(RequestCoalescer requestCoalescer) {
+        this.requestCoalescer = requestCoalescer;
+        return this;
+    }
+
+    @Override
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    @Override
+    public NingRestClient setHttpCache(HttpCache httpCache) {
+        this.httpCache = httpCache;
+        return this;
+    }
+
+    @Override
+    public HttpCache getHttpCache() {
+        return httpCache;
+    }
+
+    @Override
+    public NingRestClient setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        return this;
+    }
+
+    @Override
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    @Override
+    public NingRestClient setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        return this;
+    }
+
+    @Override
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    @Override
+    public NingRestClient setCompletionExecutor(Executor completionExecutor) {
+        this.completionExecutor = completionExecutor;
+        return this;
+    }
+
+    @Override
+    public Executor getCompletionExecutor() {
+        return completionExecutor;
+    }
+
+    @Override
+    public NingRestClient setTransport(HttpTransport transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    @Override
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    @Override
+    public NingRestClient setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+        return this;
+    }
+
+    @Override
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+
+    @Override
+    public IoThreadDiagnostics getIoThreadDiagnostics() {
+        return ioThreadDiagnostics;
+    }
+
+    /**
+     * @return the parsed template, from the cache if it has been used before.
+     */
+    CompiledUriTemplate template(String template) {
+        CachedTemplate cached = templates.get(template);
+        if (cached != null) {
+            // only written once per eviction round, hits do not keep invalidating the cache line
+            if (!cached.used) {
+                cached.used = true;
+            }
+            return cached.template;
+        }
+        CompiledUriTemplate compiled = CompiledUriTemplate.compile(template);
+        if (templates.size() >= MAX_CACHED_TEMPLATES) {
+            evictUnusedTemplates();
+        }
+        if (templates.size() < MAX_CACHED_TEMPLATES) {
+            templates.putIfAbsent(template, new CachedTemplate(compiled));
+        }
+        return compiled;
+    }
+
+    /**
+     * Evict the templates not used since the previous eviction and give the others a second chance, so one-off
+     * templates filling the cache do not keep the templates in use out of it.
+     */
+    private synchronized void evictUnusedTemplates() {
+        if (templates.size() < MAX_CACHED_TEMPLATES) {
+            return;
+        }
+        templates.values().removeIf(cached -> {
+            if (cached.used) {
+                cached.used = false;
+                return false;
+            }
+            return true;
+        });
+    }
+
+    private static class CachedTemplate {
+        final CompiledUriTemplate template;
+        volatile boolean used = false;
+
+        CachedTemplate(CompiledUriTemplate template) {
+            this.template = template;
+        }
+    }
+
     protected void close() {
+        HttpTransport transport = this.transport;
+        if (transport != null) {
+            transport.close();
+        }
         this.asyncHttpClient.close();
     }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.ning;
+
+import com.ecomnext.rest.RestEndpoint;
+import com.ecomnext.rest.RestRequestHolder;
+import com.ecomnext.rest.utils.CompiledUriTemplate;
+
+public class NingRestEndpoint implements RestEndpoint {
+    private final NingRestClient client;
+    private final CompiledUriTemplate template;
+
+    public NingRestEndpoint(NingRestClient client, CompiledUriTemplate template) {
+        this.client = client;
+        this.template = template;
+    }
+
+    @Override
+    public String getTemplate() {
+        return template.getTemplate();
+    }
+
+    @Override
+    public RestRequestHolder url(String... params) {
+        return new NingRestRequestHolder(client, template, params);
+    }
+}
@@ -20,14 +20,31 @@ package com.ecomnext.rest.ning;
 import com.ecomnext.rest.RestAuthScheme;
 import com.ecomnext.rest.RestRequest;
 import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.RestBodyConsumer;
+import com.ecomnext.rest.RestStreamedResponse;
+import com.ecomnext.rest.compress.CompressionPolicy;
+import com.ecomnext.rest.compress.StreamingDecoder;
+import com.ecomnext.rest.executor.IoThreadDiagnostics;
+import com.ecomnext.rest.metrics.HostMetrics;
+import com.ecomnext.rest.metrics.RestMetrics;
+import com.ecomnext.rest.spi.HttpTransport;
+import com.ecomnext.rest.spi.TransportRequest;
 import com.ning.http.client.*;
 import com.ning.http.client.generators.InputStreamBodyGenerator;
+import com.ning.http.client.providers.netty.NettyAsyncHttpProvider;
+import com.ning.http.client.providers.netty.ResponseBodyPart;
+import com.ning.http.util.AuthenticatorUtils;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -38,6 +55,11 @@ public class NingRestRequest implements RestRequest {
     private final RequestBuilder builder;
     private final NingRestClient client;
     private final byte[] body;
+    // kept for the transports, the builder only has a body generator reading it
+    private InputStream bodyStream;
+    private CompressionPolicy compressionPolicy;
+    // request timeout in milliseconds for the transports, 0 to use their default
+    private int timeout;
 
     public NingRestRequest(NingRestClient client, String method, String url, Map<String, Collection<String>> queryString,
                          Map<String, Collection<String>> headers) {
@@ -86,6 +108,13 @@ public class NingRestRequest implements RestRequest {
         return builder.build().getUrl();
     }
 
+    /**
+     * @return the host of the request, as parsed by the AsyncHttpClient.
+     */
+    String getHost() {
+        return builder.build().getURI().getHost();
+    }
+
     @Override
     public byte[] getBody() {
         return body;
@@ -105,42 +134,300 @@ public class NingRestRequest implements RestRequest {
 
     @Override
     public CompletableFuture<RestResponse> execute() {
-        final CompletableFuture<RestResponse> promise = new CompletableFuture<>();
+        final ResponsePromise<RestResponse> promise = new ResponsePromise<>();
 //        final scala.concurrent.Promise<play.libs.ws.WSResponse> scalaPromise = scala.concurrent.Promise$.MODULE$.<play.libs.ws.WSResponse>apply();
+        Request request = getBuilder().build();
+        RestMetrics metrics = client.getMetrics();
+        final HostMetrics hostMetrics = metrics == null ? null : metrics.host(request.getURI().getHost());
+        final long start = hostMetrics == null ? 0 : hostMetrics.start();
+        HttpTransport transport = client.getTransport();
+        if (transport != null) {
+            return execute(transport, request, hostMetrics, start);
+        }
+        final IoThreadDiagnostics diagnostics = client.getIoThreadDiagnostics();
+        final CompressionPolicy policy = compressionPolicy;
         try {
             AsyncHttpClient asyncHttpClient = client.getUnderlying();
-            asyncHttpClient.executeRequest(getBuilder().build(), new AsyncCompletionHandler<Response>() {
+            promise.setFuture(asyncHttpClient.executeRequest(request, new AsyncCompletionHandler<Response>() {
+                // headers are written again on redirects and authentication challenges
+                private boolean headersWritten = false;
+                private StreamingDecoder decoder;
+
+                @Override
+                public STATE onHeaderWriteCompleted() {
+                    if (hostMetrics != null && !headersWritten) {
+                        headersWritten = true;
+                        hostMetrics.headersWritten(start);
+                    }
+                    return STATE.CONTINUE;
+                }
+                @Override
+                public STATE onHeadersReceived(HttpResponseHeaders headers) throws Exception {
+                    StreamingDecoder decoder = decoder(policy, headers);
+                    if (decoder != null) {
+                        this.decoder = decoder;
+                        headers = decoded(headers);
+                    }
+                    return super.onHeadersReceived(headers);
+                }
+                @Override
+                public STATE onBodyPartReceived(HttpResponseBodyPart content) throws Exception {
+                    if (decoder == null) {
+                        return super.onBodyPartReceived(content);
+                    }
+                    // every decoded chunk is kept as a part of its own, the response joins them
+                    decoder.decode(content.getBodyByteBuffer(),
+                            decoded -> super.onBodyPartReceived(decodedPart(content, decoded)));
+                    return STATE.CONTINUE;
+                }
                 @Override
                 public Response onCompleted(Response response) {
+                    if (decoder != null) {
+                        try {
+                            decoder.finish();
+                        } catch (IOException e) {
+                            onThrowable(e);
+                            return response;
+                        } finally {
+                            decoder.close();
+                        }
+                    }
+                    if (hostMetrics != null) {
+                        hostMetrics.completed(start, response.getStatusCode());
+                    }
+                    long completing = diagnostics.completing();
                     promise.complete(new NingRestResponse(response));
+                    diagnostics.completed(completing);
 //                    scalaPromise.success(new NingRestResponse(response));
                     return response;
                 }
                 @Override
                 public void onThrowable(Throwable t) {
+                    if (decoder != null) {
+                        decoder.close();
+                    }
+                    if (hostMetrics != null) {
+                        if (promise.isCancelled()) {
+                            hostMetrics.cancelled();
+                        } else {
+                            hostMetrics.failed(start);
+                        }
+                    }
 //                    scalaPromise.failure(t);
+                    long completing = diagnostics.completing();
                     promise.completeExceptionally(t);
+                    diagnostics.completed(completing);
+                }
+            }));
+        } catch (IOException | RuntimeException exception) {
+            // the handler may have failed the promise already
+            if (!promise.isDone()) {
+                if (hostMetrics != null) {
+                    hostMetrics.failed(start);
+                }
+//                scalaPromise.failure(exception);
+                promise.completeExceptionally(exception);
+            }
+        }
+//        return new F.Promise<play.libs.ws.WSResponse>(scalaPromise.future());
+        return promise;
+    }
+
+    /**
+     * Execute the request with the transport of the client instead of the AsyncHttpClient.
+     */
+    private CompletableFuture<RestResponse> execute(HttpTransport transport, Request request, HostMetrics hostMetrics,
+                                                    long start) {
+        CompletableFuture<RestResponse> response;
+        try {
+            response = transport.execute(toTransportRequest(request));
+        } catch (RuntimeException e) {
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+        }
+        if (hostMetrics != null) {
+            CompletableFuture<RestResponse> future = response;
+            future.whenComplete((r, failure) -> {
+                if (failure == null) {
+                    hostMetrics.completed(start, r.getStatus());
+                } else if (future.isCancelled()) {
+                    hostMetrics.cancelled();
+                } else {
+                    hostMetrics.failed(start);
                 }
             });
+        }
+        return response;
+    }
+
+    /**
+     * Convert the request built for the AsyncHttpClient to send it with a transport. Only basic authentication is
+     * supported, it is sent preemptively.
+     */
+    TransportRequest toTransportRequest(Request request) {
+        TransportRequest.Builder transportRequest = TransportRequest.builder(request.getMethod(), request.getUrl())
+                .headers(request.getHeaders());
+        if (request.getVirtualHost() != null) {
+            transportRequest.header("Host", Collections.singletonList(request.getVirtualHost()));
+        }
+        Realm realm = request.getRealm();
+        if (realm != null) {
+            if (realm.getAuthScheme() != Realm.AuthScheme.BASIC) {
+                throw new IllegalStateException(
+                        realm.getAuthScheme() + " authentication is not supported by the transport of the client");
+            }
+            try {
+                transportRequest.header("Authorization",
+                        Collections.singletonList(AuthenticatorUtils.computeBasicAuthentication(realm)));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (request.getByteData() != null) {
+            transportRequest.body(request.getByteData());
+        } else if (request.getStringData() != null) {
+            String charset = request.getBodyEncoding() != null ? request.getBodyEncoding() : "ISO-8859-1";
+            try {
+                transportRequest.body(request.getStringData().getBytes(charset));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else if (request.getFile() != null) {
+            transportRequest.body(request.getFile());
+        } else if (bodyStream != null) {
+            transportRequest.body(bodyStream);
+        }
+        if (timeout > 0) {
+            transportRequest.timeout(timeout);
+        }
+        if (request.isRedirectOverrideSet()) {
+            transportRequest.followRedirects(request.isRedirectEnabled());
+        }
+        return transportRequest.build();
+    }
+
+    /**
+     * Promise of a response which aborts the request when it is cancelled, closing its connection.
+     */
+    static class ResponsePromise<T> extends CompletableFuture<T> {
+        private volatile ListenableFuture<?> future;
+
+        void setFuture(ListenableFuture<?> future) {
+            this.future = future;
+            if (isCancelled()) {
+                future.cancel(true);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            ListenableFuture<?> future = this.future;
+            if (cancelled && future != null) {
+                future.cancel(true);
+            }
+            return cancelled;
+        }
+    }
+
+    /**
+     * Execute the request handing the response body to the consumer as it arrives.
+     */
+    CompletableFuture<RestStreamedResponse> stream(RestBodyConsumer consumer) {
+        HttpTransport transport = client.getTransport();
+        if (transport != null) {
+            try {
+                return transport.stream(toTransportRequest(getBuilder().build()), consumer);
+            } catch (RuntimeException e) {
+                CompletableFuture<RestStreamedResponse> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        }
+        final ResponsePromise<RestStreamedResponse> promise = new ResponsePromise<>();
+        NingRestStreamedResponse.Handler handler = new NingRestStreamedResponse.Handler(promise, consumer,
+                client.getIoThreadDiagnostics(), compressionPolicy);
+        try {
+            AsyncHttpClient asyncHttpClient = client.getUnderlying();
+            ListenableFuture<Void> future = asyncHttpClient.executeRequest(getBuilder().build(), handler);
+            handler.setFuture(future);
+            // cancelling before the headers arrive aborts the request, afterwards use RestStreamedResponse.abort()
+            promise.setFuture(future);
         } catch (IOException exception) {
-//            scalaPromise.failure(exception);
             promise.completeExceptionally(exception);
         }
-//        return new F.Promise<play.libs.ws.WSResponse>(scalaPromise.future());
         return promise;
     }
 
+    /**
+     * @return the decoder of a response with the given headers, or null if it is not decompressed. Decoded parts are
+     * only built for the Netty provider.
+     */
+    static StreamingDecoder decoder(CompressionPolicy policy, HttpResponseHeaders headers) {
+        if (policy == null || headers.isTraillingHeadersReceived()
+                || !(headers.provider() instanceof NettyAsyncHttpProvider)) {
+            return null;
+        }
+        return policy.decoder(headers.getHeaders().getFirstValue(HttpHeaders.Names.CONTENT_ENCODING));
+    }
+
+    /**
+     * @return the headers of a decompressed response, without its Content-Encoding and Content-Length.
+     */
+    static HttpResponseHeaders decoded(HttpResponseHeaders headers) {
+        final FluentCaseInsensitiveStringsMap decoded = new FluentCaseInsensitiveStringsMap(headers.getHeaders());
+        decoded.delete(HttpHeaders.Names.CONTENT_ENCODING);
+        decoded.delete(HttpHeaders.Names.CONTENT_LENGTH);
+        return new HttpResponseHeaders(headers.getUrl(), headers.provider()) {
+            @Override
+            public FluentCaseInsensitiveStringsMap getHeaders() {
+                return decoded;
+            }
+        };
+    }
+
+    /**
+     * @return a body part of the Netty provider holding decoded bytes, without copying them.
+     */
+    static HttpResponseBodyPart decodedPart(HttpResponseBodyPart part, ByteBuffer decoded) {
+        return new ResponseBodyPart(part.getUrl(), null, part.provider(),
+                new DefaultHttpChunk(ChannelBuffers.wrappedBuffer(decoded)), false);
+    }
+
+    /**
+     * Decompress the response according to the policy, null to leave it as it is.
+     */
+    NingRestRequest setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+        return this;
+    }
+
+    /**
+     * Add a header to the request, after it has been built by the holder.
+     */
+    NingRestRequest addHeader(String name, String value) {
+        headers.add(name, value);
+        builder.addHeader(name, value);
+        return this;
+    }
+
     NingRestRequest setBody(String body) {
         builder.setBody(body);
         return this;
     }
 
+    NingRestRequest setBody(byte[] body) {
+        builder.setBody(body);
+        return this;
+    }
+
     NingRestRequest setBodyEncoding(String charset) {
         builder.setBodyEncoding(charset);
         return this;
     }
 
     NingRestRequest setBody(InputStream body) {
+        bodyStream = body;
         builder.setBody(new InputStreamBodyGenerator(body));
         return this;
     }
@@ -150,6 +437,11 @@ public class NingRestRequest implements RestRequest {
         return this;
     }
 
+    NingRestRequest setTimeout(int timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
     NingRestRequest setFollowRedirects(Boolean followRedirects) {
         builder.setFollowRedirects(followRedirects);
         return this;
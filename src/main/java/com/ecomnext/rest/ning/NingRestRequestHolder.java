@@ -17,17 +17,22 @@
  */
 package com.ecomnext.rest.ning;
 
-import com.damnhandy.uri.template.MalformedUriTemplateException;
-import com.damnhandy.uri.template.UriTemplate;
-import com.damnhandy.uri.template.VariableExpansionException;
-import com.ecomnext.rest.RestAuthScheme;
-import com.ecomnext.rest.RestRequestHolder;
-import com.ecomnext.rest.RestResponse;
-import com.ecomnext.rest.RestSignatureCalculator;
+import com.ecomnext.rest.*;
+import com.ecomnext.rest.breaker.CircuitBreaker;
+import com.ecomnext.rest.cache.HttpCache;
+import com.ecomnext.rest.coalesce.RequestCoalescer;
+import com.ecomnext.rest.compress.CompressionPolicy;
+import com.ecomnext.rest.executor.CompletionExecutors;
+import com.ecomnext.rest.hedge.HedgePolicy;
+import com.ecomnext.rest.limit.ConcurrencyLimiter;
+import com.ecomnext.rest.retry.RetryPolicy;
+import com.ecomnext.rest.utils.CompiledUriTemplate;
+import com.ecomnext.rest.utils.Futures;
 import com.ecomnext.rest.utils.Json;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.ning.http.client.FluentCaseInsensitiveStringsMap;
 import com.ning.http.client.PerRequestConfig;
+import com.ning.http.client.providers.netty.NettyAsyncHttpProvider;
 import com.ning.http.util.AsyncHttpProviderUtils;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 
@@ -38,6 +43,11 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class NingRestRequestHolder implements RestRequestHolder {
     
@@ -54,8 +64,14 @@ public class NingRestRequestHolder implements RestRequestHolder {
     private NingRestClient client = null;
 
     private int timeout = 0;
+    private long deadline = 0;
     private Boolean followRedirects = null;
     private String virtualHost = null;
+    private RetryPolicy retryPolicy = null;
+    private HedgePolicy hedgePolicy = null;
+    private String circuit = null;
+    private Executor completionExecutor = null;
+    private CompressionPolicy compressionPolicy = null;
 
     public NingRestRequestHolder(NingRestClient client, String url) {
         try {
@@ -78,34 +94,49 @@ public class NingRestRequestHolder implements RestRequestHolder {
     }
 
     public NingRestRequestHolder(NingRestClient client, String url, String... params) {
-        try {
-            this.client = client;
+        this(client, client.template(url), params);
+    }
 
-            UriTemplate uriTemplate = UriTemplate.fromTemplate(url);
-            if (uriTemplate.getVariables().length != params.length) {
-                throw new IllegalArgumentException("The number of variables in the URL and the number of values do not match");
-            }
+    NingRestRequestHolder(NingRestClient client, CompiledUriTemplate template, String... params) {
+        this.client = client;
+        this.url = template.expand(params);
 
-            for (int i = 0; i < params.length; i++) {
-                uriTemplate.set(uriTemplate.getVariables()[i], params[i]);
+        if (template.hasStaticAuthority()) {
+            // scheme and authority were validated when the template was parsed, no need to parse the URL
+            if (template.getUserInfo() != null) {
+                this.setAuth(template.getUserInfo());
             }
-            url = uriTemplate.expand();
-
-            URL reference = new URL(url);
-            this.url = url;
-
-            String userInfo = reference.getUserInfo();
-            if (userInfo != null) {
-                this.setAuth(userInfo);
+            String query = query(url);
+            if (query != null && !query.isEmpty()) {
+                this.setQueryString(query);
             }
-            if (reference.getQuery() != null) {
-                this.setQueryString(reference.getQuery());
+        } else {
+            try {
+                URL reference = new URL(url);
+
+                String userInfo = reference.getUserInfo();
+                if (userInfo != null) {
+                    this.setAuth(userInfo);
+                }
+                if (reference.getQuery() != null) {
+                    this.setQueryString(reference.getQuery());
+                }
+            } catch (MalformedURLException e) {
+                throw new RuntimeException(e);
             }
-        } catch (MalformedURLException | MalformedUriTemplateException | VariableExpansionException e) {
-            throw new RuntimeException(e);
         }
     }
 
+    /**
+     * @return the query of the URL as {@link java.net.URL#getQuery()} would.
+     */
+    private static String query(String url) {
+        int fragment = url.indexOf('#');
+        int end = fragment < 0 ? url.length() : fragment;
+        int start = url.indexOf('?');
+        return start < 0 || start > end ? null : url.substring(start + 1, end);
+    }
+
     /**
      * Sets a header with the given name, this can be called repeatedly.
      */
@@ -199,9 +230,15 @@ public class NingRestRequestHolder implements RestRequestHolder {
 
     /**
      * Sets the authentication header for the current request.
+     *
+     * @throws IllegalStateException if the client sends its requests with a transport and the scheme is not BASIC,
+     *                               the transports only support basic authentication
      */
     @Override
     public RestRequestHolder setAuth(String username, String password, RestAuthScheme scheme) {
+        if (client.getTransport() != null && scheme != RestAuthScheme.BASIC) {
+            throw new IllegalStateException(scheme + " authentication is not supported by the transport of the client");
+        }
         this.username = username;
         this.password = password;
         this.scheme = scheme;
@@ -241,6 +278,60 @@ public class NingRestRequestHolder implements RestRequestHolder {
         return this;
     }
 
+    /**
+     * Sets the deadline of this request, in any unit, 0 for none.
+     */
+    @Override
+    public RestRequestHolder setDeadline(long deadline, TimeUnit unit) {
+        this.deadline = unit.toMillis(deadline);
+        return this;
+    }
+
+    /**
+     * Sets the retry policy of this request, overriding the policy of the client.
+     */
+    @Override
+    public RestRequestHolder setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * Sets the hedge policy of this request, overriding the policy of the client.
+     */
+    @Override
+    public RestRequestHolder setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+        return this;
+    }
+
+    /**
+     * Sets the circuit of this request, instead of the circuit of its host.
+     */
+    @Override
+    public RestRequestHolder setCircuit(String circuit) {
+        this.circuit = circuit;
+        return this;
+    }
+
+    /**
+     * Sets the completion executor of this request, overriding the executor of the client.
+     */
+    @Override
+    public RestRequestHolder setCompletionExecutor(Executor completionExecutor) {
+        this.completionExecutor = completionExecutor;
+        return this;
+    }
+
+    /**
+     * Sets the compression policy of this request, overriding the policy of the client.
+     */
+    @Override
+    public RestRequestHolder setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+        return this;
+    }
+
     /**
      * Set the content type.  If the request body is a String, and no charset parameter is included, then it will
      * default to UTF-8.
@@ -431,6 +522,39 @@ public class NingRestRequestHolder implements RestRequestHolder {
         return executeJson(body);
     }
 
+    /**
+     * Perform a PATCH on the request asynchronously.
+     *
+     * @param body a Java value sent as JSON
+     */
+    @Override
+    public CompletableFuture<RestResponse> patch(Object body) {
+        setMethod("PATCH");
+        return executeJson(body);
+    }
+
+    /**
+     * Perform a POST on the request asynchronously.
+     *
+     * @param body a Java value sent as JSON
+     */
+    @Override
+    public CompletableFuture<RestResponse> post(Object body) {
+        setMethod("POST");
+        return executeJson(body);
+    }
+
+    /**
+     * Perform a PUT on the request asynchronously.
+     *
+     * @param body a Java value sent as JSON
+     */
+    @Override
+    public CompletableFuture<RestResponse> put(Object body) {
+        setMethod("PUT");
+        return executeJson(body);
+    }
+
     /**
      * Perform a PATCH on the request asynchronously.
      *
@@ -523,23 +647,58 @@ public class NingRestRequestHolder implements RestRequestHolder {
 
     @Override
     public CompletableFuture<RestResponse> execute() {
+        NingRestRequest req = newRequest();
+        return req.getBody() != null ? executeBuffered(req) : execute(req, !(body instanceof InputStream));
+    }
+
+    /**
+     * Execute the request asynchronously without buffering the response body.
+     *
+     * @param consumer receives the body as it arrives
+     */
+    @Override
+    public CompletableFuture<RestStreamedResponse> stream(RestBodyConsumer consumer) {
+        NingRestRequest req = newRequest();
+        CompressionPolicy policy = compressionPolicy();
+        if (compresses(policy, req)) {
+            req = compress(req, policy);
+        }
+        return completeOn(prepare(req).stream(consumer));
+    }
+
+    private NingRestRequest newRequest() {
         if (body == null) {
-            NingRestRequest req = new NingRestRequest(client, method, url, queryParameters, headers);
-            return execute(req);
+            return new NingRestRequest(client, method, url, queryParameters, headers);
         } else if (body instanceof String) {
-            return executeString((String) body);
+            return stringRequest((String) body);
         } else if (body instanceof JsonNode) {
-            return executeJson((JsonNode) body);
+            return jsonRequest((JsonNode) body);
         } else if (body instanceof File) {
-            return executeFile((File) body);
+            return fileRequest((File) body);
         } else if (body instanceof InputStream) {
-            return executeIS((InputStream) body);
+            return isRequest((InputStream) body);
         } else {
             throw new IllegalStateException("Impossible body: " + body);
         }
     }
 
     private CompletableFuture<RestResponse> executeString(String body) {
+        return executeBuffered(stringRequest(body));
+    }
+
+    private CompletableFuture<RestResponse> executeJson(Object body) {
+        return executeBuffered(jsonRequest(body));
+    }
+
+    private CompletableFuture<RestResponse> executeIS(InputStream body) {
+        return execute(isRequest(body), false);
+    }
+
+    private CompletableFuture<RestResponse> executeFile(File body) {
+        return execute(fileRequest(body), true);
+    }
+
+    private NingRestRequest stringRequest(String body) {
         FluentCaseInsensitiveStringsMap headers = new FluentCaseInsensitiveStringsMap(this.headers);
 
         // Detect and maybe add charset
@@ -560,47 +719,198 @@ public class NingRestRequestHolder implements RestRequestHolder {
             throw new RuntimeException(e);
         }
 
-        NingRestRequest req = new NingRestRequest(client, method, url, queryParameters, headers, bodyBytes)
-                .setBody(body)
-                .setBodyEncoding(charset);
-        return execute(req);
+        return new NingRestRequest(client, method, url, queryParameters, headers, bodyBytes)
+                .setBody(bodyBytes);
     }
 
-    private CompletableFuture<RestResponse> executeJson(JsonNode body) {
+    private NingRestRequest jsonRequest(Object body) {
         FluentCaseInsensitiveStringsMap headers = new FluentCaseInsensitiveStringsMap(this.headers);
         headers.replace(HttpHeaders.Names.CONTENT_TYPE, "application/json; charset=utf-8");
-        String bodyStr = Json.stringify(body);
-        byte[] bodyBytes;
+        // Serialized straight to UTF-8, the same array is kept by the request and sent by the client
+        byte[] bodyBytes = Json.toBytes(body);
+
+        return new NingRestRequest(client, method, url, queryParameters, headers, bodyBytes)
+                .setBody(bodyBytes);
+    }
+
+    private NingRestRequest isRequest(InputStream body) {
+        return new NingRestRequest(client, method, url, queryParameters, headers)
+                .setBody(body);
+    }
+
+    private NingRestRequest fileRequest(File body) {
+        return new NingRestRequest(client, method, url, queryParameters, headers)
+                .setBody(body);
+    }
+
+    /**
+     * Execute a request with a String or JSON body, compressing the body first if the compression policy accepts
+     * it, with the executor of the policy if it has one.
+     */
+    private CompletableFuture<RestResponse> executeBuffered(NingRestRequest req) {
+        CompressionPolicy policy = compressionPolicy();
+        if (!compresses(policy, req)) {
+            return execute(req, true);
+        }
+        CompletableFuture<NingRestRequest> compressing;
         try {
-            bodyBytes = bodyStr.getBytes("utf-8");
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
+            compressing = policy.getExecutor() == null
+                    ? null : CompletableFuture.supplyAsync(() -> compress(req, policy), policy.getExecutor());
+        } catch (RejectedExecutionException e) {
+            compressing = null;
+        }
+        if (compressing == null) {
+            return execute(compress(req, policy), true);
+        }
+        CompletableFuture<RestResponse> response = new CompletableFuture<>();
+        compressing.whenComplete((compressed, failure) -> {
+            if (failure != null) {
+                if (failure instanceof CompletionException && failure.getCause() != null) {
+                    failure = failure.getCause();
+                }
+                response.completeExceptionally(failure);
+            } else if (!response.isDone()) {
+                // not sent if it was cancelled or timed out while compressing
+                CompletableFuture<RestResponse> sent = cache(compressed, true);
+                Futures.propagateCancel(response, sent);
+                sent.whenComplete((r, f) -> {
+                    if (f == null) {
+                        response.complete(r);
+                    } else {
+                        response.completeExceptionally(f);
+                    }
+                });
+            }
+        });
+        return complete(Futures.propagateCancel(response, compressing));
+    }
+
+    /**
+     * @return the compression policy of this request, or else of the client.
+     */
+    private CompressionPolicy compressionPolicy() {
+        return compressionPolicy != null ? compressionPolicy : client.getCompressionPolicy();
+    }
+
+    private static boolean compresses(CompressionPolicy policy, NingRestRequest req) {
+        return policy != null && req.getBody() != null && policy.accepts(req.getBody().length)
+                && req.getHeader(HttpHeaders.Names.CONTENT_ENCODING).isEmpty();
+    }
+
+    /**
+     * @return the request with its body compressed, or the request itself if it would not be smaller.
+     */
+    private NingRestRequest compress(NingRestRequest req, CompressionPolicy policy) {
+        byte[] compressed = policy.compress(req.getBody());
+        if (compressed == null) {
+            return req;
         }
+        FluentCaseInsensitiveStringsMap headers = new FluentCaseInsensitiveStringsMap().replaceAll(req.getAllHeaders());
+        headers.replace(HttpHeaders.Names.CONTENT_ENCODING, policy.getEncoding().getToken());
+        return new NingRestRequest(client, method, url, queryParameters, headers, compressed)
+                .setBody(compressed);
+    }
 
-        NingRestRequest req = new NingRestRequest(client, method, url, queryParameters, headers, bodyBytes)
-                .setBody(bodyStr)
-                .setBodyEncoding("utf-8");
-        return execute(req);
+    /**
+     * @param replayable false if the body cannot be sent again by a retry
+     */
+    private CompletableFuture<RestResponse> execute(NingRestRequest req, boolean replayable) {
+        return complete(cache(req, replayable));
+    }
 
+    /**
+     * Apply the deadline of this request to the response and complete it with the completion executor.
+     */
+    private CompletableFuture<RestResponse> complete(CompletableFuture<RestResponse> response) {
+        if (deadline > 0) {
+            response = Futures.orTimeout(response, deadline, TimeUnit.MILLISECONDS);
+        }
+        return completeOn(response);
     }
 
-    private CompletableFuture<RestResponse> executeIS(InputStream body) {
-        NingRestRequest req = new NingRestRequest(client, method, url, queryParameters, headers)
-                .setBody(body);
-        return execute(req);
+    /**
+     * Hand the completion of the future over to the completion executor of the request or of the client.
+     */
+    private <T> CompletableFuture<T> completeOn(CompletableFuture<T> future) {
+        Executor executor = completionExecutor != null ? completionExecutor : client.getCompletionExecutor();
+        return CompletionExecutors.isDirect(executor) ? future : Futures.completeOn(future, executor);
     }
 
-    private CompletableFuture<RestResponse> executeFile(File body) {
-        NingRestRequest req = new NingRestRequest(client, method, url, queryParameters, headers)
-                .setBody(body);
-        return execute(req);
+    /**
+     * Execute the request through the HTTP cache of the client, if it has one.
+     */
+    private CompletableFuture<RestResponse> cache(NingRestRequest req, boolean replayable) {
+        HttpCache cache = client.getHttpCache();
+        // signed requests and virtual hosts cannot be told apart by the cache and coalescing keys
+        if (cache == null || calculator != null || virtualHost != null) {
+            return coalesce(prepare(req), headers, replayable);
+        }
+        return cache.execute(method, url, queryParameters, headers, username, password, scheme, conditions -> {
+            if (conditions.isEmpty()) {
+                return coalesce(prepare(req), headers, replayable);
+            }
+            Map<String, Collection<String>> conditionalHeaders = new HashMap<>(headers);
+            for (Map.Entry<String, String> condition : conditions.entrySet()) {
+                conditionalHeaders.put(condition.getKey(), Collections.singletonList(condition.getValue()));
+            }
+            NingRestRequest conditional = new NingRestRequest(client, method, url, queryParameters, conditionalHeaders);
+            return coalesce(prepare(conditional), conditionalHeaders, replayable);
+        });
+    }
+
+    /**
+     * Send the request, sharing the response of an identical request in flight if the client coalesces requests.
+     *
+     * @param headers the headers of the request, for the coalescing key
+     */
+    private CompletableFuture<RestResponse> coalesce(NingRestRequest prepared, Map<String, Collection<String>> headers,
+                                                     boolean replayable) {
+        RequestCoalescer coalescer = client.getRequestCoalescer();
+        if (coalescer != null && body == null && calculator == null && virtualHost == null
+                && coalescer.accepts(method)) {
+            String key = coalescer.key(method, url, queryParameters, headers, username, password, scheme);
+            return coalescer.execute(key, () -> send(prepared, replayable));
+        }
+        return send(prepared, replayable);
+    }
+
+    /**
+     * Send the request, hedging and retrying it according to the policies of this holder or the client, and
+     * passing every attempt through the circuit breaker and the concurrency limiter of the client.
+     */
+    private CompletableFuture<RestResponse> send(NingRestRequest prepared, boolean replayable) {
+        String host = prepared.getHost();
+        ConcurrencyLimiter limiter = client.getConcurrencyLimiter();
+        Supplier<CompletableFuture<RestResponse>> limited = limiter == null
+                ? prepared::execute
+                : () -> limiter.execute(host, prepared::execute);
+        // open circuits fail before waiting for the limiter
+        CircuitBreaker breaker = client.getCircuitBreaker();
+        Supplier<CompletableFuture<RestResponse>> request = breaker == null
+                ? limited
+                : () -> breaker.execute(circuit != null ? circuit : host, limited);
+
+        HedgePolicy hedge = this.hedgePolicy != null ? this.hedgePolicy : client.getHedgePolicy();
+        Supplier<CompletableFuture<RestResponse>> attempt = hedge == null || !"GET".equals(prepared.getMethod())
+                ? request
+                : () -> hedge.execute(host, client.getMetrics(), request);
+
+        RetryPolicy retry = this.retryPolicy != null ? this.retryPolicy : client.getRetryPolicy();
+        if (retry == null) {
+            return attempt.get();
+        }
+        return retry.execute(prepared, replayable, client.getRetryBudget(), attempt);
     }
 
-    private CompletableFuture<RestResponse> execute(NingRestRequest req) {
+    /**
+     * Apply the per request settings of this holder to the request.
+     */
+    private NingRestRequest prepare(NingRestRequest req) {
         if (this.timeout > 0) {// todo change PerRequestConfig
             PerRequestConfig config = new PerRequestConfig();
             config.setRequestTimeoutInMs(this.timeout);
             req.setPerRequestConfig(config);
+            req.setTimeout(this.timeout);
         }
         if (this.followRedirects != null) {
             req.setFollowRedirects(this.followRedirects);
@@ -610,9 +920,18 @@ public class NingRestRequestHolder implements RestRequestHolder {
         }
         if (this.username != null && this.password != null && this.scheme != null)
             req.auth(this.username, this.password, this.scheme);
+        CompressionPolicy policy = compressionPolicy();
+        if (policy != null && policy.isDecompressResponses()) {
+            req.setCompressionPolicy(policy);
+            // decoded responses are only built for the Netty provider, the transports get the headers as they are
+            if (client.getTransport() == null && client.getUnderlying().getProvider() instanceof NettyAsyncHttpProvider
+                    && req.getHeader(HttpHeaders.Names.ACCEPT_ENCODING).isEmpty()) {
+                req.addHeader(HttpHeaders.Names.ACCEPT_ENCODING, "gzip, deflate");
+            }
+        }
         if (this.calculator != null)
             this.calculator.sign(req);
 
-        return req.execute();
+        return req;
     }
 }
@@ -20,12 +20,17 @@ package com.ecomnext.rest.ning;
 import com.ecomnext.rest.RestResponse;
 import com.ecomnext.rest.utils.Json;
 import com.ecomnext.rest.utils.XML;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.ning.http.client.Response;
 import com.ning.http.client.cookie.Cookie;
+import com.ning.http.client.providers.netty.NettyResponse;
 import com.ning.http.util.AsyncHttpProviderUtils;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.w3c.dom.Document;
 
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
@@ -136,7 +141,21 @@ public class NingRestResponse implements RestResponse {
     @Override
     public Document asXml() {
         try {
-            return XML.fromInputStream(ahcResponse.getResponseBodyAsStream(), "utf-8");
+            return XML.fromInputStream(getBodyStream(), "utf-8");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Get the response body as a {@link javax.xml.stream.XMLStreamReader StAX stream}, to process it
+     * element by element without building a DOM document. The reader must be closed after use.
+     * @return a StAX stream reader
+     */
+    @Override
+    public XMLStreamReader asXmlStream() {
+        try {
+            return XML.streamFromInputStream(getBodyStream(), "utf-8");
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -150,7 +169,34 @@ public class NingRestResponse implements RestResponse {
     public JsonNode asJson() {
         try {
             // Jackson will automatically detect the correct encoding according to the rules in RFC-4627
-            return Json.parse(ahcResponse.getResponseBodyAsStream());
+            return Json.parse(getBodyStream());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Bind the JSON response body to a Java value, without building an intermediate JsonNode.
+     * @param clazz Expected Java value type.
+     */
+    @Override
+    public <T> T as(Class<T> clazz) {
+        try {
+            return Json.fromInputStream(getBodyStream(), clazz);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Bind the JSON response body to a Java value using Generics, without building an intermediate
+     * JsonNode.
+     * @param valueTypeRef Expected Java value type.
+     */
+    @Override
+    public <T> T as(TypeReference<T> valueTypeRef) {
+        try {
+            return Json.fromInputStream(getBodyStream(), valueTypeRef);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -163,7 +209,7 @@ public class NingRestResponse implements RestResponse {
     @Override
     public InputStream getBodyAsStream() {
         try {
-            return ahcResponse.getResponseBodyAsStream();
+            return getBodyStream();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -196,4 +242,15 @@ public class NingRestResponse implements RestResponse {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * A new stream over the body every time, so it can be read any number of times, even concurrently. The stream
+     * of the AHC response moves the reader index of the body buffer and the body could only be read once.
+     */
+    private InputStream getBodyStream() throws IOException {
+        if (ahcResponse instanceof NettyResponse) {
+            return new ChannelBufferInputStream(((NettyResponse) ahcResponse).getResponseBodyAsChannelBuffer().duplicate());
+        }
+        return new ByteArrayInputStream(ahcResponse.getResponseBodyAsBytes());
+    }
 }
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.ning;
+
+import com.ecomnext.rest.RestBodyConsumer;
+import com.ecomnext.rest.RestStreamedResponse;
+import com.ecomnext.rest.compress.CompressionPolicy;
+import com.ecomnext.rest.compress.StreamingDecoder;
+import com.ecomnext.rest.executor.IoThreadDiagnostics;
+import com.ning.http.client.*;
+import com.ning.http.client.providers.netty.NettyResponseFuture;
+import org.jboss.netty.channel.Channel;
+
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+public class NingRestStreamedResponse implements RestStreamedResponse {
+    /**
+     * NettyResponseFuture does not expose its channel, which is needed to toggle reading on and off.
+     * Null if it cannot be accessed, in which case pause() and resume() have no effect.
+     */
+    private static final Method CHANNEL_METHOD = channelMethod();
+
+    private final HttpResponseStatus status;
+    private final FluentCaseInsensitiveStringsMap headers;
+    private final RestBodyConsumer consumer;
+    private final CompletableFuture<Void> bodyCompletion = new CompletableFuture<Void>() {
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                abort();
+            }
+            return cancelled;
+        }
+    };
+
+    private volatile ListenableFuture<?> future;
+    private volatile boolean paused = false;
+    private volatile boolean aborted = false;
+
+    NingRestStreamedResponse(HttpResponseStatus status, FluentCaseInsensitiveStringsMap headers,
+                             RestBodyConsumer consumer) {
+        this.status = status;
+        this.headers = headers;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Get the HTTP status code of the response
+     */
+    @Override
+    public int getStatus() {
+        return status.getStatusCode();
+    }
+
+    /**
+     * Get the HTTP status text of the response
+     */
+    @Override
+    public String getStatusText() {
+        return status.getStatusText();
+    }
+
+    /**
+     * Get all the HTTP headers of the response as a case-insensitive map
+     */
+    @Override
+    public Map<String, List<String>> getAllHeaders() {
+        return headers;
+    }
+
+    /**
+     * Get the given HTTP header of the response
+     */
+    @Override
+    public String getHeader(String key) {
+        return headers.getFirstValue(key);
+    }
+
+    /**
+     * Return the request {@link java.net.URI}.
+     */
+    @Override
+    public URI getUri() {
+        return status.getUrl();
+    }
+
+    @Override
+    public void pause() {
+        paused = true;
+        updateReadable();
+    }
+
+    @Override
+    public void resume() {
+        paused = false;
+        updateReadable();
+    }
+
+    @Override
+    public boolean isPaused() {
+        return paused;
+    }
+
+    @Override
+    public void abort() {
+        aborted = true;
+        ListenableFuture<?> f = future;
+        if (f != null) {
+            f.cancel(true);
+        }
+        fail(new CancellationException("Response aborted"));
+    }
+
+    @Override
+    public CompletableFuture<Void> getBodyCompletion() {
+        return bodyCompletion;
+    }
+
+    boolean isAborted() {
+        return aborted;
+    }
+
+    void fail(Throwable t) {
+        if (bodyCompletion.completeExceptionally(t)) {
+            consumer.onError(t);
+        }
+    }
+
+    /**
+     * Attach the future of the underlying request, which may happen after the headers are received.
+     */
+    void setFuture(ListenableFuture<?> future) {
+        this.future = future;
+        if (aborted) {
+            future.cancel(true);
+        } else if (paused) {
+            updateReadable();
+        }
+    }
+
+    private void updateReadable() {
+        Channel channel = channel(future);
+        if (channel != null) {
+            channel.setReadable(!paused);
+        }
+    }
+
+    private static Channel channel(ListenableFuture<?> future) {
+        if (CHANNEL_METHOD == null || !(future instanceof NettyResponseFuture)) {
+            return null;
+        }
+        try {
+            return (Channel) CHANNEL_METHOD.invoke(future);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static Method channelMethod() {
+        try {
+            Method method = NettyResponseFuture.class.getDeclaredMethod("channel");
+            method.setAccessible(true);
+            return method;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * AsyncHandler which completes the response as soon as the headers are received and then hands
+     * every body part to the consumer without buffering it, decompressed first if the policy says so.
+     */
+    static class Handler implements AsyncHandler<Void> {
+        private final CompletableFuture<RestStreamedResponse> promise;
+        private final RestBodyConsumer consumer;
+        private final IoThreadDiagnostics diagnostics;
+        private final CompressionPolicy policy;
+        private StreamingDecoder decoder;
+        private HttpResponseStatus status;
+        private volatile NingRestStreamedResponse response;
+        private volatile ListenableFuture<?> future;
+
+        Handler(CompletableFuture<RestStreamedResponse> promise, RestBodyConsumer consumer,
+                IoThreadDiagnostics diagnostics, CompressionPolicy policy) {
+            this.promise = promise;
+            this.consumer = consumer;
+            this.diagnostics = diagnostics;
+            this.policy = policy;
+        }
+
+        void setFuture(ListenableFuture<?> future) {
+            this.future = future;
+            NingRestStreamedResponse r = response;
+            if (r != null) {
+                r.setFuture(future);
+            }
+        }
+
+        @Override
+        public STATE onStatusReceived(HttpResponseStatus status) {
+            this.status = status;
+            return STATE.CONTINUE;
+        }
+
+        @Override
+        public STATE onHeadersReceived(HttpResponseHeaders headers) {
+            StreamingDecoder decoder = NingRestRequest.decoder(policy, headers);
+            if (decoder != null) {
+                this.decoder = decoder;
+                headers = NingRestRequest.decoded(headers);
+            }
+            NingRestStreamedResponse r = new NingRestStreamedResponse(status, headers.getHeaders(), consumer);
+            response = r;
+            ListenableFuture<?> f = future;
+            if (f != null) {
+                r.setFuture(f);
+            }
+            long completing = diagnostics.completing();
+            promise.complete(r);
+            diagnostics.completed(completing);
+            return r.isAborted() ? STATE.ABORT : STATE.CONTINUE;
+        }
+
+        @Override
+        public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+            NingRestStreamedResponse r = response;
+            if (r.isAborted()) {
+                closeDecoder();
+                return STATE.ABORT;
+            }
+            try {
+                if (decoder == null) {
+                    consumer.onBodyPart(bodyPart.getBodyByteBuffer());
+                } else {
+                    decoder.decode(bodyPart.getBodyByteBuffer(), consumer);
+                }
+            } catch (Exception e) {
+                closeDecoder();
+                r.aborted = true;
+                r.fail(e);
+                return STATE.ABORT;
+            }
+            if (r.isAborted()) {
+                closeDecoder();
+                return STATE.ABORT;
+            }
+            return STATE.CONTINUE;
+        }
+
+        @Override
+        public Void onCompleted() {
+            NingRestStreamedResponse r = response;
+            if (r == null) {
+                promise.completeExceptionally(new IllegalStateException("Response completed without headers"));
+            } else if (!r.isAborted() && !r.bodyCompletion.isDone()) {
+                try {
+                    if (decoder != null) {
+                        decoder.finish();
+                    }
+                    consumer.onComplete();
+                    r.bodyCompletion.complete(null);
+                } catch (Exception e) {
+                    r.fail(e);
+                }
+            }
+            closeDecoder();
+            return null;
+        }
+
+        @Override
+        public void onThrowable(Throwable t) {
+            closeDecoder();
+            NingRestStreamedResponse r = response;
+            if (r == null) {
+                promise.completeExceptionally(t);
+            } else {
+                r.fail(t);
+            }
+        }
+
+        private void closeDecoder() {
+            if (decoder != null) {
+                decoder.close();
+            }
+        }
+    }
+}
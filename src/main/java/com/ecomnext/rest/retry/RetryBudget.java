@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.retry;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket shared by the requests of a client that limits retries to a ratio of the requests, so retries
+ * cannot multiply the load of a backend which is already failing. Every request executed with a retry policy
+ * deposits {@code ratio} tokens and every retry withdraws one; when the bucket is empty requests fail with their
+ * last response or error instead of being retried.
+ * <p>
+ * The bucket starts full and holds at most {@code maxTokens} tokens, so over any period the retries are at most
+ * {@code ratio} times the requests plus {@code maxTokens}. With a ratio of 1 or less retries can never more than
+ * double the load.
+ */
+public class RetryBudget {
+    private static final long SCALE = 1000;
+
+    private final double ratio;
+    private final long deposit;
+    private final long capacity;
+    private final AtomicLong balance;
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    /**
+     * @param ratio     tokens deposited by every request, between 0 and 1
+     * @param maxTokens maximum tokens saved for bursts of retries
+     */
+    public RetryBudget(double ratio, int maxTokens) {
+        if (ratio < 0 || ratio > 1) {
+            throw new IllegalArgumentException("The retry ratio must be between 0 and 1: " + ratio);
+        }
+        if (maxTokens < 1) {
+            throw new IllegalArgumentException("The retry budget must hold at least one token: " + maxTokens);
+        }
+        this.ratio = ratio;
+        this.deposit = Math.round(ratio * SCALE);
+        this.capacity = maxTokens * SCALE;
+        this.balance = new AtomicLong(capacity);
+    }
+
+    /**
+     * Deposit the tokens of a new request.
+     */
+    public void onRequest() {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= capacity) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(capacity, current + deposit)));
+    }
+
+    /**
+     * Withdraw a token for a retry.
+     *
+     * @return false if the budget is exhausted and the request must not be retried.
+     */
+    public boolean tryRetry() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < SCALE) {
+                exhausted.increment();
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - SCALE));
+        retries.increment();
+        return true;
+    }
+
+    public double getRatio() {
+        return ratio;
+    }
+
+    /**
+     * @return the tokens available for retries.
+     */
+    public double getAvailable() {
+        return (double) balance.get() / SCALE;
+    }
+
+    /**
+     * @return the number of retries allowed by this budget.
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return the number of retries denied because the budget was exhausted.
+     */
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+}
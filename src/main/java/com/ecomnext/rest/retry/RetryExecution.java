@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.retry;
+
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.utils.SharedScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The attempts of a request executed with a retry policy. Retries are scheduled on the {@link SharedScheduler},
+ * no thread waits for them, and sent from its worker threads since sending may block.
+ */
+class RetryExecution {
+    private final RetryPolicy policy;
+    private final Supplier<CompletableFuture<RestResponse>> attempt;
+    private final boolean idempotent;
+    private final RetryBudget budget;
+    private final CompletableFuture<RestResponse> promise = new CompletableFuture<RestResponse>() {
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                cancelCurrent();
+            }
+            return cancelled;
+        }
+    };
+
+    // only accessed by the completion of the previous attempt, which happens before the next attempt starts
+    private int retries = 0;
+    private List<Throwable> failures = null;
+    // the attempt in flight or the timer of the next one, to cancel them with the promise
+    private volatile Future<?> current;
+
+    RetryExecution(RetryPolicy policy, Supplier<CompletableFuture<RestResponse>> attempt, boolean idempotent,
+                   RetryBudget budget) {
+        this.policy = policy;
+        this.attempt = attempt;
+        this.idempotent = idempotent;
+        this.budget = budget;
+    }
+
+    CompletableFuture<RestResponse> start() {
+        attempt();
+        return promise;
+    }
+
+    private void attempt() {
+        if (promise.isDone()) {
+            // cancelled while waiting for the retry
+            return;
+        }
+        CompletableFuture<RestResponse> future;
+        try {
+            future = attempt.get();
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        current = future;
+        if (promise.isCancelled()) {
+            future.cancel(true);
+        }
+        future.whenComplete(this::onAttempt);
+    }
+
+    private void cancelCurrent() {
+        Future<?> current = this.current;
+        if (current != null) {
+            current.cancel(true);
+        }
+    }
+
+    private void onAttempt(RestResponse response, Throwable failure) {
+        if (promise.isDone()) {
+            release(response);
+            return;
+        }
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+
+        long delay = failure == null
+                ? policy.delayAfter(response, retries, idempotent)
+                : policy.delayAfter(failure, retries, idempotent);
+        if (delay < 0 || (budget != null && !budget.tryRetry())) {
+            complete(response, failure);
+            return;
+        }
+
+        retries++;
+        // the response is replaced by the one of the retry
+        release(response);
+        if (failure != null) {
+            if (failures == null) {
+                failures = new ArrayList<>();
+            }
+            failures.add(failure);
+        }
+        current = SharedScheduler.scheduleHandoff(this::attempt, delay, TimeUnit.MILLISECONDS);
+        if (promise.isCancelled()) {
+            cancelCurrent();
+        }
+    }
+
+    private void complete(RestResponse response, Throwable failure) {
+        if (failure == null) {
+            if (!promise.complete(response)) {
+                release(response);
+            }
+            return;
+        }
+        if (failures != null) {
+            for (Throwable previous : failures) {
+                if (previous != failure) {
+                    failure.addSuppressed(previous);
+                }
+            }
+        }
+        promise.completeExceptionally(failure);
+    }
+
+    private static void release(RestResponse response) {
+        if (response != null) {
+            response.release();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.retry;
+
+import com.ecomnext.rest.RestRequest;
+import com.ecomnext.rest.RestResponse;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Decides which failed requests are retried and when. Policies are immutable and can be shared by any number of
+ * clients and requests, create them with {@link #builder()}.
+ * <p>
+ * A request is retried when it fails with a retryable exception or gets a response with a retryable status, up to
+ * {@code maxRetries} times. Only idempotent methods (GET, HEAD, OPTIONS, PUT, DELETE and TRACE) and requests with an
+ * {@code Idempotency-Key} header are retried, unless the policy allows retrying any method. Connection failures are
+ * retried for every method because the request was never sent.
+ * <p>
+ * Retries wait an exponential backoff with full jitter: a random delay between zero and
+ * {@code initialBackoff * 2^retry}, capped at {@code maxBackoff}. If the response has a {@code Retry-After} header
+ * the retry waits at least that long, and it is not retried at all if the server asks to wait longer than
+ * {@code maxRetryAfter}.
+ */
+public class RetryPolicy {
+    /**
+     * A policy which never retries, to disable the retries of the client on a single request.
+     */
+    public static final RetryPolicy NONE = builder().maxRetries(0).build();
+
+    private static final Set<String> IDEMPOTENT_METHODS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("GET", "HEAD", "OPTIONS", "PUT", "DELETE", "TRACE")));
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final String RETRY_AFTER = "Retry-After";
+
+    private final int maxRetries;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final long maxRetryAfter;
+    private final Set<Integer> retryStatuses;
+    private final Predicate<Throwable> retryExceptions;
+    private final boolean retryNonIdempotent;
+
+    private RetryPolicy(Builder builder) {
+        this.maxRetries = builder.maxRetries;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.maxRetryAfter = builder.maxRetryAfter;
+        this.retryStatuses = Collections.unmodifiableSet(new HashSet<>(builder.retryStatuses));
+        this.retryExceptions = builder.retryExceptions;
+        this.retryNonIdempotent = builder.retryNonIdempotent;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Execute the request, retrying it according to this policy.
+     *
+     * @param request    the request, executed again for every retry
+     * @param replayable false if the body of the request cannot be sent twice, e.g. an InputStream
+     * @param budget     the retry budget of the client, null for no limit
+     */
+    public CompletableFuture<RestResponse> execute(RestRequest request, boolean replayable, RetryBudget budget) {
+        return execute(request, replayable, budget, request::execute);
+    }
+
+    /**
+     * Execute the attempts of a request, retrying them according to this policy.
+     *
+     * @param request    the request, used to know if it is idempotent
+     * @param replayable false if the body of the request cannot be sent twice, e.g. an InputStream
+     * @param budget     the retry budget of the client, null for no limit
+     * @param attempt    sends the request again on every call
+     */
+    public CompletableFuture<RestResponse> execute(RestRequest request, boolean replayable, RetryBudget budget,
+                                                   Supplier<CompletableFuture<RestResponse>> attempt) {
+        if (maxRetries == 0 || !replayable) {
+            return attempt.get();
+        }
+        if (budget != null) {
+            budget.onRequest();
+        }
+        return new RetryExecution(this, attempt, isIdempotent(request), budget).start();
+    }
+
+    boolean isIdempotent(RestRequest request) {
+        return retryNonIdempotent
+                || IDEMPOTENT_METHODS.contains(request.getMethod())
+                || !request.getHeader(IDEMPOTENCY_KEY).isEmpty();
+    }
+
+    /**
+     * @return the delay in milliseconds before retrying a request which got the given response, or -1 if it must
+     * not be retried.
+     */
+    long delayAfter(RestResponse response, int retries, boolean idempotent) {
+        if (retries >= maxRetries || !idempotent || !retryStatuses.contains(response.getStatus())) {
+            return -1;
+        }
+        long backoff = backoff(retries);
+        long retryAfter = retryAfter(response.getHeader(RETRY_AFTER));
+        if (retryAfter > maxRetryAfter) {
+            return -1;
+        }
+        return Math.max(backoff, retryAfter);
+    }
+
+    /**
+     * @return the delay in milliseconds before retrying a request which failed with the given exception, or -1 if
+     * it must not be retried.
+     */
+    long delayAfter(Throwable failure, int retries, boolean idempotent) {
+        if (retries >= maxRetries || !retryExceptions.test(failure)) {
+            return -1;
+        }
+        if (!idempotent && !(failure instanceof ConnectException)) {
+            return -1;
+        }
+        return backoff(retries);
+    }
+
+    private long backoff(int retries) {
+        long cap = retries >= Long.numberOfLeadingZeros(initialBackoff) - 1
+                ? maxBackoff : Math.min(maxBackoff, initialBackoff << retries);
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * @return the delay requested by a Retry-After header in milliseconds, 0 if there is none or it is invalid.
+     */
+    static long retryAfter(String value) {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        value = value.trim();
+        if (Character.isDigit(value.charAt(0))) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    public static class Builder {
+        private int maxRetries = 2;
+        private long initialBackoff = 100;
+        private long maxBackoff = 10000;
+        private long maxRetryAfter = 30000;
+        private Set<Integer> retryStatuses = new HashSet<>(Arrays.asList(429, 502, 503, 504));
+        private Predicate<Throwable> retryExceptions = failure -> failure instanceof IOException;
+        private boolean retryNonIdempotent = false;
+
+        private Builder() {
+        }
+
+        /**
+         * Maximum number of retries of every request, 2 by default.
+         */
+        public Builder maxRetries(int maxRetries) {
+            if (maxRetries < 0) {
+                throw new IllegalArgumentException("The maximum number of retries cannot be negative: " + maxRetries);
+            }
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * Upper bound of the delay before the first retry, 100ms by default. It doubles on every retry.
+         */
+        public Builder initialBackoff(long delay, TimeUnit unit) {
+            this.initialBackoff = Math.max(1, unit.toMillis(delay));
+            return this;
+        }
+
+        /**
+         * Upper bound of the delay between retries, 10s by default.
+         */
+        public Builder maxBackoff(long delay, TimeUnit unit) {
+            this.maxBackoff = Math.max(1, unit.toMillis(delay));
+            return this;
+        }
+
+        /**
+         * Longest Retry-After accepted, responses asking to wait longer are not retried. 30s by default.
+         */
+        public Builder maxRetryAfter(long delay, TimeUnit unit) {
+            this.maxRetryAfter = unit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * Status codes of the responses which are retried, by default 429, 502, 503 and 504.
+         */
+        public Builder retryOnStatus(Integer... statuses) {
+            this.retryStatuses = new HashSet<>(Arrays.asList(statuses));
+            return this;
+        }
+
+        /**
+         * @see #retryOnStatus(Integer...)
+         */
+        public Builder retryOnStatus(List<Integer> statuses) {
+            this.retryStatuses = new HashSet<>(statuses);
+            return this;
+        }
+
+        /**
+         * Exceptions which are retried, by default any IOException such as a refused or reset connection.
+         */
+        public Builder retryOnException(Predicate<Throwable> retryExceptions) {
+            this.retryExceptions = retryExceptions;
+            return this;
+        }
+
+        /**
+         * Retry requests of any method, such as POST or PATCH. Only enable it if the server deduplicates requests.
+         */
+        public Builder retryNonIdempotent(boolean retryNonIdempotent) {
+            this.retryNonIdempotent = retryNonIdempotent;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            if (maxBackoff < initialBackoff) {
+                maxBackoff = initialBackoff;
+            }
+            return new RetryPolicy(this);
+        }
+    }
+}
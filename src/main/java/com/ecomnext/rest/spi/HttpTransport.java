@@ -0,0 +1,49 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.spi;
+
+import com.ecomnext.rest.RestBodyConsumer;
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.RestStreamedResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends the requests of a client over the network, replacing the AsyncHttpClient of the client. The client prepares
+ * every request, with its caching, retries, limits and the other features of the client, and the transport only
+ * sends it once and returns its response.
+ * <p>
+ * Cancelling a returned future must abort the request. Transports are created by an {@link HttpTransportProvider}.
+ *
+ * @see com.ecomnext.rest.RestClient#setTransport(HttpTransport)
+ */
+public interface HttpTransport {
+    /**
+     * Send the request and buffer the whole response body.
+     */
+    CompletableFuture<RestResponse> execute(TransportRequest request);
+
+    /**
+     * Send the request and hand the response body to the consumer as it arrives, completing the future as soon as
+     * the headers are received.
+     */
+    CompletableFuture<RestStreamedResponse> stream(TransportRequest request, RestBodyConsumer consumer);
+
+    /**
+     * Release the connections and threads of the transport, it is called by the client closing.
+     */
+    void close();
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.spi;
+
+/**
+ * Creates the transports of a backend. Providers are found with {@link java.util.ServiceLoader}: a backend lists its
+ * provider in {@code META-INF/services/com.ecomnext.rest.spi.HttpTransportProvider}.
+ *
+ * @see HttpTransports
+ */
+public interface HttpTransportProvider {
+    /**
+     * @return the name selecting this provider, e.g. "jdk".
+     */
+    String getName();
+
+    /**
+     * @return a new transport with the default settings of the backend.
+     */
+    HttpTransport create();
+}
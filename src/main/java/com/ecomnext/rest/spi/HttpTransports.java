@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.spi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Looks up the {@link HttpTransportProvider}s in the class path. The default client of
+ * {@link com.ecomnext.rest.Rest} uses the transport named by the system property {@value #PROPERTY}, or the
+ * AsyncHttpClient if it is not set or is {@value #DEFAULT}.
+ */
+public class HttpTransports {
+    /**
+     * System property selecting the transport of the default client.
+     */
+    public static final String PROPERTY = "com.ecomnext.rest.transport";
+
+    /**
+     * Name of the built-in AsyncHttpClient transport.
+     */
+    public static final String DEFAULT = "ning";
+
+    private HttpTransports() {
+    }
+
+    /**
+     * @return the providers found in the class path.
+     */
+    public static List<HttpTransportProvider> providers() {
+        List<HttpTransportProvider> providers = new ArrayList<>();
+        for (HttpTransportProvider provider : ServiceLoader.load(HttpTransportProvider.class)) {
+            providers.add(provider);
+        }
+        return providers;
+    }
+
+    /**
+     * @return a new transport of the provider with the given name.
+     * @throws IllegalArgumentException if there is no such provider in the class path
+     */
+    public static HttpTransport create(String name) {
+        List<String> names = new ArrayList<>();
+        for (HttpTransportProvider provider : providers()) {
+            if (provider.getName().equals(name)) {
+                return provider.create();
+            }
+            names.add(provider.getName());
+        }
+        throw new IllegalArgumentException("No transport named " + name + " in the class path, found " + names);
+    }
+
+    /**
+     * @return a new transport of the provider named by the system property, or null to use the AsyncHttpClient.
+     */
+    public static HttpTransport fromSystemProperty() {
+        String name = System.getProperty(PROPERTY);
+        if (name == null || name.isEmpty() || name.equals(DEFAULT)) {
+            return null;
+        }
+        return create(name);
+    }
+}
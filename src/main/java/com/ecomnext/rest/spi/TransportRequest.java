@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.spi;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A request prepared by the client, ready to be sent by an {@link HttpTransport}: authentication and signatures are
+ * already in its headers and its URL includes the query string. It has at most one body.
+ */
+public class TransportRequest {
+    private final String method;
+    private final String url;
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+    private final File bodyFile;
+    private final InputStream bodyStream;
+    private final int timeout;
+    private final Boolean followRedirects;
+
+    private TransportRequest(Builder builder) {
+        this.method = builder.method;
+        this.url = builder.url;
+        this.headers = Collections.unmodifiableMap(builder.headers);
+        this.body = builder.body;
+        this.bodyFile = builder.bodyFile;
+        this.bodyStream = builder.bodyStream;
+        this.timeout = builder.timeout;
+        this.followRedirects = builder.followRedirects;
+    }
+
+    public static Builder builder(String method, String url) {
+        return new Builder(method, url);
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the headers, case-insensitive.
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return the body, or null if it has none or the body is a file or a stream.
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    public File getBodyFile() {
+        return bodyFile;
+    }
+
+    /**
+     * @return the body to read once, or null.
+     */
+    public InputStream getBodyStream() {
+        return bodyStream;
+    }
+
+    /**
+     * @return the request timeout in milliseconds, 0 for the default of the transport.
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return whether redirects are followed, null for the default of the transport.
+     */
+    public Boolean getFollowRedirects() {
+        return followRedirects;
+    }
+
+    public static class Builder {
+        private final String method;
+        private final String url;
+        private final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private byte[] body;
+        private File bodyFile;
+        private InputStream bodyStream;
+        private int timeout = 0;
+        private Boolean followRedirects;
+
+        private Builder(String method, String url) {
+            this.method = method;
+            this.url = url;
+        }
+
+        public Builder headers(Map<String, List<String>> headers) {
+            this.headers.putAll(headers);
+            return this;
+        }
+
+        public Builder header(String name, List<String> values) {
+            headers.put(name, values);
+            return this;
+        }
+
+        public Builder body(byte[] body) {
+            this.body = body;
+            return this;
+        }
+
+        public Builder body(File body) {
+            this.bodyFile = body;
+            return this;
+        }
+
+        public Builder body(InputStream body) {
+            this.bodyStream = body;
+            return this;
+        }
+
+        public Builder timeout(int timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public Builder followRedirects(Boolean followRedirects) {
+            this.followRedirects = followRedirects;
+            return this;
+        }
+
+        public TransportRequest build() {
+            return new TransportRequest(this);
+        }
+    }
+}
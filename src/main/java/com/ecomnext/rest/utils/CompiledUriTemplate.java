@@ -0,0 +1,329 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.utils;
+
+import com.damnhandy.uri.template.Expression;
+import com.damnhandy.uri.template.MalformedUriTemplateException;
+import com.damnhandy.uri.template.UriTemplate;
+import com.damnhandy.uri.template.impl.Operator;
+import com.damnhandy.uri.template.impl.VarSpec;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An RFC 6570 URI template parsed once and expanded many times with String values.
+ *
+ * Parsing and validation are delegated to Handy URI Templates when the template is compiled; the
+ * expansion itself writes literals and pre-classified characters into a single pre-sized builder. It
+ * is immutable and thread-safe, unlike {@link UriTemplate}, so it can be cached and shared.
+ */
+public final class CompiledUriTemplate {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final boolean[] UNRESERVED = new boolean[128];
+    private static final boolean[] UNRESERVED_OR_RESERVED = new boolean[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            boolean unreserved = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '.' || c == '_' || c == '~';
+            UNRESERVED[c] = unreserved;
+            UNRESERVED_OR_RESERVED[c] = unreserved || ":/?#[]@!$&'()*+,;=".indexOf(c) >= 0;
+        }
+    }
+
+    private final String template;
+    private final String[] variables;
+    private final Part[] parts;
+    private final int literalLength;
+    private final boolean staticAuthority;
+    private final String userInfo;
+
+    private CompiledUriTemplate(String template, String[] variables, Part[] parts, int literalLength) {
+        this.template = template;
+        this.variables = variables;
+        this.parts = parts;
+        this.literalLength = literalLength;
+
+        String authority = literalAuthority(template);
+        String info = null;
+        if (authority != null) {
+            try {
+                info = new URL(authority).getUserInfo();
+            } catch (MalformedURLException e) {
+                authority = null;
+            }
+        }
+        this.staticAuthority = authority != null;
+        this.userInfo = info;
+    }
+
+    /**
+     * Parse a URI template.
+     *
+     * @throws RuntimeException wrapping a MalformedUriTemplateException if the template is not valid
+     */
+    public static CompiledUriTemplate compile(String template) {
+        UriTemplate uriTemplate;
+        try {
+            uriTemplate = UriTemplate.fromTemplate(template);
+        } catch (MalformedUriTemplateException e) {
+            throw new RuntimeException(e);
+        }
+        String[] variables = uriTemplate.getVariables();
+        List<String> names = Arrays.asList(variables);
+        Expression[] expressions = uriTemplate.getExpressions();
+
+        Part[] parts = new Part[2 * expressions.length + 1];
+        int count = 0;
+        int literalLength = 0;
+        int position = 0;
+        for (Expression expression : expressions) {
+            int start = template.indexOf('{', position);
+            if (start > position) {
+                String literal = template.substring(position, start);
+                parts[count++] = new Part(literal);
+                literalLength += literal.length();
+            }
+            parts[count++] = new Part(expression, names);
+            position = template.indexOf('}', start) + 1;
+        }
+        if (position < template.length()) {
+            String literal = template.substring(position);
+            parts[count++] = new Part(literal);
+            literalLength += literal.length();
+        }
+        return new CompiledUriTemplate(template, variables, Arrays.copyOf(parts, count), literalLength);
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return the names of the variables, in order of first appearance.
+     */
+    public String[] getVariables() {
+        return variables.clone();
+    }
+
+    public int getVariableCount() {
+        return variables.length;
+    }
+
+    /**
+     * @return true if scheme, user info, host and port are literals, so every expansion has the same.
+     */
+    public boolean hasStaticAuthority() {
+        return staticAuthority;
+    }
+
+    /**
+     * @return the user info of the literal authority, null if there is none or it is not static.
+     */
+    public String getUserInfo() {
+        return userInfo;
+    }
+
+    /**
+     * Expand the template.
+     *
+     * @param values the values of the variables, in the order of {@link #getVariables()}. Null values
+     *               are undefined variables.
+     */
+    public String expand(String... values) {
+        if (values.length != variables.length) {
+            throw new IllegalArgumentException("The number of variables in the URL and the number of values do not match");
+        }
+        int length = literalLength;
+        for (String value : values) {
+            if (value != null) {
+                length += value.length() + 8;
+            }
+        }
+        StringBuilder sb = new StringBuilder(length);
+        for (Part part : parts) {
+            if (part.literal != null) {
+                sb.append(part.literal);
+            } else {
+                part.expand(values, sb);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the scheme and authority of the template if they contain no expression, null otherwise.
+     */
+    private static String literalAuthority(String template) {
+        int scheme = template.indexOf("://");
+        int expression = template.indexOf('{');
+        if (scheme < 0 || (expression >= 0 && expression < scheme)) {
+            return null;
+        }
+        int end = template.length();
+        for (int i = scheme + 3; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '/' || c == '?' || c == '#' || c == '{') {
+                end = i;
+                break;
+            }
+        }
+        if (end < template.length() && template.charAt(end) == '{') {
+            // an expression right after the host could still add to it, e.g. http://host{.domain}
+            Operator operator = operatorAt(template, end);
+            if (operator != Operator.PATH && operator != Operator.QUERY && operator != Operator.FRAGMENT) {
+                return null;
+            }
+        }
+        return template.substring(0, end);
+    }
+
+    private static Operator operatorAt(String template, int start) {
+        if (start + 1 >= template.length()) {
+            return Operator.NUL;
+        }
+        try {
+            return Operator.fromOpCode(String.valueOf(template.charAt(start + 1)));
+        } catch (IllegalArgumentException e) {
+            return Operator.NUL;
+        }
+    }
+
+    /**
+     * A literal or an expression of the template.
+     */
+    private static final class Part {
+        final String literal;
+        final String first;
+        final String separator;
+        final boolean named;
+        final String ifEmpty;
+        final boolean[] allowed;
+        final int[] indexes;
+        final String[] names;
+        final int[] prefixes;
+
+        Part(String literal) {
+            this.literal = literal;
+            this.first = null;
+            this.separator = null;
+            this.named = false;
+            this.ifEmpty = null;
+            this.allowed = null;
+            this.indexes = null;
+            this.names = null;
+            this.prefixes = null;
+        }
+
+        Part(Expression expression, List<String> variables) {
+            Operator operator = expression.getOperator();
+            this.literal = null;
+            this.named = operator.isNamed();
+            this.ifEmpty = operator == Operator.QUERY || operator == Operator.CONTINUATION ? "=" : "";
+            this.allowed = operator == Operator.RESERVED || operator == Operator.FRAGMENT
+                    ? UNRESERVED_OR_RESERVED : UNRESERVED;
+            switch (operator) {
+                case NUL:
+                case RESERVED:
+                    first = "";
+                    separator = ",";
+                    break;
+                case FRAGMENT:
+                    first = "#";
+                    separator = ",";
+                    break;
+                case QUERY:
+                    first = "?";
+                    separator = "&";
+                    break;
+                default:
+                    first = operator.getOperator();
+                    separator = operator == Operator.CONTINUATION ? "&" : operator.getOperator();
+            }
+
+            List<VarSpec> specs = expression.getVarSpecs();
+            this.indexes = new int[specs.size()];
+            this.names = new String[specs.size()];
+            this.prefixes = new int[specs.size()];
+            for (int i = 0; i < specs.size(); i++) {
+                VarSpec spec = specs.get(i);
+                names[i] = spec.getVariableName();
+                indexes[i] = variables.indexOf(spec.getVariableName());
+                Integer position = spec.getPosition();
+                prefixes[i] = position == null || position <= 0 ? -1 : position;
+            }
+        }
+
+        void expand(String[] values, StringBuilder sb) {
+            boolean firstValue = true;
+            for (int i = 0; i < indexes.length; i++) {
+                String value = values[indexes[i]];
+                if (value == null) {
+                    continue;
+                }
+                sb.append(firstValue ? first : separator);
+                firstValue = false;
+                if (named) {
+                    sb.append(names[i]);
+                    if (value.isEmpty()) {
+                        sb.append(ifEmpty);
+                        continue;
+                    }
+                    sb.append('=');
+                }
+                int end = value.length();
+                if (prefixes[i] > 0 && prefixes[i] < value.codePointCount(0, end)) {
+                    end = value.offsetByCodePoints(0, prefixes[i]);
+                }
+                encode(value, end, sb);
+            }
+        }
+
+        private void encode(String value, int end, StringBuilder sb) {
+            for (int i = 0; i < end; i++) {
+                char c = value.charAt(i);
+                if (c < 128 && allowed[c]) {
+                    sb.append(c);
+                } else if (c == '%' && allowed == UNRESERVED_OR_RESERVED && isPercentEncoded(value, i, end)) {
+                    // pct-encoded triplets are kept as they are in reserved expansions
+                    sb.append(value, i, i + 3);
+                    i += 2;
+                } else if (c < 128) {
+                    appendEscaped(c, sb);
+                } else {
+                    int codePointEnd = Character.isHighSurrogate(c) && i + 1 < end ? i + 2 : i + 1;
+                    for (byte b : value.substring(i, codePointEnd).getBytes(StandardCharsets.UTF_8)) {
+                        appendEscaped(b & 0xFF, sb);
+                    }
+                    i = codePointEnd - 1;
+                }
+            }
+        }
+
+        private static boolean isPercentEncoded(String value, int i, int end) {
+            return i + 2 < end && Character.digit(value.charAt(i + 1), 16) >= 0
+                    && Character.digit(value.charAt(i + 2), 16) >= 0;
+        }
+
+        private static void appendEscaped(int b, StringBuilder sb) {
+            sb.append('%').append(HEX[b >> 4]).append(HEX[b & 0xF]);
+        }
+    }
+}
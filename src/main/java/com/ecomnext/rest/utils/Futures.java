@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.utils;
+
+import com.ecomnext.rest.RestResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Helpers for the futures of requests. Cancelling a request future aborts the request, but futures derived from it
+ * with thenApply and the like do not cancel it; these helpers keep the cancellation flowing to the request.
+ */
+public class Futures {
+    private Futures() {
+    }
+
+    /**
+     * Cancel the source when the dependent future is cancelled.
+     *
+     * @return the dependent future
+     */
+    public static <T> CompletableFuture<T> propagateCancel(CompletableFuture<T> dependent, Future<?> source) {
+        dependent.whenComplete((value, failure) -> {
+            if (dependent.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return dependent;
+    }
+
+    /**
+     * @return a future completed as the given one by the given executor, so the callbacks chained to it run there and
+     * not on the thread completing the given future. If it is already complete it is returned as is. Cancelling the
+     * result cancels the given future.
+     */
+    public static <T> CompletableFuture<T> completeOn(CompletableFuture<T> future, Executor executor) {
+        if (future.isDone()) {
+            return future;
+        }
+        CompletableFuture<T> result = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (cancelled) {
+                    future.cancel(true);
+                }
+                return cancelled;
+            }
+        };
+        future.whenComplete((value, failure) -> {
+            Runnable completion = () -> {
+                if (failure == null) {
+                    if (!result.complete(value)) {
+                        release(value);
+                    }
+                } else {
+                    result.completeExceptionally(failure);
+                }
+            };
+            try {
+                executor.execute(completion);
+            } catch (RejectedExecutionException e) {
+                completion.run();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Like {@code CompletableFuture.orTimeout} of Java 9, but the future is also cancelled when it times out, which
+     * aborts the request and releases its connection. The timeout runs on the {@link SharedScheduler}.
+     *
+     * @return a future completed as the given one, or failed with a {@link TimeoutException} after the timeout.
+     * Cancelling it cancels the given future.
+     */
+    public static <T> CompletableFuture<T> orTimeout(CompletableFuture<T> future, long timeout, TimeUnit unit) {
+        if (future.isDone()) {
+            return future;
+        }
+        CompletableFuture<T> result = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (cancelled) {
+                    future.cancel(true);
+                }
+                return cancelled;
+            }
+        };
+        ScheduledFuture<?> timer = SharedScheduler.schedule(() -> {
+            if (result.completeExceptionally(new TimeoutException("Deadline of " + unit.toMillis(timeout) + "ms exceeded"))) {
+                future.cancel(true);
+            }
+        }, timeout, unit);
+        future.whenComplete((value, failure) -> {
+            timer.cancel(false);
+            if (failure == null) {
+                if (!result.complete(value)) {
+                    // timed out or cancelled as it completed
+                    release(value);
+                }
+            } else {
+                result.completeExceptionally(failure);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Release a response the result was not completed with, nobody will read it.
+     */
+    private static void release(Object value) {
+        if (value instanceof RestResponse) {
+            ((RestResponse) value).release();
+        }
+    }
+}
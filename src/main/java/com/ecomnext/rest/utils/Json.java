@@ -20,17 +20,24 @@ package com.ecomnext.rest.utils;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * Helper functions to handle JsonNode values.
  */
 public class Json {
     private static final ObjectMapper defaultObjectMapper = new ObjectMapper();
     private static volatile ObjectMapper objectMapper = null;
+    private static volatile Codecs codecs = new Codecs(defaultObjectMapper);
 
     // Ensures that there always is *a* object mapper
-    private static ObjectMapper mapper() {
+    static ObjectMapper mapper() {
         if (objectMapper == null) {
             return defaultObjectMapper;
         } else {
@@ -38,6 +45,46 @@ public class Json {
         }
     }
 
+    // Readers and writers of the current object mapper, replaced when the mapper changes
+    private static Codecs codecs() {
+        ObjectMapper mapper = mapper();
+        Codecs current = codecs;
+        if (current.mapper != mapper) {
+            current = new Codecs(mapper);
+            codecs = current;
+        }
+        return current;
+    }
+
+    /**
+     * Get an ObjectReader for the given type. Readers are immutable and cached per type, so the type is
+     * only resolved the first time.
+     *
+     * @param clazz Expected Java value type.
+     */
+    public static ObjectReader reader(Class<?> clazz) {
+        return codecs().reader(clazz);
+    }
+
+    /**
+     * Get an ObjectReader for the given generic type. Readers are immutable and cached per type, so the
+     * type is only resolved the first time.
+     *
+     * @param valueTypeRef Expected Java value type.
+     */
+    public static ObjectReader reader(TypeReference<?> valueTypeRef) {
+        return codecs().reader(valueTypeRef.getType());
+    }
+
+    /**
+     * Get an ObjectWriter for the given type. Writers are immutable and cached per type.
+     *
+     * @param clazz Java type of the values to write.
+     */
+    public static ObjectWriter writer(Class<?> clazz) {
+        return codecs().writer(clazz);
+    }
+
     /**
      * Convert an object to JsonNode.
      *
@@ -59,7 +106,7 @@ public class Json {
      */
     public static <A> A fromJson(JsonNode json, Class<A> clazz) {
         try {
-            return mapper().treeToValue(json, clazz);
+            return reader(clazz).readValue(json);
         } catch(Exception e) {
             throw new RuntimeException(e);
         }
@@ -80,7 +127,7 @@ public class Json {
     @SuppressWarnings("unchecked")
     public static <A> A fromJson(JsonNode json, TypeReference<?> valueTypeRef) {
         try {
-            return (A) mapper().readValue(json.traverse(), valueTypeRef);
+            return (A) reader(valueTypeRef).readValue(json);
         } catch(Exception e) {
             throw new RuntimeException(e);
         }
@@ -93,7 +140,34 @@ public class Json {
      */
     public static <A> A fromString(String content, Class<A> clazz) {
         try {
-            return mapper().readValue(content, clazz);
+            return reader(clazz).readValue(content);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Convert an InputStream to a Java value, binding it directly without building a JsonNode.
+     * @param src InputStream to convert.
+     * @param clazz Expected Java value type.
+     */
+    public static <A> A fromInputStream(java.io.InputStream src, Class<A> clazz) {
+        try {
+            return reader(clazz).readValue(src);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Convert an InputStream to a Java value using Generics, binding it directly without building a
+     * JsonNode.
+     * @param src InputStream to convert.
+     * @param valueTypeRef Expected Java value type.
+     */
+    public static <A> A fromInputStream(java.io.InputStream src, TypeReference<A> valueTypeRef) {
+        try {
+            return reader(valueTypeRef).readValue(src);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -118,7 +192,25 @@ public class Json {
      */
     public static String stringify(Object object) {
         try {
-            return mapper().writeValueAsString(object);
+            if (object == null) {
+                return mapper().writeValueAsString(null);
+            }
+            return writer(object.getClass()).writeValueAsString(object);
+        } catch(Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * Convert an object to its UTF-8 encoded json representation. The bytes are written straight from
+     * the object, without an intermediate String.
+     */
+    public static byte[] toBytes(Object object) {
+        try {
+            if (object == null) {
+                return mapper().writeValueAsBytes(null);
+            }
+            return writer(object.getClass()).writeValueAsBytes(object);
         } catch(Throwable t) {
             throw new RuntimeException(t);
         }
@@ -155,4 +247,30 @@ public class Json {
     public static void setObjectMapper(ObjectMapper mapper) {
         objectMapper = mapper;
     }
+
+    private static class Codecs {
+        final ObjectMapper mapper;
+        final ConcurrentMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+        final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+        Codecs(ObjectMapper mapper) {
+            this.mapper = mapper;
+        }
+
+        ObjectReader reader(Type type) {
+            ObjectReader reader = readers.get(type);
+            if (reader == null) {
+                reader = readers.computeIfAbsent(type, t -> mapper.readerFor(mapper.constructType(t)));
+            }
+            return reader;
+        }
+
+        ObjectWriter writer(Class<?> clazz) {
+            ObjectWriter writer = writers.get(clazz);
+            if (writer == null) {
+                writer = writers.computeIfAbsent(clazz, mapper::writerFor);
+            }
+            return writer;
+        }
+    }
 }
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.utils;
+
+import com.ecomnext.rest.RestBodyConsumer;
+import com.ecomnext.rest.RestRequestHolder;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Parses a streamed JSON response while it is being downloaded, using Jackson's non-blocking parser.
+ * Tokenizing happens as every body part arrives, so only the final binding is left when the last
+ * part lands.
+ *
+ * <pre>
+ * JsonBodyConsumer&lt;JsonNode&gt; consumer = JsonBodyConsumer.tree();
+ * CompletableFuture&lt;JsonNode&gt; json = consumer.streamFrom(Rest.url("http://example.com/feed"));
+ * </pre>
+ *
+ * A consumer parses a single response, create a new one for every request.
+ */
+public class JsonBodyConsumer<T> implements RestBodyConsumer {
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final TokenHandler handler;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+    private byte[] scratch;
+
+    private JsonBodyConsumer(ObjectMapper mapper, TokenHandler handler) {
+        try {
+            this.parser = mapper.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.handler = handler;
+    }
+
+    /**
+     * Parse the whole body as a {@link JsonNode}.
+     */
+    public static JsonBodyConsumer<JsonNode> tree() {
+        return value(Json.reader(JsonNode.class));
+    }
+
+    /**
+     * Bind the whole body to a Java value.
+     *
+     * @param clazz Expected Java value type.
+     */
+    public static <A> JsonBodyConsumer<A> value(Class<A> clazz) {
+        return value(Json.reader(clazz));
+    }
+
+    /**
+     * Bind the whole body to a Java value using Generics.
+     *
+     * @param valueTypeRef Expected Java value type.
+     */
+    public static <A> JsonBodyConsumer<A> value(TypeReference<A> valueTypeRef) {
+        return value(Json.reader(valueTypeRef));
+    }
+
+    /**
+     * Emit every element of a top-level JSON array as soon as it has been received. A body which is not
+     * an array is emitted as a single element. The result is the number of elements emitted.
+     *
+     * @param action called for every element, from the thread delivering the body
+     */
+    public static JsonBodyConsumer<Long> elements(Consumer<? super JsonNode> action) {
+        return elements(JsonNode.class, action);
+    }
+
+    /**
+     * Bind every element of a top-level JSON array to a Java value and emit it as soon as it has been
+     * received. A body which is not an array is emitted as a single element. The result is the number
+     * of elements emitted.
+     *
+     * @param clazz Expected Java type of the elements.
+     * @param action called for every element, from the thread delivering the body
+     */
+    public static <E> JsonBodyConsumer<Long> elements(Class<E> clazz, Consumer<? super E> action) {
+        return new JsonBodyConsumer<>(Json.mapper(), new ElementsHandler<>(Json.reader(clazz), action));
+    }
+
+    private static <A> JsonBodyConsumer<A> value(ObjectReader reader) {
+        return new JsonBodyConsumer<>(Json.mapper(), new ValueHandler<>(reader));
+    }
+
+    /**
+     * @return the parsed value, available once the whole body has been received.
+     */
+    public CompletableFuture<T> getResult() {
+        return result;
+    }
+
+    /**
+     * Stream the response of the request into this consumer.
+     *
+     * @return the parsed value. It fails if the request fails, even before any body is received.
+     */
+    public CompletableFuture<T> streamFrom(RestRequestHolder holder) {
+        holder.stream(this).whenComplete((response, t) -> {
+            if (t != null) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void onBodyPart(ByteBuffer part) throws Exception {
+        if (part.hasArray()) {
+            int start = part.arrayOffset() + part.position();
+            feeder.feedInput(part.array(), start, start + part.remaining());
+        } else {
+            int length = part.remaining();
+            if (scratch == null || scratch.length < length) {
+                scratch = new byte[length];
+            }
+            part.get(scratch, 0, length);
+            feeder.feedInput(scratch, 0, length);
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete() throws Exception {
+        feeder.endOfInput();
+        drain();
+        parser.close();
+        complete(handler.finish());
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        result.completeExceptionally(t);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void complete(Object value) {
+        result.complete((T) value);
+    }
+
+    /**
+     * Process every token available, the parser must not be fed again before it needs more input.
+     */
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            handler.onToken(parser, token);
+        }
+    }
+
+    private interface TokenHandler {
+        void onToken(JsonParser parser, JsonToken token) throws IOException;
+
+        Object finish() throws IOException;
+    }
+
+    /**
+     * Buffers the tokens of the whole document and binds them at the end.
+     */
+    private static class ValueHandler<A> implements TokenHandler {
+        private final ObjectReader reader;
+        private TokenBuffer buffer;
+
+        ValueHandler(ObjectReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public void onToken(JsonParser parser, JsonToken token) throws IOException {
+            if (buffer == null) {
+                buffer = new TokenBuffer(parser);
+            }
+            buffer.copyCurrentEvent(parser);
+        }
+
+        @Override
+        public Object finish() throws IOException {
+            if (buffer == null) {
+                throw new IOException("No content to map due to end-of-input");
+            }
+            A value = reader.readValue(buffer.asParser());
+            buffer.close();
+            return value;
+        }
+    }
+
+    /**
+     * Buffers the tokens of one element of the top-level array at a time and binds it as soon as it
+     * is complete.
+     */
+    private static class ElementsHandler<E> implements TokenHandler {
+        private final ObjectReader reader;
+        private final Consumer<? super E> action;
+        private TokenBuffer buffer;
+        private boolean array = false;
+        private int depth = 0;
+        private long count = 0;
+
+        ElementsHandler(ObjectReader reader, Consumer<? super E> action) {
+            this.reader = reader;
+            this.action = action;
+        }
+
+        @Override
+        public void onToken(JsonParser parser, JsonToken token) throws IOException {
+            if (depth == 0 && count == 0 && !array && token == JsonToken.START_ARRAY) {
+                array = true;
+                depth = 1;
+                return;
+            }
+            if (array && depth == 1 && token == JsonToken.END_ARRAY) {
+                depth = 0;
+                return;
+            }
+
+            if (buffer == null) {
+                buffer = new TokenBuffer(parser);
+            }
+            buffer.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd()) {
+                depth--;
+            }
+            if (depth == (array ? 1 : 0)) {
+                E element = reader.readValue(buffer.asParser());
+                buffer.close();
+                buffer = null;
+                count++;
+                action.accept(element);
+            }
+        }
+
+        @Override
+        public Object finish() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.utils;
+
+import com.ecomnext.rest.RestAuthScheme;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds the keys identifying requests, used to find identical requests.
+ */
+public class RequestKeys {
+    private RequestKeys() {
+    }
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Append the URL without query nor fragment and the query parameters sorted by name, so the same parameters
+     * in a different order give the same key. Names and values are percent-encoded where they could be mistaken for
+     * separators, and a parameter without value has no "=", so different parameters never give the same key.
+     */
+    public static StringBuilder appendUri(StringBuilder key, String url, Map<String, Collection<String>> queryParameters) {
+        int end = url.length();
+        int fragment = url.indexOf('#');
+        if (fragment >= 0) {
+            end = fragment;
+        }
+        int query = url.indexOf('?');
+        if (query >= 0 && query < end) {
+            end = query;
+        }
+        key.append(url, 0, end);
+
+        if (!queryParameters.isEmpty()) {
+            char separator = '?';
+            for (Map.Entry<String, Collection<String>> parameter : new TreeMap<>(queryParameters).entrySet()) {
+                for (String value : parameter.getValue()) {
+                    key.append(separator);
+                    appendEncoded(key, parameter.getKey());
+                    if (value != null) {
+                        key.append('=');
+                        appendEncoded(key, value);
+                    }
+                    separator = '&';
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Append a query parameter name or value, percent-encoding the separators, percent signs and control characters.
+     */
+    private static void appendEncoded(StringBuilder key, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '&' || c == '=' || c == '%' || c < ' ') {
+                key.append('%').append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            } else {
+                key.append(c);
+            }
+        }
+    }
+
+    /**
+     * @return a SHA-256 digest of the credentials of a request and of its Authorization header, so keys tell the
+     * users apart without holding their secrets; null if the request has neither.
+     */
+    public static String credentials(String username, String password, RestAuthScheme scheme,
+                                     Map<String, Collection<String>> headers) {
+        String authorization = header(headers, "Authorization");
+        if (username == null && password == null && authorization == null) {
+            return null;
+        }
+        StringBuilder credentials = new StringBuilder(64);
+        appendField(credentials, scheme == null ? null : scheme.name());
+        appendField(credentials, username);
+        appendField(credentials, password);
+        appendField(credentials, authorization);
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(credentials.toString().getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Append a value prefixed with its length, so no value can be mistaken for several ones, or "-" if it is null.
+     */
+    private static void appendField(StringBuilder key, String value) {
+        if (value == null) {
+            key.append('-');
+        } else {
+            key.append(value.length()).append(':').append(value);
+        }
+    }
+
+    /**
+     * @return the values of the header with the given name, in any case, joined by commas; null if it is absent.
+     */
+    public static String header(Map<String, Collection<String>> headers, String name) {
+        String joined = null;
+        for (Map.Entry<String, Collection<String>> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                for (String value : header.getValue()) {
+                    joined = joined == null ? value : joined + "," + value;
+                }
+            }
+        }
+        return joined;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single daemon thread shared by every client to run delayed actions, such as retries, without keeping a thread
+ * sleeping for each of them. Tasks must be short and never block: they should only start asynchronous work. Tasks
+ * which may block, such as sending a request, are scheduled with {@link #scheduleHandoff} instead.
+ */
+public class SharedScheduler {
+    private SharedScheduler() {
+    }
+
+    private static class Holder {
+        static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "rest-client-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static {
+            // cancelled timeouts are the common case, do not keep them queued until they expire
+            EXECUTOR.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    private static class Workers {
+        // threads are only created while tasks block, and end after a minute without work
+        static final ExecutorService EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "rest-client-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the shared scheduler, it must not be shut down.
+     */
+    public static ScheduledExecutorService get() {
+        return Holder.EXECUTOR;
+    }
+
+    public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return Holder.EXECUTOR.schedule(task, delay, unit);
+    }
+
+    /**
+     * Run the task after the delay on a shared pool of daemon threads instead of the scheduler thread, for tasks
+     * which may block: the AsyncHttpClient may resolve the host and connect on the thread sending a request, which
+     * would hold up every other timer. Cancelling the result only stops the task if it has not been handed off yet.
+     */
+    public static ScheduledFuture<?> scheduleHandoff(Runnable task, long delay, TimeUnit unit) {
+        return Holder.EXECUTOR.schedule(() -> {
+            try {
+                Workers.EXECUTOR.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        }, delay, unit);
+    }
+}
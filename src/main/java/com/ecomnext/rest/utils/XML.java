@@ -24,6 +24,9 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -33,6 +36,13 @@ import java.io.UnsupportedEncodingException;
  * XML utilities.
  */
 public class XML {
+    private static final DocumentBuilderFactory documentBuilderFactory = newDocumentBuilderFactory();
+    private static final XMLInputFactory inputFactory = newInputFactory();
+
+    // DocumentBuilder is not thread-safe but can be reused after a reset, so keep one per thread
+    private static final ThreadLocal<DocumentBuilder> documentBuilder =
+            ThreadLocal.withInitial(XML::newDocumentBuilder);
+
     /**
      * Parse an XML string as DOM.
      */
@@ -51,19 +61,53 @@ public class XML {
      * Parse an InputStream as DOM.
      */
     public static Document fromInputStream(InputStream in, String encoding) {
+        DocumentBuilder builder = documentBuilder.get();
         try {
-
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-
             InputSource is = new InputSource(in);
             is.setEncoding(encoding);
 
             return builder.parse(is);
 
-        } catch (ParserConfigurationException | SAXException | IOException e) {
+        } catch (SAXException | IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            builder.reset();
+        }
+    }
+
+    /**
+     * Open an InputStream as a StAX stream, to process large documents element by element instead of
+     * building the whole DOM. The caller must close the reader.
+     */
+    public static XMLStreamReader streamFromInputStream(InputStream in, String encoding) {
+        try {
+            return inputFactory.createXMLStreamReader(in, encoding);
+        } catch (XMLStreamException e) {
             throw new RuntimeException(e);
         }
     }
+
+    private static DocumentBuilderFactory newDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory;
+    }
+
+    private static DocumentBuilder newDocumentBuilder() {
+        // DocumentBuilderFactory is not guaranteed to be thread-safe
+        synchronized (documentBuilderFactory) {
+            try {
+                return documentBuilderFactory.newDocumentBuilder();
+            } catch (ParserConfigurationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.ning.http.client.cookie.Cookie;
+import org.w3c.dom.Document;
+
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A response built by the tests, counting its owners as the responses of the Netty transport do.
+ */
+public class TestResponse implements RestResponse {
+    private final int status;
+    private final String body;
+    private final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final AtomicInteger refCnt = new AtomicInteger(1);
+
+    /**
+     * @param headers the names and values of the headers, alternately
+     */
+    public TestResponse(int status, String body, String... headers) {
+        this.status = status;
+        this.body = body;
+        for (int i = 0; i < headers.length; i += 2) {
+            this.headers.computeIfAbsent(headers[i], name -> new ArrayList<>()).add(headers[i + 1]);
+        }
+    }
+
+    public TestResponse(int status) {
+        this(status, "");
+    }
+
+    /**
+     * @return the number of owners which did not release the response yet.
+     */
+    public int refCnt() {
+        return refCnt.get();
+    }
+
+    public boolean isReleased() {
+        return refCnt.get() == 0;
+    }
+
+    @Override
+    public RestResponse retain() {
+        if (refCnt.getAndIncrement() <= 0) {
+            throw new IllegalStateException("retained after its release");
+        }
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        int count = refCnt.decrementAndGet();
+        if (count < 0) {
+            throw new IllegalStateException("released too many times");
+        }
+        return count == 0;
+    }
+
+    @Override
+    public Map<String, List<String>> getAllHeaders() {
+        return headers;
+    }
+
+    @Override
+    public Object getUnderlying() {
+        return this;
+    }
+
+    @Override
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public String getStatusText() {
+        return "Status " + status;
+    }
+
+    @Override
+    public String getHeader(String key) {
+        List<String> values = headers.get(key);
+        return values == null ? null : values.get(0);
+    }
+
+    @Override
+    public List<Cookie> getCookies() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Cookie getCookie(String name) {
+        return null;
+    }
+
+    @Override
+    public String getBody() {
+        return body;
+    }
+
+    @Override
+    public Document asXml() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public XMLStreamReader asXmlStream() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public JsonNode asJson() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> T as(Class<T> clazz) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> T as(TypeReference<T> valueTypeRef) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public InputStream getBodyAsStream() {
+        return new ByteArrayInputStream(asByteArray());
+    }
+
+    @Override
+    public byte[] asByteArray() {
+        return body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public URI getUri() {
+        return URI.create("http://example.com/");
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.batch;
+
+import com.ecomnext.rest.TestResponse;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class BatchTest {
+    private final Requests requests = new Requests();
+
+    @Test
+    public void returnsTheResultsInSubmissionOrder() throws Exception {
+        CompletableFuture<BatchResult> batch = Batch.of(requests.holders(5)).parallelism(5).execute();
+        for (int i = 4; i >= 0; i--) {
+            requests.sent.get(i).complete(new TestResponse(200, "response " + i));
+        }
+        BatchResult result = batch.get();
+        assertTrue(result.isSuccessful());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("response " + i, result.getResponse(i).getBody());
+        }
+    }
+
+    @Test
+    public void keepsAtMostTheParallelismInFlight() throws Exception {
+        CompletableFuture<BatchResult> batch = Batch.of(requests.holders(10)).parallelism(3).execute();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Math.min(3, 10 - i), requests.inFlight());
+            assertEquals(Math.min(10, i + 3), requests.sent.size());
+            requests.sent.get(i).complete(new TestResponse(200));
+        }
+        assertEquals(10, batch.get().size());
+    }
+
+    @Test
+    public void completesEmptyBatches() throws Exception {
+        assertEquals(0, Batch.of(Collections.emptyList()).execute().get().size());
+    }
+
+    @Test
+    public void failsFastCancellingTheRequestsInFlight() throws Exception {
+        CompletableFuture<BatchResult> batch = Batch.of(requests.holders(10)).parallelism(3).execute();
+        requests.sent.get(0).complete(new TestResponse(200));
+        requests.sent.get(2).completeExceptionally(new IOException("reset"));
+
+        try {
+            batch.get();
+            fail();
+        } catch (ExecutionException e) {
+            BatchException failure = (BatchException) e.getCause();
+            assertEquals(2, failure.getIndex());
+            assertEquals("reset", failure.getCause().getMessage());
+            assertEquals(200, failure.getResult().getResponse(0).getStatus());
+        }
+        assertTrue(requests.sent.get(1).isCancelled());
+        assertTrue(requests.sent.get(3).isCancelled());
+        assertEquals(4, requests.sent.size());
+    }
+
+    @Test
+    public void releasesResponsesArrivingAfterTheBatchFailed() {
+        requests.uncancellable.add(1);
+        Batch.of(requests.holders(2)).parallelism(2).execute();
+        requests.sent.get(0).completeExceptionally(new IOException("reset"));
+        TestResponse late = new TestResponse(200);
+        requests.sent.get(1).complete(late);
+        assertTrue(late.isReleased());
+    }
+
+    @Test
+    public void collectsEveryResult() throws Exception {
+        List<Integer> results = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<BatchResult> batch = Batch.of(requests.holders(4))
+                .parallelism(2)
+                .collectAll()
+                .onResult((index, response, failure) -> results.add(index))
+                .execute();
+        requests.sent.get(1).completeExceptionally(new IOException("reset"));
+        requests.sent.get(0).complete(new TestResponse(200));
+        requests.sent.get(3).complete(new TestResponse(200));
+        requests.sent.get(2).completeExceptionally(new IOException("refused"));
+
+        BatchResult result = batch.get();
+        assertFalse(result.isSuccessful());
+        assertEquals(2, result.getFailures().size());
+        assertEquals("reset", result.getFailure(1).getMessage());
+        assertEquals("refused", result.getFailure(2).getMessage());
+        assertEquals(200, result.getResponse(3).getStatus());
+        assertNull(result.getResponse(1));
+        assertEquals(Arrays.asList(1, 0, 3, 2), results);
+    }
+
+    @Test
+    public void cancelsTheRequestsInFlightWithTheBatch() {
+        CompletableFuture<BatchResult> batch = Batch.of(requests.holders(5)).parallelism(2).execute();
+        assertTrue(batch.cancel(true));
+        assertTrue(requests.sent.get(0).isCancelled());
+        assertTrue(requests.sent.get(1).isCancelled());
+        assertEquals(2, requests.sent.size());
+    }
+
+    @Test
+    public void failsRequestsThrowingWhenSent() throws Exception {
+        requests.throwing.add(0);
+        CompletableFuture<BatchResult> batch = Batch.of(requests.holders(2)).collectAll().execute();
+        requests.sent.get(1).complete(new TestResponse(200));
+        assertEquals("invalid URI", batch.get().getFailure(0).getMessage());
+    }
+}
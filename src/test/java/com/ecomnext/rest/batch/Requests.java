@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.batch;
+
+import com.ecomnext.rest.RestRequestHolder;
+import com.ecomnext.rest.RestResponse;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Requests whose executions stay in flight until the test completes them.
+ */
+class Requests {
+    // the futures of the requests sent, by index of the request
+    final ConcurrentMap<Integer, CompletableFuture<RestResponse>> sent = new ConcurrentHashMap<>();
+    // the requests whose futures ignore cancellations, as if they completed while being cancelled
+    final List<Integer> uncancellable = new ArrayList<>();
+    // the requests throwing when they are sent
+    final List<Integer> throwing = new ArrayList<>();
+
+    List<RestRequestHolder> holders(int count) {
+        List<RestRequestHolder> holders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            holders.add((RestRequestHolder) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{RestRequestHolder.class}, (proxy, method, args) -> {
+                        if (!method.getName().equals("execute") || args != null) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        if (throwing.contains(index)) {
+                            throw new IllegalArgumentException("invalid URI");
+                        }
+                        CompletableFuture<RestResponse> future = uncancellable.contains(index)
+                                ? new CompletableFuture<RestResponse>() {
+                                    @Override
+                                    public boolean cancel(boolean mayInterruptIfRunning) {
+                                        return false;
+                                    }
+                                }
+                                : new CompletableFuture<>();
+                        sent.put(index, future);
+                        return future;
+                    }));
+        }
+        return holders;
+    }
+
+    /**
+     * @return the number of requests sent and not completed.
+     */
+    int inFlight() {
+        int inFlight = 0;
+        for (CompletableFuture<RestResponse> future : sent.values()) {
+            if (!future.isDone()) {
+                inFlight++;
+            }
+        }
+        return inFlight;
+    }
+}
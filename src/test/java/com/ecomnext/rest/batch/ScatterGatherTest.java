@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.batch;
+
+import com.ecomnext.rest.TestResponse;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ScatterGatherTest {
+    private final Requests requests = new Requests();
+
+    @Test
+    public void completesWithTheFirstResponse() throws Exception {
+        CompletableFuture<GatherResult> gathering = ScatterGather.of(requests.holders(3)).first().execute();
+        assertEquals(3, requests.sent.size());
+        TestResponse response = new TestResponse(200, "second");
+        requests.sent.get(1).complete(response);
+
+        GatherResult result = gathering.get();
+        assertTrue(result.isQuorum());
+        assertEquals(Collections.singletonList(response), result.getResponses());
+        assertEquals(Collections.singletonList(1), result.getIndexes());
+    }
+
+    @Test
+    public void cancelsTheLosers() throws Exception {
+        CompletableFuture<GatherResult> gathering = ScatterGather.of(requests.holders(3)).first().execute();
+        requests.sent.get(2).complete(new TestResponse(200));
+        gathering.get();
+        assertTrue(requests.sent.get(0).isCancelled());
+        assertTrue(requests.sent.get(1).isCancelled());
+    }
+
+    @Test
+    public void releasesResponsesOfLosersAnsweringWhileCancelled() throws Exception {
+        requests.uncancellable.add(0);
+        CompletableFuture<GatherResult> gathering = ScatterGather.of(requests.holders(2)).first().execute();
+        requests.sent.get(1).complete(new TestResponse(200));
+        gathering.get();
+        TestResponse late = new TestResponse(200);
+        requests.sent.get(0).complete(late);
+        assertTrue(late.isReleased());
+    }
+
+    @Test
+    public void waitsForTheGivenQuorum() throws Exception {
+        CompletableFuture<GatherResult> gathering = ScatterGather.of(requests.holders(4)).quorum(2).execute();
+        requests.sent.get(3).complete(new TestResponse(200, "fourth"));
+        // not accepted
+        requests.sent.get(0).complete(new TestResponse(503));
+        assertFalse(gathering.isDone());
+        requests.sent.get(1).complete(new TestResponse(200, "second"));
+
+        GatherResult result = gathering.get();
+        assertEquals(Arrays.asList(3, 1), result.getIndexes());
+        assertEquals(503, result.getRejected().get(0).getStatus());
+        assertTrue(requests.sent.get(2).isCancelled());
+    }
+
+    @Test
+    public void waitsForAMajority() throws Exception {
+        CompletableFuture<GatherResult> gathering = ScatterGather.of(requests.holders(5)).majority().execute();
+        requests.sent.get(0).complete(new TestResponse(200));
+        requests.sent.get(1).complete(new TestResponse(200));
+        assertFalse(gathering.isDone());
+        requests.sent.get(4).complete(new TestResponse(200));
+        assertEquals(3, gathering.get().getResponses().size());
+    }
+
+    @Test
+    public void failsOnceTheQuorumCannotBeReached() throws Exception {
+        CompletableFuture<GatherResult> gathering = ScatterGather.of(requests.holders(3)).majority().execute();
+        requests.sent.get(0).complete(new TestResponse(200));
+        requests.sent.get(1).completeExceptionally(new IOException("reset"));
+        assertFalse(gathering.isDone());
+        requests.sent.get(2).complete(new TestResponse(500));
+
+        QuorumException failure = quorumFailure(gathering);
+        GatherResult result = failure.getResult();
+        assertFalse(result.isQuorum());
+        assertFalse(result.isTimedOut());
+        assertEquals(1, result.getResponses().size());
+        assertEquals("reset", result.getFailures().get(1).getMessage());
+        assertEquals(500, result.getRejected().get(2).getStatus());
+    }
+
+    @Test
+    public void failsAtTheDeadline() throws Exception {
+        CompletableFuture<GatherResult> gathering = ScatterGather.of(requests.holders(3))
+                .quorum(2)
+                .deadline(50, TimeUnit.MILLISECONDS)
+                .execute();
+        requests.sent.get(0).complete(new TestResponse(200));
+
+        GatherResult result = quorumFailure(gathering).getResult();
+        assertTrue(result.isTimedOut());
+        assertEquals(1, result.getResponses().size());
+        assertTrue(requests.sent.get(1).isCancelled());
+        assertTrue(requests.sent.get(2).isCancelled());
+    }
+
+    @Test
+    public void completesWithThePartialResultAtTheDeadline() throws Exception {
+        CompletableFuture<GatherResult> gathering = ScatterGather.of(requests.holders(3))
+                .quorum(2)
+                .deadline(50, TimeUnit.MILLISECONDS)
+                .allowPartial()
+                .execute();
+        requests.sent.get(2).complete(new TestResponse(200, "third"));
+
+        GatherResult result = gathering.get(5, TimeUnit.SECONDS);
+        assertFalse(result.isQuorum());
+        assertTrue(result.isTimedOut());
+        assertEquals("third", result.getResponses().get(0).getBody());
+    }
+
+    @Test
+    public void mergesTheAcceptedResponses() throws Exception {
+        CompletableFuture<String> merged = ScatterGather.of(requests.holders(3))
+                .quorum(2)
+                .accept(response -> response.getStatus() == 200)
+                .execute(responses -> responses.get(0).getBody() + "," + responses.get(1).getBody());
+        requests.sent.get(1).complete(new TestResponse(200, "b"));
+        requests.sent.get(2).complete(new TestResponse(204));
+        requests.sent.get(0).complete(new TestResponse(200, "a"));
+        assertEquals("b,a", merged.get());
+    }
+
+    @Test
+    public void cancelsThePendingRequestsWithTheGathering() {
+        CompletableFuture<GatherResult> gathering = ScatterGather.of(requests.holders(2)).execute();
+        assertTrue(gathering.cancel(true));
+        assertTrue(requests.sent.get(0).isCancelled());
+        assertTrue(requests.sent.get(1).isCancelled());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsQuorumsLargerThanTheRequests() {
+        ScatterGather.of(requests.holders(2)).quorum(3);
+    }
+
+    private static QuorumException quorumFailure(CompletableFuture<?> gathering) throws Exception {
+        try {
+            gathering.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return (QuorumException) e.getCause();
+        }
+        throw new AssertionError("the quorum was reached");
+    }
+}
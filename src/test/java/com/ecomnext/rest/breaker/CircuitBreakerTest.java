@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.breaker;
+
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.TestResponse;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+    private static final String HOST = "example.com";
+
+    private final List<String> transitions = new ArrayList<>();
+    private final AtomicInteger sent = new AtomicInteger();
+
+    @Test
+    public void opensWhenTheFailureRateReachesTheThreshold() throws Exception {
+        CircuitBreaker breaker = breaker(TimeUnit.MINUTES.toNanos(1)).build();
+        respond(breaker, 503);
+        respond(breaker, 503);
+        // below the minimum number of calls
+        assertEquals(CircuitState.CLOSED, breaker.getState(HOST));
+        respond(breaker, 200);
+        respond(breaker, 200);
+        respond(breaker, 200);
+        // two failures in five
+        assertEquals(CircuitState.CLOSED, breaker.getState(HOST));
+
+        respond(breaker, 500);
+        assertEquals(CircuitState.OPEN, breaker.getState(HOST));
+        assertEquals(Arrays.asList("CLOSED>OPEN"), transitions);
+
+        int before = sent.get();
+        CircuitOpenException rejected = rejection(breaker.execute(HOST, () -> send(200)));
+        assertEquals(HOST, rejected.getCircuit());
+        assertTrue(rejected.getRetryAfter() > 0);
+        assertEquals(before, sent.get());
+        assertEquals(1, breaker.snapshot().get(HOST).getRejected());
+    }
+
+    @Test
+    public void doesNotCountCancelledRequests() {
+        CircuitBreaker breaker = breaker(TimeUnit.MINUTES.toNanos(1)).minCalls(1).build();
+        breaker.execute(HOST, CompletableFuture::new).cancel(true);
+        assertEquals(CircuitState.CLOSED, breaker.getState(HOST));
+    }
+
+    @Test
+    public void letsALimitedNumberOfProbesThroughWhenHalfOpen() throws Exception {
+        CircuitBreaker breaker = open();
+        assertEquals(CircuitState.HALF_OPEN, breaker.getState(HOST));
+
+        breaker.execute(HOST, CompletableFuture::new);
+        breaker.execute(HOST, CompletableFuture::new);
+        CircuitOpenException rejected = rejection(breaker.execute(HOST, () -> send(200)));
+        assertEquals(0, rejected.getRetryAfter());
+        assertEquals(1, sent.get());
+    }
+
+    @Test
+    public void closesWhenEveryProbeSucceeds() throws Exception {
+        CircuitBreaker breaker = open();
+        respond(breaker, 200);
+        assertEquals(CircuitState.HALF_OPEN, breaker.getState(HOST));
+        respond(breaker, 200);
+        assertEquals(CircuitState.CLOSED, breaker.getState(HOST));
+        assertEquals(Arrays.asList("CLOSED>OPEN", "OPEN>HALF_OPEN", "HALF_OPEN>CLOSED"), transitions);
+
+        // the window was cleared
+        respond(breaker, 200);
+        assertEquals(CircuitState.CLOSED, breaker.getState(HOST));
+    }
+
+    @Test
+    public void opensAgainWhenAProbeFails() throws Exception {
+        CircuitBreaker breaker = open();
+        respond(breaker, 200);
+        respond(breaker, 502);
+        assertEquals(Arrays.asList("CLOSED>OPEN", "OPEN>HALF_OPEN", "HALF_OPEN>OPEN"), transitions);
+        // half open again at once, with new probes
+        assertEquals(CircuitState.HALF_OPEN, breaker.getState(HOST));
+        respond(breaker, 200);
+        respond(breaker, 200);
+        assertEquals(CircuitState.CLOSED, breaker.getState(HOST));
+        assertEquals(5, breaker.snapshot().get(HOST).getTransitions());
+    }
+
+    @Test
+    public void ignoresProbesOfAnEarlierHalfOpenState() throws Exception {
+        CircuitBreaker breaker = open();
+        CompletableFuture<RestResponse> late = new CompletableFuture<>();
+        breaker.execute(HOST, () -> late);
+        respond(breaker, 503);
+        assertEquals(CircuitState.HALF_OPEN, breaker.getState(HOST));
+
+        // succeeding in the new half open state, it would close the circuit after one real probe
+        late.complete(new TestResponse(200));
+        respond(breaker, 200);
+        assertEquals(CircuitState.HALF_OPEN, breaker.getState(HOST));
+        respond(breaker, 200);
+        assertEquals(CircuitState.CLOSED, breaker.getState(HOST));
+    }
+
+    @Test
+    public void ignoresCancelledProbesOfAnEarlierHalfOpenState() throws Exception {
+        CircuitBreaker breaker = open();
+        CompletableFuture<RestResponse> late = new CompletableFuture<>();
+        breaker.execute(HOST, () -> late);
+        respond(breaker, 503);
+        assertEquals(CircuitState.HALF_OPEN, breaker.getState(HOST));
+
+        // cancelled in the new half open state, it would let a third probe through
+        late.cancel(true);
+        breaker.execute(HOST, CompletableFuture::new);
+        breaker.execute(HOST, CompletableFuture::new);
+        rejection(breaker.execute(HOST, () -> send(200)));
+    }
+
+    @Test
+    public void resetsCircuits() throws Exception {
+        CircuitBreaker breaker = breaker(TimeUnit.MINUTES.toNanos(1)).minCalls(1).build();
+        respond(breaker, 503);
+        breaker.reset(HOST);
+        assertEquals(CircuitState.CLOSED, breaker.getState(HOST));
+        assertEquals(200, breaker.execute(HOST, () -> send(200)).get().getStatus());
+        assertEquals(Arrays.asList("CLOSED>OPEN", "OPEN>CLOSED"), transitions);
+    }
+
+    /**
+     * @return a breaker whose circuit opened and is half open at once, letting two probes through.
+     */
+    private CircuitBreaker open() throws Exception {
+        CircuitBreaker breaker = breaker(0).minCalls(1).probes(2).build();
+        respond(breaker, 503);
+        return breaker;
+    }
+
+    private CircuitBreaker.Builder breaker(long openDuration) {
+        return CircuitBreaker.builder()
+                .minCalls(4)
+                .failureRateThreshold(0.5)
+                .openDuration(openDuration, TimeUnit.NANOSECONDS)
+                .listener((circuit, from, to) -> transitions.add(from + ">" + to));
+    }
+
+    private void respond(CircuitBreaker breaker, int status) throws Exception {
+        breaker.execute(HOST, () -> send(status)).get();
+    }
+
+    private CompletableFuture<RestResponse> send(int status) {
+        sent.incrementAndGet();
+        return CompletableFuture.<RestResponse>completedFuture(new TestResponse(status));
+    }
+
+    private static CircuitOpenException rejection(CompletableFuture<RestResponse> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            return (CircuitOpenException) e.getCause();
+        }
+        throw new AssertionError("not rejected");
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.cache;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiskCacheStoreTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private DiskCacheStore store;
+
+    @After
+    public void close() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void storesEntries() throws Exception {
+        store = open();
+        Map<String, List<String>> headers = new TreeMap<>();
+        headers.put("Content-Type", Collections.singletonList("application/json"));
+        headers.put("Link", Arrays.asList("<a>", "<b>"));
+        Map<String, String> varyValues = Collections.singletonMap("accept", "application/json");
+        store.put("key", new CacheEntry("http://example.com/a", 200, "OK", headers,
+                ByteBuffer.wrap(body(1, 100)), 1000, 2000, varyValues));
+
+        CacheEntry entry = store.get("key");
+        assertEquals("http://example.com/a", entry.getUri());
+        assertEquals(200, entry.getStatus());
+        assertEquals("OK", entry.getStatusText());
+        assertEquals("application/json", entry.getHeader("content-type"));
+        assertEquals(Arrays.asList("<a>", "<b>"), entry.getHeaders().get("Link"));
+        assertEquals(1000, entry.getRequestTime());
+        assertEquals(2000, entry.getResponseTime());
+        assertEquals(varyValues, entry.getVaryValues());
+        assertArrayEquals(body(1, 100), bytes(entry));
+        assertNull(store.get("other"));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void replacesEntries() throws Exception {
+        store = open();
+        store.put("key", entry(1, 100));
+        store.put("key", entry(2, 50));
+        assertArrayEquals(body(2, 50), bytes(store.get("key")));
+        assertEquals(1, store.size());
+
+        store = reopen();
+        assertArrayEquals(body(2, 50), bytes(store.get("key")));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void recoversEntriesAfterARestart() throws Exception {
+        store = open();
+        for (int i = 0; i < 10; i++) {
+            put("key" + i, entry(i, 700));
+        }
+        assertTrue(store.getSegmentCount() > 1);
+        long weight = store.getWeight();
+
+        store = reopen();
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(body(i, 700), bytes(store.get("key" + i)));
+        }
+        assertEquals(10, store.size());
+        assertEquals(weight, store.getWeight());
+    }
+
+    @Test
+    public void keepsRemovedEntriesRemovedAfterARestart() throws Exception {
+        store = open();
+        store.put("removed", entry(1, 100));
+        store.put("kept", entry(2, 100));
+        store.remove("removed");
+        store.remove("missing");
+        assertNull(store.get("removed"));
+
+        store = reopen();
+        assertNull(store.get("removed"));
+        assertArrayEquals(body(2, 100), bytes(store.get("kept")));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void stopsTheRecoveryAtATornRecord() throws Exception {
+        store = open();
+        store.put("first", entry(1, 100));
+        int offset = recordEnd(0);
+        store.put("torn", entry(2, 100));
+        store.close();
+        // the magic number is written last, a record being written when the process crashed has none
+        try (RandomAccessFile file = new RandomAccessFile(segment(1).toFile(), "rw")) {
+            file.seek(offset);
+            file.writeInt(0);
+        }
+
+        store = open();
+        assertArrayEquals(body(1, 100), bytes(store.get("first")));
+        assertNull(store.get("torn"));
+        assertEquals(1, store.size());
+        assertAppendsAfterTheRecovery();
+    }
+
+    @Test
+    public void stopsTheRecoveryAtACrcMismatch() throws Exception {
+        store = open();
+        store.put("first", entry(1, 100));
+        int offset = recordEnd(0);
+        store.put("corrupt", entry(2, 100));
+        store.put("last", entry(3, 100));
+        store.close();
+        try (RandomAccessFile file = new RandomAccessFile(segment(1).toFile(), "rw")) {
+            int last = recordEnd(offset) - 1;
+            file.seek(last);
+            byte b = file.readByte();
+            file.seek(last);
+            file.writeByte(b ^ 1);
+        }
+
+        store = open();
+        assertArrayEquals(body(1, 100), bytes(store.get("first")));
+        assertNull(store.get("corrupt"));
+        // records are only trusted up to the first corrupt one
+        assertNull(store.get("last"));
+        assertEquals(1, store.size());
+        assertAppendsAfterTheRecovery();
+    }
+
+    @Test
+    public void doesNotStoreEntriesBiggerThanASegment() throws Exception {
+        store = open();
+        store.put("key", entry(1, 100));
+        store.put("key", entry(2, SEGMENT_SIZE));
+        assertNull(store.get("key"));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void compactsTheOldestSegmentsKeepingTheEntriesRead() throws Exception {
+        store = open();
+        put("hot", entry(0, 500));
+        for (int i = 0; i < 50; i++) {
+            put("cold" + i, entry(i, 500));
+            assertNotNull(store.get("hot"));
+        }
+        awaitCompaction();
+
+        assertTrue(store.getCompactions() > 0);
+        assertTrue(store.getEvictions() > 0);
+        assertArrayEquals(body(0, 500), bytes(store.get("hot")));
+        assertNull(store.get("cold0"));
+        assertArrayEquals(body(49, 500), bytes(store.get("cold49")));
+        assertTrue(store.getWeight() <= 3 * SEGMENT_SIZE);
+
+        store = reopen();
+        assertArrayEquals(body(0, 500), bytes(store.get("hot")));
+        assertNull(store.get("cold0"));
+    }
+
+    @Test
+    public void keepsTheEntriesReadFromTheFirstTier() throws Exception {
+        store = open();
+        TieredCacheStore tiered = new TieredCacheStore(new MemoryCacheStore(2000), store);
+        tiered.put("hot", entry(0, 500));
+        for (int i = 0; i < 50; i++) {
+            tiered.put("cold" + i, entry(i, 500));
+            store.awaitBackgroundTasks();
+            assertNotNull(tiered.get("hot"));
+        }
+        awaitCompaction();
+
+        assertTrue(store.getCompactions() > 0);
+        assertArrayEquals(body(0, 500), bytes(store.get("hot")));
+        assertNull(store.get("cold0"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refusesADirectoryInUse() {
+        store = open();
+        new DiskCacheStore(folder.getRoot().toPath(), 2 * SEGMENT_SIZE, SEGMENT_SIZE);
+    }
+
+    private void assertAppendsAfterTheRecovery() throws Exception {
+        store.put("after", entry(4, 100));
+        store = reopen();
+        assertArrayEquals(body(1, 100), bytes(store.get("first")));
+        assertArrayEquals(body(4, 100), bytes(store.get("after")));
+    }
+
+    /**
+     * Put an entry once the next segment is ready, so it is always stored.
+     */
+    private void put(String key, CacheEntry entry) throws Exception {
+        store.awaitBackgroundTasks();
+        store.put(key, entry);
+    }
+
+    private void awaitCompaction() throws Exception {
+        for (int i = 0; i < 100 && store.getSegmentCount() > 2; i++) {
+            store.awaitBackgroundTasks();
+        }
+        assertEquals(2, store.getSegmentCount());
+    }
+
+    private DiskCacheStore open() {
+        return new DiskCacheStore(folder.getRoot().toPath(), 2 * SEGMENT_SIZE, SEGMENT_SIZE);
+    }
+
+    private DiskCacheStore reopen() {
+        store.close();
+        return open();
+    }
+
+    private Path segment(int id) {
+        return folder.getRoot().toPath().resolve(String.format("%08d.segment", id));
+    }
+
+    /**
+     * @return the offset of the record following the one at the offset in the first segment.
+     */
+    private int recordEnd(int offset) throws Exception {
+        try (RandomAccessFile file = new RandomAccessFile(segment(1).toFile(), "r")) {
+            file.seek(offset + 4);
+            return offset + 12 + file.readInt();
+        }
+    }
+
+    private static CacheEntry entry(int seed, int length) {
+        return new CacheEntry("http://example.com/" + seed, 200, "OK", Collections.<String, List<String>>emptyMap(),
+                ByteBuffer.wrap(body(seed, length)), 0, 0, Collections.<String, String>emptyMap());
+    }
+
+    private static byte[] body(int seed, int length) {
+        byte[] body = new byte[length];
+        for (int i = 0; i < length; i++) {
+            body[i] = (byte) (seed * 31 + i);
+        }
+        return body;
+    }
+
+    private static byte[] bytes(CacheEntry entry) {
+        ByteBuffer body = entry.getBody().duplicate();
+        byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.cache;
+
+import com.ecomnext.rest.RestAuthScheme;
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.TestResponse;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class HttpCacheTest {
+    private static final String URL = "http://example.com/account";
+    private static final Map<String, Collection<String>> NONE = Collections.emptyMap();
+
+    private HttpCache cache = new HttpCache(1024 * 1024);
+    // the responses to send, in order, and the conditions of the requests sent
+    private final Deque<CompletableFuture<RestResponse>> responses = new ArrayDeque<>();
+    private final List<Map<String, String>> sent = new ArrayList<>();
+    private final Function<Map<String, String>, CompletableFuture<RestResponse>> send = conditions -> {
+        sent.add(conditions);
+        return responses.remove();
+    };
+
+    @Test
+    public void servesFreshResponsesToTheSameUser() throws Exception {
+        assertEquals("alice:secret", get("alice", "secret", RestAuthScheme.BASIC));
+        assertEquals("alice:secret", get("alice", "secret", RestAuthScheme.BASIC));
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void doesNotShareEntriesBetweenPasswords() throws Exception {
+        assertEquals("alice:first", get("alice", "first", RestAuthScheme.BASIC));
+        assertEquals("alice:second", get("alice", "second", RestAuthScheme.BASIC));
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void doesNotShareEntriesBetweenSchemes() throws Exception {
+        get("alice", "secret", RestAuthScheme.BASIC);
+        get("alice", "secret", RestAuthScheme.DIGEST);
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void tellsCredentialsApart() {
+        String key = HttpCache.key(URL, NONE, NONE, "alice", "secret", RestAuthScheme.BASIC);
+        assertEquals(key, HttpCache.key(URL, NONE, NONE, "alice", "secret", RestAuthScheme.BASIC));
+        assertNotEquals(key, HttpCache.key(URL, NONE, NONE, "alice", "other", RestAuthScheme.BASIC));
+        assertNotEquals(key, HttpCache.key(URL, NONE, NONE, "alice", "secret", null));
+        assertNotEquals(key, HttpCache.key(URL, NONE, NONE, null, null, null));
+        // fields cannot run into each other
+        assertNotEquals(HttpCache.key(URL, NONE, NONE, "alice\n", "secret", null),
+                HttpCache.key(URL, NONE, NONE, "alice", "\nsecret", null));
+        assertNotEquals(HttpCache.key(URL, NONE, NONE, "null", null, null),
+                HttpCache.key(URL, NONE, NONE, null, "null", null));
+        assertNotEquals(HttpCache.key(URL, NONE, header("Authorization", "Bearer a"), null, null, null),
+                HttpCache.key(URL, NONE, header("Authorization", "Bearer b"), null, null, null));
+    }
+
+    @Test
+    public void keepsCredentialsOutOfTheKey() {
+        String key = HttpCache.key(URL, NONE, header("Authorization", "Bearer token"), "alice", "secret",
+                RestAuthScheme.BASIC);
+        assertEquals(-1, key.indexOf("alice"));
+        assertEquals(-1, key.indexOf("secret"));
+        assertEquals(-1, key.indexOf("token"));
+    }
+
+    @Test
+    public void servesFreshResponsesUntilTheyExpire() throws Exception {
+        respond(new TestResponse(200, "fresh", "Cache-Control", "max-age=60"));
+        assertEquals("fresh", get(NONE).getBody());
+        assertEquals("fresh", get(NONE).getBody());
+        assertEquals(1, sent.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getStores());
+
+        // generated two minutes ago, expired when received
+        respond(new TestResponse(200, "expired", "Cache-Control", "max-age=60", "Date", date(-120)));
+        cache.getStore().remove(HttpCache.key(URL, NONE, NONE, null, null, null));
+        assertEquals("expired", get(NONE).getBody());
+        respond(new TestResponse(200, "again", "Cache-Control", "max-age=60"));
+        assertEquals("again", get(NONE).getBody());
+        assertEquals(3, sent.size());
+        assertEquals(Collections.emptyMap(), sent.get(2));
+    }
+
+    @Test
+    public void honorsSMaxAgeInSharedCachesOnly() throws Exception {
+        respond(new TestResponse(200, "private", "Cache-Control", "max-age=0, s-maxage=60"));
+        respond(new TestResponse(200, "private", "Cache-Control", "max-age=0, s-maxage=60"));
+        get(NONE);
+        get(NONE);
+        assertEquals(2, sent.size());
+        assertEquals(0, cache.getStores());
+
+        cache = new HttpCache(new MemoryCacheStore(1024 * 1024), true);
+        respond(new TestResponse(200, "shared", "Cache-Control", "max-age=0, s-maxage=60"));
+        get(NONE);
+        assertEquals("shared", get(NONE).getBody());
+        assertEquals(3, sent.size());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void doesNotStorePrivateResponsesInSharedCaches() throws Exception {
+        cache = new HttpCache(new MemoryCacheStore(1024 * 1024), true);
+        respond(new TestResponse(200, "mine", "Cache-Control", "private, max-age=60"));
+        get(NONE);
+        assertEquals(0, cache.getStore().size());
+    }
+
+    @Test
+    public void doesNotStoreNoStoreResponses() throws Exception {
+        respond(new TestResponse(200, "secret", "Cache-Control", "no-store, max-age=60"));
+        respond(new TestResponse(200, "secret", "Cache-Control", "no-store, max-age=60"));
+        get(NONE);
+        get(NONE);
+        assertEquals(2, sent.size());
+        assertEquals(0, cache.getStore().size());
+        assertEquals(0, cache.getStores());
+    }
+
+    @Test
+    public void bypassesTheCacheForNoStoreRequests() throws Exception {
+        respond(new TestResponse(200, "first", "Cache-Control", "max-age=60"));
+        respond(new TestResponse(200, "second", "Cache-Control", "max-age=60"));
+        get(NONE);
+        assertEquals("second", get(header("Cache-Control", "no-store")).getBody());
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void servesRevalidatedResponsesFromTheStore() throws Exception {
+        respond(new TestResponse(200, "body", "Cache-Control", "no-cache", "ETag", "\"v1\""));
+        get(NONE);
+        TestResponse notModified = new TestResponse(304, "", "ETag", "\"v1\"", "X-Revalidated", "yes");
+        respond(notModified);
+
+        RestResponse response = get(NONE);
+        assertTrue(response instanceof CachedResponse);
+        assertEquals(200, response.getStatus());
+        assertEquals("body", response.getBody());
+        assertEquals("yes", response.getHeader("X-Revalidated"));
+        assertEquals(Collections.singletonMap("If-None-Match", "\"v1\""), sent.get(1));
+        assertEquals(1, cache.getRevalidations());
+        assertEquals(1, cache.getNotModified());
+        assertTrue(notModified.isReleased());
+    }
+
+    @Test
+    public void storesChangedResponsesOfRevalidations() throws Exception {
+        respond(new TestResponse(200, "old", "Cache-Control", "no-cache", "Last-Modified", date(-3600)));
+        get(NONE);
+        respond(new TestResponse(200, "new", "Cache-Control", "max-age=60"));
+        assertEquals("new", get(NONE).getBody());
+        assertTrue(sent.get(1).containsKey("If-Modified-Since"));
+        assertEquals("new", get(NONE).getBody());
+        assertEquals(2, sent.size());
+        assertEquals(0, cache.getNotModified());
+    }
+
+    @Test
+    public void sendsRequestsWhoseVaryHeadersDiffer() throws Exception {
+        respond(new TestResponse(200, "english", "Cache-Control", "max-age=60", "Vary", "Accept-Language"));
+        assertEquals("english", get(header("Accept-Language", "en")).getBody());
+        assertEquals("english", get(header("Accept-Language", "en")).getBody());
+        respond(new TestResponse(200, "french", "Cache-Control", "max-age=60", "Vary", "Accept-Language"));
+        assertEquals("french", get(header("Accept-Language", "fr")).getBody());
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void servesStaleResponsesWhileRevalidatingOnce() throws Exception {
+        respond(new TestResponse(200, "stale", "Cache-Control", "max-age=1, stale-while-revalidate=60",
+                "Date", date(-10)));
+        get(NONE);
+        CompletableFuture<RestResponse> revalidation = new CompletableFuture<>();
+        responses.add(revalidation);
+
+        assertEquals("stale", get(NONE).getBody());
+        assertEquals("stale", get(NONE).getBody());
+        assertEquals(2, sent.size());
+        assertEquals(2, cache.getStaleHits());
+
+        TestResponse fresh = new TestResponse(200, "fresh", "Cache-Control", "max-age=60");
+        revalidation.complete(fresh);
+        assertTrue(fresh.isReleased());
+        assertEquals("fresh", get(NONE).getBody());
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void invalidatesResponsesOnSuccessfulUnsafeRequests() throws Exception {
+        for (String method : Arrays.asList("POST", "PUT", "DELETE")) {
+            respond(new TestResponse(200, "stored", "Cache-Control", "max-age=60"));
+            get(NONE);
+            assertEquals(1, cache.getStore().size());
+
+            respond(new TestResponse(500));
+            execute(method, NONE);
+            assertEquals(1, cache.getStore().size());
+
+            respond(new TestResponse(204));
+            execute(method, NONE);
+            assertEquals(0, cache.getStore().size());
+        }
+        assertEquals(3, cache.getInvalidations());
+    }
+
+    @Test
+    public void doesNotCopyBodiesOfResponsesNotStored() throws Exception {
+        respond(new TestResponse(200, "unstorable") {
+            @Override
+            public byte[] asByteArray() {
+                throw new AssertionError("copied");
+            }
+        });
+        assertEquals("unstorable", get(NONE).getBody());
+        assertEquals(0, cache.getStore().size());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntriesBeyondTheWeight() {
+        CacheEntry entry = entry(1000);
+        MemoryCacheStore store = new MemoryCacheStore(entry.getWeight() * 2 + entry.getWeight() / 2);
+        store.put("a", entry);
+        store.put("b", entry(1000));
+        assertNotNull(store.get("a"));
+        store.put("c", entry(1000));
+
+        assertEquals(2, store.size());
+        assertNotNull(store.get("a"));
+        assertNull(store.get("b"));
+        assertNotNull(store.get("c"));
+        assertEquals(1, store.getEvictions());
+        assertEquals(entry.getWeight() * 2, store.getWeight());
+
+        store.put("huge", entry(10000));
+        assertNull(store.get("huge"));
+        assertEquals(2, store.size());
+    }
+
+    /**
+     * @return the body of the response, the user and password of the request that was sent for it.
+     */
+    private String get(String username, String password, RestAuthScheme scheme) throws Exception {
+        respond(new TestResponse(200, username + ":" + password, "Cache-Control", "max-age=60"));
+        return cache.execute("GET", URL, NONE, NONE, username, password, scheme, send).get().getBody();
+    }
+
+    private RestResponse get(Map<String, Collection<String>> headers) throws Exception {
+        return execute("GET", headers);
+    }
+
+    private RestResponse execute(String method, Map<String, Collection<String>> headers) throws Exception {
+        return cache.execute(method, URL, NONE, headers, null, null, null, send).get();
+    }
+
+    private void respond(RestResponse response) {
+        responses.add(CompletableFuture.completedFuture(response));
+    }
+
+    private static CacheEntry entry(int length) {
+        long now = System.currentTimeMillis();
+        return new CacheEntry(URL, 200, "OK", Collections.singletonMap("Cache-Control",
+                Collections.singletonList("max-age=60")), ByteBuffer.allocate(length), now, now,
+                Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * @return the HTTP-date of the given seconds from now.
+     */
+    private static String date(long seconds) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(seconds));
+    }
+
+    private static Map<String, Collection<String>> header(String name, String value) {
+        return Collections.<String, Collection<String>>singletonMap(name, Collections.singletonList(value));
+    }
+}
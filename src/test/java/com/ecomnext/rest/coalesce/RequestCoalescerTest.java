@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.coalesce;
+
+import com.ecomnext.rest.RestAuthScheme;
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.cache.CacheEntry;
+import com.ecomnext.rest.cache.CachedResponse;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RequestCoalescerTest {
+    private static final String URL = "http://example.com/account";
+    private static final Map<String, Collection<String>> NONE = Collections.emptyMap();
+
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+
+    @Test
+    public void coalescesRequestsOfTheSameUser() {
+        assertEquals(key("alice", "secret", RestAuthScheme.BASIC), key("alice", "secret", RestAuthScheme.BASIC));
+    }
+
+    @Test
+    public void doesNotCoalesceRequestsWithDifferentPasswords() {
+        assertNotEquals(key("alice", "first", RestAuthScheme.BASIC), key("alice", "second", RestAuthScheme.BASIC));
+        assertNotEquals(key("alice", "secret", RestAuthScheme.BASIC), key("alice", "secret", RestAuthScheme.DIGEST));
+        assertNotEquals(key("alice", "secret", RestAuthScheme.BASIC), key(null, null, null));
+    }
+
+    @Test
+    public void keepsPasswordsOutOfTheKey() {
+        assertEquals(-1, key("alice", "secret", RestAuthScheme.BASIC).indexOf("secret"));
+    }
+
+    @Test
+    public void sendsIdenticalRequestsOnce() throws Exception {
+        CompletableFuture<RestResponse> sent = new CompletableFuture<>();
+        AtomicInteger requests = new AtomicInteger();
+        CompletableFuture<RestResponse> first = coalescer.execute("key", () -> {
+            requests.incrementAndGet();
+            return sent;
+        });
+        CompletableFuture<RestResponse> second = coalescer.execute("key", () -> {
+            requests.incrementAndGet();
+            return sent;
+        });
+        CountedResponse response = new CountedResponse();
+        sent.complete(response);
+
+        assertEquals(1, requests.get());
+        assertSame(response, first.get());
+        assertSame(response, second.get());
+        assertEquals(0, coalescer.getInFlight());
+    }
+
+    @Test
+    public void retainsTheResponseOncePerCaller() throws Exception {
+        CompletableFuture<RestResponse> sent = new CompletableFuture<>();
+        for (int i = 0; i < 3; i++) {
+            coalescer.execute("key", () -> sent);
+        }
+        CountedResponse response = new CountedResponse();
+        sent.complete(response);
+        assertEquals(3, response.refCnt.get());
+    }
+
+    @Test
+    public void doesNotRetainTheResponseForCallersWhoCancelled() throws Exception {
+        CompletableFuture<RestResponse> sent = new CompletableFuture<>();
+        CompletableFuture<RestResponse> kept = coalescer.execute("key", () -> sent);
+        CompletableFuture<RestResponse> cancelled = coalescer.execute("key", () -> sent);
+        assertTrue(cancelled.cancel(true));
+        CountedResponse response = new CountedResponse();
+        sent.complete(response);
+
+        assertSame(response, kept.get());
+        assertEquals(1, response.refCnt.get());
+    }
+
+    @Test
+    public void releasesTheResponseIfEveryCallerCancelled() {
+        // the response arrives while the request is being cancelled
+        CompletableFuture<RestResponse> sent = new CompletableFuture<RestResponse>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                return false;
+            }
+        };
+        coalescer.execute("key", () -> sent).cancel(true);
+        CountedResponse response = new CountedResponse();
+        sent.complete(response);
+        assertEquals(0, response.refCnt.get());
+    }
+
+    private String key(String username, String password, RestAuthScheme scheme) {
+        return coalescer.key("GET", URL, NONE, NONE, username, password, scheme);
+    }
+
+    /**
+     * A response counting its owners, as the ones of the Netty transport.
+     */
+    private static class CountedResponse extends CachedResponse {
+        final AtomicInteger refCnt = new AtomicInteger(1);
+
+        CountedResponse() {
+            super(new CacheEntry(URL, 200, "OK", Collections.<String, List<String>>emptyMap(), ByteBuffer.allocate(0),
+                    0, 0, Collections.<String, String>emptyMap()), 0);
+        }
+
+        @Override
+        public RestResponse retain() {
+            assertTrue(refCnt.getAndIncrement() > 0);
+            return this;
+        }
+
+        @Override
+        public boolean release() {
+            int count = refCnt.decrementAndGet();
+            assertTrue(count >= 0);
+            return count == 0;
+        }
+    }
+}
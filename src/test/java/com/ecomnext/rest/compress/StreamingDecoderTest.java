@@ -0,0 +1,302 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.compress;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamingDecoderTest {
+    private static final byte[] BODY = body();
+
+    private final CompressionPolicy policy = CompressionPolicy.builder().build();
+    private final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+    private StreamingDecoder decoder;
+    private int largestChunk;
+
+    @After
+    public void close() {
+        if (decoder != null) {
+            decoder.close();
+        }
+    }
+
+    @Test
+    public void decodesGzipInOnePart() throws Exception {
+        assertArrayEquals(BODY, decode("gzip", gzip(BODY), Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void decodesGzipWithHeadersAndTrailersSplitAcrossParts() throws Exception {
+        assertArrayEquals(BODY, decode("gzip", gzip(BODY), 1));
+        assertArrayEquals(BODY, decode("gzip", gzip(BODY), 7));
+    }
+
+    @Test
+    public void handsOnChunksOfAtMost8KiB() throws Exception {
+        decode("gzip", gzip(BODY), Integer.MAX_VALUE);
+        assertTrue(largestChunk > 0 && largestChunk <= 8192);
+    }
+
+    @Test
+    public void decodesDirectBuffers() throws Exception {
+        byte[] gzip = gzip(BODY);
+        decoder = policy.decoder("gzip");
+        for (int i = 0; i < gzip.length; i += 1000) {
+            int n = Math.min(1000, gzip.length - i);
+            ByteBuffer part = ByteBuffer.allocateDirect(n);
+            part.put(gzip, i, n).flip();
+            decoder.decode(part, this::collect);
+        }
+        decoder.finish();
+        assertArrayEquals(BODY, decoded.toByteArray());
+    }
+
+    @Test
+    public void skipsOptionalGzipHeaderFields() throws Exception {
+        byte[] gzip = gzipWithOptionalFields(BODY);
+        assertArrayEquals(BODY, decode("gzip", gzip, Integer.MAX_VALUE));
+        assertArrayEquals(BODY, decode("gzip", gzip, 1));
+        assertArrayEquals(BODY, decode("gzip", gzip, 3));
+    }
+
+    @Test
+    public void decodesEveryGzipMember() throws Exception {
+        byte[] first = "first member ".getBytes(StandardCharsets.UTF_8);
+        byte[] gzip = concat(gzip(first), gzipWithOptionalFields(BODY), gzip(new byte[0]));
+        byte[] expected = concat(first, BODY);
+        assertArrayEquals(expected, decode("gzip", gzip, Integer.MAX_VALUE));
+        assertArrayEquals(expected, decode("gzip", gzip, 1));
+        assertArrayEquals(expected, decode("gzip", gzip, 13));
+    }
+
+    @Test
+    public void ignoresBytesAfterTheLastGzipMember() throws Exception {
+        byte[] gzip = concat(gzip(BODY), "trailing garbage".getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(BODY, decode("gzip", gzip, Integer.MAX_VALUE));
+        assertArrayEquals(BODY, decode("gzip", gzip, 5));
+    }
+
+    @Test
+    public void decodesZlibDeflate() throws Exception {
+        byte[] zlib = deflate(BODY, false);
+        assertArrayEquals(BODY, decode("deflate", zlib, Integer.MAX_VALUE));
+        assertArrayEquals(BODY, decode("deflate", zlib, 1));
+    }
+
+    @Test
+    public void decodesRawDeflate() throws Exception {
+        byte[] raw = deflate(BODY, true);
+        assertArrayEquals(BODY, decode("deflate", raw, Integer.MAX_VALUE));
+        assertArrayEquals(BODY, decode("deflate", raw, 1));
+    }
+
+    @Test
+    public void acceptsAnEmptyBody() throws Exception {
+        assertArrayEquals(new byte[0], decode("gzip", new byte[0], 1));
+        assertArrayEquals(new byte[0], decode("deflate", new byte[0], 1));
+    }
+
+    @Test
+    public void rejectsBodiesThatAreNotGzip() throws Exception {
+        try {
+            decode("gzip", BODY, Integer.MAX_VALUE);
+            fail();
+        } catch (ZipException e) {
+            assertEquals("Not in GZIP format", e.getMessage());
+        }
+    }
+
+    @Test
+    public void rejectsCorruptDeflateData() throws Exception {
+        byte[] gzip = gzip(BODY);
+        for (int i = 10; i < 20; i++) {
+            gzip[i] = (byte) 0xff;
+        }
+        try {
+            decode("gzip", gzip, Integer.MAX_VALUE);
+            fail();
+        } catch (ZipException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid gzip body"));
+        }
+    }
+
+    @Test
+    public void rejectsACrcMismatch() throws Exception {
+        byte[] gzip = gzip(BODY);
+        gzip[gzip.length - 8] ^= 1;
+        assertCorruptTrailer(gzip);
+    }
+
+    @Test
+    public void rejectsALengthMismatch() throws Exception {
+        byte[] gzip = gzip(BODY);
+        gzip[gzip.length - 4] ^= 1;
+        assertCorruptTrailer(gzip);
+    }
+
+    @Test
+    public void detectsATruncatedTrailer() throws Exception {
+        byte[] gzip = gzip(BODY);
+        assertTruncated("gzip", Arrays.copyOf(gzip, gzip.length - 3));
+    }
+
+    @Test
+    public void detectsAMissingTrailer() throws Exception {
+        byte[] gzip = gzip(BODY);
+        assertTruncated("gzip", Arrays.copyOf(gzip, gzip.length - 8));
+    }
+
+    @Test
+    public void detectsAPartialBody() throws Exception {
+        byte[] gzip = gzip(BODY);
+        assertTruncated("gzip", Arrays.copyOf(gzip, gzip.length / 2));
+        assertTruncated("gzip", Arrays.copyOf(gzip, 5));
+        byte[] zlib = deflate(BODY, false);
+        assertTruncated("deflate", Arrays.copyOf(zlib, zlib.length / 2));
+    }
+
+    @Test
+    public void detectsATruncatedSecondMember() throws Exception {
+        byte[] second = gzip(BODY);
+        assertTruncated("gzip", concat(gzip(BODY), Arrays.copyOf(second, second.length / 2)));
+    }
+
+    @Test
+    public void dropsPartsDecodedAfterClose() throws Exception {
+        decoder = policy.decoder("gzip");
+        decoder.close();
+        decoder.decode(ByteBuffer.wrap(gzip(BODY)), this::collect);
+        assertEquals(0, decoded.size());
+    }
+
+    private void assertCorruptTrailer(byte[] gzip) throws Exception {
+        try {
+            decode("gzip", gzip, Integer.MAX_VALUE);
+            fail();
+        } catch (ZipException e) {
+            assertEquals("Corrupt GZIP trailer", e.getMessage());
+        }
+    }
+
+    private void assertTruncated(String encoding, byte[] body) throws Exception {
+        try {
+            decode(encoding, body, 1);
+            fail();
+        } catch (ZipException e) {
+            assertEquals("Unexpected end of " + encoding + " body", e.getMessage());
+        }
+    }
+
+    /**
+     * Decode the body in parts of the given size, then check it was complete.
+     */
+    private byte[] decode(String encoding, byte[] body, int partSize) throws Exception {
+        close();
+        decoded.reset();
+        decoder = policy.decoder(encoding);
+        for (int i = 0; i < body.length; i += partSize) {
+            int n = Math.min(partSize, body.length - i);
+            // parts are slices of a larger array, as they are in the network buffers
+            decoder.decode(ByteBuffer.wrap(body, i, n).slice(), this::collect);
+        }
+        decoder.finish();
+        return decoded.toByteArray();
+    }
+
+    private void collect(ByteBuffer part) {
+        largestChunk = Math.max(largestChunk, part.remaining());
+        byte[] bytes = new byte[part.remaining()];
+        part.get(bytes);
+        decoded.write(bytes, 0, bytes.length);
+    }
+
+    private static byte[] body() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 100_000; i++) {
+            sb.append("{\"id\":").append(i).append(",\"name\":\"item ").append(i * 7919 % 1000).append("\"},");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Gzip with FEXTRA, FNAME, FCOMMENT and FHCRC set, which {@link GZIPOutputStream} never writes.
+     */
+    private static byte[] gzipWithOptionalFields(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{0x1f, (byte) 0x8b, 8, 4 | 8 | 16 | 2, 0, 0, 0, 0, 0, (byte) 0xff});
+        out.write(new byte[]{5, 0, 'e', 'x', 't', 'r', 'a'});
+        out.write("body.json\0".getBytes(StandardCharsets.ISO_8859_1));
+        out.write("a comment\0".getBytes(StandardCharsets.ISO_8859_1));
+        CRC32 headerCrc = new CRC32();
+        headerCrc.update(out.toByteArray());
+        writeIntLE(out, (int) headerCrc.getValue() & 0xffff, 2);
+        out.write(deflate(body, true));
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        writeIntLE(out, (int) crc.getValue(), 4);
+        writeIntLE(out, body.length, 4);
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] body, boolean nowrap) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+            deflate.write(body);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream out, int value, int length) {
+        for (int i = 0; i < length; i++) {
+            out.write(value >>> (8 * i));
+        }
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] array : arrays) {
+            out.write(array, 0, array.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.hedge;
+
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.TestResponse;
+import com.ecomnext.rest.metrics.HostMetrics;
+import com.ecomnext.rest.metrics.RestMetrics;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class HedgePolicyTest {
+    private static final String HOST = "example.com";
+
+    private final Attempts attempts = new Attempts();
+
+    @Test
+    public void hedgesOnlyAfterTheDelay() throws Exception {
+        HedgePolicy policy = HedgePolicy.builder().delay(200, TimeUnit.MILLISECONDS).maxRatio(1).build();
+        long start = System.nanoTime();
+        policy.execute(HOST, null, attempts);
+        assertEquals(1, attempts.sent.size());
+        Thread.sleep(50);
+        assertEquals(1, attempts.sent.size());
+
+        attempts.await(2);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(1, policy.getHedges());
+    }
+
+    @Test
+    public void doesNotHedgeRequestsAnsweredBeforeTheDelay() throws Exception {
+        HedgePolicy policy = HedgePolicy.builder().delay(50, TimeUnit.MILLISECONDS).maxRatio(1).build();
+        CompletableFuture<RestResponse> response = policy.execute(HOST, null, attempts);
+        attempts.sent.get(0).complete(new TestResponse(200));
+        assertEquals(200, response.get().getStatus());
+        Thread.sleep(150);
+        assertEquals(1, attempts.sent.size());
+        assertEquals(0, policy.getHedges());
+    }
+
+    @Test
+    public void completesWithTheFirstResponseAndCancelsTheOtherRequest() throws Exception {
+        HedgePolicy policy = HedgePolicy.builder().delay(0, TimeUnit.MILLISECONDS).maxRatio(1).build();
+        CompletableFuture<RestResponse> response = policy.execute(HOST, null, attempts);
+        attempts.await(2);
+        TestResponse hedged = new TestResponse(200, "hedge");
+        attempts.sent.get(1).complete(hedged);
+
+        assertSame(hedged, response.get());
+        assertEquals(1, hedged.refCnt());
+        assertTrue(attempts.sent.get(0).isCancelled());
+        assertEquals(1, policy.getHedgeWins());
+    }
+
+    @Test
+    public void releasesTheResponseOfTheLoser() throws Exception {
+        HedgePolicy policy = HedgePolicy.builder().delay(0, TimeUnit.MILLISECONDS).maxRatio(1).build();
+        // the original request answers while it is being cancelled
+        attempts.cancellable = false;
+        CompletableFuture<RestResponse> response = policy.execute(HOST, null, attempts);
+        attempts.await(2);
+        attempts.sent.get(1).complete(new TestResponse(200, "hedge"));
+        TestResponse late = new TestResponse(200, "original");
+        attempts.sent.get(0).complete(late);
+
+        assertEquals("hedge", response.get().getBody());
+        assertTrue(late.isReleased());
+    }
+
+    @Test
+    public void waitsForTheOtherRequestWhenOneFails() throws Exception {
+        HedgePolicy policy = HedgePolicy.builder().delay(0, TimeUnit.MILLISECONDS).maxRatio(1).build();
+        CompletableFuture<RestResponse> response = policy.execute(HOST, null, attempts);
+        attempts.await(2);
+        attempts.sent.get(0).completeExceptionally(new IOException("reset"));
+        assertFalse(response.isDone());
+
+        attempts.sent.get(1).complete(new TestResponse(200, "hedge"));
+        assertEquals("hedge", response.get().getBody());
+    }
+
+    @Test
+    public void failsWhenBothRequestsFail() throws Exception {
+        HedgePolicy policy = HedgePolicy.builder().delay(0, TimeUnit.MILLISECONDS).maxRatio(1).build();
+        CompletableFuture<RestResponse> response = policy.execute(HOST, null, attempts);
+        attempts.await(2);
+        attempts.sent.get(1).completeExceptionally(new IOException("hedge"));
+        attempts.sent.get(0).completeExceptionally(new IOException("original"));
+        try {
+            response.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("original", e.getCause().getMessage());
+            assertEquals("hedge", e.getCause().getSuppressed()[0].getMessage());
+        }
+    }
+
+    @Test
+    public void capsTheHedgesAtTheRatioOfRequests() throws Exception {
+        HedgePolicy policy = HedgePolicy.builder().delay(0, TimeUnit.MILLISECONDS).maxRatio(0.1).maxBurst(1).build();
+        for (int i = 1; i <= 100; i++) {
+            CompletableFuture<RestResponse> response = policy.execute(HOST, null, attempts);
+            // wait for the hedge to be sent or denied
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (policy.getHedges() + policy.getHedgesDenied() < i && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            response.cancel(true);
+        }
+        assertEquals(100, policy.getRequests());
+        assertTrue(String.valueOf(policy.getHedges()), policy.getHedges() >= 10 && policy.getHedges() <= 11);
+        assertEquals(100, policy.getHedges() + policy.getHedgesDenied());
+    }
+
+    @Test
+    public void hedgesAfterThePercentileLatencyOfTheHost() {
+        HedgePolicy policy = HedgePolicy.builder()
+                .delay(50, TimeUnit.MILLISECONDS)
+                .percentile(95)
+                .minSamples(100)
+                .build();
+        RestMetrics metrics = new RestMetrics();
+        record(metrics.host("slow.example.com"), 94, 10);
+        record(metrics.host("slow.example.com"), 6, 200);
+        record(metrics.host("new.example.com"), 99, 200);
+        record(metrics.host("fast.example.com"), 100, 0);
+
+        long delay = policy.delay("slow.example.com", metrics);
+        // within the error of the histogram
+        assertTrue(String.valueOf(delay), delay >= 190 && delay <= 210);
+        // not enough samples yet
+        assertEquals(50, policy.delay("new.example.com", metrics));
+        // at least the minimum delay
+        assertEquals(1, policy.delay("fast.example.com", metrics));
+        // metrics disabled
+        assertEquals(50, policy.delay("slow.example.com", null));
+    }
+
+    @Test
+    public void neverHedgesWithTheNonePolicy() {
+        HedgePolicy.NONE.execute(HOST, null, attempts);
+        assertEquals(0, HedgePolicy.NONE.getRequests());
+        assertEquals(1, attempts.sent.size());
+    }
+
+    /**
+     * Record requests to a host which took the given milliseconds.
+     */
+    private static void record(HostMetrics host, int requests, long millis) {
+        for (int i = 0; i < requests; i++) {
+            host.start();
+            host.completed(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(millis), 200);
+        }
+    }
+
+    /**
+     * Sends requests which stay in flight until the test completes them.
+     */
+    private static class Attempts implements Supplier<CompletableFuture<RestResponse>> {
+        final List<CompletableFuture<RestResponse>> sent = new CopyOnWriteArrayList<>();
+        volatile boolean cancellable = true;
+
+        @Override
+        public CompletableFuture<RestResponse> get() {
+            CompletableFuture<RestResponse> future = cancellable ? new CompletableFuture<>()
+                    : new CompletableFuture<RestResponse>() {
+                        @Override
+                        public boolean cancel(boolean mayInterruptIfRunning) {
+                            return false;
+                        }
+                    };
+            sent.add(future);
+            return future;
+        }
+
+        void await(int requests) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (sent.size() < requests) {
+                assertTrue("requests not sent", System.nanoTime() < deadline);
+                Thread.sleep(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.limit;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class AimdLimitTest {
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void backsOffOnDrops() {
+        AimdLimit limit = new AimdLimit(20, 1, 100);
+        limit.onSample(System.nanoTime() + 1, RTT, 20, true);
+        assertEquals(18, limit.getLimit());
+    }
+
+    @Test
+    public void backsOffOncePerGeneration() {
+        AimdLimit limit = new AimdLimit(20, 1, 100);
+        long sent = System.nanoTime() + 1;
+        limit.onSample(sent, RTT, 20, true);
+        // sent before the backoff
+        limit.onSample(sent, RTT, 20, true);
+        limit.onSample(sent, RTT, 20, true);
+        assertEquals(18, limit.getLimit());
+
+        limit.onSample(System.nanoTime() + 1, RTT, 20, true);
+        assertEquals(16, limit.getLimit());
+    }
+
+    @Test
+    public void ignoresDropsOfRequestsSentBeforeItWasCreated() {
+        long sent = System.nanoTime();
+        AimdLimit limit = new AimdLimit(20, 1, 100);
+        limit.onSample(sent, RTT, 20, true);
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    public void countsTimeoutsAsDrops() {
+        AimdLimit limit = new AimdLimit(20, 1, 100, 0.5, 5, TimeUnit.MILLISECONDS);
+        limit.onSample(System.nanoTime() + 1, RTT, 20, false);
+        assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    public void growsByOnePerLimitOfSamplesWhileUsed() {
+        AimdLimit limit = new AimdLimit(10, 1, 100);
+        long sent = System.nanoTime();
+        for (int i = 0; i < 11; i++) {
+            limit.onSample(sent, RTT, 10, false);
+        }
+        assertEquals(11, limit.getLimit());
+    }
+
+    @Test
+    public void doesNotGrowWhileIdle() {
+        AimdLimit limit = new AimdLimit(10, 1, 100);
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(System.nanoTime(), RTT, 2, false);
+        }
+        assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    public void staysWithinItsBounds() {
+        AimdLimit limit = new AimdLimit(3, 2, 4, 0.5, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        for (int i = 0; i < 10; i++) {
+            limit.onSample(System.nanoTime() + 1, RTT, 4, true);
+        }
+        assertEquals(2, limit.getLimit());
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(System.nanoTime(), RTT, 4, false);
+        }
+        assertEquals(4, limit.getLimit());
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.limit;
+
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.TestResponse;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class ConcurrencyLimiterTest {
+    private static final String HOST = "example.com";
+
+    private final Requests requests = new Requests();
+
+    @Test
+    public void admitsQueuesThenRejects() throws Exception {
+        ConcurrencyLimiter limiter = limiter(2, 1, 0);
+        limiter.execute(HOST, requests);
+        limiter.execute(HOST, requests);
+        CompletableFuture<RestResponse> queued = limiter.execute(HOST, requests);
+        CompletableFuture<RestResponse> rejected = limiter.execute(HOST, requests);
+
+        assertEquals(2, requests.sent.size());
+        assertFalse(queued.isDone());
+        LimitExceededException e = rejection(rejected);
+        assertEquals(HOST, e.getHost());
+        assertEquals(2, e.getLimit());
+
+        LimitSnapshot snapshot = limiter.snapshot().get(HOST);
+        assertEquals(2, snapshot.getInFlight());
+        assertEquals(1, snapshot.getQueued());
+        assertEquals(1, snapshot.getRejected());
+    }
+
+    @Test
+    public void rejectsAtOnceWithoutQueue() throws Exception {
+        ConcurrencyLimiter limiter = limiter(1, 0, 0);
+        limiter.execute(HOST, requests);
+        rejection(limiter.execute(HOST, requests));
+        assertEquals(1, requests.sent.size());
+    }
+
+    @Test
+    public void keepsALimitPerHost() {
+        ConcurrencyLimiter limiter = limiter(1, 0, 0);
+        limiter.execute("a.example.com", requests);
+        limiter.execute("b.example.com", requests);
+        assertEquals(2, requests.sent.size());
+    }
+
+    @Test
+    public void startsTheNextWaiterWhenARequestCompletes() throws Exception {
+        ConcurrencyLimiter limiter = limiter(1, 2, 0);
+        limiter.execute(HOST, requests);
+        CompletableFuture<RestResponse> second = limiter.execute(HOST, requests);
+        CompletableFuture<RestResponse> third = limiter.execute(HOST, requests);
+
+        requests.sent.get(0).complete(new TestResponse(200));
+        assertEquals(2, requests.sent.size());
+        TestResponse response = new TestResponse(200, "second");
+        requests.sent.get(1).complete(response);
+        assertSame(response, second.get());
+
+        // cancelled requests free their slot too
+        requests.sent.get(2).cancel(true);
+        assertTrue(third.isCancelled());
+        assertEquals(0, limiter.snapshot().get(HOST).getInFlight());
+    }
+
+    @Test
+    public void removesCancelledWaitersFromTheQueue() {
+        ConcurrencyLimiter limiter = limiter(1, 1, 0);
+        limiter.execute(HOST, requests);
+        limiter.execute(HOST, requests).cancel(true);
+        assertEquals(0, limiter.snapshot().get(HOST).getQueued());
+
+        requests.sent.get(0).complete(new TestResponse(200));
+        assertEquals(1, requests.sent.size());
+    }
+
+    @Test
+    public void rejectsWaitersAfterTheMaximumQueueTime() throws Exception {
+        ConcurrencyLimiter limiter = limiter(1, 1, 50);
+        limiter.execute(HOST, requests);
+        long start = System.nanoTime();
+        CompletableFuture<RestResponse> queued = limiter.execute(HOST, requests);
+
+        LimitExceededException e = rejection(queued);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(e.getMessage().contains("Waited 50ms"));
+        assertEquals(0, limiter.snapshot().get(HOST).getQueued());
+        assertEquals(1, limiter.snapshot().get(HOST).getRejected());
+
+        requests.sent.get(0).complete(new TestResponse(200));
+        assertEquals(1, requests.sent.size());
+    }
+
+    @Test
+    public void releasesResponsesOfWaitersCancelledInFlight() {
+        ConcurrencyLimiter limiter = limiter(1, 1, 0);
+        limiter.execute(HOST, requests);
+        // the response arrives while the request is being cancelled
+        requests.cancellable = false;
+        CompletableFuture<RestResponse> queued = limiter.execute(HOST, requests);
+        requests.sent.get(0).complete(new TestResponse(200));
+        assertEquals(2, requests.sent.size());
+
+        queued.cancel(true);
+        TestResponse late = new TestResponse(200);
+        requests.sent.get(1).complete(late);
+        assertTrue(late.isReleased());
+    }
+
+    @Test
+    public void lowersTheLimitOfAnOverloadedHost() throws Exception {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().aimd().initialLimit(10).build();
+        limiter.execute(HOST, requests);
+        requests.sent.get(0).complete(new TestResponse(503));
+        assertEquals(9, limiter.getLimit(HOST));
+    }
+
+    private static ConcurrencyLimiter limiter(int limit, int maxQueue, long maxQueueTime) {
+        return ConcurrencyLimiter.builder()
+                .limit(() -> new FixedLimit(limit))
+                .maxQueue(maxQueue)
+                .maxQueueTime(maxQueueTime, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    private static LimitExceededException rejection(CompletableFuture<RestResponse> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return (LimitExceededException) e.getCause();
+        }
+        throw new AssertionError("not rejected");
+    }
+
+    private static class FixedLimit implements Limit {
+        private final int limit;
+
+        FixedLimit(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public int getLimit() {
+            return limit;
+        }
+
+        @Override
+        public void onSample(long startTime, long rtt, int inFlight, boolean dropped) {
+        }
+    }
+
+    /**
+     * Sends requests which stay in flight until the test completes them.
+     */
+    private static class Requests implements Supplier<CompletableFuture<RestResponse>> {
+        final List<CompletableFuture<RestResponse>> sent = new CopyOnWriteArrayList<>();
+        volatile boolean cancellable = true;
+
+        @Override
+        public CompletableFuture<RestResponse> get() {
+            CompletableFuture<RestResponse> future = cancellable ? new CompletableFuture<>()
+                    : new CompletableFuture<RestResponse>() {
+                        @Override
+                        public boolean cancel(boolean mayInterruptIfRunning) {
+                            return false;
+                        }
+                    };
+            sent.add(future);
+            return future;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.limit;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GradientLimitTest {
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long start = System.nanoTime();
+
+    @Test
+    public void growsWhileTheLatencyIsSteady() {
+        GradientLimit limit = new GradientLimit(20, 1, 200);
+        int previous = limit.getLimit();
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(start + i * MILLIS, 10 * MILLIS, limit.getLimit(), false);
+            assertTrue(limit.getLimit() >= previous);
+            previous = limit.getLimit();
+        }
+        assertTrue(String.valueOf(limit.getLimit()), limit.getLimit() > 40);
+        assertEquals(10 * MILLIS, limit.getMinRtt());
+    }
+
+    @Test
+    public void shrinksWhenTheLatencyGrows() {
+        GradientLimit limit = new GradientLimit(100, 1, 200);
+        limit.onSample(start, 10 * MILLIS, 1, false);
+        for (int i = 1; i <= 50; i++) {
+            limit.onSample(start + i * MILLIS, 100 * MILLIS, limit.getLimit(), false);
+        }
+        assertTrue(String.valueOf(limit.getLimit()), limit.getLimit() < 50);
+        assertEquals(10 * MILLIS, limit.getMinRtt());
+    }
+
+    @Test
+    public void shrinksOnDrops() {
+        GradientLimit limit = new GradientLimit(100, 1, 200);
+        limit.onSample(start, 10 * MILLIS, 100, true);
+        // 100 * 0.8 + (100 * 0.5 + 10) * 0.2
+        assertEquals(92, limit.getLimit());
+    }
+
+    @Test
+    public void doesNotGrowWhileIdle() {
+        GradientLimit limit = new GradientLimit(20, 1, 200);
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(start + i * MILLIS, 10 * MILLIS, 1, false);
+        }
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    public void forgetsTheMinimumRttAfterTheWindow() {
+        GradientLimit limit = new GradientLimit(20, 1, 200, 2, 0.2, 1, TimeUnit.SECONDS);
+        limit.onSample(start, 10 * MILLIS, 1, false);
+        limit.onSample(start + 600 * MILLIS, 50 * MILLIS, 1, false);
+        assertEquals(10 * MILLIS, limit.getMinRtt());
+        limit.onSample(start + 1200 * MILLIS, 50 * MILLIS, 1, false);
+        assertEquals(50 * MILLIS, limit.getMinRtt());
+    }
+
+    @Test
+    public void staysWithinItsBounds() {
+        GradientLimit limit = new GradientLimit(10, 5, 12);
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(start + i * MILLIS, 10 * MILLIS, 12, false);
+        }
+        assertEquals(12, limit.getLimit());
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(start + i * MILLIS, 10 * MILLIS, 12, true);
+        }
+        assertEquals(5, limit.getLimit());
+    }
+}
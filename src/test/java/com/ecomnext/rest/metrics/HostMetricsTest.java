@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HostMetricsTest {
+    private final HostMetrics metrics = new HostMetrics("example.com");
+
+    @Test
+    public void countsTheRequestsInFlight() {
+        long first = metrics.start();
+        long second = metrics.start();
+        metrics.start();
+        assertEquals(3, metrics.snapshot().getInFlight());
+
+        metrics.completed(first, 200);
+        metrics.failed(second);
+        metrics.cancelled();
+        assertEquals(0, metrics.snapshot().getInFlight());
+    }
+
+    @Test
+    public void recordsLatenciesByStatusClass() {
+        record(200, 10);
+        record(204, 20);
+        record(404, 30);
+        record(503, 40);
+        metrics.failed(metrics.start() - TimeUnit.MILLISECONDS.toNanos(50));
+        metrics.start();
+        metrics.cancelled();
+
+        HostMetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals("example.com", snapshot.getHost());
+        assertEquals(2, snapshot.getRequests(StatusClass.SUCCESS));
+        assertEquals(1, snapshot.getRequests(StatusClass.CLIENT_ERROR));
+        assertEquals(1, snapshot.getRequests(StatusClass.SERVER_ERROR));
+        assertEquals(1, snapshot.getRequests(StatusClass.ERROR));
+        // cancelled requests are not counted
+        assertEquals(5, snapshot.getRequests());
+
+        long p50 = metrics.snapshot(StatusClass.SUCCESS).getValueAtPercentile(50);
+        assertTrue(String.valueOf(p50), p50 >= 10000 && p50 < 20000);
+        assertTrue(snapshot.getLatency(StatusClass.ERROR).getMax() >= 50000);
+    }
+
+    @Test
+    public void recordsTheQueueTime() {
+        long start = metrics.start() - TimeUnit.MILLISECONDS.toNanos(5);
+        metrics.headersWritten(start);
+        assertEquals(1, metrics.snapshot().getQueueTime().getCount());
+        assertTrue(metrics.snapshot().getQueueTime().getMax() >= 5000);
+    }
+
+    /**
+     * Record a request which took the given milliseconds.
+     */
+    private void record(int status, long millis) {
+        metrics.completed(metrics.start() - TimeUnit.MILLISECONDS.toNanos(millis), status);
+    }
+}
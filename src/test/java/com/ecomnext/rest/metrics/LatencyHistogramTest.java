@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test
+    public void recordsSmallValuesExactly() {
+        for (long value = 0; value < 64; value++) {
+            assertEquals(value, LatencyHistogram.highestValue(LatencyHistogram.index(value)));
+        }
+    }
+
+    @Test
+    public void bucketsValuesWithABoundedError() {
+        int previous = -1;
+        for (long value = 0; value <= LatencyHistogram.MAX_VALUE; value = value < 1000 ? value + 1 : value + value / 7) {
+            int index = LatencyHistogram.index(value);
+            long highest = LatencyHistogram.highestValue(index);
+            assertTrue(value + " in bucket up to " + highest, highest >= value);
+            assertTrue(value + " in bucket up to " + highest, highest - value <= value * 0.032);
+            // buckets are ordered by value
+            assertTrue(index >= previous);
+            previous = index;
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.index(LatencyHistogram.MAX_VALUE));
+    }
+
+    @Test
+    public void bucketsEndWhereTheNextOneStarts() {
+        for (int index = 0; index < LatencyHistogram.BUCKET_COUNT - 1; index++) {
+            long highest = LatencyHistogram.highestValue(index);
+            assertEquals(index, LatencyHistogram.index(highest));
+            assertEquals(index + 1, LatencyHistogram.index(highest + 1));
+        }
+    }
+
+    @Test
+    public void reportsPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value * 1000);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(5050000, snapshot.getSum());
+        assertEquals(100000, snapshot.getMax());
+        assertEquals(50500, snapshot.getMean(), 0);
+        assertWithin(50000, snapshot.getValueAtPercentile(50));
+        assertWithin(95000, snapshot.getValueAtPercentile(95));
+        assertWithin(99000, snapshot.getValueAtPercentile(99));
+        assertEquals(100000, snapshot.getValueAtPercentile(100));
+        assertWithin(1000, snapshot.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void reportsZeroWithoutValues() {
+        HistogramSnapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+        assertEquals(0, snapshot.getMean(), 0);
+    }
+
+    @Test
+    public void clampsValuesOutOfRange() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getValueAtPercentile(50));
+        assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getValueAtPercentile(100));
+        assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getMax());
+    }
+
+    @Test
+    public void recordsNanosAsMicros() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(42999);
+        assertEquals(42, histogram.snapshot().getMax());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " instead of " + expected, actual >= expected && actual <= expected * 1.032);
+    }
+}
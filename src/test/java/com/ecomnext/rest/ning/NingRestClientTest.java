@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.ning;
+
+import com.ecomnext.rest.utils.CompiledUriTemplate;
+import com.ning.http.client.AsyncHttpClientConfig;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class NingRestClientTest {
+    private final NingRestClient client = new NingRestClient(new AsyncHttpClientConfig.Builder().build());
+
+    @After
+    public void close() {
+        client.close();
+    }
+
+    @Test
+    public void cachesTemplates() {
+        CompiledUriTemplate template = client.template("http://example.com/users/{id}");
+        assertSame(template, client.template("http://example.com/users/{id}"));
+    }
+
+    @Test
+    public void keepsTemplatesInUseWhenOneOffTemplatesFillTheCache() {
+        String hot = "http://example.com/users/{id}";
+        CompiledUriTemplate template = client.template(hot);
+        for (int i = 0; i < 10 * NingRestClient.MAX_CACHED_TEMPLATES; i++) {
+            client.template("http://example.com/one-off/" + i + "/{id}");
+            assertSame(template, client.template(hot));
+        }
+    }
+
+    @Test
+    public void evictsUnusedTemplates() {
+        String first = "http://example.com/first/{id}";
+        CompiledUriTemplate template = client.template(first);
+        for (int i = 0; i < 2 * NingRestClient.MAX_CACHED_TEMPLATES; i++) {
+            client.template("http://example.com/one-off/" + i + "/{id}");
+        }
+        assertNotSame(template, client.template(first));
+    }
+}
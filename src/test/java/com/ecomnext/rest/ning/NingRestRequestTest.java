@@ -0,0 +1,189 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.ning;
+
+import com.ecomnext.rest.RestAuthScheme;
+import com.ecomnext.rest.RestBodyConsumer;
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.RestStreamedResponse;
+import com.ecomnext.rest.TestResponse;
+import com.ecomnext.rest.metrics.HostMetricsSnapshot;
+import com.ecomnext.rest.metrics.RestMetrics;
+import com.ecomnext.rest.metrics.StatusClass;
+import com.ecomnext.rest.spi.HttpTransport;
+import com.ecomnext.rest.spi.TransportRequest;
+import com.ning.http.client.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class NingRestRequestTest {
+    private final NingRestClient client = new NingRestClient(new AsyncHttpClientConfig.Builder().build());
+    private ServerSocket server;
+    // counted down when the client closes the connection
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    /**
+     * Start a server which reads the requests but never answers them.
+     */
+    @Before
+    public void listen() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            try (Socket socket = server.accept()) {
+                socket.setSoTimeout(10000);
+                InputStream in = socket.getInputStream();
+                byte[] buffer = new byte[4096];
+                while (in.read(buffer) >= 0) {
+                    // the request is never answered
+                }
+                closed.countDown();
+            } catch (IOException e) {
+                // the test fails waiting for the close
+            }
+        }, "silent-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @After
+    public void close() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void abortsTheRequestAtTheDeadline() throws Exception {
+        CompletableFuture<RestResponse> response = client.url(url())
+                .setDeadline(100, TimeUnit.MILLISECONDS)
+                .get();
+        try {
+            response.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue("the connection was not closed", closed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void abortsTheRequestWhenCancelled() throws Exception {
+        CompletableFuture<RestResponse> response = client.url(url()).get();
+        Thread.sleep(100);
+        assertTrue(response.cancel(true));
+        assertTrue("the connection was not closed", closed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failsTheResponseWhenTheClientThrows() throws Exception {
+        NingRestClient client = new NingRestClient(new AsyncHttpClient(new AsyncHttpProvider() {
+            @Override
+            public <T> ListenableFuture<T> execute(Request request, AsyncHandler<T> handler) {
+                throw new IllegalStateException("invalid request");
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public Response prepareResponse(HttpResponseStatus status, HttpResponseHeaders headers,
+                                            List<HttpResponseBodyPart> bodyParts) {
+                throw new UnsupportedOperationException();
+            }
+        }));
+        RestMetrics metrics = new RestMetrics();
+        client.setMetrics(metrics);
+
+        CompletableFuture<RestResponse> response = client.url(url()).get();
+        try {
+            response.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("invalid request", e.getCause().getMessage());
+        }
+        HostMetricsSnapshot host = metrics.snapshot().getHost("127.0.0.1");
+        assertEquals(0, host.getInFlight());
+        assertEquals(1, host.getRequests(StatusClass.ERROR));
+    }
+
+    @Test
+    public void sendsTheTimeoutAndBasicAuthWithTheTransport() throws Exception {
+        Recording transport = new Recording();
+        client.setTransport(transport);
+
+        client.url(url())
+                .setAuth("user", "pass")
+                .setTimeout(250)
+                .get().get(5, TimeUnit.SECONDS);
+
+        assertEquals(250, transport.request.getTimeout());
+        assertEquals(Collections.singletonList("Basic dXNlcjpwYXNz"),
+                transport.request.getHeaders().get("Authorization"));
+    }
+
+    @Test
+    public void rejectsOtherAuthSchemesWithATransport() {
+        client.setTransport(new Recording());
+        try {
+            client.url(url()).setAuth("user", "pass", RestAuthScheme.DIGEST);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("DIGEST authentication is not supported by the transport of the client", e.getMessage());
+        }
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getLocalPort() + "/silent";
+    }
+
+    /**
+     * Transport answering 200 to every request, keeping the last one.
+     */
+    private static class Recording implements HttpTransport {
+        private volatile TransportRequest request;
+
+        @Override
+        public CompletableFuture<RestResponse> execute(TransportRequest request) {
+            this.request = request;
+            return CompletableFuture.completedFuture(new TestResponse(200));
+        }
+
+        @Override
+        public CompletableFuture<RestStreamedResponse> stream(TransportRequest request, RestBodyConsumer consumer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
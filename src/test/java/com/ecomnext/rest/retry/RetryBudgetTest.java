@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.retry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RetryBudgetTest {
+    @Test
+    public void startsFull() {
+        RetryBudget budget = new RetryBudget(0.1, 3);
+        assertEquals(3, budget.getAvailable(), 0);
+        assertTrue(budget.tryRetry());
+        assertTrue(budget.tryRetry());
+        assertTrue(budget.tryRetry());
+        assertFalse(budget.tryRetry());
+        assertEquals(3, budget.getRetries());
+        assertEquals(1, budget.getExhausted());
+    }
+
+    @Test
+    public void capsRetriesAtTheRatioOfRequests() {
+        RetryBudget budget = new RetryBudget(0.2, 1);
+        int retries = 0;
+        for (int i = 0; i < 1000; i++) {
+            budget.onRequest();
+            // every request would retry as much as it can
+            while (budget.tryRetry()) {
+                retries++;
+            }
+        }
+        // 0.2 per request, plus at most the token the bucket started with
+        assertTrue(String.valueOf(retries), retries >= 200 && retries <= 201);
+    }
+
+    @Test
+    public void holdsAtMostTheMaximumTokens() {
+        RetryBudget budget = new RetryBudget(0.5, 2);
+        for (int i = 0; i < 100; i++) {
+            budget.onRequest();
+        }
+        assertEquals(2, budget.getAvailable(), 0);
+    }
+
+    @Test
+    public void neverRetriesWithAZeroRatioOnceEmpty() {
+        RetryBudget budget = new RetryBudget(0, 1);
+        assertTrue(budget.tryRetry());
+        for (int i = 0; i < 100; i++) {
+            budget.onRequest();
+        }
+        assertFalse(budget.tryRetry());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRatiosAboveOne() {
+        new RetryBudget(1.5, 1);
+    }
+}
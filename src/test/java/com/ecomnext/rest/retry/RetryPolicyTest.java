@@ -0,0 +1,293 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.retry;
+
+import com.ecomnext.rest.RestAuthScheme;
+import com.ecomnext.rest.RestRequest;
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.TestResponse;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+    private final RetryPolicy policy = RetryPolicy.builder()
+            .initialBackoff(1, TimeUnit.MILLISECONDS)
+            .maxBackoff(5, TimeUnit.MILLISECONDS)
+            .build();
+
+    @Test
+    public void retriesIdempotentMethodsOnly() {
+        for (String method : Arrays.asList("GET", "HEAD", "OPTIONS", "PUT", "DELETE", "TRACE")) {
+            assertTrue(method, policy.isIdempotent(new TestRequest(method)));
+        }
+        assertFalse(policy.isIdempotent(new TestRequest("POST")));
+        assertFalse(policy.isIdempotent(new TestRequest("PATCH")));
+        assertTrue(policy.isIdempotent(new TestRequest("POST", "Idempotency-Key", "a1b2")));
+        assertTrue(RetryPolicy.builder().retryNonIdempotent(true).build().isIdempotent(new TestRequest("PATCH")));
+    }
+
+    @Test
+    public void retriesUnavailableResponses() {
+        assertTrue(policy.delayAfter(new TestResponse(502), 0, true) >= 0);
+        assertTrue(policy.delayAfter(new TestResponse(503), 0, true) >= 0);
+        assertTrue(policy.delayAfter(new TestResponse(504), 0, true) >= 0);
+        assertTrue(policy.delayAfter(new TestResponse(429), 0, true) >= 0);
+
+        assertEquals(-1, policy.delayAfter(new TestResponse(500), 0, true));
+        assertEquals(-1, policy.delayAfter(new TestResponse(400), 0, true));
+        assertEquals(-1, policy.delayAfter(new TestResponse(404), 0, true));
+        assertEquals(-1, policy.delayAfter(new TestResponse(200), 0, true));
+        // not idempotent
+        assertEquals(-1, policy.delayAfter(new TestResponse(503), 0, false));
+        // out of retries
+        assertEquals(-1, policy.delayAfter(new TestResponse(503), 2, true));
+    }
+
+    @Test
+    public void retriesIOExceptions() {
+        assertTrue(policy.delayAfter(new IOException("reset"), 0, true) >= 0);
+        assertEquals(-1, policy.delayAfter(new IllegalStateException(), 0, true));
+        assertEquals(-1, policy.delayAfter(new IOException("reset"), 0, false));
+        // never sent, whatever the method
+        assertTrue(policy.delayAfter(new ConnectException("refused"), 0, false) >= 0);
+        assertEquals(-1, policy.delayAfter(new IOException("reset"), 2, true));
+    }
+
+    @Test
+    public void backsOffExponentiallyUpToTheMaximum() {
+        RetryPolicy policy = RetryPolicy.builder()
+                .maxRetries(100)
+                .initialBackoff(10, TimeUnit.MILLISECONDS)
+                .maxBackoff(100, TimeUnit.MILLISECONDS)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(policy.delayAfter(new IOException(), 0, true) <= 10);
+            assertTrue(policy.delayAfter(new IOException(), 2, true) <= 40);
+            assertTrue(policy.delayAfter(new IOException(), 70, true) <= 100);
+        }
+    }
+
+    @Test
+    public void parsesRetryAfterInSeconds() {
+        assertEquals(120000, RetryPolicy.retryAfter("120"));
+        assertEquals(3000, RetryPolicy.retryAfter(" 3 "));
+        assertEquals(0, RetryPolicy.retryAfter(null));
+        assertEquals(0, RetryPolicy.retryAfter("soon"));
+        assertEquals(0, RetryPolicy.retryAfter("99999999999999999999"));
+    }
+
+    @Test
+    public void parsesRetryAfterDates() {
+        long delay = RetryPolicy.retryAfter(date(10));
+        assertTrue(String.valueOf(delay), delay > 8000 && delay <= 10000);
+        assertEquals(0, RetryPolicy.retryAfter(date(-10)));
+    }
+
+    @Test
+    public void waitsForRetryAfter() {
+        assertTrue(policy.delayAfter(new TestResponse(503, "", "Retry-After", "2"), 0, true) >= 2000);
+        assertTrue(policy.delayAfter(new TestResponse(503, "", "Retry-After", date(5)), 0, true) > 3000);
+        // longer than the maximum
+        assertEquals(-1, policy.delayAfter(new TestResponse(503, "", "Retry-After", "3600"), 0, true));
+    }
+
+    @Test
+    public void retriesUntilAResponseSucceeds() throws Exception {
+        Attempts attempts = new Attempts(new TestResponse(503), new TestResponse(502), new TestResponse(200, "ok"));
+        RestResponse response = policy.execute(new TestRequest("GET"), true, null, attempts).get();
+        assertEquals("ok", response.getBody());
+        assertEquals(3, attempts.count.get());
+    }
+
+    @Test
+    public void releasesTheResponsesOfDiscardedAttempts() throws Exception {
+        TestResponse first = new TestResponse(503);
+        TestResponse second = new TestResponse(503);
+        TestResponse last = new TestResponse(200);
+        policy.execute(new TestRequest("GET"), true, null, new Attempts(first, second, last)).get();
+        assertTrue(first.isReleased());
+        assertTrue(second.isReleased());
+        assertEquals(1, last.refCnt());
+    }
+
+    @Test
+    public void returnsTheLastResponseOnceOutOfRetries() throws Exception {
+        TestResponse last = new TestResponse(503, "last");
+        Attempts attempts = new Attempts(new TestResponse(503), new TestResponse(503), last);
+        assertSame(last, policy.execute(new TestRequest("GET"), true, null, attempts).get());
+        assertEquals(1, last.refCnt());
+    }
+
+    @Test
+    public void failsWithEveryAttemptFailure() throws Exception {
+        Attempts attempts = new Attempts(new IOException("first"), new IOException("second"), new IOException("last"));
+        try {
+            policy.execute(new TestRequest("GET"), true, null, attempts).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("last", e.getCause().getMessage());
+            assertEquals(2, e.getCause().getSuppressed().length);
+        }
+    }
+
+    @Test
+    public void doesNotRetryNonIdempotentMethodsOrUnreplayableBodies() throws Exception {
+        Attempts attempts = new Attempts(new TestResponse(503), new TestResponse(200));
+        assertEquals(503, policy.execute(new TestRequest("POST"), true, null, attempts).get().getStatus());
+        attempts = new Attempts(new TestResponse(503), new TestResponse(200));
+        assertEquals(503, policy.execute(new TestRequest("PUT"), false, null, attempts).get().getStatus());
+        assertEquals(1, attempts.count.get());
+    }
+
+    @Test
+    public void stopsRetryingWhenTheBudgetIsExhausted() throws Exception {
+        RetryBudget budget = new RetryBudget(0, 1);
+        Attempts attempts = new Attempts(new TestResponse(503), new TestResponse(503), new TestResponse(200));
+        assertEquals(503, policy.execute(new TestRequest("GET"), true, budget, attempts).get().getStatus());
+        assertEquals(2, attempts.count.get());
+        assertEquals(1, budget.getRetries());
+        assertEquals(1, budget.getExhausted());
+    }
+
+    @Test
+    public void stopsRetryingWhenCancelledDuringTheBackoff() throws Exception {
+        RetryPolicy policy = RetryPolicy.builder().build();
+        TestResponse unavailable = new TestResponse(503, "", "Retry-After", "1");
+        Attempts attempts = new Attempts(unavailable, new TestResponse(200));
+        CompletableFuture<RestResponse> response = policy.execute(new TestRequest("GET"), true, null, attempts);
+        assertTrue(unavailable.isReleased());
+        assertTrue(response.cancel(true));
+
+        Thread.sleep(1500);
+        assertEquals(1, attempts.count.get());
+    }
+
+    @Test
+    public void cancelsTheAttemptInFlight() {
+        CompletableFuture<RestResponse> inFlight = new CompletableFuture<>();
+        CompletableFuture<RestResponse> response = policy.execute(new TestRequest("GET"), true, null, () -> inFlight);
+        assertTrue(response.cancel(true));
+        assertTrue(inFlight.isCancelled());
+    }
+
+    @Test
+    public void releasesResponsesArrivingAfterTheCancellation() {
+        // the response arrives while the request is being cancelled
+        CompletableFuture<RestResponse> inFlight = new CompletableFuture<RestResponse>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                return false;
+            }
+        };
+        policy.execute(new TestRequest("GET"), true, null, () -> inFlight).cancel(true);
+        TestResponse late = new TestResponse(200);
+        inFlight.complete(late);
+        assertTrue(late.isReleased());
+    }
+
+    /**
+     * @return the HTTP-date of the given seconds from now.
+     */
+    private static String date(long seconds) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(seconds));
+    }
+
+    /**
+     * Sends the attempts of a request, each getting the next response or failure.
+     */
+    private static class Attempts implements Supplier<CompletableFuture<RestResponse>> {
+        private final List<Object> outcomes;
+        final AtomicInteger count = new AtomicInteger();
+
+        Attempts(Object... outcomes) {
+            this.outcomes = new CopyOnWriteArrayList<>(outcomes);
+        }
+
+        @Override
+        public CompletableFuture<RestResponse> get() {
+            Object outcome = outcomes.get(count.getAndIncrement());
+            CompletableFuture<RestResponse> future = new CompletableFuture<>();
+            if (outcome instanceof Throwable) {
+                future.completeExceptionally((Throwable) outcome);
+            } else {
+                future.complete((RestResponse) outcome);
+            }
+            return future;
+        }
+    }
+
+    private static class TestRequest implements RestRequest {
+        private final String method;
+        private final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        TestRequest(String method, String... headers) {
+            this.method = method;
+            for (int i = 0; i < headers.length; i += 2) {
+                this.headers.put(headers[i], Collections.singletonList(headers[i + 1]));
+            }
+        }
+
+        @Override
+        public CompletableFuture<RestResponse> execute() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<String, List<String>> getAllHeaders() {
+            return headers;
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+        @Override
+        public List<String> getHeader(String name) {
+            List<String> values = headers.get(name);
+            return values == null ? Collections.<String>emptyList() : values;
+        }
+
+        @Override
+        public String getUrl() {
+            return "http://example.com/";
+        }
+
+        @Override
+        public byte[] getBody() {
+            return null;
+        }
+
+        @Override
+        public RestRequest auth(String username, String password, RestAuthScheme scheme) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
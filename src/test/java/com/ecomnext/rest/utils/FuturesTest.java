@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.utils;
+
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.TestResponse;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class FuturesTest {
+    @Test
+    public void cancelsTheSourceWhenTimingOut() throws Exception {
+        CompletableFuture<RestResponse> source = new CompletableFuture<>();
+        CompletableFuture<RestResponse> result = Futures.orTimeout(source, 20, TimeUnit.MILLISECONDS);
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(source.isCancelled());
+    }
+
+    @Test
+    public void completesAsTheSourceBeforeTheTimeout() throws Exception {
+        CompletableFuture<RestResponse> source = new CompletableFuture<>();
+        CompletableFuture<RestResponse> result = Futures.orTimeout(source, 1, TimeUnit.MINUTES);
+        TestResponse response = new TestResponse(200);
+        source.complete(response);
+        assertSame(response, result.get());
+        assertEquals(1, response.refCnt());
+    }
+
+    @Test
+    public void releasesResponsesArrivingAfterTheTimeout() throws Exception {
+        CompletableFuture<RestResponse> source = uncancellable();
+        CompletableFuture<RestResponse> result = Futures.orTimeout(source, 20, TimeUnit.MILLISECONDS);
+        while (!result.isDone()) {
+            Thread.sleep(1);
+        }
+        TestResponse late = new TestResponse(200);
+        source.complete(late);
+        assertTrue(late.isReleased());
+    }
+
+    @Test
+    public void cancelsTheSourceWithTheTimedResult() {
+        CompletableFuture<RestResponse> source = new CompletableFuture<>();
+        assertTrue(Futures.orTimeout(source, 1, TimeUnit.MINUTES).cancel(true));
+        assertTrue(source.isCancelled());
+    }
+
+    @Test
+    public void releasesResponsesArrivingAfterTheCancellation() {
+        CompletableFuture<RestResponse> source = uncancellable();
+        Futures.orTimeout(source, 1, TimeUnit.MINUTES).cancel(true);
+        TestResponse late = new TestResponse(200);
+        source.complete(late);
+        assertTrue(late.isReleased());
+
+        source = uncancellable();
+        Futures.completeOn(source, Runnable::run).cancel(true);
+        late = new TestResponse(200);
+        source.complete(late);
+        assertTrue(late.isReleased());
+    }
+
+    @Test
+    public void completesOnTheExecutor() throws Exception {
+        Executor executor = command -> new Thread(command, "completion").start();
+        CompletableFuture<RestResponse> source = new CompletableFuture<>();
+        CompletableFuture<String> completedOn = Futures.completeOn(source, executor)
+                .thenApply(response -> Thread.currentThread().getName());
+        source.complete(new TestResponse(200));
+        assertEquals("completion", completedOn.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancelsTheSourceOfDependentFutures() {
+        CompletableFuture<RestResponse> source = new CompletableFuture<>();
+        CompletableFuture<Integer> status = Futures.propagateCancel(source.thenApply(RestResponse::getStatus), source);
+        assertTrue(status.cancel(true));
+        assertTrue(source.isCancelled());
+    }
+
+    /**
+     * @return a future which completes while being cancelled.
+     */
+    private static CompletableFuture<RestResponse> uncancellable() {
+        return new CompletableFuture<RestResponse>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                return false;
+            }
+        };
+    }
+}
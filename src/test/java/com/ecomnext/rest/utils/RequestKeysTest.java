@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class RequestKeysTest {
+    private static final String URL = "http://example.com/items";
+
+    @Test
+    public void sortsQueryParametersByName() {
+        Map<String, Collection<String>> parameters = new LinkedHashMap<>();
+        parameters.put("b", Collections.singletonList("2"));
+        parameters.put("a", Arrays.asList("1", "3"));
+        assertEquals("http://example.com/items?a=1&a=3&b=2", uri(URL + "?ignored#fragment", parameters));
+    }
+
+    @Test
+    public void tellsSeparatorsInValuesApart() {
+        Map<String, Collection<String>> two = new LinkedHashMap<>();
+        two.put("a", Collections.singletonList("1"));
+        two.put("b", Collections.singletonList("2"));
+        assertNotEquals(uri(URL, two), uri(URL, parameter("a", "1&b=2")));
+        assertNotEquals(uri(URL, parameter("a=1", "2")), uri(URL, parameter("a", "1=2")));
+        assertNotEquals(uri(URL, parameter("a", "%26")), uri(URL, parameter("a", "&")));
+        assertEquals("http://example.com/items?a=1%26b%3D2%0A", uri(URL, parameter("a", "1&b=2\n")));
+    }
+
+    @Test
+    public void tellsNullValuesApart() {
+        assertNotEquals(uri(URL, parameter("a", null)), uri(URL, parameter("a", "null")));
+        assertNotEquals(uri(URL, parameter("a", null)), uri(URL, parameter("a", "")));
+        assertEquals("http://example.com/items?a", uri(URL, parameter("a", null)));
+    }
+
+    @Test
+    public void joinsHeaderValues() {
+        Map<String, Collection<String>> headers = Collections.<String, Collection<String>>singletonMap(
+                "accept", Arrays.asList("text/html", "application/json"));
+        assertEquals("text/html,application/json", RequestKeys.header(headers, "Accept"));
+        assertEquals(null, RequestKeys.header(headers, "Authorization"));
+    }
+
+    private static String uri(String url, Map<String, Collection<String>> parameters) {
+        return RequestKeys.appendUri(new StringBuilder(), url, parameters).toString();
+    }
+
+    private static Map<String, Collection<String>> parameter(String name, String value) {
+        return Collections.<String, Collection<String>>singletonMap(name, Collections.singletonList(value));
+    }
+}
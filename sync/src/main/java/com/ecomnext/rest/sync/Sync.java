@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.sync;
+
+import com.ecomnext.rest.RestRequestHolder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Blocking access to the requests of a client, for code written in blocking style running on virtual threads.
+ * <pre>{@code
+ * RestResponse response = Sync.of(Rest.url("http://example.com/items/42")).getSync();
+ * }</pre>
+ * The request is executed asynchronously as usual and the calling thread parks until its response arrives. A parked
+ * virtual thread releases its carrier, so thousands of blocked callers only need a few platform threads, and the
+ * wait does not enter any monitor that would pin the carrier. On platform threads it blocks like
+ * {@code future.get()}.
+ */
+public class Sync {
+    private Sync() {
+    }
+
+    /**
+     * @return a blocking facade of the request, configure it on the holder before.
+     */
+    public static SyncRequest of(RestRequestHolder request) {
+        return new SyncRequest(request);
+    }
+
+    /**
+     * Park the current thread until the future completes.
+     * <p>
+     * If the thread is interrupted while waiting, the future is cancelled, which aborts its request, and a
+     * {@link CancellationException} is thrown with the interrupt status of the thread set.
+     *
+     * @return the value of the future.
+     * @throws RuntimeException the failure of the future: unchecked exceptions as they are, an
+     * {@link IOException} as an {@link UncheckedIOException} and other checked exceptions wrapped in a
+     * RuntimeException.
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        if (!future.isDone()) {
+            Thread waiter = Thread.currentThread();
+            future.whenComplete((value, failure) -> LockSupport.unpark(waiter));
+            while (!future.isDone()) {
+                LockSupport.park(future);
+                if (Thread.interrupted()) {
+                    future.cancel(true);
+                    waiter.interrupt();
+                    throw new CancellationException("Interrupted while waiting for the response");
+                }
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw unchecked(e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    private static RuntimeException unchecked(Throwable failure) {
+        if (failure instanceof ExecutionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        if (failure instanceof RuntimeException) {
+            return (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure instanceof IOException) {
+            return new UncheckedIOException((IOException) failure);
+        }
+        return new RuntimeException(failure);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.sync;
+
+import com.ecomnext.rest.RestRequestHolder;
+import com.ecomnext.rest.RestResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.File;
+import java.io.InputStream;
+
+/**
+ * Blocking version of the methods of a {@link RestRequestHolder}, see {@link Sync}. Every method executes the
+ * request, parks the calling thread until the response arrives and returns it, or throws the failure of the request.
+ * The retries, deadline and the other settings of the request and its client apply as usual.
+ */
+public class SyncRequest {
+    private final RestRequestHolder request;
+
+    SyncRequest(RestRequestHolder request) {
+        this.request = request;
+    }
+
+    /**
+     * @return the request, to change its settings between executions.
+     */
+    public RestRequestHolder getRequest() {
+        return request;
+    }
+
+    public RestResponse getSync() {
+        return Sync.await(request.get());
+    }
+
+    public RestResponse patchSync(String body) {
+        return Sync.await(request.patch(body));
+    }
+
+    public RestResponse postSync(String body) {
+        return Sync.await(request.post(body));
+    }
+
+    public RestResponse putSync(String body) {
+        return Sync.await(request.put(body));
+    }
+
+    public RestResponse patchSync(JsonNode body) {
+        return Sync.await(request.patch(body));
+    }
+
+    public RestResponse postSync(JsonNode body) {
+        return Sync.await(request.post(body));
+    }
+
+    public RestResponse putSync(JsonNode body) {
+        return Sync.await(request.put(body));
+    }
+
+    public RestResponse patchSync(Object body) {
+        return Sync.await(request.patch(body));
+    }
+
+    public RestResponse postSync(Object body) {
+        return Sync.await(request.post(body));
+    }
+
+    public RestResponse putSync(Object body) {
+        return Sync.await(request.put(body));
+    }
+
+    public RestResponse patchSync(InputStream body) {
+        return Sync.await(request.patch(body));
+    }
+
+    public RestResponse postSync(InputStream body) {
+        return Sync.await(request.post(body));
+    }
+
+    public RestResponse putSync(InputStream body) {
+        return Sync.await(request.put(body));
+    }
+
+    public RestResponse postSync(File body) {
+        return Sync.await(request.post(body));
+    }
+
+    public RestResponse putSync(File body) {
+        return Sync.await(request.put(body));
+    }
+
+    public RestResponse deleteSync() {
+        return Sync.await(request.delete());
+    }
+
+    public RestResponse headSync() {
+        return Sync.await(request.head());
+    }
+
+    public RestResponse optionsSync() {
+        return Sync.await(request.options());
+    }
+
+    public RestResponse executeSync(String method) {
+        return Sync.await(request.execute(method));
+    }
+
+    /**
+     * Execute the request with the method and body set on the holder.
+     */
+    public RestResponse executeSync() {
+        return Sync.await(request.execute());
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ecomnext.rest.sync.benchmark;
+
+import com.ecomnext.rest.RestResponse;
+import com.ecomnext.rest.ning.NingRestClient;
+import com.ecomnext.rest.sync.Sync;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Many callers in blocking style, each sending requests one after the other with {@link Sync}, on virtual threads
+ * and on a pool of platform threads, against an HTTP server embedded in the same JVM which answers after a fixed
+ * latency. It reports throughput, latency percentiles and the peak number of platform threads.
+ *
+ * <p>Run it with {@code mvn -P bench verify}. Settings are read from system properties:
+ * <ul>
+ *     <li>{@code bench.modes}: {@code virtual}, {@code platform} or both, the default</li>
+ *     <li>{@code bench.callers}: concurrent callers, default {@code 10000}</li>
+ *     <li>{@code bench.requests}: requests sent by every caller, default {@code 20}</li>
+ *     <li>{@code bench.latency}: latency of the server in milliseconds, default {@code 20}</li>
+ *     <li>{@code bench.platformThreads}: size of the platform thread pool, default {@code 200}; the callers beyond
+ *     it wait for a thread</li>
+ * </ul>
+ * Every caller keeps a connection open, and the embedded server another one, so the limit of open files must be
+ * above twice the number of callers.
+ */
+public class BlockingCallersBenchmark {
+    private static final byte[] BODY = "{\"id\":42,\"name\":\"benchmark\"}".getBytes(StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws Exception {
+        String[] modes = property("bench.modes", "virtual,platform").split(",");
+        int callers = Integer.parseInt(property("bench.callers", "10000"));
+        int requests = Integer.parseInt(property("bench.requests", "20"));
+        long latency = Long.parseLong(property("bench.latency", "20"));
+        int platformThreads = Integer.parseInt(property("bench.platformThreads", "200"));
+
+        // the server writes the headers and the body separately, do not let Nagle delay the body
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        ExecutorService serverExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), callers);
+        server.setExecutor(serverExecutor);
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, BODY.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(BODY);
+            }
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/items/42";
+
+        NingRestClient client = new NingRestClient(new AsyncHttpClientConfig.Builder()
+                .setAllowPoolingConnection(true)
+                .setMaximumConnectionsPerHost(-1)
+                .setMaximumConnectionsTotal(-1)
+                .build());
+        try {
+            System.out.println(Result.HEADER);
+            for (String mode : modes) {
+                mode = mode.trim().toLowerCase(Locale.ROOT);
+                // warm up the client and the JIT, and open the connections
+                new Run(client, url, mode, platformThreads, callers, 2).execute();
+                System.out.println(new Run(client, url, mode, platformThreads, callers, requests).execute());
+            }
+        } finally {
+            client.getUnderlying().close();
+            server.stop(0);
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    private static class Run {
+        private final NingRestClient client;
+        private final String url;
+        private final String mode;
+        private final int platformThreads;
+        private final int callers;
+        private final int requests;
+        private final long[] latencies;
+        private final AtomicInteger recorded = new AtomicInteger();
+        private final LongAdder errors = new LongAdder();
+
+        Run(NingRestClient client, String url, String mode, int platformThreads, int callers, int requests) {
+            this.client = client;
+            this.url = url;
+            this.mode = mode;
+            this.platformThreads = platformThreads;
+            this.callers = callers;
+            this.requests = requests;
+            this.latencies = new long[callers * requests];
+        }
+
+        Result execute() throws InterruptedException {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+            ExecutorService executor;
+            switch (mode) {
+                case "virtual":
+                    executor = Executors.newVirtualThreadPerTaskExecutor();
+                    break;
+                case "platform":
+                    executor = Executors.newFixedThreadPool(platformThreads);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown mode: " + mode);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < callers; i++) {
+                executor.execute(this::call);
+            }
+            executor.shutdown();
+            if (!executor.awaitTermination(10, TimeUnit.MINUTES)) {
+                throw new IllegalStateException("Callers still running ten minutes after the start of the run");
+            }
+            long elapsed = System.nanoTime() - start;
+            long[] sorted = Arrays.copyOf(latencies, recorded.get());
+            Arrays.sort(sorted);
+            return new Result(mode, mode.equals("virtual") ? 0 : platformThreads, callers, sorted, errors.sum(),
+                    elapsed, threads.getPeakThreadCount());
+        }
+
+        private void call() {
+            for (int i = 0; i < requests; i++) {
+                long sent = System.nanoTime();
+                try {
+                    RestResponse response = Sync.of(client.url(url)).getSync();
+                    if (response.getStatus() != 200) {
+                        errors.increment();
+                    }
+                } catch (RuntimeException e) {
+                    errors.increment();
+                }
+                latencies[recorded.getAndIncrement()] = System.nanoTime() - sent;
+            }
+        }
+    }
+
+    private static class Result {
+        static final String HEADER = String.format(Locale.ROOT, "%-9s %8s %8s %9s %10s %7s %9s %9s %9s %9s",
+                "mode", "pool", "callers", "requests", "thrpt/s", "errors", "p50 ms", "p99 ms", "max ms", "threads");
+
+        final String mode;
+        final int pool;
+        final int callers;
+        final long[] latencies;
+        final long errors;
+        final long elapsed;
+        final int peakThreads;
+
+        Result(String mode, int pool, int callers, long[] latencies, long errors, long elapsed, int peakThreads) {
+            this.mode = mode;
+            this.pool = pool;
+            this.callers = callers;
+            this.latencies = latencies;
+            this.errors = errors;
+            this.elapsed = elapsed;
+            this.peakThreads = peakThreads;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-9s %8s %8d %9d %10.1f %7d %9.3f %9.3f %9.3f %9d",
+                    mode, pool == 0 ? "-" : String.valueOf(pool), callers, latencies.length,
+                    (latencies.length - errors) / (elapsed / 1e9), errors,
+                    millis(percentile(50)), millis(percentile(99)), millis(latencies[latencies.length - 1]),
+                    peakThreads);
+        }
+
+        private long percentile(double percentile) {
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(index, 0)];
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+
+    private static String property(String name, String defaultValue) {
+        return System.getProperty(name, defaultValue);
+    }
+}